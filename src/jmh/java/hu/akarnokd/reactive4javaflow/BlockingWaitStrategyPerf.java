@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the wait strategies of the blocking consumers when the items
+ * arrive from another thread: a single item measures the handoff latency,
+ * many items measure the throughput.
+ * <br>
+ * gradle jmh -Pjmh="BlockingWaitStrategyPerf"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class BlockingWaitStrategyPerf {
+
+    @Param({"1", "1000", "1000000"})
+    public int count;
+
+    @Param({"BUSY_SPIN", "SPIN_YIELD_PARK", "PARK"})
+    public WaitStrategy waitStrategy;
+
+    Folyam<Integer> source;
+
+    @Setup
+    public void setup() {
+        source = Folyam.range(1, count).observeOn(SchedulerServices.single());
+    }
+
+    @Benchmark
+    public void iterable(Blackhole bh) {
+        Iterator<Integer> it = source.blockingIterable(FolyamPlugins.defaultBufferSize(), waitStrategy).iterator();
+        while (it.hasNext()) {
+            bh.consume(it.next());
+        }
+    }
+
+    @Benchmark
+    public void stream(Blackhole bh) {
+        source.blockingStream(FolyamPlugins.defaultBufferSize(), waitStrategy).forEach(bh::consume);
+    }
+
+    @Benchmark
+    public void subscribe(Blackhole bh) {
+        source.blockingSubscribe(bh::consume, bh::consume, () -> { }, waitStrategy);
+    }
+}
@@ -38,11 +38,27 @@ public class CompletableFutureComparisonPerf {
 
     LastProcessor<Integer> lastProcessor;
 
+    Esetleg<Integer> esetlegJust;
+
+    Esetleg<Integer> esetlegCallable;
+
+    Esetleg<Integer> esetlegAsync;
+
+    Folyam<Integer> folyamRange;
+
+    Folyam<Integer> folyamAsync;
+
     @Setup
     public void setup() {
         lastProcessor = new LastProcessor<>();
         lastProcessor.onNext(1);
         lastProcessor.onComplete();
+
+        esetlegJust = Esetleg.just(1);
+        esetlegCallable = Esetleg.fromCallable(() -> 1);
+        esetlegAsync = Esetleg.just(1).subscribeOn(SchedulerServices.single());
+        folyamRange = Folyam.range(1, 10);
+        folyamAsync = Folyam.range(1, 10).subscribeOn(SchedulerServices.single());
     }
 
     @Benchmark
@@ -105,4 +121,34 @@ public class CompletableFutureComparisonPerf {
     public Object lastProcessorCompletedValue() {
         return lastProcessor.getValue();
     }
-}
\ No newline at end of file
+
+    @Benchmark
+    public Object esetlegJustBlockingGet() {
+        return esetlegJust.blockingGet();
+    }
+
+    @Benchmark
+    public Object esetlegCallableBlockingGet() {
+        return esetlegCallable.blockingGet();
+    }
+
+    @Benchmark
+    public Object esetlegAsyncBlockingGet() {
+        return esetlegAsync.blockingGet();
+    }
+
+    @Benchmark
+    public Object folyamRangeBlockingLast() {
+        return folyamRange.blockingLast();
+    }
+
+    @Benchmark
+    public Object folyamAsyncBlockingLast() {
+        return folyamAsync.blockingLast();
+    }
+
+    @Benchmark
+    public Object completableFutureAsync() throws Exception {
+        return CompletableFuture.supplyAsync(() -> 1).get();
+    }
+}
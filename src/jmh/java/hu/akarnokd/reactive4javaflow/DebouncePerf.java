@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-item cost of debouncing a synchronous burst via a timer
+ * Publisher per item with the re-armable deadline based debounce.
+ * <br>
+ * gradle jmh -Pjmh="DebouncePerf"
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class DebouncePerf {
+
+    @Param({"1000", "100000"})
+    public int count;
+
+    Folyam<Integer> timerPerItem;
+
+    Folyam<Integer> deadline;
+
+    @Setup
+    public void setup() {
+        SchedulerService executor = SchedulerServices.single();
+        Folyam<Long> timer = Folyam.timer(1, TimeUnit.MILLISECONDS, executor);
+        timerPerItem = Folyam.range(1, count).debounce(v -> timer);
+        deadline = Folyam.range(1, count).debounce(1, TimeUnit.MILLISECONDS, executor);
+    }
+
+    @Benchmark
+    public Object timerPerItem() {
+        return timerPerItem.blockingLast();
+    }
+
+    @Benchmark
+    public Object deadline() {
+        return deadline.blockingLast();
+    }
+}
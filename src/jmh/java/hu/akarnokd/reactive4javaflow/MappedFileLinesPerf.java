@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares reading the lines of a file via a Stream of Strings with
+ * the memory-mapped, zero-copy line splitting of fromFile and splitLines.
+ * <br>
+ * gradle jmh -Pjmh="MappedFileLinesPerf"
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class MappedFileLinesPerf {
+
+    @Param({"1000", "1000000"})
+    public int lines;
+
+    @Param({"65536", "8388608"})
+    public int windowSize;
+
+    Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("MappedFileLinesPerf", ".txt");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("Line number ").append(i).append(" of the benchmark file\n");
+        }
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void filesLines(Blackhole bh) throws IOException {
+        try (Stream<String> s = Files.lines(file)) {
+            Folyam.fromStream(s).subscribe(bh::consume, bh::consume, () -> { });
+        }
+    }
+
+    @Benchmark
+    public void mappedLines(Blackhole bh) {
+        Folyam.splitLines(Folyam.fromFile(file, windowSize)).subscribe(bh::consume, bh::consume, () -> { });
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import hu.akarnokd.reactive4javaflow.impl.util.MappedLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the append throughput of the durable replay log with the
+ * segment flushed every {@code syncEvery} records (0: only when rolling over).
+ * <br>
+ * gradle jmh -Pjmh="MappedLogAppendPerf"
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class MappedLogAppendPerf {
+
+    @Param({"64", "1024"})
+    public int size;
+
+    @Param({"0", "1000", "100000"})
+    public int syncEvery;
+
+    Path dir;
+
+    MappedLog log;
+
+    byte[] record;
+
+    int appended;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("MappedLogAppendPerf");
+        // keep a few segments only so the iterations don't fill the disk
+        log = new MappedLog(dir, 64 * 1024 * 1024, 256L * 1024 * 1024, Long.MAX_VALUE);
+        record = new byte[size];
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws IOException {
+        log.close();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                Files.deleteIfExists(p);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        long seq = log.append(record);
+        int s = syncEvery;
+        if (s != 0 && ++appended == s) {
+            appended = 0;
+            log.force();
+        }
+        return seq;
+    }
+}
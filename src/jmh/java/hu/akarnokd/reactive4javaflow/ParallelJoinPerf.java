@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@code parallel().map().sequential()} against the
+ * number of rails, with the per-item and the batched join.
+ * <br>
+ * gradle jmh -Pjmh="ParallelJoinPerf"
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class ParallelJoinPerf {
+
+    @Param({"1000000"})
+    public int count;
+
+    @Param({"1", "2", "4", "8"})
+    public int rails;
+
+    Folyam<Integer> perItem;
+
+    Folyam<Integer> batched;
+
+    @Setup
+    public void setup() {
+        ParallelFolyam<Integer> source = Folyam.range(1, count)
+                .parallel(rails)
+                .runOn(SchedulerServices.computation())
+                .map(v -> v + 1);
+
+        perItem = source.sequential();
+
+        batched = source.sequentialBatched(32);
+    }
+
+    @Benchmark
+    public Object perItem() {
+        return perItem.blockingLast();
+    }
+
+    @Benchmark
+    public Object batched() {
+        return batched.blockingLast();
+    }
+}
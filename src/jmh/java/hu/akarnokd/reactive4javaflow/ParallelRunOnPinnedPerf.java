@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the round-robin and the rail-pinned worker assignment of
+ * {@code ParallelFolyam.runOn} when the parallelism equals the core count.
+ * With round-robin assignment, concurrent subscriptions may put two rails
+ * onto the same thread while other threads idle.
+ * <br>
+ * gradle jmh -Pjmh="ParallelRunOnPinnedPerf"
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class ParallelRunOnPinnedPerf {
+
+    @Param({"1000", "100000"})
+    public int count;
+
+    @Param({"false", "true"})
+    public boolean pinned;
+
+    @Param({"100"})
+    public int work;
+
+    Folyam<Integer> flow;
+
+    @Setup
+    public void setup() {
+        int n = Runtime.getRuntime().availableProcessors();
+        int w = work;
+        flow = Folyam.range(1, count)
+                .parallel(n)
+                .runOn(SchedulerServices.computation(), FolyamPlugins.defaultBufferSize(), pinned)
+                .map(v -> {
+                    Blackhole.consumeCPU(w);
+                    return v;
+                })
+                .sequential();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Object concurrentSubscriptions() {
+        return flow.blockingLast();
+    }
+
+    @Benchmark
+    public Object singleSubscription() {
+        return flow.blockingLast();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@code ParallelFolyam.runOn} with {@code runOnWorkStealing} when
+ * the per-item processing cost follows a Zipfian distribution, i.e., a few
+ * items are very expensive and hold up the rail that prefetched them.
+ * <br>
+ * gradle jmh -Pjmh="ParallelRunOnStealingPerf"
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class ParallelRunOnStealingPerf {
+
+    @Param({"1000", "10000"})
+    public int count;
+
+    @Param({"0.0", "1.2"})
+    public double skew;
+
+    @Param({"false", "true"})
+    public boolean stealing;
+
+    @Param({"16", "128"})
+    public int prefetch;
+
+    Folyam<Integer> flow;
+
+    @Setup
+    public void setup() {
+        int n = Runtime.getRuntime().availableProcessors();
+
+        long[] costs = zipfCosts(count, skew, 10_000, new Random(12345));
+
+        ParallelFolyam<Integer> p = Folyam.range(0, count).parallel(n);
+        if (stealing) {
+            p = p.runOnWorkStealing(SchedulerServices.computation(), prefetch);
+        } else {
+            p = p.runOn(SchedulerServices.computation(), prefetch);
+        }
+
+        flow = p.map(v -> {
+            Blackhole.consumeCPU(costs[v]);
+            return v;
+        })
+        .sequential();
+    }
+
+    /**
+     * Generates per-item costs where the rank k item of the distribution
+     * costs {@code maxCost / k^skew} tokens, in random order.
+     */
+    static long[] zipfCosts(int count, double skew, long maxCost, Random rnd) {
+        long[] costs = new long[count];
+        for (int i = 0; i < count; i++) {
+            costs[i] = Math.max(1L, (long)(maxCost / Math.pow(i + 1, skew)));
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            long t = costs[i];
+            costs[i] = costs[j];
+            costs[j] = t;
+        }
+        return costs;
+    }
+
+    @Benchmark
+    public Object skewedWork() {
+        return flow.blockingLast();
+    }
+}
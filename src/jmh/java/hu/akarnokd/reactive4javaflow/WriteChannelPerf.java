@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a Folyam of small ByteBuffers into a file one write call
+ * per item with the batched gathering write and the AsynchronousFileChannel sink.
+ * <br>
+ * gradle jmh -Pjmh="WriteChannelPerf"
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class WriteChannelPerf {
+
+    @Param({"1000", "100000"})
+    public int count;
+
+    @Param({"64", "4096"})
+    public int size;
+
+    Path file;
+
+    Folyam<ByteBuffer> source;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("WriteChannelPerf", ".bin");
+        ByteBuffer b = ByteBuffer.allocate(size);
+        source = Folyam.range(1, count).map(v -> b.duplicate());
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void perItem() throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            source.blockingSubscribe(ch::write, Throwable::printStackTrace, () -> { });
+        }
+    }
+
+    @Benchmark
+    public Object gathering() throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return Folyam.writeChannel(source, ch).blockingGet();
+        }
+    }
+
+    @Benchmark
+    public Object asyncFile() throws IOException {
+        try (AsynchronousFileChannel ch = AsynchronousFileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return Folyam.writeFile(source, ch, 0L).blockingGet();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import hu.akarnokd.reactive4javaflow.impl.VH;
+
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A pool of equally sized ByteBuffers with explicit lease and release.
+ * <p>
+ * Each lease hands out the buffer wrapped into a {@link Lease} owned by this pool,
+ * so only buffers leased from this pool can be released into it and each of them only once.
+ * <p>
+ * Released buffers are kept in a small per-thread stack first so that the common
+ * lease-release cycle on the same thread doesn't touch shared state; the overflow goes
+ * to a bounded shared queue, and buffers beyond both capacities are left to the GC.
+ */
+public final class ByteBufferPool {
+
+    final int bufferSize;
+
+    final boolean direct;
+
+    final int localCapacity;
+
+    final int sharedCapacity;
+
+    final ThreadLocal<ArrayDeque<ByteBuffer>> local;
+
+    final ConcurrentLinkedQueue<ByteBuffer> shared;
+
+    final AtomicInteger sharedCount;
+
+    final AtomicLong allocated;
+
+    /**
+     * Constructs a pool with a per-thread capacity of 16 and a shared capacity of 1024 buffers.
+     * @param bufferSize the capacity of each buffer
+     * @param direct if true, direct buffers are allocated
+     */
+    public ByteBufferPool(int bufferSize, boolean direct) {
+        this(bufferSize, direct, 16, 1024);
+    }
+
+    /**
+     * Constructs a pool.
+     * @param bufferSize the capacity of each buffer
+     * @param direct if true, direct buffers are allocated
+     * @param localCapacity the maximum number of buffers retained per thread
+     * @param sharedCapacity the maximum number of buffers retained in the shared queue
+     */
+    public ByteBufferPool(int bufferSize, boolean direct, int localCapacity, int sharedCapacity) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.localCapacity = localCapacity;
+        this.sharedCapacity = sharedCapacity;
+        this.local = ThreadLocal.withInitial(ArrayDeque::new);
+        this.shared = new ConcurrentLinkedQueue<>();
+        this.sharedCount = new AtomicInteger();
+        this.allocated = new AtomicLong();
+    }
+
+    /**
+     * Leases a cleared buffer from the pool or allocates a new one if the pool is empty.
+     * @return the lease of the buffer, to be released via {@link Lease#release()}
+     * when no longer needed
+     */
+    public Lease lease() {
+        ByteBuffer b = null;
+        if (localCapacity != 0) {
+            b = local.get().pollLast();
+        }
+        if (b == null && sharedCapacity != 0) {
+            b = shared.poll();
+            if (b != null) {
+                sharedCount.decrementAndGet();
+            }
+        }
+        if (b == null) {
+            allocated.getAndIncrement();
+            b = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        } else {
+            b.clear();
+        }
+        return new Lease(this, b);
+    }
+
+    /**
+     * Returns the leased buffer to the pool.
+     * <p>
+     * The buffer must not be used after this call.
+     * @param lease the lease obtained from this pool
+     * @return true if the buffer has been retained by the pool
+     * @throws IllegalArgumentException if the lease belongs to another pool
+     * @throws IllegalStateException if the lease has been released already
+     */
+    public boolean release(Lease lease) {
+        if (lease.pool != this) {
+            throw new IllegalArgumentException("The lease belongs to another pool");
+        }
+        if (!Lease.STATE.compareAndSet(lease, Lease.LEASED, Lease.RELEASED)) {
+            throw new IllegalStateException("The lease has been released already");
+        }
+        ByteBuffer b = lease.buffer;
+        if (localCapacity != 0) {
+            ArrayDeque<ByteBuffer> q = local.get();
+            if (q.size() < localCapacity) {
+                q.offerLast(b);
+                return true;
+            }
+        }
+        if (sharedCapacity != 0) {
+            if (sharedCount.incrementAndGet() <= sharedCapacity) {
+                shared.offer(b);
+                return true;
+            }
+            sharedCount.decrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the capacity of the buffers of this pool.
+     * @return the capacity of the buffers
+     */
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers this pool had to allocate so far.
+     * @return the number of buffers allocated
+     */
+    public long allocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * A buffer leased from a {@link ByteBufferPool}, releasable exactly once.
+     * <p>
+     * A new lease is created for each {@link ByteBufferPool#lease()} call so that
+     * a stale lease can't release the buffer again after it has been handed out to someone else.
+     */
+    public static final class Lease {
+
+        static final int LEASED = 0;
+
+        static final int RELEASED = 1;
+
+        final ByteBufferPool pool;
+
+        final ByteBuffer buffer;
+
+        int state;
+        static final VarHandle STATE = VH.find(MethodHandles.lookup(), Lease.class, "state", Integer.TYPE);
+
+        Lease(ByteBufferPool pool, ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns the leased buffer.
+         * @return the buffer
+         * @throws IllegalStateException if the lease has been released already
+         */
+        public ByteBuffer buffer() {
+            if ((int)STATE.getAcquire(this) == RELEASED) {
+                throw new IllegalStateException("The lease has been released already");
+            }
+            return buffer;
+        }
+
+        /**
+         * Returns the pool this buffer has been leased from.
+         * @return the pool
+         */
+        public ByteBufferPool pool() {
+            return pool;
+        }
+
+        /**
+         * Returns true if this lease has been released.
+         * @return true if this lease has been released
+         */
+        public boolean isReleased() {
+            return (int)STATE.getAcquire(this) == RELEASED;
+        }
+
+        /**
+         * Returns the buffer to the pool it has been leased from.
+         * @return true if the buffer has been retained by the pool
+         * @throws IllegalStateException if the lease has been released already
+         * @see ByteBufferPool#release(Lease)
+         */
+        public boolean release() {
+            return pool.release(this);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Controls how many of the 'rails' of an elastic {@link ParallelFolyam} receive items.
+ * <p>
+ * An elastic ParallelFolyam subscribes {@link #maxRails()} rails but its dispatcher
+ * only routes items to the first {@link #activeRails()} of them, the rest are parked.
+ * The active count can be set directly or adjusted by a controller sampling the
+ * dispatcher: when items wait in the dispatcher while none of the active rails can
+ * take them (a stall), a rail is activated; when the dispatcher runs dry while an
+ * active rail could take more (an idle), a rail is parked.
+ * <p>
+ * An instance may be shared by multiple elastic ParallelFolyams; their stall and idle
+ * counts add up.
+ */
+public final class ElasticRails {
+
+    final int minRails;
+
+    final int maxRails;
+
+    final AtomicInteger active;
+
+    final LongAdder stalls;
+
+    final LongAdder idles;
+
+    final CopyOnWriteArrayList<Runnable> listeners;
+
+    long lastStalls;
+
+    long lastIdles;
+
+    /**
+     * Constructs an instance with all rails active initially and at least
+     * one rail active at all times.
+     * @param maxRails the maximum number of rails, positive
+     */
+    public ElasticRails(int maxRails) {
+        this(1, maxRails, maxRails);
+    }
+
+    /**
+     * Constructs an instance with the given rail limits.
+     * @param minRails the minimum number of active rails, positive
+     * @param maxRails the maximum number of active rails, at least minRails
+     * @param initialRails the initial number of active rails, between minRails and maxRails
+     */
+    public ElasticRails(int minRails, int maxRails, int initialRails) {
+        if (minRails <= 0) {
+            throw new IllegalArgumentException("minRails > 0 required but it was " + minRails);
+        }
+        if (maxRails < minRails) {
+            throw new IllegalArgumentException("maxRails >= minRails required but it was " + maxRails);
+        }
+        if (initialRails < minRails || initialRails > maxRails) {
+            throw new IllegalArgumentException("initialRails out of range: " + initialRails);
+        }
+        this.minRails = minRails;
+        this.maxRails = maxRails;
+        this.active = new AtomicInteger(initialRails);
+        this.stalls = new LongAdder();
+        this.idles = new LongAdder();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Returns the minimum number of active rails.
+     * @return the minimum number of active rails
+     */
+    public int minRails() {
+        return minRails;
+    }
+
+    /**
+     * Returns the maximum number of rails, which is also the
+     * parallelism of the elastic ParallelFolyams using this instance.
+     * @return the maximum number of rails
+     */
+    public int maxRails() {
+        return maxRails;
+    }
+
+    /**
+     * Returns the current number of active rails.
+     * @return the current number of active rails
+     */
+    public int activeRails() {
+        return active.get();
+    }
+
+    /**
+     * Sets the number of active rails, clamped into the
+     * {@link #minRails()} and {@link #maxRails()} range.
+     * @param n the new number of active rails
+     */
+    public void activeRails(int n) {
+        int a = Math.max(minRails, Math.min(maxRails, n));
+        if (active.getAndSet(a) != a) {
+            signal();
+        }
+    }
+
+    /**
+     * Returns the total number of times a dispatcher had items but found no active rail ready.
+     * @return the total stall count
+     */
+    public long stallCount() {
+        return stalls.sum();
+    }
+
+    /**
+     * Returns the total number of times a dispatcher ran out of items while an active rail was ready.
+     * @return the total idle count
+     */
+    public long idleCount() {
+        return idles.sum();
+    }
+
+    /**
+     * Called by the dispatcher when it has items but no active rail is ready.
+     */
+    public void onStall() {
+        stalls.increment();
+    }
+
+    /**
+     * Called by the dispatcher when it ran out of items while an active rail was ready.
+     */
+    public void onIdle() {
+        idles.increment();
+    }
+
+    /**
+     * Registers a callback, called by the dispatcher, to be notified when the
+     * number of active rails changes, so that items waiting for a rail can
+     * be dispatched to the newly activated ones.
+     * @param onChange the callback to run after each change
+     * @return the AutoDisposable to unregister the callback
+     */
+    public AutoDisposable register(Runnable onChange) {
+        Objects.requireNonNull(onChange, "onChange == null");
+        listeners.add(onChange);
+        return () -> listeners.remove(onChange);
+    }
+
+    void signal() {
+        for (Runnable r : listeners) {
+            r.run();
+        }
+    }
+
+    /**
+     * Performs one controller step: compares the stall and idle counts since the
+     * previous step and activates or parks one rail accordingly.
+     * <p>
+     * This method should not be called concurrently with itself.
+     * @return the number of active rails after the adjustment
+     */
+    public int adjust() {
+        long s = stalls.sum();
+        long i = idles.sum();
+        long ds = s - lastStalls;
+        long di = i - lastIdles;
+        lastStalls = s;
+        lastIdles = i;
+
+        int a = active.get();
+        if (ds > di) {
+            if (a < maxRails && active.compareAndSet(a, a + 1)) {
+                signal();
+            }
+        } else if (ds == 0L && di != 0L) {
+            if (a > minRails && active.compareAndSet(a, a - 1)) {
+                signal();
+            }
+        }
+        return active.get();
+    }
+
+    /**
+     * Starts a controller periodically calling {@link #adjust()} on the given scheduler.
+     * @param scheduler the scheduler to run the controller on
+     * @param period the sampling period
+     * @param unit the sampling period's time unit
+     * @return the AutoDisposable to stop the controller
+     */
+    public AutoDisposable startController(SchedulerService scheduler, long period, TimeUnit unit) {
+        Objects.requireNonNull(scheduler, "scheduler == null");
+        Objects.requireNonNull(unit, "unit == null");
+        return scheduler.schedulePeriodically(this::adjust, period, period, unit);
+    }
+}
@@ -16,7 +16,8 @@
 package hu.akarnokd.reactive4javaflow;
 
 import hu.akarnokd.reactive4javaflow.functionals.*;
-import hu.akarnokd.reactive4javaflow.impl.FunctionalHelper;
+import hu.akarnokd.reactive4javaflow.fused.FusedDynamicSource;
+import hu.akarnokd.reactive4javaflow.impl.*;
 import hu.akarnokd.reactive4javaflow.impl.consumers.*;
 import hu.akarnokd.reactive4javaflow.impl.operators.*;
 import hu.akarnokd.reactive4javaflow.impl.schedulers.ImmediateSchedulerService;
@@ -292,6 +293,9 @@ public abstract class Esetleg<T> implements FolyamPublisher<T> {
 
     public final <R> Esetleg<R> map(CheckedFunction<? super T, ? extends R> mapper) {
         Objects.requireNonNull(mapper, "mapper == null");
+        if (this instanceof FusedDynamicSource) {
+            return FolyamPlugins.onAssembly(new EsetlegMapScalar<>(this, mapper));
+        }
         return FolyamPlugins.onAssembly(new EsetlegMap<>(this, mapper));
     }
 
@@ -613,25 +617,57 @@ public abstract class Esetleg<T> implements FolyamPublisher<T> {
     // -----------------------------------------------------------------------------------
 
     public final Optional<T> blockingGet() {
+        if (this instanceof FusedDynamicSource) {
+            return Optional.ofNullable(scalarValue());
+        }
         BlockingLastConsumer<T> s = new BlockingLastConsumer<>();
         subscribe(s);
         return Optional.ofNullable(s.blockingGet());
     }
 
     public final Optional<T> blockingGet(long timeout, TimeUnit unit) {
+        if (this instanceof FusedDynamicSource) {
+            return Optional.ofNullable(scalarValue());
+        }
         BlockingLastConsumer<T> s = new BlockingLastConsumer<>();
         subscribe(s);
         return Optional.ofNullable(s.blockingGet(timeout, unit));
     }
 
     public final T blockingGet(T defaultItem) {
-        BlockingLastConsumer<T> s = new BlockingLastConsumer<>();
-        subscribe(s);
-        T v = s.blockingGet();
+        T v;
+        if (this instanceof FusedDynamicSource) {
+            v = scalarValue();
+        } else {
+            BlockingLastConsumer<T> s = new BlockingLastConsumer<>();
+            subscribe(s);
+            v = s.blockingGet();
+        }
         return v != null ? v : defaultItem;
     }
 
+    /**
+     * Returns the value of this scalar source directly, without subscribing to it.
+     * @return the value or null if this source is empty
+     */
+    @SuppressWarnings("unchecked")
+    final T scalarValue() {
+        try {
+            return ((FusedDynamicSource<T>)this).value();
+        } catch (Throwable ex) {
+            throw ExceptionHelper.wrapOrThrow(ex);
+        }
+    }
+
     public final void blockingSubscribe() {
+        if (this instanceof FusedDynamicSource) {
+            try {
+                ((FusedDynamicSource<?>)this).value();
+            } catch (Throwable ex) {
+                FolyamPlugins.onError(ex);
+            }
+            return;
+        }
         BlockingConsumerIgnore s = new BlockingConsumerIgnore();
         subscribe(s);
         try {
@@ -650,11 +686,17 @@ public abstract class Esetleg<T> implements FolyamPublisher<T> {
         blockingSubscribe(onNext, onError, () -> { });
     }
 
+    @SuppressWarnings("unchecked")
     public final void blockingSubscribe(CheckedConsumer<? super T> onNext, CheckedConsumer<? super Throwable> onError, CheckedRunnable onComplete) {
         Objects.requireNonNull(onNext, "onNext == null");
         Objects.requireNonNull(onError, "onError == null");
         Objects.requireNonNull(onComplete, "onComplete == null");
 
+        if (this instanceof FusedDynamicSource) {
+            scalarSubscribe((FusedDynamicSource<T>)this, onNext, onError, onComplete);
+            return;
+        }
+
         BlockingLambdaConsumer<T> s = new BlockingLambdaConsumer<>(onNext, onError, onComplete, 1);
         subscribe(s);
         s.run();
@@ -668,7 +710,41 @@ public abstract class Esetleg<T> implements FolyamPublisher<T> {
         return FolyamBlockingIterable.toStream(this, 1, false);
     }
 
+    static <T> void scalarSubscribe(FusedDynamicSource<T> source, CheckedConsumer<? super T> onNext, CheckedConsumer<? super Throwable> onError, CheckedRunnable onComplete) {
+        try {
+            T v = source.value();
+            if (v != null) {
+                onNext.accept(v);
+            }
+        } catch (Throwable ex) {
+            try {
+                onError.accept(ex);
+            } catch (Throwable exc) {
+                FolyamPlugins.onError(exc);
+            }
+            return;
+        }
+        try {
+            onComplete.run();
+        } catch (Throwable exc) {
+            FolyamPlugins.onError(exc);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
     public final Future<T> toCompletableFuture() {
+        if (this instanceof FusedDynamicSource) {
+            CompletableFuture<T> cf = new CompletableFuture<>();
+            T v;
+            try {
+                v = ((FusedDynamicSource<T>)this).value();
+            } catch (Throwable ex) {
+                cf.completeExceptionally(ex);
+                return cf;
+            }
+            cf.complete(v);
+            return cf;
+        }
         CompletionStageConsumer<T> c = new CompletionStageConsumer<>();
         subscribe(c);
         return c;
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import hu.akarnokd.reactive4javaflow.functionals.CheckedFunction;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.MpscLinkedArrayQueue;
+import hu.akarnokd.reactive4javaflow.processors.FirstProcessor;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A bounded, keyed cache of asynchronously loaded values.
+ * <p>
+ * Concurrent lookups of the same key share one in-flight load, held by a
+ * {@link FirstProcessor}, and the completed value is served for the time-to-live.
+ * A lookup of a value older than the refresh time reloads it in the background
+ * while the old value is still served; a failed refresh is retried by a later lookup.
+ * Failed loads are not cached, empty results are.
+ * <p>
+ * The size is bounded by a segmented LRU policy: new entries go to the probation
+ * segment and are promoted to the protected segment when looked up again, thus a
+ * burst of one-time keys can't flush the frequently used ones. Hits don't take any
+ * lock; they are recorded into a lossy ring buffer and applied to the policy, together
+ * with the insertions and removals, by whichever thread wins the drain.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class EsetlegCache<K, V> {
+
+    static final int PROBATION = 1;
+
+    static final int PROTECTED = 2;
+
+    static final int READ_BUFFER_SIZE = 128;
+
+    static final int READ_DRAIN_THRESHOLD = 32;
+
+    final CheckedFunction<? super K, ? extends Esetleg<? extends V>> loader;
+
+    final int maxSize;
+
+    final int protectedCapacity;
+
+    final long timeToLive;
+
+    final long refreshAfter;
+
+    final SchedulerService executor;
+
+    final ConcurrentHashMap<K, Entry<K, V>> map;
+
+    final AtomicReferenceArray<Entry<K, V>> readBuffer;
+
+    final AtomicLong readCount;
+
+    final MpscLinkedArrayQueue<Entry<K, V>> writeBuffer;
+
+    final AtomicInteger wip;
+
+    final Entry<K, V> probation;
+
+    final Entry<K, V> protectedHead;
+
+    int probationSize;
+
+    int protectedSize;
+
+    /**
+     * Constructs a cache without background refresh, using the system clock.
+     * @param loader the function returning the Esetleg that loads the value of a key
+     * @param maxSize the maximum number of entries
+     * @param timeToLive how long a loaded value is served
+     * @param unit the time unit
+     */
+    public EsetlegCache(CheckedFunction<? super K, ? extends Esetleg<? extends V>> loader, int maxSize, long timeToLive, TimeUnit unit) {
+        this(loader, maxSize, timeToLive, timeToLive, unit, SchedulerServices.single());
+    }
+
+    /**
+     * Constructs a cache.
+     * @param loader the function returning the Esetleg that loads the value of a key
+     * @param maxSize the maximum number of entries
+     * @param timeToLive how long a loaded value is served
+     * @param refreshAfter the age after which a lookup reloads the value in the background,
+     *                     not less than {@code timeToLive} disables the refresh
+     * @param unit the time unit
+     * @param executor the time source, its {@link SchedulerService#nanoTime()} measures the ages
+     */
+    public EsetlegCache(CheckedFunction<? super K, ? extends Esetleg<? extends V>> loader, int maxSize,
+                        long timeToLive, long refreshAfter, TimeUnit unit, SchedulerService executor) {
+        this.loader = Objects.requireNonNull(loader, "loader == null");
+        this.executor = Objects.requireNonNull(executor, "executor == null");
+        Objects.requireNonNull(unit, "unit == null");
+        ParameterHelper.verifyPositive(maxSize, "maxSize");
+        ParameterHelper.verifyPositive(timeToLive, "timeToLive");
+        this.maxSize = maxSize;
+        this.protectedCapacity = maxSize - maxSize / 5;
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.refreshAfter = unit.toNanos(refreshAfter);
+        this.map = new ConcurrentHashMap<>();
+        this.readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        this.readCount = new AtomicLong();
+        this.writeBuffer = new MpscLinkedArrayQueue<>(32);
+        this.wip = new AtomicInteger();
+        this.probation = new Entry<>(this, null, null);
+        this.protectedHead = new Entry<>(this, null, null);
+        probation.prev = probation.next = probation;
+        protectedHead.prev = protectedHead.next = protectedHead;
+    }
+
+    /**
+     * Returns an Esetleg that, when subscribed to, looks up the value of the key
+     * and loads it if necessary.
+     * <p>
+     * Cancelling the returned Esetleg doesn't cancel the shared load.
+     * @param key the key
+     * @return the Esetleg of the value
+     */
+    public Esetleg<V> get(K key) {
+        Objects.requireNonNull(key, "key == null");
+        return Esetleg.defer(() -> lookup(key));
+    }
+
+    /**
+     * Removes the value or in-flight load of the key; current subscribers of
+     * the load still receive its outcome.
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        Entry<K, V> e = map.remove(key);
+        if (e != null) {
+            removed(e);
+        }
+    }
+
+    /**
+     * Removes all values and in-flight loads.
+     */
+    public void invalidateAll() {
+        for (K key : map.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Returns the number of entries, including the in-flight loads.
+     * @return the number of entries
+     */
+    public int size() {
+        return map.size();
+    }
+
+    long now() {
+        // ages are intervals: measure them on the monotonic clock, immune to wall clock adjustments
+        return executor.nanoTime();
+    }
+
+    Esetleg<V> lookup(K key) {
+        for (;;) {
+            Entry<K, V> e = map.get(key);
+            if (e != null) {
+                if (!e.loaded) {
+                    return e.processor;
+                }
+                long age = now() - e.loadedAt;
+                if (age < timeToLive) {
+                    recordRead(e);
+                    if (age >= refreshAfter) {
+                        refresh(e);
+                    }
+                    return e.processor;
+                }
+                if (map.remove(key, e)) {
+                    removed(e);
+                }
+                continue;
+            }
+            Entry<K, V> n = new Entry<>(this, key, null);
+            if (map.putIfAbsent(key, n) == null) {
+                added(n);
+                load(n);
+                return n.processor;
+            }
+        }
+    }
+
+    void load(Entry<K, V> e) {
+        FirstProcessor<V> p = e.processor;
+        p.subscribe(e);
+        Esetleg<? extends V> source;
+        try {
+            source = Objects.requireNonNull(loader.apply(e.key), "The loader returned a null Esetleg");
+        } catch (Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            p.onError(ex);
+            return;
+        }
+        source.subscribe(p);
+    }
+
+    void refresh(Entry<K, V> e) {
+        if (!(boolean)Entry.REFRESHING.getAcquire(e) && Entry.REFRESHING.compareAndSet(e, false, true)) {
+            load(new Entry<>(this, e.key, e));
+        }
+    }
+
+    void loaded(Entry<K, V> e) {
+        e.loadedAt = now();
+        e.loaded = true;
+        Entry<K, V> stale = e.stale;
+        if (stale != null) {
+            e.stale = null;
+            // the refreshed value is dropped if the stale one got evicted or invalidated meanwhile
+            if (map.replace(e.key, stale, e)) {
+                removed(stale);
+                added(e);
+            }
+        }
+    }
+
+    void loadFailed(Entry<K, V> e) {
+        Entry<K, V> stale = e.stale;
+        if (stale != null) {
+            e.stale = null;
+            // keep serving the stale value, the next lookup tries again
+            Entry.REFRESHING.setRelease(stale, false);
+        } else if (map.remove(e.key, e)) {
+            removed(e);
+        }
+    }
+
+    void recordRead(Entry<K, V> e) {
+        long i = readCount.getAndIncrement();
+        readBuffer.lazySet((int)i & (READ_BUFFER_SIZE - 1), e);
+        if ((i & (READ_DRAIN_THRESHOLD - 1)) == READ_DRAIN_THRESHOLD - 1) {
+            drain();
+        }
+    }
+
+    void added(Entry<K, V> e) {
+        writeBuffer.offer(e);
+        drain();
+    }
+
+    void removed(Entry<K, V> e) {
+        e.removed = true;
+        writeBuffer.offer(e);
+        drain();
+    }
+
+    void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        for (;;) {
+            drainWrites();
+            drainReads();
+            evict();
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    void drainWrites() {
+        MpscLinkedArrayQueue<Entry<K, V>> q = writeBuffer;
+        for (;;) {
+            Entry<K, V> e = q.poll();
+            if (e == null) {
+                break;
+            }
+            if (e.removed) {
+                if (e.queue != 0) {
+                    unlink(e);
+                }
+            } else if (e.queue == 0) {
+                linkFirst(probation, e);
+                e.queue = PROBATION;
+                probationSize++;
+            }
+        }
+    }
+
+    void drainReads() {
+        AtomicReferenceArray<Entry<K, V>> b = readBuffer;
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Entry<K, V> e = b.get(i);
+            if (e != null) {
+                b.lazySet(i, null);
+                if (!e.removed) {
+                    accessed(e);
+                }
+            }
+        }
+    }
+
+    void accessed(Entry<K, V> e) {
+        if (e.queue == PROBATION) {
+            unlink(e);
+            linkFirst(protectedHead, e);
+            e.queue = PROTECTED;
+            protectedSize++;
+            while (protectedSize > protectedCapacity) {
+                Entry<K, V> demoted = protectedHead.prev;
+                unlink(demoted);
+                linkFirst(probation, demoted);
+                demoted.queue = PROBATION;
+                probationSize++;
+            }
+        } else if (e.queue == PROTECTED) {
+            unlinkNode(e);
+            linkFirst(protectedHead, e);
+        }
+    }
+
+    void evict() {
+        while (probationSize + protectedSize > maxSize) {
+            Entry<K, V> victim = probationSize != 0 ? probation.prev : protectedHead.prev;
+            unlink(victim);
+            if (map.remove(victim.key, victim)) {
+                victim.removed = true;
+            }
+        }
+    }
+
+    void unlink(Entry<K, V> e) {
+        unlinkNode(e);
+        if (e.queue == PROBATION) {
+            probationSize--;
+        } else {
+            protectedSize--;
+        }
+        e.queue = 0;
+    }
+
+    static <K, V> void unlinkNode(Entry<K, V> e) {
+        e.prev.next = e.next;
+        e.next.prev = e.prev;
+    }
+
+    static <K, V> void linkFirst(Entry<K, V> head, Entry<K, V> e) {
+        e.next = head.next;
+        e.prev = head;
+        head.next.prev = e;
+        head.next = e;
+    }
+
+    static final class Entry<K, V> implements FolyamSubscriber<V> {
+
+        final EsetlegCache<K, V> parent;
+
+        final K key;
+
+        final FirstProcessor<V> processor;
+
+        Entry<K, V> stale;
+
+        volatile long loadedAt;
+
+        volatile boolean loaded;
+
+        volatile boolean removed;
+
+        boolean refreshing;
+        static final VarHandle REFRESHING = VH.find(MethodHandles.lookup(), Entry.class, "refreshing", boolean.class);
+
+        // accessed only by the drain
+
+        Entry<K, V> prev;
+
+        Entry<K, V> next;
+
+        int queue;
+
+        Entry(EsetlegCache<K, V> parent, K key, Entry<K, V> stale) {
+            this.parent = parent;
+            this.key = key;
+            this.stale = stale;
+            this.processor = new FirstProcessor<>();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(V item) {
+            // the processor holds the value
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            parent.loadFailed(this);
+        }
+
+        @Override
+        public void onComplete() {
+            parent.loaded(this);
+        }
+    }
+}
@@ -20,11 +20,16 @@ import hu.akarnokd.reactive4javaflow.functionals.*;
 import hu.akarnokd.reactive4javaflow.impl.*;
 import hu.akarnokd.reactive4javaflow.impl.consumers.*;
 import hu.akarnokd.reactive4javaflow.impl.operators.*;
-import hu.akarnokd.reactive4javaflow.impl.schedulers.ImmediateSchedulerService;
+import hu.akarnokd.reactive4javaflow.impl.schedulers.*;
+import hu.akarnokd.reactive4javaflow.impl.util.RecordSplitter;
+import hu.akarnokd.reactive4javaflow.sketches.*;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.function.Function;
+import java.util.function.*;
 import java.util.stream.*;
 
 public abstract class Folyam<T> implements FolyamPublisher<T> {
@@ -293,6 +298,209 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamWrap<>(source));
     }
 
+    /**
+     * Maps the file in windows of 8 MiB, one window per request, and emits them
+     * as read-only ByteBuffers.
+     * @param path the file to map
+     * @return the new Folyam instance
+     * @see #fromFile(Path, int)
+     */
+    public static Folyam<ByteBuffer> fromFile(Path path) {
+        return fromFile(path, 8 * 1024 * 1024);
+    }
+
+    /**
+     * Maps the file in windows of the given size, one window per request, and emits them
+     * as read-only ByteBuffers.
+     * <p>
+     * The mapped memory is not unmapped forcibly but is released when the emitted
+     * buffers become unreachable.
+     * @param path the file to map
+     * @param windowSize the maximum number of bytes mapped at once
+     * @return the new Folyam instance
+     */
+    public static Folyam<ByteBuffer> fromFile(Path path, int windowSize) {
+        Objects.requireNonNull(path, "path == null");
+        ParameterHelper.verifyPositive(windowSize, "windowSize");
+        return FolyamPlugins.onAssembly(new FolyamMappedFile(path, windowSize));
+    }
+
+    /**
+     * Splits the sequence of ByteBuffer chunks into records separated by the given delimiter byte.
+     * <p>
+     * Records inside a chunk are emitted as read-only slices of that chunk without copying,
+     * only records crossing chunk boundaries are copied. A trailing record not followed by
+     * the delimiter is emitted as well.
+     * @param source the source of chunks
+     * @param delimiter the record delimiter, not included in the records
+     * @return the new Folyam instance
+     */
+    public static Folyam<ByteBuffer> splitRecords(Flow.Publisher<ByteBuffer> source, byte delimiter) {
+        return splitRecords(source, delimiter, false);
+    }
+
+    /**
+     * Splits the sequence of ByteBuffer chunks into lines separated by '\n' or "\r\n".
+     * @param source the source of chunks
+     * @return the new Folyam instance
+     * @see #splitRecords(Flow.Publisher, byte)
+     */
+    public static Folyam<ByteBuffer> splitLines(Flow.Publisher<ByteBuffer> source) {
+        return splitRecords(source, (byte)'\n', true);
+    }
+
+    static Folyam<ByteBuffer> splitRecords(Flow.Publisher<ByteBuffer> source, byte delimiter, boolean stripCarriageReturn) {
+        Objects.requireNonNull(source, "source == null");
+        return defer(() -> {
+            RecordSplitter splitter = new RecordSplitter(delimiter, stripCarriageReturn);
+            return fromPublisher(source)
+                    .flatMapIterable(splitter::split)
+                    .concatWith(Esetleg.fromCallableAllowEmpty(splitter::remainder));
+        });
+    }
+
+    /**
+     * Reads the socket channel on the event loop, 8 KiB at a time, while there is downstream demand.
+     * @param channel the connected channel, switched to non-blocking mode upon subscription
+     * @param loop the event loop hosting the channel
+     * @return the new Folyam instance
+     * @see #fromSocketChannel(SocketChannel, NioSchedulerService, int)
+     */
+    public static Folyam<ByteBuffer> fromSocketChannel(SocketChannel channel, NioSchedulerService loop) {
+        return fromSocketChannel(channel, loop, 8192);
+    }
+
+    /**
+     * Reads the socket channel on the event loop while there is downstream demand.
+     * <p>
+     * Reading stops while the downstream has no outstanding requests, letting
+     * the TCP flow control throttle the peer. The channel is not closed by the sequence.
+     * @param channel the connected channel, switched to non-blocking mode upon subscription
+     * @param loop the event loop hosting the channel
+     * @param bufferSize the maximum number of bytes per emitted ByteBuffer
+     * @return the new Folyam instance
+     */
+    public static Folyam<ByteBuffer> fromSocketChannel(SocketChannel channel, NioSchedulerService loop, int bufferSize) {
+        return fromSocketChannel(channel, loop, new ByteBufferPool(bufferSize, false, 0, 0))
+                .map(ByteBufferPool.Lease::buffer);
+    }
+
+    /**
+     * Reads the socket channel on the event loop into buffers leased from the pool
+     * while there is downstream demand.
+     * <p>
+     * The downstream is expected to {@link ByteBufferPool.Lease#release() release}
+     * the leases once it is done with the buffers.
+     * @param channel the connected channel, switched to non-blocking mode upon subscription
+     * @param loop the event loop hosting the channel
+     * @param pool the pool to lease the buffers from
+     * @return the new Folyam instance
+     * @see #fromSocketChannel(SocketChannel, NioSchedulerService, int)
+     */
+    public static Folyam<ByteBufferPool.Lease> fromSocketChannel(SocketChannel channel, NioSchedulerService loop, ByteBufferPool pool) {
+        Objects.requireNonNull(channel, "channel == null");
+        Objects.requireNonNull(loop, "loop == null");
+        Objects.requireNonNull(pool, "pool == null");
+        return FolyamPlugins.onAssembly(new FolyamSocketChannelRead(channel, loop, pool));
+    }
+
+    /**
+     * Writes the ByteBuffers of the source into the socket channel on the event loop
+     * and signals the total number of bytes written.
+     * @param source the source of ByteBuffers
+     * @param channel the connected channel, switched to non-blocking mode upon subscription
+     * @param loop the event loop hosting the channel
+     * @return the new Esetleg instance
+     * @see #writeSocketChannel(Flow.Publisher, SocketChannel, NioSchedulerService, int)
+     */
+    public static Esetleg<Long> writeSocketChannel(Flow.Publisher<ByteBuffer> source, SocketChannel channel, NioSchedulerService loop) {
+        return writeSocketChannel(source, channel, loop, FolyamPlugins.defaultBufferSize());
+    }
+
+    /**
+     * Writes the ByteBuffers of the source into the socket channel on the event loop
+     * and signals the total number of bytes written.
+     * <p>
+     * More buffers are requested only after the previous ones have been written fully,
+     * so a slow peer throttles the source. The channel is not closed by the sequence.
+     * @param source the source of ByteBuffers
+     * @param channel the connected channel, switched to non-blocking mode upon subscription
+     * @param loop the event loop hosting the channel
+     * @param prefetch the number of buffers to prefetch from the source
+     * @return the new Esetleg instance
+     */
+    public static Esetleg<Long> writeSocketChannel(Flow.Publisher<ByteBuffer> source, SocketChannel channel, NioSchedulerService loop, int prefetch) {
+        Objects.requireNonNull(source, "source == null");
+        Objects.requireNonNull(channel, "channel == null");
+        Objects.requireNonNull(loop, "loop == null");
+        return FolyamPlugins.onAssembly(new EsetlegSocketChannelWrite(source, channel, loop, prefetch));
+    }
+
+    /**
+     * Writes the ByteBuffers of the source into the blocking channel, batching
+     * the available buffers, up to 1 MiB, into one gathering write, and signals
+     * the total number of bytes written.
+     * @param source the source of ByteBuffers
+     * @param channel the channel in blocking mode
+     * @return the new Esetleg instance
+     * @see #writeChannel(Flow.Publisher, GatheringByteChannel, int, long)
+     */
+    public static Esetleg<Long> writeChannel(Flow.Publisher<ByteBuffer> source, GatheringByteChannel channel) {
+        return writeChannel(source, channel, FolyamPlugins.defaultBufferSize(), 1024 * 1024);
+    }
+
+    /**
+     * Writes the ByteBuffers of the source into the blocking channel, batching
+     * the available buffers into one gathering write, and signals the total number
+     * of bytes written.
+     * <p>
+     * More buffers are requested only after a batch has been written. The channel
+     * is not closed by the sequence.
+     * @param source the source of ByteBuffers
+     * @param channel the channel in blocking mode
+     * @param prefetch the number of buffers to prefetch and the maximum number of buffers per write
+     * @param maxBytes the maximum number of bytes per write, unless a single buffer is larger
+     * @return the new Esetleg instance
+     */
+    public static Esetleg<Long> writeChannel(Flow.Publisher<ByteBuffer> source, GatheringByteChannel channel, int prefetch, long maxBytes) {
+        Objects.requireNonNull(source, "source == null");
+        Objects.requireNonNull(channel, "channel == null");
+        return FolyamPlugins.onAssembly(new EsetlegGatheringWrite(source, channel, prefetch, maxBytes));
+    }
+
+    /**
+     * Writes the ByteBuffers of the source into the file channel from the given position,
+     * one write at a time, and signals the total number of bytes written.
+     * @param source the source of ByteBuffers
+     * @param channel the file channel
+     * @param position the file position to start writing at
+     * @return the new Esetleg instance
+     * @see #writeFile(Flow.Publisher, AsynchronousFileChannel, long, int, int)
+     */
+    public static Esetleg<Long> writeFile(Flow.Publisher<ByteBuffer> source, AsynchronousFileChannel channel, long position) {
+        return writeFile(source, channel, position, FolyamPlugins.defaultBufferSize(), 1024 * 1024);
+    }
+
+    /**
+     * Writes the ByteBuffers of the source into the file channel from the given position,
+     * one write at a time, and signals the total number of bytes written.
+     * <p>
+     * More buffers are requested from the completion handler of the write. Buffers available
+     * at the same time are coalesced into a direct staging buffer of {@code maxBytes} if they fit.
+     * The channel is not closed by the sequence.
+     * @param source the source of ByteBuffers
+     * @param channel the file channel
+     * @param position the file position to start writing at
+     * @param prefetch the number of buffers to prefetch and the maximum number of buffers per write
+     * @param maxBytes the size of the staging buffer
+     * @return the new Esetleg instance
+     */
+    public static Esetleg<Long> writeFile(Flow.Publisher<ByteBuffer> source, AsynchronousFileChannel channel, long position, int prefetch, int maxBytes) {
+        Objects.requireNonNull(source, "source == null");
+        Objects.requireNonNull(channel, "channel == null");
+        return FolyamPlugins.onAssembly(new EsetlegAsyncFileWrite(source, channel, position, prefetch, maxBytes));
+    }
+
     public static Folyam<Long> interval(long delay, TimeUnit unit, SchedulerService executor) {
         return interval(delay, delay, unit, executor);
     }
@@ -593,6 +801,43 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamOrderedMergeArray<>(sources, comparator, prefetch, true));
     }
 
+    @SafeVarargs
+    public static <T> Folyam<T> mergeWeighted(int[] weights, Flow.Publisher<? extends T>... sources) {
+        Objects.requireNonNull(weights, "weights == null");
+        int[] prefetches = new int[weights.length];
+        Arrays.fill(prefetches, FolyamPlugins.defaultBufferSize());
+        return mergeWeighted(weights, prefetches, sources);
+    }
+
+    @SafeVarargs
+    public static <T> Folyam<T> mergeWeighted(int[] weights, int[] prefetches, Flow.Publisher<? extends T>... sources) {
+        Objects.requireNonNull(weights, "weights == null");
+        Objects.requireNonNull(prefetches, "prefetches == null");
+        Objects.requireNonNull(sources, "sources == null");
+        FolyamWeightedMergeArray.verify(weights, prefetches, sources.length);
+        for (int w : weights) {
+            ParameterHelper.verifyPositive(w, "weight");
+        }
+        return FolyamPlugins.onAssembly(new FolyamWeightedMergeArray<>(sources, weights.clone(), prefetches.clone(), false));
+    }
+
+    @SafeVarargs
+    public static <T> Folyam<T> mergePriority(int[] priorities, Flow.Publisher<? extends T>... sources) {
+        Objects.requireNonNull(priorities, "priorities == null");
+        int[] prefetches = new int[priorities.length];
+        Arrays.fill(prefetches, FolyamPlugins.defaultBufferSize());
+        return mergePriority(priorities, prefetches, sources);
+    }
+
+    @SafeVarargs
+    public static <T> Folyam<T> mergePriority(int[] priorities, int[] prefetches, Flow.Publisher<? extends T>... sources) {
+        Objects.requireNonNull(priorities, "priorities == null");
+        Objects.requireNonNull(prefetches, "prefetches == null");
+        Objects.requireNonNull(sources, "sources == null");
+        FolyamWeightedMergeArray.verify(priorities, prefetches, sources.length);
+        return FolyamPlugins.onAssembly(new FolyamWeightedMergeArray<>(sources, priorities.clone(), prefetches.clone(), true));
+    }
+
     public static <T> Folyam<T> switchNext(Flow.Publisher<? extends Flow.Publisher<? extends T>> sources) {
         return switchNext(sources, FolyamPlugins.defaultBufferSize());
     }
@@ -778,6 +1023,11 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamTakeLast<>(this, n));
     }
 
+    public final Folyam<T> takeLast(int n, CheckedConsumer<? super T> onDiscard) {
+        Objects.requireNonNull(onDiscard, "onDiscard == null");
+        return FolyamPlugins.onAssembly(new FolyamTakeLast<>(this, Math.max(0, n), onDiscard));
+    }
+
     public final Folyam<T> skip(long n) {
         if (n <= 0L) {
             return this;
@@ -885,6 +1135,89 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamScanSeed<>(this, initialSupplier, scanner, prefetch));
     }
 
+    public final Folyam<T> slidingReduce(int size, CheckedBiFunction<T, T, T> combiner) {
+        Objects.requireNonNull(combiner, "combiner == null");
+        ParameterHelper.verifyPositive(size, "size");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, size, 0L, TimeUnit.NANOSECONDS, null,
+                () -> new FolyamSlidingReduce.AssociativeWindow<>(combiner)));
+    }
+
+    public final Folyam<T> slidingReduce(int size, CheckedBiFunction<T, T, T> combiner, CheckedBiFunction<T, T, T> inverse) {
+        Objects.requireNonNull(combiner, "combiner == null");
+        Objects.requireNonNull(inverse, "inverse == null");
+        ParameterHelper.verifyPositive(size, "size");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, size, 0L, TimeUnit.NANOSECONDS, null,
+                () -> new FolyamSlidingReduce.InvertibleWindow<>(combiner, inverse, false)));
+    }
+
+    public final Folyam<T> slidingReduce(long time, TimeUnit unit, SchedulerService executor, CheckedBiFunction<T, T, T> combiner) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, Integer.MAX_VALUE, time, unit, executor,
+                () -> new FolyamSlidingReduce.AssociativeWindow<>(combiner)));
+    }
+
+    public final Folyam<T> slidingReduce(long time, TimeUnit unit, SchedulerService executor, CheckedBiFunction<T, T, T> combiner, CheckedBiFunction<T, T, T> inverse) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        Objects.requireNonNull(inverse, "inverse == null");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, Integer.MAX_VALUE, time, unit, executor,
+                () -> new FolyamSlidingReduce.InvertibleWindow<>(combiner, inverse, true)));
+    }
+
+    public final Folyam<Integer> slidingReduceInt(int size, ToIntFunction<? super T> mapper, IntBinaryOperator combiner) {
+        Objects.requireNonNull(mapper, "mapper == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        ParameterHelper.verifyPositive(size, "size");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, size, 0L, TimeUnit.NANOSECONDS, null,
+                () -> new FolyamSlidingReduce.IntWindow<>(mapper, combiner)));
+    }
+
+    public final Folyam<Integer> slidingReduceInt(long time, TimeUnit unit, SchedulerService executor, ToIntFunction<? super T> mapper, IntBinaryOperator combiner) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        Objects.requireNonNull(mapper, "mapper == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, Integer.MAX_VALUE, time, unit, executor,
+                () -> new FolyamSlidingReduce.IntWindow<>(mapper, combiner)));
+    }
+
+    public final Folyam<Long> slidingReduceLong(int size, ToLongFunction<? super T> mapper, LongBinaryOperator combiner) {
+        Objects.requireNonNull(mapper, "mapper == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        ParameterHelper.verifyPositive(size, "size");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, size, 0L, TimeUnit.NANOSECONDS, null,
+                () -> new FolyamSlidingReduce.LongWindow<>(mapper, combiner)));
+    }
+
+    public final Folyam<Long> slidingReduceLong(long time, TimeUnit unit, SchedulerService executor, ToLongFunction<? super T> mapper, LongBinaryOperator combiner) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        Objects.requireNonNull(mapper, "mapper == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, Integer.MAX_VALUE, time, unit, executor,
+                () -> new FolyamSlidingReduce.LongWindow<>(mapper, combiner)));
+    }
+
+    public final Folyam<Double> slidingReduceDouble(int size, ToDoubleFunction<? super T> mapper, DoubleBinaryOperator combiner) {
+        Objects.requireNonNull(mapper, "mapper == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        ParameterHelper.verifyPositive(size, "size");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, size, 0L, TimeUnit.NANOSECONDS, null,
+                () -> new FolyamSlidingReduce.DoubleWindow<>(mapper, combiner)));
+    }
+
+    public final Folyam<Double> slidingReduceDouble(long time, TimeUnit unit, SchedulerService executor, ToDoubleFunction<? super T> mapper, DoubleBinaryOperator combiner) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        Objects.requireNonNull(mapper, "mapper == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        return FolyamPlugins.onAssembly(new FolyamSlidingReduce<>(this, Integer.MAX_VALUE, time, unit, executor,
+                () -> new FolyamSlidingReduce.DoubleWindow<>(mapper, combiner)));
+    }
+
     public final Folyam<T> onTerminateDetach() {
         return FolyamPlugins.onAssembly(new FolyamOnTerminateDetach<>(this));
     }
@@ -1014,6 +1347,16 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamConcatMapEager<>(this, mapper, maxConcurrency, prefetch, true));
     }
 
+    public final <K, R> Folyam<R> concatMapKeyed(CheckedFunction<? super T, ? extends K> keySelector, CheckedFunction<? super T, ? extends Flow.Publisher<? extends R>> mapper) {
+        return concatMapKeyed(keySelector, mapper, FolyamPlugins.defaultBufferSize(), Integer.MAX_VALUE, FolyamPlugins.defaultBufferSize());
+    }
+
+    public final <K, R> Folyam<R> concatMapKeyed(CheckedFunction<? super T, ? extends K> keySelector, CheckedFunction<? super T, ? extends Flow.Publisher<? extends R>> mapper, int maxConcurrency, int maxKeys, int prefetch) {
+        Objects.requireNonNull(keySelector, "keySelector == null");
+        Objects.requireNonNull(mapper, "mapper == null");
+        return FolyamPlugins.onAssembly(new FolyamConcatMapKeyed<>(this, keySelector, mapper, maxConcurrency, maxKeys, prefetch));
+    }
+
     public final Folyam<T> valve(Flow.Publisher<Boolean> openClose) {
         return valve(openClose, FolyamPlugins.defaultBufferSize(), true);
     }
@@ -1124,6 +1467,17 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamSpanout<>(this, initialSpan, betweenSpan, unit, executor, true, FolyamPlugins.defaultBufferSize()));
     }
 
+    public final Folyam<T> rateLimit(long permits, long period, TimeUnit unit, int burst, SchedulerService executor) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        return rateLimit(new RateLimiter(permits, period, unit, burst, executor));
+    }
+
+    public final Folyam<T> rateLimit(RateLimiter limiter) {
+        Objects.requireNonNull(limiter, "limiter == null");
+        return FolyamPlugins.onAssembly(new FolyamRateLimit<>(this, limiter));
+    }
+
     // state-peeking operators
 
     public final Folyam<T> doOnSubscribe(CheckedConsumer<? super Flow.Subscription> handler) {
@@ -1372,6 +1726,30 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return zipArray(a -> zipper.apply((T)a[0], (U)a[1]), this, other);
     }
 
+    public final <U, K, R> Folyam<R> join(Flow.Publisher<? extends U> other,
+                                          CheckedFunction<? super T, ? extends K> leftKey, CheckedFunction<? super U, ? extends K> rightKey,
+                                          CheckedBiFunction<? super T, ? super U, ? extends R> combiner,
+                                          long window, TimeUnit unit, SchedulerService executor) {
+        Objects.requireNonNull(other, "other == null");
+        Objects.requireNonNull(leftKey, "leftKey == null");
+        Objects.requireNonNull(rightKey, "rightKey == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        return FolyamPlugins.onAssembly(new FolyamJoin<>(this, other, leftKey, rightKey, combiner, window, unit, executor, Integer.MAX_VALUE, FolyamPlugins.defaultBufferSize()));
+    }
+
+    public final <U, K, R> Folyam<R> join(Flow.Publisher<? extends U> other,
+                                          CheckedFunction<? super T, ? extends K> leftKey, CheckedFunction<? super U, ? extends K> rightKey,
+                                          CheckedBiFunction<? super T, ? super U, ? extends R> combiner,
+                                          int maxSize) {
+        Objects.requireNonNull(other, "other == null");
+        Objects.requireNonNull(leftKey, "leftKey == null");
+        Objects.requireNonNull(rightKey, "rightKey == null");
+        Objects.requireNonNull(combiner, "combiner == null");
+        return FolyamPlugins.onAssembly(new FolyamJoin<>(this, other, leftKey, rightKey, combiner, 0L, null, null, maxSize, FolyamPlugins.defaultBufferSize()));
+    }
+
     // operators returning Esetleg
 
     public final Esetleg<T> ignoreElements() {
@@ -1475,6 +1853,18 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamBufferStartEnd<>(this, start, end, collectionSupplier));
     }
 
+    public final Folyam<List<T>> bufferTimeout(int maxSize, long timeout, TimeUnit unit, SchedulerService executor) {
+        return bufferTimeout(maxSize, timeout, unit, executor, ArrayList::new);
+    }
+
+    public final <C extends Collection<? super T>> Folyam<C> bufferTimeout(int maxSize, long timeout, TimeUnit unit, SchedulerService executor, Callable<C> collectionSupplier) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        Objects.requireNonNull(collectionSupplier, "collectionSupplier == null");
+        ParameterHelper.verifyPositive(maxSize, "maxSize");
+        return FolyamPlugins.onAssembly(new FolyamBufferTimeout<>(this, maxSize, timeout, unit, executor, collectionSupplier));
+    }
+
     public final Folyam<List<T>> bufferWhile(CheckedPredicate<? super T> predicate) {
         return bufferWhile(predicate, ArrayList::new);
     }
@@ -1546,6 +1936,65 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamGroupBy<>(this, keySelector, valueSelector, prefetch));
     }
 
+    public final <K, A, R> Folyam<List<R>> tumblingAggregate(CheckedFunction<? super T, ? extends K> keySelector,
+                                                              Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                                              CheckedBiFunction<? super K, ? super A, ? extends R> finisher,
+                                                              long size, TimeUnit unit, SchedulerService executor) {
+        Objects.requireNonNull(keySelector, "keySelector == null");
+        Objects.requireNonNull(initialSupplier, "initialSupplier == null");
+        Objects.requireNonNull(accumulator, "accumulator == null");
+        Objects.requireNonNull(finisher, "finisher == null");
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        return FolyamPlugins.onAssembly(new FolyamWindowAggregate<>(this, keySelector, initialSupplier, accumulator, finisher, size, unit, executor, false));
+    }
+
+    public final <K, A, R> Folyam<List<R>> sessionAggregate(CheckedFunction<? super T, ? extends K> keySelector,
+                                                             Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                                             CheckedBiFunction<? super K, ? super A, ? extends R> finisher,
+                                                             long gap, TimeUnit unit, SchedulerService executor) {
+        Objects.requireNonNull(keySelector, "keySelector == null");
+        Objects.requireNonNull(initialSupplier, "initialSupplier == null");
+        Objects.requireNonNull(accumulator, "accumulator == null");
+        Objects.requireNonNull(finisher, "finisher == null");
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        return FolyamPlugins.onAssembly(new FolyamWindowAggregate<>(this, keySelector, initialSupplier, accumulator, finisher, gap, unit, executor, true));
+    }
+
+    public final <K, A, R> Folyam<List<R>> eventTimeAggregate(ToLongFunction<? super T> timestampSelector, long allowedLateness,
+                                                               CheckedFunction<? super T, ? extends K> keySelector,
+                                                               Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                                               CheckedWindowFunction<? super K, ? super A, ? extends R> finisher,
+                                                               long size) {
+        return eventTimeAggregate(timestampSelector, allowedLateness, keySelector, initialSupplier, accumulator, finisher, size, size);
+    }
+
+    public final <K, A, R> Folyam<List<R>> eventTimeAggregate(ToLongFunction<? super T> timestampSelector, long allowedLateness,
+                                                               CheckedFunction<? super T, ? extends K> keySelector,
+                                                               Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                                               CheckedWindowFunction<? super K, ? super A, ? extends R> finisher,
+                                                               long size, long slide) {
+        return eventTimeAggregate(timestampSelector, allowedLateness, keySelector, initialSupplier, accumulator, finisher, size, slide, FunctionalHelper.EMPTY_CONSUMER);
+    }
+
+    public final <K, A, R> Folyam<List<R>> eventTimeAggregate(ToLongFunction<? super T> timestampSelector, long allowedLateness,
+                                                               CheckedFunction<? super T, ? extends K> keySelector,
+                                                               Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                                               CheckedWindowFunction<? super K, ? super A, ? extends R> finisher,
+                                                               long size, long slide, CheckedConsumer<? super T> onLate) {
+        Objects.requireNonNull(timestampSelector, "timestampSelector == null");
+        Objects.requireNonNull(keySelector, "keySelector == null");
+        Objects.requireNonNull(initialSupplier, "initialSupplier == null");
+        Objects.requireNonNull(accumulator, "accumulator == null");
+        Objects.requireNonNull(finisher, "finisher == null");
+        Objects.requireNonNull(onLate, "onLate == null");
+        ParameterHelper.verifyNonNegative(allowedLateness, "allowedLateness");
+        ParameterHelper.verifyPositive(size, "size");
+        ParameterHelper.verifyPositive(slide, "slide");
+        return FolyamPlugins.onAssembly(new FolyamEventTimeAggregate<>(this, timestampSelector, allowedLateness, keySelector, initialSupplier, accumulator, finisher, size, slide, onLate));
+    }
+
     // cold-processors conversion operators
 
     public final ConnectableFolyam<T> publish() {
@@ -1589,6 +2038,19 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new ConnectableFolyamReplaySizeAndTimeBound<>(this, count, time, unit, executor));
     }
 
+    public final ConnectableFolyam<T> replayDurable(Path directory, CheckedFunction<? super T, byte[]> serializer, CheckedFunction<? super ByteBuffer, ? extends T> deserializer) {
+        return replayDurable(directory, serializer, deserializer, 16 * 1024 * 1024, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    public final ConnectableFolyam<T> replayDurable(Path directory, CheckedFunction<? super T, byte[]> serializer, CheckedFunction<? super ByteBuffer, ? extends T> deserializer,
+                                                    int segmentSize, long retentionBytes, long retentionTime, TimeUnit unit) {
+        Objects.requireNonNull(directory, "directory == null");
+        Objects.requireNonNull(serializer, "serializer == null");
+        Objects.requireNonNull(deserializer, "deserializer == null");
+        Objects.requireNonNull(unit, "unit == null");
+        return FolyamPlugins.onAssembly(new ConnectableFolyamReplayDurable<>(this, directory, serializer, deserializer, segmentSize, retentionBytes, unit.toMillis(retentionTime)));
+    }
+
     public final <R> Folyam<R> replay(CheckedFunction<? super Folyam<T>, ? extends Flow.Publisher<? extends R>> handler) {
         Objects.requireNonNull(handler, "handler == null");
         return FolyamPlugins.onAssembly(new FolyamReplay<>(this, handler, 16));
@@ -1630,9 +2092,14 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return sample(interval(time, unit, executor), emitLast);
     }
 
+    public final Folyam<T> debounce(long timeout, TimeUnit unit, SchedulerService executor) {
+        Objects.requireNonNull(unit, "unit == null");
+        Objects.requireNonNull(executor, "executor == null");
+        return FolyamPlugins.onAssembly(new FolyamDebounceTime<>(this, timeout, unit, executor));
+    }
+
     public final Folyam<T> throttleWithTimeout(long time, TimeUnit unit, SchedulerService executor) {
-        Folyam<Long> timer = timer(time, unit, executor);
-        return debounce(v -> timer);
+        return debounce(time, unit, executor);
     }
 
     public final Folyam<T> distinct() {
@@ -1682,6 +2149,14 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new ParallelFromPublisher<>(this, parallelism, prefetch));
     }
 
+    public final ParallelFolyam<T> parallel(ElasticRails rails) {
+        return ParallelFolyam.fromPublisher(this, rails);
+    }
+
+    public final ParallelFolyam<T> parallel(ElasticRails rails, int prefetch) {
+        return ParallelFolyam.fromPublisher(this, rails, prefetch);
+    }
+
     // type-specific operators
 
     public static Folyam<Integer> characters(CharSequence source) {
@@ -1728,6 +2203,35 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamPlugins.onAssembly(new FolyamSumDouble<>(this, valueSelector));
     }
 
+    // approximate aggregators
+
+    public final Esetleg<Long> countDistinctApprox() {
+        return hyperLogLog(14).map(HyperLogLog::estimate);
+    }
+
+    public final Esetleg<HyperLogLog> hyperLogLog(int precision) {
+        return collect(() -> new HyperLogLog(precision), HyperLogLog::add);
+    }
+
+    public final Esetleg<HyperLogLog> hyperLogLog(ToLongFunction<? super T> valueSelector, int precision) {
+        Objects.requireNonNull(valueSelector, "valueSelector == null");
+        return collect(() -> new HyperLogLog(precision), (HyperLogLog h, T v) -> h.addLong(valueSelector.applyAsLong(v)));
+    }
+
+    public final Esetleg<QuantileSketch> quantiles(ToDoubleFunction<? super T> valueSelector) {
+        return quantiles(valueSelector, 200);
+    }
+
+    public final Esetleg<QuantileSketch> quantiles(ToDoubleFunction<? super T> valueSelector, int k) {
+        Objects.requireNonNull(valueSelector, "valueSelector == null");
+        return collect(() -> new QuantileSketch(k), (QuantileSketch q, T v) -> q.add(valueSelector.applyAsDouble(v)));
+    }
+
+    public final Esetleg<TopK<T>> topK(int capacity) {
+        ParameterHelper.verifyPositive(capacity, "capacity");
+        return collect(() -> new TopK<T>(capacity), TopK::add);
+    }
+
     // -----------------------------------------------------------------------------------
     // Blocking operators
     // -----------------------------------------------------------------------------------
@@ -1816,6 +2320,25 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         s.run();
     }
 
+    /**
+     * Consumes this Folyam on the current thread, waiting for the items
+     * according to the given strategy.
+     * @param onNext the consumer of the items
+     * @param onError the consumer of the error
+     * @param onComplete called when this Folyam completes
+     * @param waitStrategy how to wait for the next item when the queue is empty
+     */
+    public final void blockingSubscribe(CheckedConsumer<? super T> onNext, CheckedConsumer<? super Throwable> onError, CheckedRunnable onComplete, WaitStrategy waitStrategy) {
+        Objects.requireNonNull(onNext, "onNext == null");
+        Objects.requireNonNull(onError, "onError == null");
+        Objects.requireNonNull(onComplete, "onComplete == null");
+        Objects.requireNonNull(waitStrategy, "waitStrategy == null");
+
+        BlockingLambdaConsumer<T> s = new BlockingLambdaConsumer<>(onNext, onError, onComplete, FolyamPlugins.defaultBufferSize(), waitStrategy);
+        subscribe(s);
+        s.run();
+    }
+
     public final Iterable<T> blockingIterable() {
         return blockingIterable(FolyamPlugins.defaultBufferSize());
     }
@@ -1824,6 +2347,18 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return new FolyamBlockingIterable<>(this, prefetch);
     }
 
+    /**
+     * Returns an Iterable whose iterators wait for the items
+     * according to the given strategy.
+     * @param prefetch the number of items to prefetch
+     * @param waitStrategy how to wait for the next item when the queue is empty
+     * @return the new Iterable instance
+     */
+    public final Iterable<T> blockingIterable(int prefetch, WaitStrategy waitStrategy) {
+        Objects.requireNonNull(waitStrategy, "waitStrategy == null");
+        return new FolyamBlockingIterable<>(this, prefetch, waitStrategy);
+    }
+
     public final Stream<T> blockingStream() {
         return blockingStream(FolyamPlugins.defaultBufferSize());
     }
@@ -1832,6 +2367,31 @@ public abstract class Folyam<T> implements FolyamPublisher<T> {
         return FolyamBlockingIterable.toStream(this, prefetch, false);
     }
 
+    /**
+     * Returns a Stream, optionally parallel, over the items of this Folyam.
+     * <p>
+     * When parallel, the items already prefetched are handed to the
+     * parallel tasks in batches.
+     * @param prefetch the number of items to prefetch
+     * @param parallel if true, the returned Stream is parallel
+     * @return the new Stream instance
+     */
+    public final Stream<T> blockingStream(int prefetch, boolean parallel) {
+        return FolyamBlockingIterable.toStream(this, prefetch, parallel);
+    }
+
+    /**
+     * Returns a Stream that waits for the items according
+     * to the given strategy.
+     * @param prefetch the number of items to prefetch
+     * @param waitStrategy how to wait for the next item when the queue is empty
+     * @return the new Stream instance
+     */
+    public final Stream<T> blockingStream(int prefetch, WaitStrategy waitStrategy) {
+        Objects.requireNonNull(waitStrategy, "waitStrategy == null");
+        return FolyamBlockingIterable.toStream(this, prefetch, false, waitStrategy);
+    }
+
     public final CompletableFuture<T> toCompletableFuture() {
         CompletionStageConsumer<T> c = new CompletionStageConsumer<>();
         subscribe(c);
@@ -19,10 +19,12 @@ package hu.akarnokd.reactive4javaflow;
 import hu.akarnokd.reactive4javaflow.functionals.*;
 import hu.akarnokd.reactive4javaflow.impl.EmptySubscription;
 import hu.akarnokd.reactive4javaflow.impl.operators.*;
+import hu.akarnokd.reactive4javaflow.sketches.*;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.function.Function;
+import java.util.function.*;
+import java.util.stream.Collector;
 
 import static hu.akarnokd.reactive4javaflow.impl.ParameterHelper.verifyPositive;
 
@@ -81,6 +83,34 @@ public abstract class ParallelFolyam<T> {
         return FolyamPlugins.onAssembly(new ParallelFromPublisher<>(source, parallelism, prefetch));
     }
 
+    /**
+     * Dispatches the items of the source to {@link ElasticRails#maxRails()} rails, but only
+     * to those currently activated by the given {@link ElasticRails}; the others stay parked.
+     * @param <T> the item type
+     * @param source the source Publisher
+     * @param rails the controller of the active rail count
+     * @return the new ParallelFolyam instance
+     */
+    public static <T> ParallelFolyam<T> fromPublisher(Flow.Publisher<? extends T> source, ElasticRails rails) {
+        return fromPublisher(source, rails, FolyamPlugins.defaultBufferSize());
+    }
+
+    /**
+     * Dispatches the items of the source to {@link ElasticRails#maxRails()} rails, but only
+     * to those currently activated by the given {@link ElasticRails}; the others stay parked.
+     * @param <T> the item type
+     * @param source the source Publisher
+     * @param rails the controller of the active rail count
+     * @param prefetch the number of items to prefetch from the source
+     * @return the new ParallelFolyam instance
+     */
+    public static <T> ParallelFolyam<T> fromPublisher(Flow.Publisher<? extends T> source, ElasticRails rails, int prefetch) {
+        Objects.requireNonNull(source, "source == null");
+        Objects.requireNonNull(rails, "rails == null");
+        verifyPositive(prefetch, "prefetch");
+        return FolyamPlugins.onAssembly(new ParallelFromPublisher<>(source, rails, prefetch));
+    }
+
     @SafeVarargs
     public static <T> ParallelFolyam<T> fromArray(Flow.Publisher<? extends T>... sources) {
         Objects.requireNonNull(sources, "sources == null");
@@ -142,6 +172,64 @@ public abstract class ParallelFolyam<T> {
         return FolyamPlugins.onAssembly(new ParallelRunOn<>(this, scheduler, prefetch));
     }
 
+    /**
+     * Specifies where each 'rail' will observe its incoming values, optionally
+     * pinning each rail to the worker with the same index.
+     * <p>
+     * When {@code pinRails} is true, the operator calls {@code SchedulerService.worker(int)}
+     * with the rail index instead of {@code SchedulerService.worker()}. With a
+     * {@link SchedulerServices#computation()} or {@link SchedulerServices#newParallel(int, String)}
+     * scheduler whose parallelism is at least this ParallelFolyam's, each rail then
+     * runs on its own dedicated thread, the same thread on every subscription,
+     * and no two rails share a thread.
+     * <p>
+     * This operator doesn't require the SchedulerService to be trampolining as it
+     * does its own built-in trampolining logic.
+     *
+     * @param scheduler the scheduler to use
+     * @param prefetch the number of values to request on each 'rail' from the source
+     * @param pinRails if true, rail {@code i} uses {@code scheduler.worker(i)}
+     * @return the new ParallelFolyam instance
+     */
+    public final ParallelFolyam<T> runOn(SchedulerService scheduler, int prefetch, boolean pinRails) {
+        Objects.requireNonNull(scheduler, "scheduler");
+        verifyPositive(prefetch, "prefetch");
+        return FolyamPlugins.onAssembly(new ParallelRunOn<>(this, scheduler, prefetch, pinRails));
+    }
+
+
+    /**
+     * Specifies where each 'rail' will observe its incoming values, allowing rails
+     * that ran out of items to steal the queued but not yet processed items of
+     * other rails, using the default prefetch amount.
+     * <p>
+     * Useful when the per-item processing cost is skewed and a slow rail would
+     * otherwise hold its prefetched items while the other rails idle.
+     *
+     * @param scheduler the scheduler to use
+     * @return the new ParallelFolyam instance
+     */
+    public final ParallelFolyam<T> runOnWorkStealing(SchedulerService scheduler) {
+        return runOnWorkStealing(scheduler, FolyamPlugins.defaultBufferSize());
+    }
+
+    /**
+     * Specifies where each 'rail' will observe its incoming values, allowing rails
+     * that ran out of items to steal the queued but not yet processed items of
+     * other rails.
+     * <p>
+     * Useful when the per-item processing cost is skewed and a slow rail would
+     * otherwise hold its prefetched items while the other rails idle.
+     *
+     * @param scheduler the scheduler to use
+     * @param prefetch the number of values to request on each 'rail' from the source
+     * @return the new ParallelFolyam instance
+     */
+    public final ParallelFolyam<T> runOnWorkStealing(SchedulerService scheduler, int prefetch) {
+        Objects.requireNonNull(scheduler, "scheduler");
+        verifyPositive(prefetch, "prefetch");
+        return FolyamPlugins.onAssembly(new ParallelRunOnStealing<>(this, scheduler, prefetch));
+    }
 
     public final <R> ParallelFolyam<R> map(CheckedFunction<? super T, ? extends R> mapper) {
         Objects.requireNonNull(mapper, "mapper == null");
@@ -378,6 +466,61 @@ public abstract class ParallelFolyam<T> {
         return FolyamPlugins.onAssembly(new ParallelJoinAsync<>(this, prefetch, true, executor));
     }
 
+    /**
+     * Merges the rails into a sequential Folyam where each rail signals the
+     * collecting side only once per {@code batchSize} items or when the collecting
+     * side is idle, reducing the contention on the shared work-in-progress counter.
+     * @param batchSize the number of items after which a rail signals the collector
+     * @return the new Folyam instance
+     */
+    public final Folyam<T> sequentialBatched(int batchSize) {
+        return sequentialBatched(FolyamPlugins.defaultBufferSize(), batchSize);
+    }
+
+    /**
+     * Merges the rails into a sequential Folyam where each rail signals the
+     * collecting side only once per {@code batchSize} items or when the collecting
+     * side is idle, reducing the contention on the shared work-in-progress counter.
+     * @param prefetch the number of items to prefetch from each rail
+     * @param batchSize the number of items after which a rail signals the collector
+     * @return the new Folyam instance
+     */
+    public final Folyam<T> sequentialBatched(int prefetch, int batchSize) {
+        verifyPositive(prefetch, "prefetch");
+        verifyPositive(batchSize, "batchSize");
+        return FolyamPlugins.onAssembly(new ParallelJoinBatched<>(this, prefetch, batchSize, false, null));
+    }
+
+    /**
+     * Merges the rails into a sequential Folyam, delaying errors until all rails
+     * terminated, where each rail signals the collecting side only once per
+     * {@code batchSize} items or when the collecting side is idle.
+     * @param prefetch the number of items to prefetch from each rail
+     * @param batchSize the number of items after which a rail signals the collector
+     * @return the new Folyam instance
+     */
+    public final Folyam<T> sequentialBatchedDelayError(int prefetch, int batchSize) {
+        verifyPositive(prefetch, "prefetch");
+        verifyPositive(batchSize, "batchSize");
+        return FolyamPlugins.onAssembly(new ParallelJoinBatched<>(this, prefetch, batchSize, true, null));
+    }
+
+    /**
+     * Merges the rails into a sequential Folyam emitting on the given executor,
+     * where each rail signals the executor only once per {@code batchSize} items
+     * or when the executor side is idle.
+     * @param executor the scheduler to emit the items on
+     * @param prefetch the number of items to prefetch from each rail
+     * @param batchSize the number of items after which a rail signals the collector
+     * @return the new Folyam instance
+     */
+    public final Folyam<T> sequentialBatched(SchedulerService executor, int prefetch, int batchSize) {
+        Objects.requireNonNull(executor, "executor == null");
+        verifyPositive(prefetch, "prefetch");
+        verifyPositive(batchSize, "batchSize");
+        return FolyamPlugins.onAssembly(new ParallelJoinBatched<>(this, prefetch, batchSize, false, executor));
+    }
+
     public final Esetleg<T> ignoreElements() {
         return FolyamPlugins.onAssembly(new ParallelIgnoreElements<>(this));
     }
@@ -387,6 +530,56 @@ public abstract class ParallelFolyam<T> {
         return FolyamPlugins.onAssembly(new ParallelReduceFull<>(this, reducer));
     }
 
+    /**
+     * Reduces each rail into a single value and combines the rail results pairwise
+     * in a binary tree, executing each combination step on the given scheduler.
+     * <p>
+     * Unlike {@link #reduce(CheckedBiFunction)}, independent pairs of rails are combined
+     * in parallel and the combination order follows the rail order, which pays off
+     * with expensive reducers at high parallelism.
+     * @param reducer the function combining two values into one
+     * @param combineOn the scheduler to run the combination steps on
+     * @return the new Esetleg instance
+     */
+    public final Esetleg<T> reduce(CheckedBiFunction<T, T, T> reducer, SchedulerService combineOn) {
+        Objects.requireNonNull(reducer, "reducer == null");
+        Objects.requireNonNull(combineOn, "combineOn == null");
+        return FolyamPlugins.onAssembly(ParallelReduceTree.reducer(this, reducer, combineOn));
+    }
+
+    /**
+     * Collects the items of all rails via the given {@link Collector}, combining the
+     * per-rail containers pairwise in a binary tree on the computation scheduler.
+     * <p>
+     * If the collector has the {@link Collector.Characteristics#CONCURRENT} characteristic,
+     * a single container is shared among the rails and no combination takes place.
+     * @param <A> the container type
+     * @param <R> the result type
+     * @param collector the collector
+     * @return the new Esetleg instance
+     */
+    public final <A, R> Esetleg<R> collect(Collector<? super T, A, R> collector) {
+        return collect(collector, SchedulerServices.computation());
+    }
+
+    /**
+     * Collects the items of all rails via the given {@link Collector}, combining the
+     * per-rail containers pairwise in a binary tree on the given scheduler.
+     * <p>
+     * If the collector has the {@link Collector.Characteristics#CONCURRENT} characteristic,
+     * a single container is shared among the rails and no combination takes place.
+     * @param <A> the container type
+     * @param <R> the result type
+     * @param collector the collector
+     * @param combineOn the scheduler to run the combination steps on
+     * @return the new Esetleg instance
+     */
+    public final <A, R> Esetleg<R> collect(Collector<? super T, A, R> collector, SchedulerService combineOn) {
+        Objects.requireNonNull(collector, "collector == null");
+        Objects.requireNonNull(combineOn, "combineOn == null");
+        return FolyamPlugins.onAssembly(ParallelReduceTree.collector(this, collector, combineOn));
+    }
+
     public final Folyam<T> sorted(Comparator<? super T> comparator) {
         return sorted(comparator, 16);
     }
@@ -431,4 +624,37 @@ public abstract class ParallelFolyam<T> {
         Objects.requireNonNull(valueSelector, "valueSelector == null");
         return FolyamPlugins.onAssembly(new ParallelSumDouble<>(this, valueSelector));
     }
+
+    // approximate aggregators
+
+    public final Esetleg<Long> countDistinctApprox() {
+        return hyperLogLog(14).map(HyperLogLog::estimate);
+    }
+
+    public final Esetleg<HyperLogLog> hyperLogLog(int precision) {
+        return collect(() -> new HyperLogLog(precision), HyperLogLog::add)
+                .reduce(HyperLogLog::merge);
+    }
+
+    public final Esetleg<HyperLogLog> hyperLogLog(ToLongFunction<? super T> valueSelector, int precision) {
+        Objects.requireNonNull(valueSelector, "valueSelector == null");
+        return collect(() -> new HyperLogLog(precision), (HyperLogLog h, T v) -> h.addLong(valueSelector.applyAsLong(v)))
+                .reduce(HyperLogLog::merge);
+    }
+
+    public final Esetleg<QuantileSketch> quantiles(ToDoubleFunction<? super T> valueSelector) {
+        return quantiles(valueSelector, 200);
+    }
+
+    public final Esetleg<QuantileSketch> quantiles(ToDoubleFunction<? super T> valueSelector, int k) {
+        Objects.requireNonNull(valueSelector, "valueSelector == null");
+        return collect(() -> new QuantileSketch(k), (QuantileSketch q, T v) -> q.add(valueSelector.applyAsDouble(v)))
+                .reduce(QuantileSketch::merge);
+    }
+
+    public final Esetleg<TopK<T>> topK(int capacity) {
+        verifyPositive(capacity, "capacity");
+        return collect(() -> new TopK<T>(capacity), TopK::add)
+                .reduce(TopK::merge);
+    }
 }
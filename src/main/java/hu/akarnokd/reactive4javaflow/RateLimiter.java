@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import hu.akarnokd.reactive4javaflow.impl.VH;
+
+import java.lang.invoke.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that can be shared by any number of rate limited sequences,
+ * see {@link Folyam#rateLimit(RateLimiter)}.
+ * <p>
+ * The bucket holds at most {@code burst} tokens and gains one every
+ * {@code period / permits} time. There is no refill task: the whole state is the
+ * single time at which the bucket was, or will be, empty, from which the number of
+ * available tokens follows by the {@link SchedulerService#nanoTime()} of the executor.
+ * Taking tokens advances that time with a CAS loop. The nanosecond clock matters when
+ * the interval is shorter than a millisecond: with {@link SchedulerService#now(TimeUnit)},
+ * a small bucket would refill only once per millisecond tick and throttle below the rate.
+ */
+public final class RateLimiter {
+
+    final SchedulerService executor;
+
+    final long interval;
+
+    final int burst;
+
+    final long burstSpan;
+
+    long emptyAt;
+    static final VarHandle EMPTY_AT = VH.find(MethodHandles.lookup(), RateLimiter.class, "emptyAt", long.class);
+
+    /**
+     * Constructs a RateLimiter with a full bucket.
+     * @param permits the number of tokens gained per period
+     * @param period the period length
+     * @param unit the period time unit
+     * @param burst the maximum number of tokens the bucket can hold
+     * @param executor the scheduler whose time is used for the refill and
+     *                 whose workers the rate limited sequences wait on
+     */
+    public RateLimiter(long permits, long period, TimeUnit unit, int burst, SchedulerService executor) {
+        if (permits <= 0L) {
+            throw new IllegalArgumentException("permits: " + permits + " <= 0L");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst: " + burst + " <= 0");
+        }
+        this.executor = executor;
+        this.interval = Math.max(1L, unit.toNanos(period) / permits);
+        this.burst = burst;
+        this.burstSpan = interval * burst;
+        this.emptyAt = executor.nanoTime() - burstSpan;
+    }
+
+    public SchedulerService executor() {
+        return executor;
+    }
+
+    public int burst() {
+        return burst;
+    }
+
+    /**
+     * Takes at most the given number of tokens if available.
+     * @param n the number of tokens wanted
+     * @return the number of tokens taken, zero if none were available
+     */
+    public long tryAcquire(long n) {
+        for (;;) {
+            long now = executor.nanoTime();
+            long e = (long)EMPTY_AT.getAcquire(this);
+            long base = Math.max(e, now - burstSpan);
+            long available = (now - base) / interval;
+            if (available <= 0L) {
+                return 0L;
+            }
+            long k = Math.min(n, available);
+            if (EMPTY_AT.compareAndSet(this, e, base + k * interval)) {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * Returns the time until the given number of tokens will be available,
+     * unless other parties take them first.
+     * @param n the number of tokens, capped at the burst size
+     * @param unit the time unit of the result
+     * @return the time until the tokens will be available, zero if they are available now
+     */
+    public long timeUntilAvailable(long n, TimeUnit unit) {
+        long now = executor.nanoTime();
+        long base = Math.max((long)EMPTY_AT.getAcquire(this), now - burstSpan);
+        long wait = base + Math.min(n, burst) * interval - now;
+        return wait <= 0L ? 0L : unit.convert(wait + unit.toNanos(1L) - 1L, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter(interval = " + interval + " ns, burst = " + burst + ")";
+    }
+}
@@ -66,10 +66,35 @@ public interface SchedulerService {
 
     Worker worker();
 
+    /**
+     * Returns a worker associated with the given index, such as a 'rail' index of
+     * a {@link ParallelFolyam}.
+     * <p>
+     * Implementations backed by a fixed set of threads should return workers running
+     * on the same thread for the same index and on distinct threads for indexes
+     * smaller than their parallelism level. By default, the index is ignored and
+     * {@link #worker()} is returned.
+     * @param index the non-negative index
+     * @return the worker for the given index
+     */
+    default Worker worker(int index) {
+        return worker();
+    }
+
     default long now(TimeUnit unit) {
         return unit.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Returns a monotonic time in nanoseconds, meaningful only relative to other
+     * values returned by this method, for measuring short intervals more finely
+     * than {@link #now(TimeUnit)} does. By default, it is {@link System#nanoTime()}.
+     * @return the current monotonic time in nanoseconds
+     */
+    default long nanoTime() {
+        return System.nanoTime();
+    }
+
     default void start() {
         // default no op
     }
@@ -175,6 +175,14 @@ public final class SchedulerServices {
         return new NewThreadSchedulerService(name, priority, daemon);
     }
 
+    public static NioSchedulerService newNio(String name) {
+        return newNio(name, Thread.NORM_PRIORITY, true);
+    }
+
+    public static NioSchedulerService newNio(String name, int priority, boolean daemon) {
+        return new NioSchedulerService(name, priority, daemon);
+    }
+
     public static SchedulerService newShared(SchedulerService.Worker worker) {
         Objects.requireNonNull(worker, "worker == null");
         return new SharedSchedulerService(worker);
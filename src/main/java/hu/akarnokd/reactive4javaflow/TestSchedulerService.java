@@ -68,6 +68,11 @@ public final class TestSchedulerService implements SchedulerService {
         return unit.convert(timeNanos, TimeUnit.NANOSECONDS);
     }
 
+    @Override
+    public long nanoTime() {
+        return timeNanos;
+    }
+
     public void advanceTimeBy(long time, TimeUnit unit) {
         drainUntil(timeNanos + unit.toNanos(time));
     }
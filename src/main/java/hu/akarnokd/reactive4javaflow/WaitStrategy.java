@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+/**
+ * Specifies how a blocking consumer thread waits for the next item
+ * of an asynchronous source.
+ */
+public enum WaitStrategy {
+    /**
+     * Keep checking for the next item without giving up the CPU;
+     * lowest latency but occupies a core while waiting.
+     */
+    BUSY_SPIN,
+    /**
+     * Spin for a short while, then yield the thread for a while and
+     * finally park until the producer wakes it up.
+     */
+    SPIN_YIELD_PARK,
+    /**
+     * Park immediately until the producer wakes it up.
+     */
+    PARK
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl;
+
+import hu.akarnokd.reactive4javaflow.WaitStrategy;
+
+import java.lang.invoke.*;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets a single consumer thread wait for a condition according to a {@link WaitStrategy}
+ * and lets the producer wake it up only if the consumer is actually parked.
+ * <p>
+ * The consumer publishes itself as the waiter and re-checks the condition before parking,
+ * the producer makes the condition true and then checks for a waiter; both sides use
+ * volatile accesses so at least one of them sees the other.
+ */
+public final class BlockingWaiter {
+
+    static final int SPIN_LIMIT = 256;
+
+    static final int YIELD_LIMIT = SPIN_LIMIT + 64;
+
+    final WaitStrategy strategy;
+
+    Thread waiter;
+    static final VarHandle WAITER = VH.find(MethodHandles.lookup(), BlockingWaiter.class, "waiter", Thread.class);
+
+    public BlockingWaiter(WaitStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Wakes up the consumer thread if it is parked.
+     * <p>
+     * Call it after the condition has been made true with a volatile write.
+     */
+    public void wakeUp() {
+        Thread t = (Thread)WAITER.getVolatile(this);
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Waits until the given condition becomes true.
+     * @param ready the condition to wait for, should use volatile reads
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        int spins = 0;
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            switch (strategy) {
+                case BUSY_SPIN:
+                    Thread.onSpinWait();
+                    break;
+                case SPIN_YIELD_PARK:
+                    if (spins < SPIN_LIMIT) {
+                        spins++;
+                        Thread.onSpinWait();
+                    } else if (spins < YIELD_LIMIT) {
+                        spins++;
+                        Thread.yield();
+                    } else {
+                        park(ready);
+                    }
+                    break;
+                default:
+                    park(ready);
+            }
+        }
+    }
+
+    void park(BooleanSupplier ready) {
+        WAITER.setVolatile(this, Thread.currentThread());
+        if (!ready.getAsBoolean()) {
+            LockSupport.park(this);
+        }
+        WAITER.setVolatile(this, null);
+    }
+}
@@ -83,4 +83,20 @@ public final class ExceptionHelper {
         }
         return a;
     }
+
+    /**
+     * Throws the given Throwable if it is an Error or RuntimeException,
+     * otherwise returns it wrapped into a RuntimeException.
+     * @param ex the Throwable to throw or wrap
+     * @return the RuntimeException wrapping a checked exception
+     */
+    public static RuntimeException wrapOrThrow(Throwable ex) {
+        if (ex instanceof Error) {
+            throw (Error)ex;
+        }
+        if (ex instanceof RuntimeException) {
+            throw (RuntimeException)ex;
+        }
+        return new RuntimeException(ex);
+    }
 }
@@ -21,8 +21,19 @@ import hu.akarnokd.reactive4javaflow.impl.*;
 
 import java.lang.invoke.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
 
-public abstract class AbstractBlockingConsumer<T> extends CountDownLatch implements FolyamSubscriber<T> {
+/**
+ * Base class for consumers that wait for the terminal event on a single thread.
+ * <p>
+ * The result is returned without any waiting if the source has already terminated
+ * by the time subscribe() returns, otherwise the waiting thread publishes itself and
+ * parks until the terminal event unparks it. No monitors or locks are involved,
+ * thus a waiting virtual thread doesn't pin its carrier thread.
+ *
+ * @param <T> the element type
+ */
+public abstract class AbstractBlockingConsumer<T> implements FolyamSubscriber<T> {
 
     T item;
     Throwable error;
@@ -30,9 +41,11 @@ public abstract class AbstractBlockingConsumer<T> extends CountDownLatch impleme
     Flow.Subscription upstream;
     static final VarHandle UPSTREAM = VH.find(MethodHandles.lookup(), AbstractBlockingConsumer.class, "upstream", Flow.Subscription.class);
 
-    public AbstractBlockingConsumer() {
-        super(1);
-    }
+    boolean done;
+    static final VarHandle DONE = VH.find(MethodHandles.lookup(), AbstractBlockingConsumer.class, "done", boolean.class);
+
+    Thread waiter;
+    static final VarHandle WAITER = VH.find(MethodHandles.lookup(), AbstractBlockingConsumer.class, "waiter", Thread.class);
 
     @Override
     public final void onSubscribe(Flow.Subscription subscription) {
@@ -45,8 +58,76 @@ public abstract class AbstractBlockingConsumer<T> extends CountDownLatch impleme
         SubscriptionHelper.cancel(this, UPSTREAM);
     }
 
+    /**
+     * Returns true if the terminal event has been signalled via {@link #countDown()}.
+     * @return true if the terminal event has been signalled
+     */
+    protected final boolean isDone() {
+        return (boolean)DONE.getAcquire(this);
+    }
+
+    /**
+     * Indicates the terminal event and unparks the waiting thread, if any.
+     */
+    protected final void countDown() {
+        DONE.setVolatile(this, true);
+        Thread t = (Thread)WAITER.getVolatile(this);
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Waits for the terminal event.
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public final void await() throws InterruptedException {
+        if (!(boolean)DONE.getVolatile(this)) {
+            WAITER.setVolatile(this, Thread.currentThread());
+            try {
+                while (!(boolean)DONE.getVolatile(this)) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    LockSupport.park(this);
+                }
+            } finally {
+                WAITER.setRelease(this, null);
+            }
+        }
+    }
+
+    /**
+     * Waits for the terminal event at most the given amount of time.
+     * @param time the time to wait
+     * @param unit the time unit
+     * @return true if the terminal event happened, false if the wait timed out
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public final boolean await(long time, TimeUnit unit) throws InterruptedException {
+        if (!(boolean)DONE.getVolatile(this)) {
+            long deadline = System.nanoTime() + unit.toNanos(time);
+            WAITER.setVolatile(this, Thread.currentThread());
+            try {
+                while (!(boolean)DONE.getVolatile(this)) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    long delay = deadline - System.nanoTime();
+                    if (delay <= 0L) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, delay);
+                }
+            } finally {
+                WAITER.setRelease(this, null);
+            }
+        }
+        return true;
+    }
+
     public final T blockingGet() {
-        if (getCount() != 0) {
+        if (!isDone()) {
             try {
                 await();
             } catch (InterruptedException ex) {
@@ -68,7 +149,7 @@ public abstract class AbstractBlockingConsumer<T> extends CountDownLatch impleme
     }
 
     public final T blockingGet(long time, TimeUnit unit) {
-        if (getCount() != 0) {
+        if (!isDone()) {
             try {
                 if (!await(time, unit)) {
                     cancel();
@@ -16,28 +16,10 @@
 
 package hu.akarnokd.reactive4javaflow.impl.consumers;
 
-import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.FolyamPlugins;
 import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
-import hu.akarnokd.reactive4javaflow.impl.*;
 
-import java.lang.invoke.*;
-import java.util.concurrent.*;
-
-public final class BlockingConsumerIgnore extends CountDownLatch implements FolyamSubscriber<Object>, AutoDisposable {
-
-    Flow.Subscription upstream;
-    static final VarHandle UPSTREAM = VH.find(MethodHandles.lookup(), BlockingConsumerIgnore.class, "upstream", Flow.Subscription.class);
-
-    public BlockingConsumerIgnore() {
-        super(1);
-    }
-
-    @Override
-    public void onSubscribe(Flow.Subscription subscription) {
-        if (SubscriptionHelper.replace(this, UPSTREAM, subscription)) {
-            subscription.request(Long.MAX_VALUE);
-        }
-    }
+public final class BlockingConsumerIgnore extends AbstractBlockingConsumer<Object> implements AutoDisposable {
 
     @Override
     public void onNext(Object item) {
@@ -57,6 +39,6 @@ public final class BlockingConsumerIgnore extends CountDownLatch implements Foly
 
     @Override
     public void close() {
-        SubscriptionHelper.cancel(this, UPSTREAM);
+        cancel();
     }
 }
@@ -21,7 +21,7 @@ import hu.akarnokd.reactive4javaflow.FolyamPlugins;
 public final class BlockingFirstConsumer<T> extends AbstractBlockingConsumer<T> {
     @Override
     public void onNext(T item) {
-        if (getCount() != 0) {
+        if (!isDone()) {
             this.item = item;
             cancel();
             countDown();
@@ -30,7 +30,7 @@ public final class BlockingFirstConsumer<T> extends AbstractBlockingConsumer<T>
 
     @Override
     public void onError(Throwable throwable) {
-        if (getCount() != 0) {
+        if (!isDone()) {
             this.error = throwable;
             countDown();
         } else {
@@ -24,9 +24,9 @@ import hu.akarnokd.reactive4javaflow.impl.util.SpscArrayQueue;
 
 import java.lang.invoke.*;
 import java.util.concurrent.Flow;
-import java.util.concurrent.locks.*;
+import java.util.function.BooleanSupplier;
 
-public final class BlockingLambdaConsumer<T> extends ReentrantLock implements FolyamSubscriber<T>, AutoDisposable {
+public final class BlockingLambdaConsumer<T> implements FolyamSubscriber<T>, AutoDisposable {
 
     final CheckedConsumer<? super T> onNext;
 
@@ -36,7 +36,9 @@ public final class BlockingLambdaConsumer<T> extends ReentrantLock implements Fo
 
     final int prefetch;
 
-    final Condition condition;
+    final BlockingWaiter waiter;
+
+    final BooleanSupplier ready;
 
     FusedQueue<T> queue;
     static final VarHandle QUEUE = VH.find(MethodHandles.lookup(), BlockingLambdaConsumer.class, "queue", FusedQueue.class);
@@ -55,11 +57,16 @@ public final class BlockingLambdaConsumer<T> extends ReentrantLock implements Fo
     int sourceFused;
 
     public BlockingLambdaConsumer(CheckedConsumer<? super T> onNext, CheckedConsumer<? super Throwable> onError, CheckedRunnable onComplete, int prefetch) {
+        this(onNext, onError, onComplete, prefetch, WaitStrategy.PARK);
+    }
+
+    public BlockingLambdaConsumer(CheckedConsumer<? super T> onNext, CheckedConsumer<? super Throwable> onError, CheckedRunnable onComplete, int prefetch, WaitStrategy waitStrategy) {
         this.onNext = onNext;
         this.onError = onError;
         this.onComplete = onComplete;
         this.prefetch = prefetch;
-        this.condition = newCondition();
+        this.waiter = new BlockingWaiter(waitStrategy);
+        this.ready = this::isReady;
         this.queue = new SpscArrayQueue<>(prefetch);
     }
 
@@ -97,15 +104,14 @@ public final class BlockingLambdaConsumer<T> extends ReentrantLock implements Fo
 
     void signal() {
         if ((long)WIP.getAndAdd(this, 1) == 0) {
-            lock();
-            try {
-                condition.signal();
-            } finally {
-                unlock();
-            }
+            waiter.wakeUp();
         }
     }
 
+    boolean isReady() {
+        return (long)WIP.getVolatile(this) != 0L || (boolean)DONE.getVolatile(this);
+    }
+
     @Override
     public void onNext(T item) {
         if (item != null) {
@@ -195,17 +201,12 @@ public final class BlockingLambdaConsumer<T> extends ReentrantLock implements Fo
 
             missed = (long)WIP.getAndAdd(this, -missed) - missed;
             if (missed == 0L) {
-                lock();
                 try {
-                    while ((long)WIP.getAcquire(this) == 0L && !(boolean)DONE.getAcquire(this)) {
-                        condition.await();
-                    }
+                    waiter.await(ready);
                 } catch (InterruptedException ex) {
                     close();
                     error(ex);
                     return;
-                } finally {
-                    unlock();
                 }
             }
         }
@@ -31,7 +31,7 @@ public final class BlockingSingleConsumer<T> extends AbstractBlockingConsumer<T>
 
     @Override
     public void onError(Throwable throwable) {
-        if (getCount() != 0) {
+        if (!isDone()) {
             this.item = null;
             this.error = throwable;
             countDown();
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.MappedLog;
+
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+
+/**
+ * Replays the items of the source, serialized into a segmented memory-mapped
+ * {@link MappedLog}, to any number of subscribers.
+ * <p>
+ * Subscribers read every retained record from the log, including the ones a previous
+ * process appended, and follow the appends of the live source once they caught up.
+ * Terminal events are not persisted. The log is flushed to the storage device when
+ * it rolls over to a new segment and when the source terminates.
+ *
+ * @param <T> the value type
+ */
+public final class ConnectableFolyamReplayDurable<T> extends ConnectableFolyam<T> {
+
+    final Folyam<T> source;
+
+    final Path directory;
+
+    final CheckedFunction<? super T, byte[]> serializer;
+
+    final CheckedFunction<? super ByteBuffer, ? extends T> deserializer;
+
+    final int segmentSize;
+
+    final long retentionBytes;
+
+    final long retentionMillis;
+
+    DurableReplayProcessor<T> processor;
+    static final VarHandle PROCESSOR = VH.find(MethodHandles.lookup(), ConnectableFolyamReplayDurable.class, "processor", DurableReplayProcessor.class);
+
+    static final Flow.Subscription CONNECT = new BooleanSubscription();
+
+    public ConnectableFolyamReplayDurable(Folyam<T> source, Path directory,
+                                          CheckedFunction<? super T, byte[]> serializer,
+                                          CheckedFunction<? super ByteBuffer, ? extends T> deserializer,
+                                          int segmentSize, long retentionBytes, long retentionMillis) {
+        this.source = source;
+        this.directory = directory;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.segmentSize = segmentSize;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+    }
+
+    DurableReplayProcessor<T> processor() {
+        DurableReplayProcessor<T> mp = (DurableReplayProcessor<T>) PROCESSOR.getAcquire(this);
+        if (mp != null) {
+            return mp;
+        }
+        synchronized (this) {
+            // unlike the in-memory buffers, a losing log instance can't be just dropped
+            mp = (DurableReplayProcessor<T>) PROCESSOR.getAcquire(this);
+            if (mp == null) {
+                mp = new DurableReplayProcessor<>(this);
+                PROCESSOR.setRelease(this, mp);
+            }
+            return mp;
+        }
+    }
+
+    @Override
+    protected AutoDisposable connectActual(Consumer<? super AutoDisposable> connectionHandler) {
+        DurableReplayProcessor<T> mp = processor();
+        boolean b = mp.prepare(CONNECT);
+        connectionHandler.accept(mp);
+        if (b) {
+            source.subscribe(mp);
+        }
+        return mp;
+    }
+
+    @Override
+    public void reset() {
+        DurableReplayProcessor<T> mp = (DurableReplayProcessor<T>) PROCESSOR.getAcquire(this);
+        if (mp != null) {
+            if (mp.hasTerminated()) {
+                PROCESSOR.compareAndSet(this, mp, null);
+            }
+        }
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super T> s) {
+        processor().subscribe(s);
+    }
+
+    static final class DurableReplayProcessor<T> implements FolyamSubscriber<T>, AutoDisposable {
+
+        final CheckedFunction<? super T, byte[]> serializer;
+
+        final CheckedFunction<? super ByteBuffer, ? extends T> deserializer;
+
+        final MappedLog log;
+
+        DurableReplaySubscription<T>[] subscribers;
+        static final VarHandle SUBSCRIBERS = VH.find(MethodHandles.lookup(), DurableReplayProcessor.class, "subscribers", DurableReplaySubscription[].class);
+
+        static final DurableReplaySubscription[] EMPTY = new DurableReplaySubscription[0];
+        static final DurableReplaySubscription[] TERMINATED = new DurableReplaySubscription[0];
+
+        Throwable error;
+        static final VarHandle ERROR = VH.find(MethodHandles.lookup(), DurableReplayProcessor.class, "error", Throwable.class);
+
+        Flow.Subscription upstream;
+        static final VarHandle UPSTREAM = VH.find(MethodHandles.lookup(), DurableReplayProcessor.class, "upstream", Flow.Subscription.class);
+
+        DurableReplayProcessor(ConnectableFolyamReplayDurable<T> parent) {
+            this.serializer = parent.serializer;
+            this.deserializer = parent.deserializer;
+            MappedLog log;
+            try {
+                log = new MappedLog(parent.directory, parent.segmentSize, parent.retentionBytes, parent.retentionMillis);
+                SUBSCRIBERS.setRelease(this, EMPTY);
+            } catch (Throwable ex) {
+                log = null;
+                ERROR.setRelease(this, ex);
+                SUBSCRIBERS.setRelease(this, TERMINATED);
+            }
+            this.log = log;
+        }
+
+        boolean hasTerminated() {
+            return ERROR.getAcquire(this) != null;
+        }
+
+        boolean prepare(Flow.Subscription subscription) {
+            return UPSTREAM.compareAndSet(this, null, subscription);
+        }
+
+        void subscribe(FolyamSubscriber<? super T> s) {
+            MappedLog g = log;
+            DurableReplaySubscription<T> parent = new DurableReplaySubscription<>(s, this, g != null ? g.cursor() : null);
+            s.onSubscribe(parent);
+            if (add(parent)) {
+                if (parent.isCancelled()) {
+                    remove(parent);
+                    return;
+                }
+            }
+            parent.drain();
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean add(DurableReplaySubscription<T> ds) {
+            for (;;) {
+                DurableReplaySubscription<T>[] a = (DurableReplaySubscription<T>[])SUBSCRIBERS.getAcquire(this);
+                if (a == TERMINATED) {
+                    return false;
+                }
+                int n = a.length;
+                DurableReplaySubscription<T>[] b = new DurableReplaySubscription[n + 1];
+                System.arraycopy(a, 0, b, 0, n);
+                b[n] = ds;
+                if (SUBSCRIBERS.compareAndSet(this, a, b)) {
+                    return true;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void remove(DurableReplaySubscription<T> ds) {
+            for (;;) {
+                DurableReplaySubscription<T>[] a = (DurableReplaySubscription<T>[])SUBSCRIBERS.getAcquire(this);
+                int n = a.length;
+                if (n == 0) {
+                    return;
+                }
+                int j = -1;
+                for (int i = 0; i < n; i++) {
+                    if (ds == a[i]) {
+                        j = i;
+                        break;
+                    }
+                }
+                if (j < 0) {
+                    break;
+                }
+                DurableReplaySubscription<T>[] b;
+                if (n == 1) {
+                    b = EMPTY;
+                } else {
+                    b = new DurableReplaySubscription[n - 1];
+                    System.arraycopy(a, 0, b, 0, j);
+                    System.arraycopy(a, j + 1, b, j, n - j - 1);
+                }
+                if (SUBSCRIBERS.compareAndSet(this, a, b)) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (SubscriptionHelper.replace(this, UPSTREAM, subscription)) {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onNext(T item) {
+            if (ERROR.getAcquire(this) == null) {
+                try {
+                    log.append(serializer.apply(item));
+                } catch (Throwable ex) {
+                    FolyamPlugins.handleFatal(ex);
+                    SubscriptionHelper.cancel(this, UPSTREAM);
+                    tryTerminate(ex);
+                    return;
+                }
+                for (DurableReplaySubscription<T> cs : (DurableReplaySubscription<T>[])SUBSCRIBERS.getAcquire(this)) {
+                    cs.drain();
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean tryTerminate(Throwable throwable) {
+            if (ERROR.getAcquire(this) == null && ERROR.compareAndSet(this, null, throwable)) {
+                log.close();
+                for (DurableReplaySubscription<T> cs : (DurableReplaySubscription<T>[])SUBSCRIBERS.getAndSet(this, TERMINATED)) {
+                    cs.drain();
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!tryTerminate(throwable)) {
+                FolyamPlugins.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            tryTerminate(ExceptionHelper.TERMINATED);
+        }
+
+        @Override
+        public void close() {
+            SubscriptionHelper.cancel(this, UPSTREAM);
+            tryTerminate(new CancellationException("ConnectableFolyamReplayDurable closed"));
+        }
+    }
+
+    static final class DurableReplaySubscription<T> extends AtomicInteger implements Flow.Subscription {
+
+        private static final long serialVersionUID = -5370317286766283386L;
+
+        final FolyamSubscriber<? super T> actual;
+
+        final DurableReplayProcessor<T> parent;
+
+        final MappedLog.Cursor cursor;
+
+        final AtomicLong requested;
+
+        long emitted;
+
+        volatile boolean cancelled;
+
+        DurableReplaySubscription(FolyamSubscriber<? super T> actual, DurableReplayProcessor<T> parent, MappedLog.Cursor cursor) {
+            this.actual = actual;
+            this.parent = parent;
+            this.cursor = cursor;
+            this.requested = new AtomicLong();
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                parent.remove(this);
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        boolean hasNext() {
+            MappedLog.Cursor c = cursor;
+            return c != null && c.hasNext();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            FolyamSubscriber<? super T> a = actual;
+            MappedLog.Cursor c = cursor;
+            DurableReplayProcessor<T> p = parent;
+            long e = emitted;
+
+            for (;;) {
+
+                long r = requested.get();
+
+                while (e != r) {
+                    if (cancelled) {
+                        return;
+                    }
+
+                    boolean d = p.hasTerminated();
+                    boolean empty = !hasNext();
+
+                    if (d && empty) {
+                        terminate(a);
+                        return;
+                    }
+
+                    if (empty) {
+                        break;
+                    }
+
+                    T v;
+                    try {
+                        v = p.deserializer.apply(c.next());
+                    } catch (Throwable ex) {
+                        FolyamPlugins.handleFatal(ex);
+                        cancel();
+                        a.onError(ex);
+                        return;
+                    }
+
+                    a.onNext(v);
+
+                    e++;
+                }
+
+                if (e == r) {
+                    if (cancelled) {
+                        return;
+                    }
+
+                    if (p.hasTerminated() && !hasNext()) {
+                        terminate(a);
+                        return;
+                    }
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        void terminate(FolyamSubscriber<? super T> a) {
+            cancelled = true;
+            Throwable ex = (Throwable)DurableReplayProcessor.ERROR.getAcquire(parent);
+            if (ex == ExceptionHelper.TERMINATED) {
+                a.onComplete();
+            } else {
+                a.onError(ex);
+            }
+        }
+    }
+}
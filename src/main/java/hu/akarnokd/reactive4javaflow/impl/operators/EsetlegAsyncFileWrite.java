@@ -0,0 +1,281 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.SpscArrayQueue;
+
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes the ByteBuffers of the source into an AsynchronousFileChannel, starting at
+ * the given position, and signals the total number of bytes written when the source completes.
+ * <p>
+ * There is at most one write in flight; the source is asked for more buffers from
+ * the completion handler of the write. AsynchronousFileChannel has no gathering write,
+ * therefore buffers available at the same time are copied into a staging buffer of
+ * {@code maxBytes} and written at once if they fit; larger buffers are written directly.
+ */
+public final class EsetlegAsyncFileWrite extends Esetleg<Long> {
+
+    final Flow.Publisher<ByteBuffer> source;
+
+    final AsynchronousFileChannel channel;
+
+    final long position;
+
+    final int prefetch;
+
+    final int maxBytes;
+
+    public EsetlegAsyncFileWrite(Flow.Publisher<ByteBuffer> source, AsynchronousFileChannel channel, long position, int prefetch, int maxBytes) {
+        this.source = source;
+        this.channel = channel;
+        this.position = position;
+        this.prefetch = prefetch;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super Long> s) {
+        source.subscribe(new AsyncFileWriteSubscriber(s, channel, position, prefetch, maxBytes));
+    }
+
+    static final class AsyncFileWriteSubscriber extends DeferredScalarSubscription<Long>
+    implements FolyamSubscriber<ByteBuffer>, CompletionHandler<Integer, ByteBuffer> {
+
+        private static final long serialVersionUID = 5306125546620133165L;
+
+        final AsynchronousFileChannel channel;
+
+        final int prefetch;
+
+        final int maxBytes;
+
+        final SpscArrayQueue<ByteBuffer> queue;
+
+        Flow.Subscription upstream;
+
+        boolean done;
+        static final VarHandle DONE = VH.find(MethodHandles.lookup(), AsyncFileWriteSubscriber.class, "done", boolean.class);
+        Throwable error;
+
+        volatile Throwable writeError;
+
+        int wip;
+        static final VarHandle WIP = VH.find(MethodHandles.lookup(), AsyncFileWriteSubscriber.class, "wip", int.class);
+
+        /** Set before a write is issued and cleared by its completion handler. */
+        volatile boolean active;
+
+        ByteBuffer overflow;
+
+        ByteBuffer staging;
+
+        long position;
+
+        long written;
+
+        int inFlight;
+
+        AsyncFileWriteSubscriber(FolyamSubscriber<? super Long> actual, AsynchronousFileChannel channel, long position, int prefetch, int maxBytes) {
+            super(actual);
+            this.channel = channel;
+            this.position = position;
+            this.prefetch = prefetch;
+            this.maxBytes = maxBytes;
+            this.queue = new SpscArrayQueue<>(prefetch);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            // let a synchronous source fill up the queue before the first batch is written
+            WIP.getAndAdd(this, 1);
+            actual.onSubscribe(this);
+            subscription.request(prefetch);
+            drainLoop();
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            if (!queue.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?!"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            upstream.cancel();
+            drain();
+        }
+
+        @Override
+        public void completed(Integer result, ByteBuffer buffer) {
+            position += result;
+            written += result;
+            if (buffer.hasRemaining() && !isCancelled()) {
+                try {
+                    channel.write(buffer, position, buffer, this);
+                } catch (Throwable ex) {
+                    FolyamPlugins.handleFatal(ex);
+                    failed(ex, buffer);
+                }
+                return;
+            }
+            int n = inFlight;
+            active = false;
+            if (n != 0) {
+                upstream.request(n);
+            }
+            drain();
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer buffer) {
+            upstream.cancel();
+            writeError = exc;
+            active = false;
+            drain();
+        }
+
+        void drain() {
+            if ((int)WIP.getAndAdd(this, 1) == 0) {
+                drainLoop();
+            }
+        }
+
+        void cleanup() {
+            overflow = null;
+            QueueHelper.clear(queue);
+        }
+
+        void drainLoop() {
+            int missed = 1;
+            SpscArrayQueue<ByteBuffer> q = queue;
+
+            for (;;) {
+
+                for (;;) {
+                    if (isCancelled()) {
+                        cleanup();
+                        return;
+                    }
+
+                    Throwable wex = writeError;
+                    if (wex != null) {
+                        cleanup();
+                        error(wex);
+                        return;
+                    }
+
+                    if (active) {
+                        break;
+                    }
+
+                    boolean d = (boolean)DONE.getAcquire(this);
+                    if (d && error != null) {
+                        cleanup();
+                        error(error);
+                        return;
+                    }
+
+                    ByteBuffer v = overflow;
+                    if (v != null) {
+                        overflow = null;
+                    } else {
+                        v = q.poll();
+                    }
+
+                    if (v == null) {
+                        if (d) {
+                            complete(written);
+                            return;
+                        }
+                        break;
+                    }
+
+                    int n = 1;
+                    ByteBuffer w = v;
+                    ByteBuffer next = q.poll();
+                    if (next != null) {
+                        if (v.remaining() + next.remaining() <= maxBytes) {
+                            ByteBuffer st = staging;
+                            if (st == null) {
+                                st = ByteBuffer.allocateDirect(maxBytes);
+                                staging = st;
+                            }
+                            st.clear();
+                            st.put(v);
+                            for (;;) {
+                                st.put(next);
+                                n++;
+                                next = q.poll();
+                                if (next == null) {
+                                    break;
+                                }
+                                if (n == prefetch || next.remaining() > st.remaining()) {
+                                    overflow = next;
+                                    break;
+                                }
+                            }
+                            st.flip();
+                            w = st;
+                        } else {
+                            overflow = next;
+                        }
+                    }
+
+                    inFlight = n;
+                    active = true;
+                    try {
+                        channel.write(w, position, w, this);
+                    } catch (Throwable ex) {
+                        FolyamPlugins.handleFatal(ex);
+                        failed(ex, w);
+                    }
+                }
+
+                missed = (int)WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
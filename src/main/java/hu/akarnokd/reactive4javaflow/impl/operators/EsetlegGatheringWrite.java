@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.SpscArrayQueue;
+
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes the ByteBuffers of the source into a blocking GatheringByteChannel,
+ * batching the buffers available at the time into one gathering write, and
+ * signals the total number of bytes written when the source completes.
+ * <p>
+ * A batch holds at most {@code prefetch} buffers or, unless a single buffer is
+ * larger, at most {@code maxBytes} bytes. The source is asked for as many buffers
+ * as a batch contained only after the batch has been written.
+ */
+public final class EsetlegGatheringWrite extends Esetleg<Long> {
+
+    final Flow.Publisher<ByteBuffer> source;
+
+    final GatheringByteChannel channel;
+
+    final int prefetch;
+
+    final long maxBytes;
+
+    public EsetlegGatheringWrite(Flow.Publisher<ByteBuffer> source, GatheringByteChannel channel, int prefetch, long maxBytes) {
+        this.source = source;
+        this.channel = channel;
+        this.prefetch = prefetch;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super Long> s) {
+        source.subscribe(new GatheringWriteSubscriber(s, channel, prefetch, maxBytes));
+    }
+
+    static final class GatheringWriteSubscriber extends DeferredScalarSubscription<Long>
+    implements FolyamSubscriber<ByteBuffer> {
+
+        private static final long serialVersionUID = -1693470574920591862L;
+
+        final GatheringByteChannel channel;
+
+        final int prefetch;
+
+        final long maxBytes;
+
+        final SpscArrayQueue<ByteBuffer> queue;
+
+        final ByteBuffer[] batch;
+
+        Flow.Subscription upstream;
+
+        boolean done;
+        static final VarHandle DONE = VH.find(MethodHandles.lookup(), GatheringWriteSubscriber.class, "done", boolean.class);
+        Throwable error;
+
+        int wip;
+        static final VarHandle WIP = VH.find(MethodHandles.lookup(), GatheringWriteSubscriber.class, "wip", int.class);
+
+        ByteBuffer overflow;
+
+        long written;
+
+        GatheringWriteSubscriber(FolyamSubscriber<? super Long> actual, GatheringByteChannel channel, int prefetch, long maxBytes) {
+            super(actual);
+            this.channel = channel;
+            this.prefetch = prefetch;
+            this.maxBytes = maxBytes;
+            this.queue = new SpscArrayQueue<>(prefetch);
+            this.batch = new ByteBuffer[prefetch];
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            // let a synchronous source fill up the queue before the first batch is written
+            WIP.getAndAdd(this, 1);
+            actual.onSubscribe(this);
+            subscription.request(prefetch);
+            drainLoop();
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            if (!queue.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?!"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            upstream.cancel();
+            drain();
+        }
+
+        void drain() {
+            if ((int)WIP.getAndAdd(this, 1) == 0) {
+                drainLoop();
+            }
+        }
+
+        void cleanup() {
+            ByteBuffer[] b = batch;
+            for (int i = 0; i < b.length && b[i] != null; i++) {
+                b[i] = null;
+            }
+            overflow = null;
+            QueueHelper.clear(queue);
+        }
+
+        void drainLoop() {
+            int missed = 1;
+            SpscArrayQueue<ByteBuffer> q = queue;
+            ByteBuffer[] b = batch;
+            int max = prefetch;
+            long maxBytes = this.maxBytes;
+
+            for (;;) {
+
+                for (;;) {
+                    if (isCancelled()) {
+                        cleanup();
+                        return;
+                    }
+
+                    boolean d = (boolean)DONE.getAcquire(this);
+                    if (d && error != null) {
+                        cleanup();
+                        error(error);
+                        return;
+                    }
+
+                    int n = 0;
+                    long bytes = 0L;
+
+                    ByteBuffer v = overflow;
+                    if (v != null) {
+                        overflow = null;
+                    } else {
+                        v = q.poll();
+                    }
+
+                    while (v != null) {
+                        b[n++] = v;
+                        bytes += v.remaining();
+                        if (n == max) {
+                            break;
+                        }
+                        v = q.poll();
+                        if (v != null && bytes + v.remaining() > maxBytes) {
+                            overflow = v;
+                            break;
+                        }
+                    }
+
+                    if (n == 0) {
+                        if (d) {
+                            complete(written);
+                            return;
+                        }
+                        break;
+                    }
+
+                    try {
+                        int offset = 0;
+                        while (offset != n) {
+                            written += channel.write(b, offset, n - offset);
+                            while (offset != n && !b[offset].hasRemaining()) {
+                                offset++;
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        FolyamPlugins.handleFatal(ex);
+                        upstream.cancel();
+                        cleanup();
+                        error(ex);
+                        return;
+                    }
+
+                    for (int i = 0; i < n; i++) {
+                        b[i] = null;
+                    }
+
+                    upstream.request(n);
+                }
+
+                missed = (int)WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.schedulers.NioSchedulerService;
+import hu.akarnokd.reactive4javaflow.impl.util.SpscArrayQueue;
+
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.concurrent.Flow;
+import java.util.function.IntConsumer;
+
+/**
+ * Writes the ByteBuffers of the source into a non-blocking channel on the event loop of a
+ * {@link NioSchedulerService} and signals the total number of bytes written when the source completes.
+ * <p>
+ * When the channel can't take more bytes, {@link SelectionKey#OP_WRITE} is added to the interest set
+ * and no further buffers are requested from the source until the pending buffers are fully written,
+ * so a slow peer throttles the source through the TCP flow control. The channel is not closed by
+ * this operator.
+ */
+public final class EsetlegSocketChannelWrite extends Esetleg<Long> {
+
+    final Flow.Publisher<ByteBuffer> source;
+
+    final SocketChannel channel;
+
+    final NioSchedulerService loop;
+
+    final int prefetch;
+
+    public EsetlegSocketChannelWrite(Flow.Publisher<ByteBuffer> source, SocketChannel channel, NioSchedulerService loop, int prefetch) {
+        this.source = source;
+        this.channel = channel;
+        this.loop = loop;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super Long> s) {
+        SocketWriteSubscriber parent = new SocketWriteSubscriber(s, channel, loop, prefetch);
+        try {
+            channel.configureBlocking(false);
+            parent.registration = loop.register(channel, parent);
+        } catch (Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            EmptySubscription.error(s, ex);
+            return;
+        }
+        source.subscribe(parent);
+    }
+
+    static final class SocketWriteSubscriber extends DeferredScalarSubscription<Long>
+    implements FolyamSubscriber<ByteBuffer>, IntConsumer, Runnable {
+
+        private static final long serialVersionUID = 2745390307431767342L;
+
+        final SocketChannel channel;
+
+        final NioSchedulerService loop;
+
+        final int prefetch;
+
+        final int limit;
+
+        final SpscArrayQueue<ByteBuffer> queue;
+
+        NioSchedulerService.ChannelRegistration registration;
+
+        Flow.Subscription upstream;
+
+        volatile boolean done;
+        Throwable error;
+
+        int wip;
+        static final VarHandle WIP = VH.find(MethodHandles.lookup(), SocketWriteSubscriber.class, "wip", int.class);
+
+        /** Accessed from the event loop only. */
+        ByteBuffer current;
+
+        /** Accessed from the event loop only. */
+        long written;
+
+        /** Accessed from the event loop only. */
+        int consumed;
+
+        /** Accessed from the event loop only. */
+        boolean finished;
+
+        SocketWriteSubscriber(FolyamSubscriber<? super Long> actual, SocketChannel channel, NioSchedulerService loop, int prefetch) {
+            super(actual);
+            this.channel = channel;
+            this.loop = loop;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscArrayQueue<>(prefetch);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            if (!queue.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?!"));
+                return;
+            }
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            upstream.cancel();
+            registration.close();
+            schedule();
+        }
+
+        @Override
+        public void accept(int readyOps) {
+            registration.removeInterest(SelectionKey.OP_WRITE);
+            schedule();
+        }
+
+        void schedule() {
+            if ((int)WIP.getAndAdd(this, 1) == 0) {
+                if (loop.inEventLoop()) {
+                    run();
+                } else {
+                    loop.schedule(this);
+                }
+            }
+        }
+
+        void terminate(Throwable ex) {
+            finished = true;
+            registration.close();
+            if (ex != null) {
+                error(ex);
+            } else {
+                complete(written);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            SpscArrayQueue<ByteBuffer> q = queue;
+            SocketChannel ch = channel;
+
+            for (;;) {
+
+                for (;;) {
+                    if (finished || isCancelled()) {
+                        current = null;
+                        q.clear();
+                        break;
+                    }
+
+                    boolean d = done;
+                    if (d && error != null) {
+                        current = null;
+                        q.clear();
+                        terminate(error);
+                        break;
+                    }
+
+                    ByteBuffer b = current;
+                    if (b == null) {
+                        b = q.poll();
+                        if (b == null) {
+                            if (d) {
+                                terminate(null);
+                            }
+                            break;
+                        }
+                        current = b;
+                    }
+
+                    try {
+                        written += ch.write(b);
+                    } catch (Throwable ex) {
+                        FolyamPlugins.handleFatal(ex);
+                        upstream.cancel();
+                        current = null;
+                        q.clear();
+                        terminate(ex);
+                        break;
+                    }
+
+                    if (b.hasRemaining()) {
+                        // the socket buffer is full, continue when it drains
+                        registration.addInterest(SelectionKey.OP_WRITE);
+                        break;
+                    }
+
+                    current = null;
+
+                    int c = consumed + 1;
+                    if (c == limit) {
+                        consumed = 0;
+                        upstream.request(c);
+                    } else {
+                        consumed = c;
+                    }
+                }
+
+                missed = (int)WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -26,7 +26,7 @@ import java.lang.invoke.*;
 import java.lang.ref.Cleaner;
 import java.util.*;
 import java.util.concurrent.Flow;
-import java.util.concurrent.locks.*;
+import java.util.function.*;
 import java.util.stream.*;
 
 public final class FolyamBlockingIterable<T> implements Iterable<T> {
@@ -35,33 +35,49 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
 
     final int prefetch;
 
+    final WaitStrategy waitStrategy;
+
     public FolyamBlockingIterable(FolyamPublisher<T> source, int prefetch) {
+        this(source, prefetch, WaitStrategy.PARK);
+    }
+
+    public FolyamBlockingIterable(FolyamPublisher<T> source, int prefetch, WaitStrategy waitStrategy) {
         this.source = source;
         this.prefetch = prefetch;
+        this.waitStrategy = waitStrategy;
     }
 
     @Override
     public Iterator<T> iterator() {
-        BlockingIterator<T> parent = new BlockingIterator<>(prefetch);
+        BlockingIterator<T> parent = new BlockingIterator<>(prefetch, waitStrategy);
         source.subscribe(parent);
         return parent;
     }
 
     public static <T> Stream<T> toStream(FolyamPublisher<T> source, int prefetch, boolean parallel) {
-        BlockingIterator<T> parent = new BlockingIterator<>(prefetch);
+        return toStream(source, prefetch, parallel, WaitStrategy.PARK);
+    }
+
+    public static <T> Stream<T> toStream(FolyamPublisher<T> source, int prefetch, boolean parallel, WaitStrategy waitStrategy) {
+        BlockingIterator<T> parent = new BlockingIterator<>(prefetch, waitStrategy);
         source.subscribe(parent);
 
-        Spliterator<T> sp = Spliterators.spliterator(parent, 0, 0);
-        return StreamSupport.stream(sp, parallel).onClose(parent);
+        return StreamSupport.stream(parent, parallel).onClose(parent);
     }
 
-    static final class BlockingIterator<T> extends ReentrantLock implements FolyamSubscriber<T>, Iterator<T>, AutoDisposable, Runnable {
+    static final class BlockingIterator<T> implements FolyamSubscriber<T>, Iterator<T>, Spliterator<T>, AutoDisposable, Runnable {
+
+        static final int BATCH_UNIT = 1 << 10;
+
+        static final int MAX_BATCH = 1 << 25;
 
         final int prefetch;
 
         final int limit;
 
-        final Condition condition;
+        final BlockingWaiter waiter;
+
+        final BooleanSupplier ready;
 
         FusedQueue<T> queue;
         static final VarHandle QUEUE = VH.find(MethodHandles.lookup(), BlockingIterator.class, "queue", FusedQueue.class);
@@ -78,6 +94,8 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
         int consumed;
         long missed;
 
+        int batch;
+
         Flow.Subscription upstream;
         static final VarHandle UPSTREAM = VH.find(MethodHandles.lookup(), BlockingIterator.class, "upstream", Flow.Subscription.class);
 
@@ -89,10 +107,11 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
         Cleaner.Cleanable cleanable;
         static final VarHandle CLEANABLE = VH.find(MethodHandles.lookup(), BlockingIterator.class, "cleanable", Cleaner.Cleanable.class);
 
-        BlockingIterator(int prefetch) {
+        BlockingIterator(int prefetch, WaitStrategy waitStrategy) {
             this.prefetch = prefetch;
             this.limit = prefetch - (prefetch >> 2);
-            this.condition = newCondition();
+            this.waiter = new BlockingWaiter(waitStrategy);
+            this.ready = this::isReady;
             this.missed = 1;
         }
 
@@ -150,15 +169,14 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
 
         void signal() {
             if ((long)WIP.getAndAdd(this, 1) == 0) {
-                lock();
-                try {
-                    condition.signal();
-                } finally {
-                    unlock();
-                }
+                waiter.wakeUp();
             }
         }
 
+        boolean isReady() {
+            return (long)WIP.getVolatile(this) != 0L || (boolean)DONE.getVolatile(this);
+        }
+
         @Override
         public void onNext(T item) {
             if (item != null) {
@@ -189,6 +207,16 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
 
         @Override
         public boolean hasNext() {
+            return advance(true);
+        }
+
+        /**
+         * Makes the next item or error available in the iterator fields.
+         * @param block if true, waits for the next item or terminal event,
+         *              if false, returns false if there is no item available right now
+         * @return true if an item or error is available
+         */
+        boolean advance(boolean block) {
             if (!iteratorDone && iteratorItem == null && iteratorError == null) {
                 for (;;) {
                     boolean d = (boolean) DONE.getAcquire(this);
@@ -196,10 +224,7 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
                     try {
                         v = queue.poll();
                     } catch (Throwable ex) {
-                        iteratorDone = true;
-                        iteratorError = ex;
-                        tryClean();
-                        queue.clear();
+                        pollFailed(ex);
                         return true;
                     }
                     if (v == null) {
@@ -215,37 +240,26 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
                             tryClean();
                             return false;
                         }
+                        if (!block) {
+                            return false;
+                        }
                         long m = missed;
                         m = (long)WIP.getAndAdd(this, -m) - m;
                         missed = m;
                         if (m == 0L) {
-                            lock();
                             try {
-                                while ((long) WIP.getAcquire(this) == 0L && !(boolean) DONE.getAcquire(this)) {
-                                    condition.await();
-                                }
+                                waiter.await(ready);
                             } catch (InterruptedException ex) {
                                 iteratorError = ex;
                                 iteratorDone = true;
                                 close();
                                 tryClean();
                                 return true;
-                            } finally {
-                                unlock();
                             }
                         }
                     } else {
                         iteratorItem = v;
-                        if (sourceFused != FusedSubscription.SYNC) {
-                            int c = consumed;
-                            int lim = limit;
-                            if (++c == lim) {
-                                consumed = 0;
-                                upstream.request(lim);
-                            } else {
-                                consumed = c;
-                            }
-                        }
+                        consumedOne();
                         return true;
                     }
                 }
@@ -253,6 +267,26 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
             return iteratorItem != null || iteratorError != null;
         }
 
+        void pollFailed(Throwable ex) {
+            iteratorDone = true;
+            iteratorError = ex;
+            tryClean();
+            queue.clear();
+        }
+
+        void consumedOne() {
+            if (sourceFused != FusedSubscription.SYNC) {
+                int c = consumed;
+                int lim = limit;
+                if (++c == lim) {
+                    consumed = 0;
+                    upstream.request(lim);
+                } else {
+                    consumed = c;
+                }
+            }
+        }
+
         @Override
         public T next() {
             if (hasNext()) {
@@ -275,5 +309,67 @@ public final class FolyamBlockingIterable<T> implements Iterable<T> {
             }
             throw new NoSuchElementException();
         }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action, "action == null");
+            if (hasNext()) {
+                action.accept(next());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action, "action == null");
+            while (hasNext()) {
+                action.accept(next());
+
+                // drain whatever is already prefetched without the per-item handoff
+                FusedQueue<T> q = queue;
+                for (;;) {
+                    T v;
+                    try {
+                        v = q.poll();
+                    } catch (Throwable ex) {
+                        pollFailed(ex);
+                        break;
+                    }
+                    if (v == null) {
+                        break;
+                    }
+                    consumedOne();
+                    action.accept(v);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            // wait for the first item only, then hand off what has been prefetched so far
+            if (!hasNext() || iteratorError != null) {
+                return null;
+            }
+            int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+            Object[] a = new Object[n];
+            int j = 0;
+            do {
+                a[j++] = iteratorItem;
+                iteratorItem = null;
+            } while (j < n && advance(false) && iteratorError == null);
+            batch = j;
+            return Spliterators.spliterator(a, 0, j, Spliterator.ORDERED | Spliterator.NONNULL);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL;
+        }
     }
 }
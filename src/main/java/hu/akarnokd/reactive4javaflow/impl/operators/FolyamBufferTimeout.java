@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.SpscLinkedArrayQueue;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects items into batches that are emitted when they reach the maximum size
+ * or when the timeout elapses since their first item, whichever happens first.
+ * <p>
+ * The timer is armed by the first item of each batch and cancelled when the batch
+ * is emitted due to its size, so an idle source schedules nothing. Each batch has an
+ * index the timer task carries; a task firing for an already emitted batch is ignored,
+ * which resolves the race between the size and timeout flushes without locking.
+ * <p>
+ * A full or timed-out batch waits for downstream demand while the upstream is
+ * requested only as many items as fit into the next batch. The collection is created
+ * when the first item of a batch arrives, thus the supplier can hand out recycled
+ * containers the downstream has returned.
+ *
+ * @param <T> the element type
+ * @param <C> the collection type
+ */
+public final class FolyamBufferTimeout<T, C extends Collection<? super T>> extends Folyam<C> {
+
+    final Folyam<T> source;
+
+    final int maxSize;
+
+    final long timeout;
+
+    final TimeUnit unit;
+
+    final SchedulerService executor;
+
+    final Callable<C> collectionSupplier;
+
+    public FolyamBufferTimeout(Folyam<T> source, int maxSize, long timeout, TimeUnit unit, SchedulerService executor, Callable<C> collectionSupplier) {
+        this.source = source;
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        this.unit = unit;
+        this.executor = executor;
+        this.collectionSupplier = collectionSupplier;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super C> s) {
+        source.subscribe(new BufferTimeoutSubscriber<>(s, maxSize, timeout, unit, executor.worker(), collectionSupplier));
+    }
+
+    static final class BufferTimeoutSubscriber<T, C extends Collection<? super T>> extends AtomicInteger implements FolyamSubscriber<T>, Flow.Subscription {
+
+        private static final long serialVersionUID = 4785011618373497582L;
+
+        final FolyamSubscriber<? super C> actual;
+
+        final int maxSize;
+
+        final long timeout;
+
+        final TimeUnit unit;
+
+        final SchedulerService.Worker worker;
+
+        final Callable<C> collectionSupplier;
+
+        final SpscLinkedArrayQueue<T> queue;
+
+        final int limit;
+
+        Flow.Subscription upstream;
+
+        long requested;
+        static final VarHandle REQUESTED = VH.find(MethodHandles.lookup(), BufferTimeoutSubscriber.class, "requested", long.class);
+
+        long timedOut;
+        static final VarHandle TIMED_OUT = VH.find(MethodHandles.lookup(), BufferTimeoutSubscriber.class, "timedOut", long.class);
+
+        AutoDisposable timer;
+        static final VarHandle TIMER = VH.find(MethodHandles.lookup(), BufferTimeoutSubscriber.class, "timer", AutoDisposable.class);
+
+        volatile boolean cancelled;
+
+        boolean done;
+        static final VarHandle DONE = VH.find(MethodHandles.lookup(), BufferTimeoutSubscriber.class, "done", boolean.class);
+
+        Throwable error;
+
+        C buffer;
+
+        int count;
+
+        long index;
+
+        long emitted;
+
+        int consumed;
+
+        BufferTimeoutSubscriber(FolyamSubscriber<? super C> actual, int maxSize, long timeout, TimeUnit unit, SchedulerService.Worker worker, Callable<C> collectionSupplier) {
+            this.actual = actual;
+            this.maxSize = maxSize;
+            this.timeout = timeout;
+            this.unit = unit;
+            this.worker = worker;
+            this.collectionSupplier = collectionSupplier;
+            this.queue = new SpscLinkedArrayQueue<>(Math.min(maxSize, FolyamPlugins.defaultBufferSize()));
+            this.limit = maxSize - (maxSize >> 2);
+            this.index = 1L;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+            subscription.request(maxSize);
+        }
+
+        @Override
+        public void onNext(T item) {
+            queue.offer(item);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(this, REQUESTED, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            DisposableHelper.close(this, TIMER);
+            worker.close();
+            if (getAndIncrement() == 0) {
+                cleanup();
+            }
+        }
+
+        void cleanup() {
+            buffer = null;
+            QueueHelper.clear(queue);
+        }
+
+        void timeout(long idx) {
+            for (;;) {
+                long t = (long)TIMED_OUT.getAcquire(this);
+                // a late task of an earlier batch must not hide the current one's timeout
+                if (t >= idx || TIMED_OUT.compareAndSet(this, t, idx)) {
+                    break;
+                }
+            }
+            drain();
+        }
+
+        void terminate(Throwable ex) {
+            DisposableHelper.close(this, TIMER);
+            worker.close();
+            cleanup();
+            if (ex == null) {
+                actual.onComplete();
+            } else {
+                actual.onError(ex);
+            }
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            SpscLinkedArrayQueue<T> q = queue;
+            FolyamSubscriber<? super C> a = actual;
+            int m = maxSize;
+            int lim = limit;
+            long e = emitted;
+            int c = consumed;
+
+            for (;;) {
+
+                for (;;) {
+                    if (cancelled) {
+                        cleanup();
+                        return;
+                    }
+
+                    boolean d = (boolean)DONE.getAcquire(this);
+                    if (d) {
+                        Throwable ex = error;
+                        if (ex != null) {
+                            upstream.cancel();
+                            terminate(ex);
+                            return;
+                        }
+                    }
+
+                    C buf = buffer;
+                    int cnt = count;
+
+                    while (cnt < m) {
+                        T v = q.poll();
+                        if (v == null) {
+                            break;
+                        }
+                        if (buf == null) {
+                            try {
+                                buf = Objects.requireNonNull(collectionSupplier.call(), "The collectionSupplier returned a null collection");
+                            } catch (Throwable ex) {
+                                FolyamPlugins.handleFatal(ex);
+                                upstream.cancel();
+                                terminate(ex);
+                                return;
+                            }
+                            buffer = buf;
+                            long idx = index;
+                            DisposableHelper.update(this, TIMER, worker.schedule(() -> timeout(idx), timeout, unit));
+                        }
+                        buf.add(v);
+                        cnt++;
+
+                        if (++c == lim) {
+                            c = 0;
+                            upstream.request(lim);
+                        }
+                    }
+                    count = cnt;
+
+                    boolean empty = q.isEmpty();
+
+                    if (buf == null) {
+                        if (d && empty) {
+                            terminate(null);
+                            return;
+                        }
+                        break;
+                    }
+
+                    if (cnt != m && (long)TIMED_OUT.getAcquire(this) != index && !(d && empty)) {
+                        break;
+                    }
+
+                    if (e == (long)REQUESTED.getAcquire(this)) {
+                        break;
+                    }
+
+                    DisposableHelper.update(this, TIMER, null);
+                    index++;
+                    buffer = null;
+                    count = 0;
+
+                    a.onNext(buf);
+
+                    e++;
+                }
+
+                emitted = e;
+                consumed = c;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
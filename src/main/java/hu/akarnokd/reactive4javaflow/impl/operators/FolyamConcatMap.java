@@ -178,11 +178,14 @@ public final class FolyamConcatMap<T, R> extends Folyam<R> {
             int limit = prefetch - (prefetch >> 2);
 
             do {
-                if (cancelled) {
-                    queue.clear();
-                    return;
-                }
-                if (!active) {
+                for (;;) {
+                    if (cancelled) {
+                        queue.clear();
+                        return;
+                    }
+                    if (active) {
+                        break;
+                    }
                     boolean d = (boolean)DONE.getAcquire(this);
                     Flow.Publisher<? extends R> fp = null;
 
@@ -218,27 +221,52 @@ public final class FolyamConcatMap<T, R> extends Folyam<R> {
                         return;
                     }
 
-                    if (v != null) {
+                    if (v == null) {
+                        break;
+                    }
 
-                        if (fusionMode != FusedSubscription.SYNC) {
-                            int c = consumed + 1;
-                            if (c == limit) {
-                                consumed = 0;
-                                upstream.request(limit);
-                            } else {
-                                consumed = c;
-                            }
+                    if (fusionMode != FusedSubscription.SYNC) {
+                        int c = consumed + 1;
+                        if (c == limit) {
+                            consumed = 0;
+                            upstream.request(limit);
+                        } else {
+                            consumed = c;
                         }
+                    }
 
-                        long ip = inner.produced;
-                        if (ip != 0L) {
-                            inner.produced = 0L;
-                            arbiterProduced(ip);
-                        }
+                    long ip = inner.produced;
+                    if (ip != 0L) {
+                        inner.produced = 0L;
+                        arbiterProduced(ip);
+                    }
 
+                    if (fp instanceof FusedDynamicSource) {
+                        // scalar inner: take the value without subscribing, skip it if empty
+                        @SuppressWarnings("unchecked")
+                        FusedDynamicSource<R> fs = (FusedDynamicSource<R>) fp;
+                        R r;
+                        try {
+                            r = fs.value();
+                        } catch (Throwable throwable) {
+                            ExceptionHelper.addThrowable(this, ERROR, throwable);
+                            if (!delayError) {
+                                upstream.cancel();
+                                queue.clear();
+                                DONE.setRelease(this, true);
+                            }
+                            continue;
+                        }
+                        if (r == null) {
+                            continue;
+                        }
+                        ACTIVE.setRelease(this, true);
+                        inner.onSubscribe(new FolyamJust.JustSubscription<>(inner, r));
+                    } else {
                         ACTIVE.setRelease(this, true);
                         fp.subscribe(inner);
                     }
+                    break;
                 }
             } while ((int)WIP.getAndAdd(this, -1) - 1 != 0);
         }
@@ -0,0 +1,486 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.CheckedFunction;
+import hu.akarnokd.reactive4javaflow.fused.FusedQueue;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.*;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps each item to a Flow.Publisher and relays the inner items so that the inner
+ * sequences of the same key run one after the other, in upstream order, while the
+ * sequences of different keys run concurrently, up to a global limit.
+ * <p>
+ * A key is present only while it has a running inner sequence or queued items: its
+ * state, with the FIFO queue of its pending items, is created by its first item and
+ * released once its last inner sequence completes. The keys live in an
+ * {@link OpenHashTable}, which caches their hashes so probing doesn't call
+ * {@code hashCode} or {@code equals} on mismatching slots. Keys with pending items and
+ * no running inner wait in a ready queue until the concurrency limit allows them to start.
+ * <p>
+ * The upstream is replenished when an item is started, not when it is queued, thus the
+ * upstream queue and all key queues together hold at most {@code prefetch} items. When
+ * {@code maxKeys} keys are present, the upstream is not consumed until one is released.
+ *
+ * @param <T> the upstream value type
+ * @param <K> the key type
+ * @param <R> the result value type
+ */
+public final class FolyamConcatMapKeyed<T, K, R> extends Folyam<R> {
+
+    final Folyam<T> source;
+
+    final CheckedFunction<? super T, ? extends K> keySelector;
+
+    final CheckedFunction<? super T, ? extends Flow.Publisher<? extends R>> mapper;
+
+    final int maxConcurrency;
+
+    final int maxKeys;
+
+    final int prefetch;
+
+    public FolyamConcatMapKeyed(Folyam<T> source, CheckedFunction<? super T, ? extends K> keySelector,
+                                CheckedFunction<? super T, ? extends Flow.Publisher<? extends R>> mapper,
+                                int maxConcurrency, int maxKeys, int prefetch) {
+        this.source = source;
+        this.keySelector = keySelector;
+        this.mapper = mapper;
+        this.maxConcurrency = maxConcurrency;
+        this.maxKeys = maxKeys;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super R> s) {
+        source.subscribe(new ConcatMapKeyedSubscriber<>(s, keySelector, mapper, maxConcurrency, maxKeys, prefetch));
+    }
+
+    static final class ConcatMapKeyedSubscriber<T, K, R> extends AtomicInteger
+    implements FolyamSubscriber<T>, Flow.Subscription, QueuedFolyamSubscriberSupport<R> {
+
+        private static final long serialVersionUID = 7493105828836270813L;
+
+        final FolyamSubscriber<? super R> actual;
+
+        final CheckedFunction<? super T, ? extends K> keySelector;
+
+        final CheckedFunction<? super T, ? extends Flow.Publisher<? extends R>> mapper;
+
+        final int maxConcurrency;
+
+        final int maxKeys;
+
+        final int prefetch;
+
+        final int limit;
+
+        final SpscArrayQueue<T> queue;
+
+        final KeyTable<T> table;
+
+        final ArrayDeque<KeyState<T>> ready;
+
+        final ArrayList<QueuedInnerFolyamSubscriber<R>> inners;
+
+        final ArrayList<KeyState<T>> innerKeys;
+
+        Flow.Subscription upstream;
+
+        long requested;
+        static final VarHandle REQUESTED = VH.find(MethodHandles.lookup(), ConcatMapKeyedSubscriber.class, "requested", long.class);
+
+        boolean done;
+        static final VarHandle DONE = VH.find(MethodHandles.lookup(), ConcatMapKeyedSubscriber.class, "done", boolean.class);
+
+        Throwable error;
+        static final VarHandle ERROR = VH.find(MethodHandles.lookup(), ConcatMapKeyedSubscriber.class, "error", Throwable.class);
+
+        volatile boolean cancelled;
+
+        T held;
+
+        KeyState<T> heldKey;
+
+        long emitted;
+
+        int started;
+
+        int index;
+
+        ConcatMapKeyedSubscriber(FolyamSubscriber<? super R> actual, CheckedFunction<? super T, ? extends K> keySelector,
+                                 CheckedFunction<? super T, ? extends Flow.Publisher<? extends R>> mapper,
+                                 int maxConcurrency, int maxKeys, int prefetch) {
+            this.actual = actual;
+            this.keySelector = keySelector;
+            this.mapper = mapper;
+            this.maxConcurrency = maxConcurrency;
+            this.maxKeys = maxKeys;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscArrayQueue<>(prefetch);
+            this.table = new KeyTable<>(16);
+            this.ready = new ArrayDeque<>();
+            this.inners = new ArrayList<>();
+            this.innerKeys = new ArrayList<>();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (!queue.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?!"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (ERROR.compareAndSet(this, null, throwable)) {
+                DONE.setRelease(this, true);
+                drain();
+            } else {
+                FolyamPlugins.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(this, REQUESTED, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            if (getAndIncrement() == 0) {
+                cleanup();
+            }
+        }
+
+        @Override
+        public void innerError(QueuedInnerFolyamSubscriber<R> sender, int index, Throwable ex) {
+            if (ERROR.compareAndSet(this, null, ex)) {
+                sender.setDone();
+                upstream.cancel();
+                drain();
+            } else {
+                FolyamPlugins.onError(ex);
+            }
+        }
+
+        void cleanup() {
+            for (QueuedInnerFolyamSubscriber<R> inner : inners) {
+                inner.cancel();
+                inner.clear();
+            }
+            inners.clear();
+            innerKeys.clear();
+            ready.clear();
+            table.clear();
+            held = null;
+            heldKey = null;
+            queue.clear();
+        }
+
+        void fail(Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            upstream.cancel();
+            cleanup();
+            actual.onError(ex);
+        }
+
+        /**
+         * Queues upstream items into their key's queue until the upstream runs dry
+         * or {@code maxKeys} keys are present.
+         */
+        void enqueue() throws Throwable {
+            SpscArrayQueue<T> q = queue;
+            KeyTable<T> t = table;
+            for (;;) {
+                T v = held;
+                if (v == null) {
+                    v = q.poll();
+                    if (v == null) {
+                        return;
+                    }
+                    K key = Objects.requireNonNull(keySelector.apply(v), "The keySelector returned a null key");
+                    KeyState<T> ks = t.get(key);
+                    if (ks != null) {
+                        ks.pending.offer(v);
+                        continue;
+                    }
+                    held = v;
+                    heldKey = new KeyState<>(key);
+                }
+                if (t.size() == maxKeys) {
+                    return;
+                }
+                KeyState<T> ks = heldKey;
+                held = null;
+                heldKey = null;
+                ks.pending.offer(v);
+                t.put(ks);
+                ready.offer(ks);
+            }
+        }
+
+        /**
+         * Starts the first pending item of ready keys while the concurrency limit allows.
+         */
+        void start() throws Throwable {
+            ArrayDeque<KeyState<T>> rq = ready;
+            while (inners.size() < maxConcurrency) {
+                KeyState<T> ks = rq.poll();
+                if (ks == null) {
+                    break;
+                }
+                T v = ks.pending.poll();
+
+                if (++started == limit) {
+                    started = 0;
+                    upstream.request(limit);
+                }
+
+                Flow.Publisher<? extends R> p = Objects.requireNonNull(mapper.apply(v), "The mapper returned a null Flow.Publisher");
+                QueuedInnerFolyamSubscriber<R> inner = new QueuedInnerFolyamSubscriber<>(this, 0, prefetch);
+                inners.add(inner);
+                innerKeys.add(ks);
+                p.subscribe(inner);
+            }
+        }
+
+        /**
+         * Removes a finished inner and either queues its key for the next item
+         * or releases the key if it has no more items.
+         */
+        void finish(int i) {
+            inners.remove(i);
+            KeyState<T> ks = innerKeys.remove(i);
+            if (ks.pending.isEmpty()) {
+                table.remove(ks);
+            } else {
+                ready.offer(ks);
+            }
+        }
+
+        @Override
+        public void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            FolyamSubscriber<? super R> a = actual;
+            ArrayList<QueuedInnerFolyamSubscriber<R>> list = inners;
+            long e = emitted;
+
+            for (;;) {
+
+                for (;;) {
+                    if (cancelled) {
+                        cleanup();
+                        return;
+                    }
+
+                    Throwable ex = (Throwable)ERROR.getAcquire(this);
+                    if (ex != null) {
+                        cleanup();
+                        a.onError(ex);
+                        return;
+                    }
+
+                    boolean d = (boolean)DONE.getAcquire(this);
+
+                    try {
+                        enqueue();
+                        start();
+                    } catch (Throwable exc) {
+                        fail(exc);
+                        return;
+                    }
+
+                    int n = list.size();
+                    if (d && n == 0 && held == null && queue.isEmpty() && ready.isEmpty()) {
+                        cleanup();
+                        a.onComplete();
+                        return;
+                    }
+
+                    long r = (long)REQUESTED.getAcquire(this);
+                    boolean progress = false;
+
+                    int i = index;
+                    for (int k = 0; k < n; k++) {
+                        if (i >= list.size()) {
+                            i = 0;
+                        }
+                        QueuedInnerFolyamSubscriber<R> inner = list.get(i);
+
+                        for (;;) {
+                            if (cancelled) {
+                                cleanup();
+                                return;
+                            }
+                            boolean innerDone = inner.isDone();
+                            FusedQueue<R> q = inner.getQueue();
+                            R v = null;
+                            if (q != null) {
+                                if (e == r) {
+                                    if (innerDone && q.isEmpty()) {
+                                        finish(i);
+                                        progress = true;
+                                        i--;
+                                    }
+                                    break;
+                                }
+                                try {
+                                    v = q.poll();
+                                } catch (Throwable exc) {
+                                    fail(exc);
+                                    return;
+                                }
+                            }
+
+                            if (v == null) {
+                                if (innerDone) {
+                                    finish(i);
+                                    progress = true;
+                                    i--;
+                                }
+                                break;
+                            }
+
+                            a.onNext(v);
+                            e++;
+                            inner.request();
+                            progress = true;
+                        }
+                        i++;
+                    }
+                    index = i;
+
+                    if (!progress) {
+                        break;
+                    }
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    static final class KeyState<T> {
+
+        final Object key;
+
+        final int hash;
+
+        final ArrayDeque<T> pending;
+
+        KeyState(Object key) {
+            this.key = key;
+            this.hash = OpenHashTable.mix(key.hashCode());
+            this.pending = new ArrayDeque<>(4);
+        }
+    }
+
+    /**
+     * Open-addressing table of the present keys with their states
+     * in an array parallel to the keys.
+     */
+    static final class KeyTable<T> extends OpenHashTable {
+
+        KeyState<T>[] states;
+
+        @SuppressWarnings("unchecked")
+        KeyTable(int capacity) {
+            super(capacity);
+            this.states = new KeyState[keys().length];
+        }
+
+        KeyState<T> get(Object key) {
+            int pos = find(key, mix(key.hashCode()));
+            return pos < 0 ? null : states[pos];
+        }
+
+        void put(KeyState<T> ks) {
+            int pos = ~find(ks.key, ks.hash);
+            states[pos] = ks;
+            insert(ks.key, ks.hash, pos);
+        }
+
+        void remove(KeyState<T> ks) {
+            removeAt(find(ks.key, ks.hash));
+        }
+
+        @Override
+        protected void move(int from, int to) {
+            states[to] = states[from];
+        }
+
+        @Override
+        protected void clearValue(int pos) {
+            states[pos] = null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void resize(int[] moves, int capacity) {
+            KeyState<T>[] a = states;
+            KeyState<T>[] b = new KeyState[capacity];
+            for (int i = 0; i < a.length; i++) {
+                int pos = moves[i];
+                if (pos >= 0) {
+                    b[pos] = a[i];
+                }
+            }
+            this.states = b;
+        }
+
+        @Override
+        protected void clearValues() {
+            Arrays.fill(states, null);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.VH;
+
+import java.lang.invoke.*;
+import java.util.concurrent.*;
+
+/**
+ * Emits an item only if the given timeout elapsed without the source emitting
+ * another item.
+ * <p>
+ * The latest item and its deadline are kept in fields and a single timer task
+ * is armed by the first item of a burst. When the task runs before the deadline,
+ * because newer items moved it, it re-arms itself for the remaining time instead
+ * of the items cancelling and scheduling a timer each, so there is no allocation
+ * or scheduling per item.
+ *
+ * @param <T> the value type
+ */
+public final class FolyamDebounceTime<T> extends Folyam<T> {
+
+    final Folyam<T> source;
+
+    final long timeout;
+
+    final TimeUnit unit;
+
+    final SchedulerService executor;
+
+    public FolyamDebounceTime(Folyam<T> source, long timeout, TimeUnit unit, SchedulerService executor) {
+        this.source = source;
+        this.timeout = timeout;
+        this.unit = unit;
+        this.executor = executor;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super T> s) {
+        source.subscribe(new DebounceTimeSubscriber<>(s, unit.toNanos(timeout), executor));
+    }
+
+    static final class DebounceTimeSubscriber<T> implements FolyamSubscriber<T>, Flow.Subscription, Runnable {
+
+        final FolyamSubscriber<? super T> actual;
+
+        final long timeoutNanos;
+
+        final SchedulerService executor;
+
+        final SchedulerService.Worker worker;
+
+        Flow.Subscription upstream;
+
+        T latest;
+        static final VarHandle LATEST = VH.find(MethodHandles.lookup(), DebounceTimeSubscriber.class, "latest", Object.class);
+
+        long deadline;
+        static final VarHandle DEADLINE = VH.find(MethodHandles.lookup(), DebounceTimeSubscriber.class, "deadline", long.class);
+
+        boolean armed;
+        static final VarHandle ARMED = VH.find(MethodHandles.lookup(), DebounceTimeSubscriber.class, "armed", boolean.class);
+
+        boolean fired;
+        static final VarHandle FIRED = VH.find(MethodHandles.lookup(), DebounceTimeSubscriber.class, "fired", boolean.class);
+
+        int wip;
+        static final VarHandle WIP = VH.find(MethodHandles.lookup(), DebounceTimeSubscriber.class, "wip", int.class);
+
+        boolean done;
+        static final VarHandle DONE = VH.find(MethodHandles.lookup(), DebounceTimeSubscriber.class, "done", boolean.class);
+        Throwable error;
+
+        volatile boolean cancelled;
+
+        DebounceTimeSubscriber(FolyamSubscriber<? super T> actual, long timeoutNanos, SchedulerService executor) {
+            this.actual = actual;
+            this.timeoutNanos = timeoutNanos;
+            this.executor = executor;
+            this.worker = executor.worker();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T item) {
+            // the deadline is published before the item, see drain()
+            DEADLINE.setRelease(this, executor.now(TimeUnit.NANOSECONDS) + timeoutNanos);
+            if (LATEST.getAndSet(this, item) != null) {
+                // the replaced item won't be emitted
+                upstream.request(1L);
+            }
+            if (!(boolean)ARMED.getAcquire(this) && ARMED.compareAndSet(this, false, true)) {
+                worker.schedule(this, timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            worker.close();
+            drain();
+        }
+
+        @Override
+        public void run() {
+            FIRED.setRelease(this, true);
+            drain();
+        }
+
+        @SuppressWarnings("unchecked")
+        void drain() {
+            if ((int)WIP.getAndAdd(this, 1) != 0) {
+                return;
+            }
+
+            int missed = 1;
+            FolyamSubscriber<? super T> a = actual;
+
+            for (;;) {
+
+                if (cancelled) {
+                    LATEST.setRelease(this, null);
+                    return;
+                }
+
+                if ((boolean)DONE.getAcquire(this)) {
+                    worker.close();
+                    Throwable ex = error;
+                    T v = (T)LATEST.getAndSet(this, null);
+                    if (ex != null) {
+                        a.onError(ex);
+                    } else {
+                        if (v != null) {
+                            a.onNext(v);
+                        }
+                        a.onComplete();
+                    }
+                    return;
+                }
+
+                if ((boolean)FIRED.getAcquire(this)) {
+                    FIRED.setRelease(this, false);
+                    if (timeout(a)) {
+                        return;
+                    }
+                }
+
+                missed = (int)WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Handles the timer task: emits the latest item if its deadline passed,
+         * re-arms the task if the deadline has moved or disarms it if there is
+         * no item.
+         * @param a the downstream
+         * @return true if the sequence got cancelled
+         */
+        @SuppressWarnings("unchecked")
+        boolean timeout(FolyamSubscriber<? super T> a) {
+            for (;;) {
+                long dl = (long)DEADLINE.getAcquire(this);
+                long now = executor.now(TimeUnit.NANOSECONDS);
+                if (now < dl) {
+                    worker.schedule(this, dl - now, TimeUnit.NANOSECONDS);
+                    return false;
+                }
+
+                T v = (T)LATEST.getAndSet(this, null);
+                if (v != null) {
+                    if ((long)DEADLINE.getAcquire(this) != dl) {
+                        // a newer item arrived after the deadline was read: put it back, wait for its deadline
+                        if (!LATEST.compareAndSet(this, null, v)) {
+                            upstream.request(1L);
+                        }
+                        continue;
+                    }
+                    a.onNext(v);
+                    if (cancelled) {
+                        return true;
+                    }
+                }
+
+                // volatile store: it must not be reordered after the LATEST load below,
+                // an item that saw the task still armed wouldn't schedule it
+                ARMED.setVolatile(this, false);
+                if (LATEST.getAcquire(this) == null || !ARMED.compareAndSet(this, false, true)) {
+                    return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.*;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+/**
+ * Aggregates items per key into tumbling or hopping windows on the timestamps
+ * the items carry and emits the results of the windows a watermark advance closed
+ * as one list.
+ * <p>
+ * The watermark is the largest timestamp seen so far minus the allowed lateness, thus
+ * items may arrive out of order by at most that much. A window {@code [start, start + size)}
+ * closes once the watermark reaches its end; an item whose windows are all closed is
+ * late and is handed to the {@code onLate} handler. No timer or clock is
+ * involved, so a replayed history is aggregated as fast as it can be read.
+ * <p>
+ * Open windows are kept in an open-addressing table keyed by the key and the window start.
+ * The table is only swept when the watermark passes the earliest open window end; windows
+ * closed by the same advance are emitted in end order. The completion of the upstream
+ * closes all remaining windows.
+ *
+ * @param <T> the upstream value type
+ * @param <K> the key type
+ * @param <A> the accumulator type
+ * @param <R> the result type
+ */
+public final class FolyamEventTimeAggregate<T, K, A, R> extends Folyam<List<R>> {
+
+    final Folyam<T> source;
+
+    final ToLongFunction<? super T> timestampSelector;
+
+    final long allowedLateness;
+
+    final CheckedFunction<? super T, ? extends K> keySelector;
+
+    final Callable<? extends A> initialSupplier;
+
+    final CheckedBiFunction<A, ? super T, A> accumulator;
+
+    final CheckedWindowFunction<? super K, ? super A, ? extends R> finisher;
+
+    final long size;
+
+    final long slide;
+
+    final CheckedConsumer<? super T> onLate;
+
+    public FolyamEventTimeAggregate(Folyam<T> source, ToLongFunction<? super T> timestampSelector, long allowedLateness,
+                                    CheckedFunction<? super T, ? extends K> keySelector,
+                                    Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                    CheckedWindowFunction<? super K, ? super A, ? extends R> finisher,
+                                    long size, long slide, CheckedConsumer<? super T> onLate) {
+        this.source = source;
+        this.timestampSelector = timestampSelector;
+        this.allowedLateness = allowedLateness;
+        this.keySelector = keySelector;
+        this.initialSupplier = initialSupplier;
+        this.accumulator = accumulator;
+        this.finisher = finisher;
+        this.size = size;
+        this.slide = slide;
+        this.onLate = onLate;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super List<R>> s) {
+        source.subscribe(new EventTimeAggregateSubscriber<>(s, timestampSelector, allowedLateness, keySelector,
+                initialSupplier, accumulator, finisher, size, slide, onLate, FolyamPlugins.defaultBufferSize()));
+    }
+
+    static final class EventTimeAggregateSubscriber<T, K, A, R> extends AtomicInteger
+    implements FolyamSubscriber<T>, Flow.Subscription {
+
+        private static final long serialVersionUID = 6181093625401928465L;
+
+        final FolyamSubscriber<? super List<R>> actual;
+
+        final ToLongFunction<? super T> timestampSelector;
+
+        final long allowedLateness;
+
+        final CheckedFunction<? super T, ? extends K> keySelector;
+
+        final Callable<? extends A> initialSupplier;
+
+        final CheckedBiFunction<A, ? super T, A> accumulator;
+
+        final CheckedWindowFunction<? super K, ? super A, ? extends R> finisher;
+
+        final long size;
+
+        final long slide;
+
+        final CheckedConsumer<? super T> onLate;
+
+        final int prefetch;
+
+        final int limit;
+
+        final SpscLinkedArrayQueue<T> queue;
+
+        final WindowTable table;
+
+        Flow.Subscription upstream;
+
+        long requested;
+        static final VarHandle REQUESTED = VH.find(MethodHandles.lookup(), EventTimeAggregateSubscriber.class, "requested", long.class);
+
+        boolean done;
+        static final VarHandle DONE = VH.find(MethodHandles.lookup(), EventTimeAggregateSubscriber.class, "done", boolean.class);
+
+        Throwable error;
+
+        volatile boolean cancelled;
+
+        List<R> pending;
+
+        long watermark;
+
+        long earliestEnd;
+
+        long emitted;
+
+        int consumed;
+
+        EventTimeAggregateSubscriber(FolyamSubscriber<? super List<R>> actual, ToLongFunction<? super T> timestampSelector,
+                                     long allowedLateness, CheckedFunction<? super T, ? extends K> keySelector,
+                                     Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                     CheckedWindowFunction<? super K, ? super A, ? extends R> finisher,
+                                     long size, long slide, CheckedConsumer<? super T> onLate, int prefetch) {
+            this.actual = actual;
+            this.timestampSelector = timestampSelector;
+            this.allowedLateness = allowedLateness;
+            this.keySelector = keySelector;
+            this.initialSupplier = initialSupplier;
+            this.accumulator = accumulator;
+            this.finisher = finisher;
+            this.size = size;
+            this.slide = slide;
+            this.onLate = onLate;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscLinkedArrayQueue<>(prefetch);
+            this.table = new WindowTable(16);
+            this.watermark = Long.MIN_VALUE;
+            this.earliestEnd = Long.MAX_VALUE;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            queue.offer(item);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(this, REQUESTED, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            if (getAndIncrement() == 0) {
+                cleanup();
+            }
+        }
+
+        void cleanup() {
+            pending = null;
+            table.clear();
+            QueueHelper.clear(queue);
+        }
+
+        void fail(Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            upstream.cancel();
+            cleanup();
+            actual.onError(ex);
+        }
+
+        /**
+         * Adds the item to all windows it belongs to that are still open.
+         * @return false if the item was late for all of its windows
+         */
+        @SuppressWarnings("unchecked")
+        boolean accumulate(T item, long ts) throws Throwable {
+            long sz = size;
+            long sl = slide;
+            long wm = watermark;
+            long last = ts - Math.floorMod(ts, sl);
+            long first = last - ((sz - 1) / sl) * sl;
+
+            K key = null;
+            WindowTable t = table;
+            boolean added = false;
+
+            for (long start = first; start <= last; start += sl) {
+                long end = start + sz;
+                if (end <= wm || end <= ts) {
+                    continue;
+                }
+                if (key == null) {
+                    key = Objects.requireNonNull(keySelector.apply(item), "The keySelector returned a null key");
+                }
+                int i = t.find(key, start);
+                A acc;
+                if (i < 0) {
+                    acc = initialSupplier.call();
+                    i = t.insert(key, start, ~i);
+                    earliestEnd = Math.min(earliestEnd, end);
+                } else {
+                    acc = (A)t.accs[i];
+                }
+                t.accs[i] = Objects.requireNonNull(accumulator.apply(acc, item), "The accumulator returned a null value");
+                added = true;
+            }
+            return added;
+        }
+
+        @SuppressWarnings("unchecked")
+        void close(Object key, long start, Object acc) throws Throwable {
+            R r = Objects.requireNonNull(finisher.apply((K)key, start, (A)acc), "The finisher returned a null value");
+            List<R> p = pending;
+            if (p == null) {
+                p = new ArrayList<>();
+                pending = p;
+            }
+            p.add(r);
+        }
+
+        /**
+         * Closes the windows ending at or before the watermark, one end at a time so
+         * the results come out in end order.
+         * <p>
+         * Each round starts right after an empty slot so the backward shifts of the
+         * removals only move not yet visited entries into the current slot.
+         */
+        void sweep(long wm) throws Throwable {
+            WindowTable t = table;
+            long sz = size;
+            long end = earliestEnd;
+
+            while (end != Long.MAX_VALUE && end <= wm) {
+                Object[] keys = t.keys();
+                long[] starts = t.starts;
+                Object[] accs = t.accs;
+                int m = t.mask();
+
+                int first = 0;
+                while (keys[first] != null) {
+                    first++;
+                }
+
+                long next = Long.MAX_VALUE;
+                for (int j = 1; j <= m + 1; j++) {
+                    int i = (first + j) & m;
+                    Object k;
+                    while ((k = keys[i]) != null) {
+                        long s = starts[i];
+                        long e = s + sz;
+                        if (e != end) {
+                            next = Math.min(next, e);
+                            break;
+                        }
+                        Object acc = accs[i];
+                        t.removeAt(i);
+                        close(k, s, acc);
+                    }
+                }
+                end = next;
+            }
+            earliestEnd = end;
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            SpscLinkedArrayQueue<T> q = queue;
+            FolyamSubscriber<? super List<R>> a = actual;
+            int lim = limit;
+            long e = emitted;
+            int c = consumed;
+
+            for (;;) {
+
+                for (;;) {
+                    if (cancelled) {
+                        cleanup();
+                        return;
+                    }
+
+                    boolean d = (boolean)DONE.getAcquire(this);
+                    if (d) {
+                        Throwable ex = error;
+                        if (ex != null) {
+                            cleanup();
+                            a.onError(ex);
+                            return;
+                        }
+                    }
+
+                    List<R> p = pending;
+                    if (p != null) {
+                        if (e == (long)REQUESTED.getAcquire(this)) {
+                            break;
+                        }
+                        pending = null;
+                        a.onNext(p);
+                        e++;
+                        continue;
+                    }
+
+                    T v = q.poll();
+                    if (v == null) {
+                        if (d) {
+                            if (table.size() == 0) {
+                                cleanup();
+                                a.onComplete();
+                                return;
+                            }
+                            watermark = Long.MAX_VALUE;
+                            try {
+                                sweep(Long.MAX_VALUE);
+                            } catch (Throwable ex) {
+                                fail(ex);
+                                return;
+                            }
+                            continue;
+                        }
+                        break;
+                    }
+
+                    if (++c == lim) {
+                        c = 0;
+                        upstream.request(lim);
+                    }
+
+                    long ts;
+                    try {
+                        ts = timestampSelector.applyAsLong(v);
+                        if (!accumulate(v, ts)) {
+                            onLate.accept(v);
+                        }
+                    } catch (Throwable ex) {
+                        fail(ex);
+                        return;
+                    }
+
+                    long wm = ts - allowedLateness;
+                    if (wm > watermark) {
+                        watermark = wm;
+                        if (wm >= earliestEnd) {
+                            try {
+                                sweep(wm);
+                            } catch (Throwable ex) {
+                                fail(ex);
+                                return;
+                            }
+                        }
+                    }
+                }
+
+                emitted = e;
+                consumed = c;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open-addressing table keyed by a key and a window start, with the
+     * window starts and accumulators in arrays parallel to the keys.
+     */
+    static final class WindowTable extends OpenHashTable {
+
+        long[] starts;
+
+        Object[] accs;
+
+        WindowTable(int capacity) {
+            super(capacity);
+            int c = keys().length;
+            this.starts = new long[c];
+            this.accs = new Object[c];
+        }
+
+        static int hash(Object key, long start) {
+            return mix(key.hashCode() * 31 + Long.hashCode(start));
+        }
+
+        /**
+         * Returns the slot of the window or the bitwise complement of the
+         * free slot it should be inserted into.
+         */
+        int find(Object key, long start) {
+            return find(key, hash(key, start), start);
+        }
+
+        int insert(Object key, long start, int pos) {
+            starts[pos] = start;
+            return insert(key, hash(key, start), pos);
+        }
+
+        @Override
+        protected boolean matches(int pos, Object key, long tag) {
+            return starts[pos] == tag && super.matches(pos, key, tag);
+        }
+
+        @Override
+        protected void move(int from, int to) {
+            starts[to] = starts[from];
+            accs[to] = accs[from];
+        }
+
+        @Override
+        protected void clearValue(int pos) {
+            accs[pos] = null;
+        }
+
+        @Override
+        protected void resize(int[] moves, int capacity) {
+            long[] s = starts;
+            Object[] b = accs;
+            long[] ns = new long[capacity];
+            Object[] nb = new Object[capacity];
+            for (int i = 0; i < s.length; i++) {
+                int pos = moves[i];
+                if (pos >= 0) {
+                    ns[pos] = s[i];
+                    nb[pos] = b[i];
+                }
+            }
+            this.starts = ns;
+            this.accs = nb;
+        }
+
+        @Override
+        protected void clearValues() {
+            Arrays.fill(accs, null);
+        }
+    }
+}
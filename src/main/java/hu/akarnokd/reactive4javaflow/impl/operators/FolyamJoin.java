@@ -0,0 +1,451 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.*;
+import hu.akarnokd.reactive4javaflow.fused.FusedQueue;
+import hu.akarnokd.reactive4javaflow.impl.*;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Joins the items of two sources whose keys match and that arrived within a time
+ * window of each other, or that are among the most recent items of their side.
+ * <p>
+ * Each side keeps a hash index from key to the chain of its retained items, in arrival
+ * order, plus an arrival-order list over all keys. The oldest item of the list is thus
+ * also the oldest of its key, which lets the expired items be evicted in one batch from
+ * the head of the list before each new item is indexed, without scanning.
+ * <p>
+ * An item taken from either side is first indexed, then combined with every retained
+ * item of the other side having the same key. The next input item is taken only
+ * after all these pairs have been emitted, thus the downstream demand limits how
+ * many items are requested from both sources. The output completes once a side has
+ * completed and none of its items are retained or queued anymore.
+ *
+ * @param <T> the left value type
+ * @param <U> the right value type
+ * @param <K> the key type
+ * @param <R> the result type
+ */
+public final class FolyamJoin<T, U, K, R> extends Folyam<R> {
+
+    final Folyam<T> source;
+
+    final Flow.Publisher<? extends U> other;
+
+    final CheckedFunction<? super T, ? extends K> leftKey;
+
+    final CheckedFunction<? super U, ? extends K> rightKey;
+
+    final CheckedBiFunction<? super T, ? super U, ? extends R> combiner;
+
+    final long window;
+
+    final TimeUnit unit;
+
+    final SchedulerService executor;
+
+    final int maxSize;
+
+    final int prefetch;
+
+    public FolyamJoin(Folyam<T> source, Flow.Publisher<? extends U> other,
+                      CheckedFunction<? super T, ? extends K> leftKey, CheckedFunction<? super U, ? extends K> rightKey,
+                      CheckedBiFunction<? super T, ? super U, ? extends R> combiner,
+                      long window, TimeUnit unit, SchedulerService executor, int maxSize, int prefetch) {
+        this.source = source;
+        this.other = other;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+        this.combiner = combiner;
+        this.window = window;
+        this.unit = unit;
+        this.executor = executor;
+        this.maxSize = maxSize;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super R> s) {
+        long windowNanos = executor != null ? unit.toNanos(window) : 0L;
+        JoinCoordinator<T, U, K, R> parent = new JoinCoordinator<>(s, leftKey, rightKey, combiner, windowNanos, executor, maxSize, prefetch);
+        s.onSubscribe(parent);
+        parent.subscribe(source, other);
+    }
+
+    static final class JoinCoordinator<T, U, K, R> extends AtomicInteger
+    implements Flow.Subscription, QueuedFolyamSubscriberSupport<Object> {
+
+        private static final long serialVersionUID = 2951372040671350712L;
+
+        final FolyamSubscriber<? super R> actual;
+
+        final CheckedFunction<? super T, ? extends K> leftKey;
+
+        final CheckedFunction<? super U, ? extends K> rightKey;
+
+        final CheckedBiFunction<? super T, ? super U, ? extends R> combiner;
+
+        final long windowNanos;
+
+        final SchedulerService executor;
+
+        final int maxSize;
+
+        final QueuedInnerFolyamSubscriber<Object> left;
+
+        final QueuedInnerFolyamSubscriber<Object> right;
+
+        final JoinIndex leftIndex;
+
+        final JoinIndex rightIndex;
+
+        long requested;
+        static final VarHandle REQUESTED = VH.find(MethodHandles.lookup(), JoinCoordinator.class, "requested", long.class);
+
+        Throwable error;
+        static final VarHandle ERROR = VH.find(MethodHandles.lookup(), JoinCoordinator.class, "error", Throwable.class);
+
+        volatile boolean cancelled;
+
+        long emitted;
+
+        boolean nextRight;
+
+        Object current;
+
+        boolean currentLeft;
+
+        JoinEntry cursor;
+
+        JoinCoordinator(FolyamSubscriber<? super R> actual, CheckedFunction<? super T, ? extends K> leftKey,
+                        CheckedFunction<? super U, ? extends K> rightKey,
+                        CheckedBiFunction<? super T, ? super U, ? extends R> combiner,
+                        long windowNanos, SchedulerService executor, int maxSize, int prefetch) {
+            this.actual = actual;
+            this.leftKey = leftKey;
+            this.rightKey = rightKey;
+            this.combiner = combiner;
+            this.windowNanos = windowNanos;
+            this.executor = executor;
+            this.maxSize = maxSize;
+            this.left = new QueuedInnerFolyamSubscriber<>(this, 0, prefetch);
+            this.right = new QueuedInnerFolyamSubscriber<>(this, 1, prefetch);
+            this.leftIndex = new JoinIndex();
+            this.rightIndex = new JoinIndex();
+        }
+
+        @SuppressWarnings("unchecked")
+        void subscribe(Flow.Publisher<? extends T> source, Flow.Publisher<? extends U> other) {
+            ((Flow.Publisher<Object>)source).subscribe(left);
+            ((Flow.Publisher<Object>)other).subscribe(right);
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(this, REQUESTED, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            left.cancel();
+            right.cancel();
+            if (getAndIncrement() == 0) {
+                cleanup();
+            }
+        }
+
+        @Override
+        public void innerError(QueuedInnerFolyamSubscriber<Object> sender, int index, Throwable ex) {
+            if (ERROR.compareAndSet(this, null, ex)) {
+                sender.setDone();
+                (index == 0 ? right : left).cancel();
+                drain();
+            } else {
+                FolyamPlugins.onError(ex);
+            }
+        }
+
+        void cleanup() {
+            current = null;
+            cursor = null;
+            left.clear();
+            right.clear();
+            leftIndex.clear();
+            rightIndex.clear();
+        }
+
+        void fail(Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            left.cancel();
+            right.cancel();
+            cleanup();
+            actual.onError(ex);
+        }
+
+        @SuppressWarnings("unchecked")
+        void process(Object v, boolean isLeft) throws Throwable {
+            JoinIndex own = isLeft ? leftIndex : rightIndex;
+            JoinIndex opposite = isLeft ? rightIndex : leftIndex;
+
+            long now = 0L;
+            SchedulerService exec = executor;
+            if (exec != null) {
+                now = exec.now(TimeUnit.NANOSECONDS);
+                long limit = now - windowNanos;
+                own.evictUntil(limit);
+                opposite.evictUntil(limit);
+            }
+
+            Object key;
+            if (isLeft) {
+                key = Objects.requireNonNull(leftKey.apply((T)v), "The leftKey returned a null key");
+            } else {
+                key = Objects.requireNonNull(rightKey.apply((U)v), "The rightKey returned a null key");
+            }
+
+            own.add(key, v, now);
+            if (own.size > maxSize) {
+                own.removeFirst();
+            }
+
+            JoinEntry c = opposite.first(key);
+            if (c != null) {
+                current = v;
+                currentLeft = isLeft;
+                cursor = c;
+            }
+        }
+
+        static boolean isEmpty(QueuedInnerFolyamSubscriber<Object> inner) {
+            FusedQueue<Object> q = inner.getQueue();
+            return q == null || q.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            FolyamSubscriber<? super R> a = actual;
+            QueuedInnerFolyamSubscriber<Object> ls = left;
+            QueuedInnerFolyamSubscriber<Object> rs = right;
+            long e = emitted;
+
+            for (;;) {
+
+                long r = (long)REQUESTED.getAcquire(this);
+
+                for (;;) {
+                    if (cancelled) {
+                        cleanup();
+                        return;
+                    }
+
+                    Throwable ex = (Throwable)ERROR.getAcquire(this);
+                    if (ex != null) {
+                        cleanup();
+                        a.onError(ex);
+                        return;
+                    }
+
+                    JoinEntry c = cursor;
+                    if (c != null) {
+                        if (e == r) {
+                            break;
+                        }
+                        Object v = current;
+                        cursor = c.nextSameKey;
+
+                        R result;
+                        try {
+                            if (currentLeft) {
+                                result = Objects.requireNonNull(combiner.apply((T)v, (U)c.value), "The combiner returned a null value");
+                            } else {
+                                result = Objects.requireNonNull(combiner.apply((T)c.value, (U)v), "The combiner returned a null value");
+                            }
+                        } catch (Throwable exc) {
+                            fail(exc);
+                            return;
+                        }
+
+                        if (cursor == null) {
+                            current = null;
+                        }
+
+                        a.onNext(result);
+                        e++;
+                        continue;
+                    }
+
+                    boolean ld = ls.isDone();
+                    boolean rd = rs.isDone();
+
+                    if ((ld && leftIndex.size == 0 && isEmpty(ls)) || (rd && rightIndex.size == 0 && isEmpty(rs))) {
+                        // nothing is left on that side to pair up with
+                        ls.cancel();
+                        rs.cancel();
+                        cleanup();
+                        a.onComplete();
+                        return;
+                    }
+
+                    boolean takeRight = nextRight;
+                    Object v = null;
+                    try {
+                        for (int k = 0; k < 2; k++) {
+                            FusedQueue<Object> q = (takeRight ? rs : ls).getQueue();
+                            if (q != null) {
+                                v = q.poll();
+                                if (v != null) {
+                                    break;
+                                }
+                            }
+                            takeRight = !takeRight;
+                        }
+                    } catch (Throwable exc) {
+                        fail(exc);
+                        return;
+                    }
+
+                    if (v == null) {
+                        if (ld && rd) {
+                            cleanup();
+                            a.onComplete();
+                            return;
+                        }
+                        break;
+                    }
+
+                    nextRight = !takeRight;
+                    (takeRight ? rs : ls).request();
+
+                    try {
+                        process(v, !takeRight);
+                    } catch (Throwable exc) {
+                        fail(exc);
+                        return;
+                    }
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    static final class JoinEntry {
+
+        final Object key;
+
+        final Object value;
+
+        final long time;
+
+        JoinEntry nextSameKey;
+
+        JoinEntry next;
+
+        JoinEntry(Object key, Object value, long time) {
+            this.key = key;
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The retained items of one side; the map holds the oldest and newest
+     * entry of each key's chain.
+     */
+    static final class JoinIndex {
+
+        final HashMap<Object, JoinEntry[]> chains = new HashMap<>();
+
+        JoinEntry head;
+
+        JoinEntry tail;
+
+        int size;
+
+        void add(Object key, Object value, long time) {
+            JoinEntry e = new JoinEntry(key, value, time);
+            JoinEntry[] chain = chains.get(key);
+            if (chain == null) {
+                chains.put(key, new JoinEntry[] { e, e });
+            } else {
+                chain[1].nextSameKey = e;
+                chain[1] = e;
+            }
+            JoinEntry t = tail;
+            if (t == null) {
+                head = e;
+            } else {
+                t.next = e;
+            }
+            tail = e;
+            size++;
+        }
+
+        JoinEntry first(Object key) {
+            JoinEntry[] chain = chains.get(key);
+            return chain != null ? chain[0] : null;
+        }
+
+        void removeFirst() {
+            JoinEntry e = head;
+            head = e.next;
+            if (head == null) {
+                tail = null;
+            }
+            JoinEntry[] chain = chains.get(e.key);
+            JoinEntry n = e.nextSameKey;
+            if (n == null) {
+                chains.remove(e.key);
+            } else {
+                chain[0] = n;
+            }
+            size--;
+        }
+
+        void evictUntil(long limit) {
+            JoinEntry e;
+            while ((e = head) != null && e.time <= limit) {
+                removeFirst();
+            }
+        }
+
+        void clear() {
+            chains.clear();
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+}
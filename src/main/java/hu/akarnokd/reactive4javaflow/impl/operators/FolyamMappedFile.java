@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+
+import java.io.IOException;
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps a file window by window, on demand, and emits each window
+ * as a read-only ByteBuffer without copying its contents.
+ * <p>
+ * The file channel is closed when the last window has been emitted, when
+ * the mapping fails or when the sequence gets cancelled. The mapped memory of a
+ * window is released once the emitted buffer and all its slices become unreachable;
+ * it is not unmapped forcibly because downstream may still read the buffers
+ * on some other thread.
+ */
+public final class FolyamMappedFile extends Folyam<ByteBuffer> {
+
+    final Path path;
+
+    final int windowSize;
+
+    public FolyamMappedFile(Path path, int windowSize) {
+        this.path = path;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super ByteBuffer> s) {
+        FileChannel channel;
+        long size;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (Throwable ex) {
+            EmptySubscription.error(s, ex);
+            return;
+        }
+        try {
+            size = channel.size();
+        } catch (Throwable ex) {
+            closeSilently(channel);
+            EmptySubscription.error(s, ex);
+            return;
+        }
+
+        if (size == 0L) {
+            closeSilently(channel);
+            EmptySubscription.complete(s);
+            return;
+        }
+
+        s.onSubscribe(new MappedFileSubscription(s, channel, size, windowSize));
+    }
+
+    static void closeSilently(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            FolyamPlugins.onError(ex);
+        }
+    }
+
+    static final class MappedFileSubscription extends AtomicLong implements Flow.Subscription {
+
+        final FolyamSubscriber<? super ByteBuffer> actual;
+
+        final long size;
+
+        final int windowSize;
+
+        FileChannel channel;
+        static final VarHandle CHANNEL = VH.find(MethodHandles.lookup(), MappedFileSubscription.class, "channel", FileChannel.class);
+
+        long position;
+
+        volatile boolean cancelled;
+
+        MappedFileSubscription(FolyamSubscriber<? super ByteBuffer> actual, FileChannel channel, long size, int windowSize) {
+            this.actual = actual;
+            this.channel = channel;
+            this.size = size;
+            this.windowSize = windowSize;
+        }
+
+        void closeChannel() {
+            FileChannel c = (FileChannel)CHANNEL.getAcquire(this);
+            if (c != null) {
+                c = (FileChannel)CHANNEL.getAndSet(this, null);
+                if (c != null) {
+                    closeSilently(c);
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (SubscriptionHelper.addRequested(this, n) == 0L) {
+                drain(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            closeChannel();
+        }
+
+        void drain(long n) {
+            FolyamSubscriber<? super ByteBuffer> a = actual;
+            long pos = position;
+            long end = size;
+            long e = 0L;
+
+            for (;;) {
+
+                while (e != n) {
+                    if (cancelled) {
+                        return;
+                    }
+
+                    FileChannel c = (FileChannel)CHANNEL.getAcquire(this);
+                    if (c == null) {
+                        return;
+                    }
+
+                    long len = Math.min(windowSize, end - pos);
+                    ByteBuffer b;
+                    try {
+                        b = c.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                    } catch (Throwable ex) {
+                        FolyamPlugins.handleFatal(ex);
+                        if (!cancelled) {
+                            closeChannel();
+                            a.onError(ex);
+                        }
+                        return;
+                    }
+
+                    pos += len;
+
+                    a.onNext(b);
+
+                    if (pos == end) {
+                        if (!cancelled) {
+                            closeChannel();
+                            a.onComplete();
+                        }
+                        return;
+                    }
+
+                    e++;
+                }
+
+                n = getAcquire();
+                if (e == n) {
+                    position = pos;
+                    n = addAndGet(-e);
+                    if (n == 0L) {
+                        break;
+                    }
+                    e = 0L;
+                }
+            }
+        }
+    }
+}
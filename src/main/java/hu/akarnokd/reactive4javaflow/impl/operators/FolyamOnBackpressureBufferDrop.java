@@ -166,8 +166,8 @@ public final class FolyamOnBackpressureBufferDrop<T> extends Folyam<T> {
         }
 
         @Override
-        public final synchronized void clear() {
-            queue.clear();
+        public final void clear() {
+            clear(queue);
         }
 
         final void drain() {
@@ -180,8 +180,26 @@ public final class FolyamOnBackpressureBufferDrop<T> extends Folyam<T> {
             }
         }
 
-        final synchronized void clear(ArrayDeque q) {
-            q.clear();
+        /**
+         * Clears the queue and hands the items to the drop handler, so
+         * resources they hold are released on cancellation too.
+         */
+        final void clear(ArrayDeque<T> q) {
+            for (;;) {
+                T v;
+                synchronized (this) {
+                    v = q.poll();
+                }
+                if (v == null) {
+                    break;
+                }
+                try {
+                    onDrop.accept(v);
+                } catch (Throwable ex) {
+                    FolyamPlugins.handleFatal(ex);
+                    FolyamPlugins.onError(ex);
+                }
+            }
         }
 
         abstract void drainFused();
@@ -98,7 +98,20 @@ public final class FolyamOnBackpressureLatest<T> extends Folyam<T> {
             cancelled = true;
             upstream.cancel();
             if (getAndIncrement() == 0) {
-                VALUE.setRelease(this, null);
+                dropValue();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        final void dropValue() {
+            T v = (T)VALUE.getAndSet(this, null);
+            if (v != null) {
+                try {
+                    onDrop.accept(v);
+                } catch (Throwable ex) {
+                    FolyamPlugins.handleFatal(ex);
+                    FolyamPlugins.onError(ex);
+                }
             }
         }
 
@@ -166,7 +179,7 @@ public final class FolyamOnBackpressureLatest<T> extends Folyam<T> {
 
                 for (;;) {
                     if (cancelled) {
-                        VALUE.setRelease(this, null);
+                        dropValue();
                         return;
                     }
 
@@ -231,7 +244,7 @@ public final class FolyamOnBackpressureLatest<T> extends Folyam<T> {
 
                 for (;;) {
                     if (cancelled) {
-                        VALUE.setRelease(this, null);
+                        dropValue();
                         return;
                     }
 
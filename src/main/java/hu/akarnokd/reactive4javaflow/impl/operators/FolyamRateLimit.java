@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
+import hu.akarnokd.reactive4javaflow.impl.*;
+
+import java.lang.invoke.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the rate of items by requesting from the upstream only as many items as
+ * tokens could be taken from a {@link RateLimiter}, thus the backpressure reaches the
+ * source and the items pass through without any queueing.
+ * <p>
+ * If the downstream wants more than the tokens available, a timer is armed for the
+ * time when half the burst, or the remaining demand if smaller, will be available;
+ * no timer runs while there is no outstanding demand or tokens suffice.
+ *
+ * @param <T> the value type
+ */
+public final class FolyamRateLimit<T> extends Folyam<T> {
+
+    final Folyam<T> source;
+
+    final RateLimiter limiter;
+
+    public FolyamRateLimit(Folyam<T> source, RateLimiter limiter) {
+        this.source = source;
+        this.limiter = limiter;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super T> s) {
+        source.subscribe(new RateLimitSubscriber<>(s, limiter, limiter.executor().worker()));
+    }
+
+    static final class RateLimitSubscriber<T> extends AtomicInteger implements FolyamSubscriber<T>, Flow.Subscription, Runnable {
+
+        private static final long serialVersionUID = -5404938587532813960L;
+
+        final FolyamSubscriber<? super T> actual;
+
+        final RateLimiter limiter;
+
+        final SchedulerService.Worker worker;
+
+        final long batch;
+
+        Flow.Subscription upstream;
+
+        long requested;
+        static final VarHandle REQUESTED = VH.find(MethodHandles.lookup(), RateLimitSubscriber.class, "requested", long.class);
+
+        boolean waiting;
+        static final VarHandle WAITING = VH.find(MethodHandles.lookup(), RateLimitSubscriber.class, "waiting", boolean.class);
+
+        AutoDisposable timer;
+        static final VarHandle TIMER = VH.find(MethodHandles.lookup(), RateLimitSubscriber.class, "timer", AutoDisposable.class);
+
+        volatile boolean cancelled;
+
+        RateLimitSubscriber(FolyamSubscriber<? super T> actual, RateLimiter limiter, SchedulerService.Worker worker) {
+            this.actual = actual;
+            this.limiter = limiter;
+            this.worker = worker;
+            this.batch = Math.max(1, limiter.burst() >> 1);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T item) {
+            actual.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            DisposableHelper.close(this, TIMER);
+            worker.close();
+            actual.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            DisposableHelper.close(this, TIMER);
+            worker.close();
+            actual.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(this, REQUESTED, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            DisposableHelper.close(this, TIMER);
+            worker.close();
+        }
+
+        @Override
+        public void run() {
+            WAITING.setRelease(this, false);
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            RateLimiter rl = limiter;
+
+            for (;;) {
+                if (cancelled) {
+                    return;
+                }
+
+                long r = (long)REQUESTED.getAcquire(this);
+                if (r != 0L) {
+                    long k = rl.tryAcquire(r);
+                    if (k != 0L) {
+                        if (r != Long.MAX_VALUE) {
+                            r = (long)REQUESTED.getAndAdd(this, -k) - k;
+                        }
+                        upstream.request(k);
+                    }
+
+                    if (r != 0L && !(boolean)WAITING.getAcquire(this)) {
+                        WAITING.setRelease(this, true);
+                        long delay = rl.timeUntilAvailable(Math.min(r, batch), TimeUnit.NANOSECONDS);
+                        DisposableHelper.replace(this, TIMER, worker.schedule(this, delay, TimeUnit.NANOSECONDS));
+                    }
+                }
+
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
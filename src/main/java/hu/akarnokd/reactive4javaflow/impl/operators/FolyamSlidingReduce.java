@@ -0,0 +1,514 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.CheckedBiFunction;
+import hu.akarnokd.reactive4javaflow.impl.EmptySubscription;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Emits, for each source item, the aggregate of the items in the sliding window
+ * ending with that item, where the window is bounded by an item count or by
+ * the age of the items.
+ * <p>
+ * The windows don't re-aggregate their content on each slide: an associative
+ * combiner is evaluated with the two-stack algorithm and an invertible combiner
+ * keeps a running aggregate, both costing amortized O(1) combiner calls per item.
+ * The first items produce aggregates of partial windows.
+ *
+ * @param <T> the source value type
+ * @param <R> the aggregate type
+ */
+public final class FolyamSlidingReduce<T, R> extends Folyam<R> {
+
+    final Folyam<T> source;
+
+    final int size;
+
+    final long maxAge;
+
+    final TimeUnit unit;
+
+    final SchedulerService executor;
+
+    final Callable<? extends SlidingWindow<T, R>> windowSupplier;
+
+    /**
+     * Constructs a sliding aggregation.
+     * @param source the source Folyam
+     * @param size the maximum number of items in a window
+     * @param maxAge the maximum age of the items in a window, ignored if executor is null
+     * @param unit the time unit of maxAge
+     * @param executor the time source, null for count-bound windows
+     * @param windowSupplier the window implementation
+     */
+    public FolyamSlidingReduce(Folyam<T> source, int size, long maxAge, TimeUnit unit, SchedulerService executor, Callable<? extends SlidingWindow<T, R>> windowSupplier) {
+        this.source = source;
+        this.size = size;
+        this.maxAge = maxAge;
+        this.unit = unit;
+        this.executor = executor;
+        this.windowSupplier = windowSupplier;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super R> s) {
+        SlidingWindow<T, R> w;
+        try {
+            w = Objects.requireNonNull(windowSupplier.call(), "The windowSupplier returned a null SlidingWindow");
+        } catch (Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            EmptySubscription.error(s, ex);
+            return;
+        }
+        source.subscribe(new SlidingReduceSubscriber<>(s, w, size, executor != null ? unit.toNanos(maxAge) : 0L, executor));
+    }
+
+    /**
+     * The window state: a FIFO of items with their arrival times that
+     * can tell the aggregate of its content.
+     * @param <T> the item type
+     * @param <R> the aggregate type
+     */
+    public interface SlidingWindow<T, R> {
+
+        void add(T item, long time) throws Throwable;
+
+        void removeOldest() throws Throwable;
+
+        long oldestTime();
+
+        int size();
+
+        R aggregate() throws Throwable;
+    }
+
+    static final class SlidingReduceSubscriber<T, R> implements FolyamSubscriber<T>, Flow.Subscription {
+
+        final FolyamSubscriber<? super R> actual;
+
+        final SlidingWindow<T, R> window;
+
+        final int size;
+
+        final long maxAgeNanos;
+
+        final SchedulerService executor;
+
+        Flow.Subscription upstream;
+
+        boolean done;
+
+        SlidingReduceSubscriber(FolyamSubscriber<? super R> actual, SlidingWindow<T, R> window, int size, long maxAgeNanos, SchedulerService executor) {
+            this.actual = actual;
+            this.window = window;
+            this.size = size;
+            this.maxAgeNanos = maxAgeNanos;
+            this.executor = executor;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            SlidingWindow<T, R> w = window;
+            R r;
+            try {
+                SchedulerService exec = executor;
+                long now = exec != null ? exec.now(TimeUnit.NANOSECONDS) : 0L;
+                w.add(item, now);
+                int s = size;
+                while (w.size() > s) {
+                    w.removeOldest();
+                }
+                if (exec != null) {
+                    long limit = now - maxAgeNanos;
+                    while (w.size() > 1 && w.oldestTime() <= limit) {
+                        w.removeOldest();
+                    }
+                }
+                r = Objects.requireNonNull(w.aggregate(), "The combiner returned a null value");
+            } catch (Throwable ex) {
+                FolyamPlugins.handleFatal(ex);
+                upstream.cancel();
+                onError(ex);
+                return;
+            }
+            actual.onNext(r);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                FolyamPlugins.onError(throwable);
+                return;
+            }
+            done = true;
+            actual.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            actual.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            upstream.cancel();
+        }
+    }
+
+    /**
+     * Base class of the two-stack windows: the back stack collects the new items
+     * along with their running aggregate, the front stack holds the older items
+     * as suffix aggregates, oldest on top. When the front runs empty, the back is
+     * flipped over into it with one combiner call per item.
+     */
+    abstract static class TwoStack {
+
+        long[] frontTime = new long[16];
+
+        long[] backTime = new long[16];
+
+        int frontSize;
+
+        int backSize;
+
+        public final long oldestTime() {
+            return frontSize != 0 ? frontTime[frontSize - 1] : backTime[0];
+        }
+
+        public final int size() {
+            return frontSize + backSize;
+        }
+
+        static long[] grow(long[] a, int n) {
+            return n == a.length ? Arrays.copyOf(a, n << 1) : a;
+        }
+    }
+
+    /**
+     * Two-stack window with an associative combiner on objects.
+     * @param <T> the item and aggregate type
+     */
+    public static final class AssociativeWindow<T> extends TwoStack implements SlidingWindow<T, T> {
+
+        final CheckedBiFunction<T, T, T> combiner;
+
+        Object[] front = new Object[16];
+
+        Object[] back = new Object[16];
+
+        T backAggregate;
+
+        public AssociativeWindow(CheckedBiFunction<T, T, T> combiner) {
+            this.combiner = combiner;
+        }
+
+        @Override
+        public void add(T item, long time) throws Throwable {
+            int n = backSize;
+            if (n == back.length) {
+                back = Arrays.copyOf(back, n << 1);
+            }
+            backTime = grow(backTime, n);
+            back[n] = item;
+            backTime[n] = time;
+            backAggregate = n == 0 ? item : combiner.apply(backAggregate, item);
+            backSize = n + 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void removeOldest() throws Throwable {
+            if (frontSize == 0) {
+                int n = backSize;
+                if (front.length < n) {
+                    front = new Object[back.length];
+                    frontTime = new long[back.length];
+                }
+                Object[] f = front;
+                Object[] b = back;
+                T agg = (T)b[n - 1];
+                f[0] = agg;
+                frontTime[0] = backTime[n - 1];
+                for (int i = 1; i < n; i++) {
+                    agg = combiner.apply((T)b[n - 1 - i], agg);
+                    f[i] = agg;
+                    frontTime[i] = backTime[n - 1 - i];
+                }
+                Arrays.fill(b, 0, n, null);
+                frontSize = n;
+                backSize = 0;
+                backAggregate = null;
+            }
+            front[--frontSize] = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T aggregate() throws Throwable {
+            if (frontSize == 0) {
+                return backAggregate;
+            }
+            T f = (T)front[frontSize - 1];
+            return backSize == 0 ? f : combiner.apply(f, backAggregate);
+        }
+    }
+
+    /**
+     * Window with an invertible combiner: the running aggregate is updated
+     * with the combiner on add and with the inverse on removal.
+     * @param <T> the item and aggregate type
+     */
+    public static final class InvertibleWindow<T> implements SlidingWindow<T, T> {
+
+        final CheckedBiFunction<T, T, T> combiner;
+
+        final CheckedBiFunction<T, T, T> inverse;
+
+        final ArrayDeque<T> items = new ArrayDeque<>();
+
+        final ArrayDeque<Long> times;
+
+        T aggregate;
+
+        public InvertibleWindow(CheckedBiFunction<T, T, T> combiner, CheckedBiFunction<T, T, T> inverse, boolean timed) {
+            this.combiner = combiner;
+            this.inverse = inverse;
+            this.times = timed ? new ArrayDeque<>() : null;
+        }
+
+        @Override
+        public void add(T item, long time) throws Throwable {
+            aggregate = items.isEmpty() ? item : combiner.apply(aggregate, item);
+            items.offer(item);
+            if (times != null) {
+                times.offer(time);
+            }
+        }
+
+        @Override
+        public void removeOldest() throws Throwable {
+            T v = items.poll();
+            if (times != null) {
+                times.poll();
+            }
+            aggregate = items.isEmpty() ? null : inverse.apply(aggregate, v);
+        }
+
+        @Override
+        public long oldestTime() {
+            return times.peek();
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public T aggregate() {
+            return aggregate;
+        }
+    }
+
+    /**
+     * Two-stack window on primitive longs, the base of the long and int specializations.
+     * @param <T> the item type
+     */
+    abstract static class LongTwoStack<T> extends TwoStack {
+
+        final ToLongFunction<? super T> mapper;
+
+        final LongBinaryOperator combiner;
+
+        long[] front = new long[16];
+
+        long[] back = new long[16];
+
+        long backAggregate;
+
+        LongTwoStack(ToLongFunction<? super T> mapper, LongBinaryOperator combiner) {
+            this.mapper = mapper;
+            this.combiner = combiner;
+        }
+
+        public final void add(T item, long time) {
+            long v = mapper.applyAsLong(item);
+            int n = backSize;
+            back = grow(back, n);
+            backTime = grow(backTime, n);
+            back[n] = v;
+            backTime[n] = time;
+            backAggregate = n == 0 ? v : combiner.applyAsLong(backAggregate, v);
+            backSize = n + 1;
+        }
+
+        public final void removeOldest() {
+            if (frontSize == 0) {
+                int n = backSize;
+                if (front.length < n) {
+                    front = new long[back.length];
+                    frontTime = new long[back.length];
+                }
+                long[] f = front;
+                long[] b = back;
+                long agg = b[n - 1];
+                f[0] = agg;
+                frontTime[0] = backTime[n - 1];
+                for (int i = 1; i < n; i++) {
+                    agg = combiner.applyAsLong(b[n - 1 - i], agg);
+                    f[i] = agg;
+                    frontTime[i] = backTime[n - 1 - i];
+                }
+                frontSize = n;
+                backSize = 0;
+            }
+            frontSize--;
+        }
+
+        final long aggregateLong() {
+            if (frontSize == 0) {
+                return backAggregate;
+            }
+            long f = front[frontSize - 1];
+            return backSize == 0 ? f : combiner.applyAsLong(f, backAggregate);
+        }
+    }
+
+    /**
+     * Two-stack window on primitive longs.
+     * @param <T> the item type
+     */
+    public static final class LongWindow<T> extends LongTwoStack<T> implements SlidingWindow<T, Long> {
+
+        public LongWindow(ToLongFunction<? super T> mapper, LongBinaryOperator combiner) {
+            super(mapper, combiner);
+        }
+
+        @Override
+        public Long aggregate() {
+            return aggregateLong();
+        }
+    }
+
+    /**
+     * Two-stack window on primitive ints, stored as longs.
+     * @param <T> the item type
+     */
+    public static final class IntWindow<T> extends LongTwoStack<T> implements SlidingWindow<T, Integer> {
+
+        public IntWindow(ToIntFunction<? super T> mapper, IntBinaryOperator combiner) {
+            super(mapper::applyAsInt, (a, b) -> combiner.applyAsInt((int)a, (int)b));
+        }
+
+        @Override
+        public Integer aggregate() {
+            return (int)aggregateLong();
+        }
+    }
+
+    /**
+     * Two-stack window on primitive doubles.
+     * @param <T> the item type
+     */
+    public static final class DoubleWindow<T> extends TwoStack implements SlidingWindow<T, Double> {
+
+        final ToDoubleFunction<? super T> mapper;
+
+        final DoubleBinaryOperator combiner;
+
+        double[] front = new double[16];
+
+        double[] back = new double[16];
+
+        double backAggregate;
+
+        public DoubleWindow(ToDoubleFunction<? super T> mapper, DoubleBinaryOperator combiner) {
+            this.mapper = mapper;
+            this.combiner = combiner;
+        }
+
+        @Override
+        public void add(T item, long time) {
+            double v = mapper.applyAsDouble(item);
+            int n = backSize;
+            if (n == back.length) {
+                back = Arrays.copyOf(back, n << 1);
+            }
+            backTime = grow(backTime, n);
+            back[n] = v;
+            backTime[n] = time;
+            backAggregate = n == 0 ? v : combiner.applyAsDouble(backAggregate, v);
+            backSize = n + 1;
+        }
+
+        @Override
+        public void removeOldest() {
+            if (frontSize == 0) {
+                int n = backSize;
+                if (front.length < n) {
+                    front = new double[back.length];
+                    frontTime = new long[back.length];
+                }
+                double[] f = front;
+                double[] b = back;
+                double agg = b[n - 1];
+                f[0] = agg;
+                frontTime[0] = backTime[n - 1];
+                for (int i = 1; i < n; i++) {
+                    agg = combiner.applyAsDouble(b[n - 1 - i], agg);
+                    f[i] = agg;
+                    frontTime[i] = backTime[n - 1 - i];
+                }
+                frontSize = n;
+                backSize = 0;
+            }
+            frontSize--;
+        }
+
+        @Override
+        public Double aggregate() {
+            if (frontSize == 0) {
+                return backAggregate;
+            }
+            double f = front[frontSize - 1];
+            return backSize == 0 ? f : combiner.applyAsDouble(f, backAggregate);
+        }
+    }
+}
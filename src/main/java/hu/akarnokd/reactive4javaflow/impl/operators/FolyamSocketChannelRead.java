@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.schedulers.NioSchedulerService;
+
+import java.nio.channels.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Reads a non-blocking channel on the event loop of a {@link NioSchedulerService}
+ * and emits the bytes read as leased ByteBuffers, reading only while there is downstream demand.
+ * <p>
+ * When the outstanding requests reach zero, {@link SelectionKey#OP_READ} is removed
+ * from the interest set so the unread data stays in the socket buffers and the peer gets
+ * throttled by the TCP flow control. The channel is not closed by this operator.
+ * <p>
+ * The buffers are leased from the given {@link ByteBufferPool}; downstream is
+ * expected to release the leases once it is done with them.
+ */
+public final class FolyamSocketChannelRead extends Folyam<ByteBufferPool.Lease> {
+
+    final SocketChannel channel;
+
+    final NioSchedulerService loop;
+
+    final ByteBufferPool pool;
+
+    public FolyamSocketChannelRead(SocketChannel channel, NioSchedulerService loop, ByteBufferPool pool) {
+        this.channel = channel;
+        this.loop = loop;
+        this.pool = pool;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super ByteBufferPool.Lease> s) {
+        SocketReadSubscription parent = new SocketReadSubscription(s, channel, pool);
+        try {
+            channel.configureBlocking(false);
+            parent.registration = loop.register(channel, parent);
+        } catch (Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            EmptySubscription.error(s, ex);
+            return;
+        }
+        s.onSubscribe(parent);
+    }
+
+    static final class SocketReadSubscription extends AtomicLong implements Flow.Subscription, IntConsumer {
+
+        private static final long serialVersionUID = -1925735372454950370L;
+
+        final FolyamSubscriber<? super ByteBufferPool.Lease> actual;
+
+        final SocketChannel channel;
+
+        final ByteBufferPool pool;
+
+        NioSchedulerService.ChannelRegistration registration;
+
+        /** Accessed from the event loop only. */
+        ByteBufferPool.Lease spare;
+
+        volatile boolean cancelled;
+
+        boolean done;
+
+        SocketReadSubscription(FolyamSubscriber<? super ByteBufferPool.Lease> actual, SocketChannel channel, ByteBufferPool pool) {
+            this.actual = actual;
+            this.channel = channel;
+            this.pool = pool;
+        }
+
+        @Override
+        public void request(long n) {
+            if (SubscriptionHelper.addRequested(this, n) == 0L) {
+                registration.addInterest(SelectionKey.OP_READ);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            registration.close();
+        }
+
+        @Override
+        public void accept(int readyOps) {
+            if (done) {
+                return;
+            }
+            FolyamSubscriber<? super ByteBufferPool.Lease> a = actual;
+            SocketChannel ch = channel;
+            long r = getAcquire();
+            long e = 0L;
+
+            for (;;) {
+                while (e != r) {
+                    if (cancelled) {
+                        releaseSpare();
+                        return;
+                    }
+
+                    ByteBufferPool.Lease b = spare;
+                    if (b == null) {
+                        b = pool.lease();
+                    } else {
+                        spare = null;
+                    }
+                    int n;
+                    try {
+                        n = ch.read(b.buffer());
+                    } catch (Throwable ex) {
+                        FolyamPlugins.handleFatal(ex);
+                        b.release();
+                        done = true;
+                        registration.close();
+                        a.onError(ex);
+                        return;
+                    }
+
+                    if (n < 0) {
+                        b.release();
+                        done = true;
+                        registration.close();
+                        a.onComplete();
+                        return;
+                    }
+                    if (n == 0) {
+                        // drained the socket buffer, keep reading on the next OP_READ
+                        spare = b;
+                        if (e != 0L) {
+                            addAndGet(-e);
+                        }
+                        return;
+                    }
+
+                    b.buffer().flip();
+                    a.onNext(b);
+
+                    e++;
+                }
+
+                r = addAndGet(-e);
+                if (r == 0L) {
+                    registration.removeInterest(SelectionKey.OP_READ);
+                    return;
+                }
+                e = 0L;
+            }
+        }
+
+        void releaseSpare() {
+            ByteBufferPool.Lease b = spare;
+            if (b != null) {
+                spare = null;
+                b.release();
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package hu.akarnokd.reactive4javaflow.impl.operators;
 
 import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.CheckedConsumer;
 import hu.akarnokd.reactive4javaflow.fused.*;
 import hu.akarnokd.reactive4javaflow.impl.*;
 
@@ -30,17 +31,31 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
 
     final int n;
 
+    final CheckedConsumer<? super T> onDiscard;
+
     public FolyamTakeLast(Folyam<T> source, int n) {
+        this(source, n, FunctionalHelper.EMPTY_CONSUMER);
+    }
+
+    /**
+     * Constructs a takeLast operator that hands the items it evicts from its buffer,
+     * or clears out on error, to the given handler.
+     * @param source the upstream
+     * @param n the number of last items to keep, zero discards all items
+     * @param onDiscard the handler, its crash is routed to {@link FolyamPlugins#onError(Throwable)}
+     */
+    public FolyamTakeLast(Folyam<T> source, int n, CheckedConsumer<? super T> onDiscard) {
         this.source = source;
         this.n = n;
+        this.onDiscard = onDiscard;
     }
 
     @Override
     protected void subscribeActual(FolyamSubscriber<? super T> s) {
         if (s instanceof ConditionalSubscriber) {
-            source.subscribe(new TakeLastConditionalSubscriber<>((ConditionalSubscriber<? super T>)s, n));
+            source.subscribe(new TakeLastConditionalSubscriber<>((ConditionalSubscriber<? super T>)s, n, onDiscard));
         } else {
-            source.subscribe(new TakeLastSubscriber<>(s, n));
+            source.subscribe(new TakeLastSubscriber<>(s, n, onDiscard));
         }
     }
 
@@ -48,6 +63,8 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
 
         final int n;
 
+        final CheckedConsumer<? super T> onDiscard;
+
         final ArrayDeque<T> queue;
 
         Flow.Subscription upstream;
@@ -60,9 +77,10 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
 
         boolean outputFused;
 
-        AbstractTakeLast(int n) {
+        AbstractTakeLast(int n, CheckedConsumer<? super T> onDiscard) {
             this.queue = new ArrayDeque<>();
             this.n = n;
+            this.onDiscard = onDiscard;
         }
 
         @Override
@@ -77,11 +95,32 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
         public final void onNext(T item) {
             ArrayDeque<T> q = this.queue;
             if (q.size() == n) {
-                q.poll();
+                if (n == 0) {
+                    discard(item);
+                    return;
+                }
+                discard(q.poll());
             }
             q.offer(item);
         }
 
+        final void discard(T item) {
+            try {
+                onDiscard.accept(item);
+            } catch (Throwable ex) {
+                FolyamPlugins.handleFatal(ex);
+                FolyamPlugins.onError(ex);
+            }
+        }
+
+        final void discardAll() {
+            ArrayDeque<T> q = this.queue;
+            T v;
+            while ((v = q.poll()) != null) {
+                discard(v);
+            }
+        }
+
 
         @Override
         public final void cancel() {
@@ -120,8 +159,8 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
 
         final FolyamSubscriber<? super T> actual;
 
-        TakeLastSubscriber(FolyamSubscriber<? super T> actual, int n) {
-            super(n);
+        TakeLastSubscriber(FolyamSubscriber<? super T> actual, int n, CheckedConsumer<? super T> onDiscard) {
+            super(n, onDiscard);
             this.actual = actual;
         }
 
@@ -132,7 +171,7 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
 
         @Override
         public void onError(Throwable throwable) {
-            queue.clear();
+            discardAll();
             actual.onError(throwable);
         }
 
@@ -158,8 +197,8 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
 
         final ConditionalSubscriber<? super T> actual;
 
-        TakeLastConditionalSubscriber(ConditionalSubscriber<? super T> actual, int n) {
-            super(n);
+        TakeLastConditionalSubscriber(ConditionalSubscriber<? super T> actual, int n, CheckedConsumer<? super T> onDiscard) {
+            super(n, onDiscard);
             this.actual = actual;
         }
 
@@ -170,7 +209,7 @@ public final class FolyamTakeLast<T> extends Folyam<T> {
 
         @Override
         public void onError(Throwable throwable) {
-            queue.clear();
+            discardAll();
             actual.onError(throwable);
         }
 
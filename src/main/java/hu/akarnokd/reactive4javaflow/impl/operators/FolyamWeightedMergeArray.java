@@ -0,0 +1,341 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.fused.FusedQueue;
+import hu.akarnokd.reactive4javaflow.impl.*;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges an array of sources where each source has its own queue and prefetch
+ * and the drain picks the next item by the sources' weights.
+ * <p>
+ * In strict priority mode, each item is taken from the highest-weight source that has
+ * one available, sources of equal weight favoring the lower index. Otherwise, the sources
+ * are visited in a deficit round-robin: each visit may emit up to the source's weight
+ * items before moving to the next source, and a source found empty forfeits the rest
+ * of its turn.
+ * <p>
+ * Since every source buffers into its own queue, a lower-weight source with a full
+ * buffer doesn't hold back the items of a higher-weight source.
+ *
+ * @param <T> the common value type
+ */
+public final class FolyamWeightedMergeArray<T> extends Folyam<T> {
+
+    final Flow.Publisher<? extends T>[] sources;
+
+    final int[] weights;
+
+    final int[] prefetches;
+
+    final boolean strict;
+
+    public FolyamWeightedMergeArray(Flow.Publisher<? extends T>[] sources, int[] weights, int[] prefetches, boolean strict) {
+        this.sources = sources;
+        this.weights = weights;
+        this.prefetches = prefetches;
+        this.strict = strict;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super T> s) {
+        Flow.Publisher<? extends T>[] array = sources;
+        int n = array.length;
+        if (n == 0) {
+            EmptySubscription.complete(s);
+            return;
+        }
+
+        if (n == 1) {
+            array[0].subscribe(s);
+            return;
+        }
+
+        WeightedMergeCoordinator<T> parent = new WeightedMergeCoordinator<>(s, weights, prefetches, strict);
+        s.onSubscribe(parent);
+        parent.subscribe(array);
+    }
+
+    public static void verify(int[] weights, int[] prefetches, int n) {
+        if (weights.length != n || prefetches.length != n) {
+            throw new IllegalArgumentException("Each source needs a weight and a prefetch: " + n + " sources, " + weights.length + " weights, " + prefetches.length + " prefetches");
+        }
+        for (int p : prefetches) {
+            ParameterHelper.verifyPositive(p, "prefetch");
+        }
+    }
+
+    static final class WeightedMergeCoordinator<T>
+            extends AtomicInteger
+            implements Flow.Subscription, QueuedFolyamSubscriberSupport<T> {
+
+        private static final long serialVersionUID = -2816356209711428384L;
+
+        final FolyamSubscriber<? super T> actual;
+
+        final QueuedInnerFolyamSubscriber<T>[] subscribers;
+
+        final int[] weights;
+
+        /** The source indexes in decreasing weight order, used by the strict priority mode. */
+        final int[] order;
+
+        final boolean strict;
+
+        volatile boolean cancelled;
+
+        long requested;
+        static final VarHandle REQUESTED = VH.find(MethodHandles.lookup(), WeightedMergeCoordinator.class, "requested", long.class);
+
+        Throwable error;
+        static final VarHandle ERROR = VH.find(MethodHandles.lookup(), WeightedMergeCoordinator.class, "error", Throwable.class);
+
+        long emitted;
+
+        /** The source index currently visited by the round-robin. */
+        int index;
+
+        /** The number of items the currently visited source may still emit in its turn. */
+        int credit;
+
+        @SuppressWarnings("unchecked")
+        WeightedMergeCoordinator(FolyamSubscriber<? super T> actual, int[] weights, int[] prefetches, boolean strict) {
+            this.actual = actual;
+            this.weights = weights;
+            this.strict = strict;
+            int n = weights.length;
+            QueuedInnerFolyamSubscriber<T>[] subs = new QueuedInnerFolyamSubscriber[n];
+            for (int i = 0; i < n; i++) {
+                subs[i] = new QueuedInnerFolyamSubscriber<>(this, i, prefetches[i]);
+            }
+            this.subscribers = subs;
+            if (strict) {
+                Integer[] idx = new Integer[n];
+                for (int i = 0; i < n; i++) {
+                    idx[i] = i;
+                }
+                Arrays.sort(idx, (a, b) -> Integer.compare(weights[b], weights[a]));
+                int[] o = new int[n];
+                for (int i = 0; i < n; i++) {
+                    o[i] = idx[i];
+                }
+                this.order = o;
+            } else {
+                this.order = null;
+                this.credit = weights[0];
+            }
+        }
+
+        void subscribe(Flow.Publisher<? extends T>[] sources) {
+            QueuedInnerFolyamSubscriber<T>[] subs = subscribers;
+            for (int i = 0; i < subs.length && !cancelled; i++) {
+                Flow.Publisher<? extends T> p = sources[i];
+                if (p != null) {
+                    p.subscribe(subs[i]);
+                } else {
+                    EmptySubscription.error(subs[i], new NullPointerException("The " + i + "th source is null"));
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(this, REQUESTED, n);
+            drain();
+        }
+
+        void cancelSources() {
+            for (QueuedInnerFolyamSubscriber<T> d : subscribers) {
+                d.cancel();
+            }
+        }
+
+        void clearSources() {
+            for (QueuedInnerFolyamSubscriber<T> d : subscribers) {
+                d.clear();
+            }
+        }
+
+        void cancelAndClearSources() {
+            for (QueuedInnerFolyamSubscriber<T> d : subscribers) {
+                d.cancel();
+                d.clear();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelSources();
+                if (getAndIncrement() == 0) {
+                    clearSources();
+                }
+            }
+        }
+
+        @Override
+        public void innerError(QueuedInnerFolyamSubscriber<T> inner, int index, Throwable e) {
+            if (ExceptionHelper.addThrowable(this, ERROR, e)) {
+                cancelSources();
+                drain();
+            } else {
+                FolyamPlugins.onError(e);
+            }
+        }
+
+        /**
+         * Polls the next item from the highest-weight source that has one.
+         */
+        T pollStrict() throws Throwable {
+            QueuedInnerFolyamSubscriber<T>[] subs = subscribers;
+            for (int i : order) {
+                QueuedInnerFolyamSubscriber<T> inner = subs[i];
+                FusedQueue<T> q = inner.getQueue();
+                if (q != null) {
+                    T v = q.poll();
+                    if (v != null) {
+                        inner.request();
+                        return v;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Polls the next item of the deficit round-robin, moving to the next source
+         * when the current one runs out of credit or items.
+         */
+        T pollWeighted() throws Throwable {
+            QueuedInnerFolyamSubscriber<T>[] subs = subscribers;
+            int[] ws = weights;
+            int n = subs.length;
+            int i = index;
+            int c = credit;
+            try {
+                for (int k = 0; k <= n; k++) {
+                    QueuedInnerFolyamSubscriber<T> inner = subs[i];
+                    FusedQueue<T> q = inner.getQueue();
+                    T v = q != null ? q.poll() : null;
+                    if (v != null) {
+                        inner.request();
+                        if (--c == 0) {
+                            if (++i == n) {
+                                i = 0;
+                            }
+                            c = ws[i];
+                        }
+                        return v;
+                    }
+                    if (++i == n) {
+                        i = 0;
+                    }
+                    c = ws[i];
+                }
+                return null;
+            } finally {
+                index = i;
+                credit = c;
+            }
+        }
+
+        boolean isDoneAndEmpty() {
+            for (QueuedInnerFolyamSubscriber<T> inner : subscribers) {
+                if (!inner.isDone()) {
+                    return false;
+                }
+                FusedQueue<T> q = inner.getQueue();
+                if (q != null && !q.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            FolyamSubscriber<? super T> a = actual;
+            long e = emitted;
+
+            for (;;) {
+
+                long r = (long)REQUESTED.getAcquire(this);
+
+                for (;;) {
+                    if (cancelled) {
+                        clearSources();
+                        return;
+                    }
+
+                    if (ERROR.getAcquire(this) != null) {
+                        cancelAndClearSources();
+                        a.onError(ExceptionHelper.terminate(this, ERROR));
+                        return;
+                    }
+
+                    if (e == r) {
+                        if (isDoneAndEmpty()) {
+                            a.onComplete();
+                            return;
+                        }
+                        break;
+                    }
+
+                    T v;
+                    try {
+                        v = strict ? pollStrict() : pollWeighted();
+                    } catch (Throwable ex) {
+                        FolyamPlugins.handleFatal(ex);
+                        cancelAndClearSources();
+                        a.onError(ex);
+                        return;
+                    }
+
+                    if (v == null) {
+                        if (isDoneAndEmpty()) {
+                            a.onComplete();
+                            return;
+                        }
+                        break;
+                    }
+
+                    a.onNext(v);
+                    e++;
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
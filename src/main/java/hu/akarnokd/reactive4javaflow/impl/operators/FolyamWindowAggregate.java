@@ -0,0 +1,484 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.*;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregates items per key into tumbling or session windows and emits the results
+ * of the windows closed together as one list.
+ * <p>
+ * The per-key state is a single accumulator and a deadline kept in parallel arrays of an
+ * open-addressing table, without any inner Folyam or subscriber per key or per window.
+ * Tumbling windows are aligned to multiples of their size on the worker's clock, thus all
+ * keys share the same boundaries; a session window closes once no item arrived for its
+ * key for the gap time. One timer, armed for the earliest deadline, sweeps the table.
+ * In session mode the timer fires at most every {@code gap / 16} time which lets a
+ * window close at most that much later.
+ * <p>
+ * While a batch waits for downstream demand, no further items are consumed and
+ * windows expiring in the meantime are appended to that batch.
+ *
+ * @param <T> the upstream value type
+ * @param <K> the key type
+ * @param <A> the accumulator type
+ * @param <R> the result type
+ */
+public final class FolyamWindowAggregate<T, K, A, R> extends Folyam<List<R>> {
+
+    final Folyam<T> source;
+
+    final CheckedFunction<? super T, ? extends K> keySelector;
+
+    final Callable<? extends A> initialSupplier;
+
+    final CheckedBiFunction<A, ? super T, A> accumulator;
+
+    final CheckedBiFunction<? super K, ? super A, ? extends R> finisher;
+
+    final long time;
+
+    final TimeUnit unit;
+
+    final SchedulerService executor;
+
+    final boolean session;
+
+    public FolyamWindowAggregate(Folyam<T> source, CheckedFunction<? super T, ? extends K> keySelector,
+                                 Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                 CheckedBiFunction<? super K, ? super A, ? extends R> finisher,
+                                 long time, TimeUnit unit, SchedulerService executor, boolean session) {
+        this.source = source;
+        this.keySelector = keySelector;
+        this.initialSupplier = initialSupplier;
+        this.accumulator = accumulator;
+        this.finisher = finisher;
+        this.time = time;
+        this.unit = unit;
+        this.executor = executor;
+        this.session = session;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super List<R>> s) {
+        source.subscribe(new WindowAggregateSubscriber<>(s, keySelector, initialSupplier, accumulator, finisher,
+                Math.max(1L, unit.toNanos(time)), executor.worker(), session, FolyamPlugins.defaultBufferSize()));
+    }
+
+    static final class WindowAggregateSubscriber<T, K, A, R> extends AtomicInteger
+    implements FolyamSubscriber<T>, Flow.Subscription, Runnable {
+
+        private static final long serialVersionUID = -3722506134917313406L;
+
+        final FolyamSubscriber<? super List<R>> actual;
+
+        final CheckedFunction<? super T, ? extends K> keySelector;
+
+        final Callable<? extends A> initialSupplier;
+
+        final CheckedBiFunction<A, ? super T, A> accumulator;
+
+        final CheckedBiFunction<? super K, ? super A, ? extends R> finisher;
+
+        final long timeNanos;
+
+        final long resolution;
+
+        final SchedulerService.Worker worker;
+
+        final boolean session;
+
+        final int prefetch;
+
+        final int limit;
+
+        final SpscLinkedArrayQueue<T> queue;
+
+        final KeyTable table;
+
+        Flow.Subscription upstream;
+
+        long requested;
+        static final VarHandle REQUESTED = VH.find(MethodHandles.lookup(), WindowAggregateSubscriber.class, "requested", long.class);
+
+        boolean done;
+        static final VarHandle DONE = VH.find(MethodHandles.lookup(), WindowAggregateSubscriber.class, "done", boolean.class);
+
+        boolean fired;
+        static final VarHandle FIRED = VH.find(MethodHandles.lookup(), WindowAggregateSubscriber.class, "fired", boolean.class);
+
+        AutoDisposable timer;
+        static final VarHandle TIMER = VH.find(MethodHandles.lookup(), WindowAggregateSubscriber.class, "timer", AutoDisposable.class);
+
+        Throwable error;
+
+        volatile boolean cancelled;
+
+        List<R> pending;
+
+        long earliest;
+
+        long armed;
+
+        long emitted;
+
+        int consumed;
+
+        WindowAggregateSubscriber(FolyamSubscriber<? super List<R>> actual, CheckedFunction<? super T, ? extends K> keySelector,
+                                  Callable<? extends A> initialSupplier, CheckedBiFunction<A, ? super T, A> accumulator,
+                                  CheckedBiFunction<? super K, ? super A, ? extends R> finisher,
+                                  long timeNanos, SchedulerService.Worker worker, boolean session, int prefetch) {
+            this.actual = actual;
+            this.keySelector = keySelector;
+            this.initialSupplier = initialSupplier;
+            this.accumulator = accumulator;
+            this.finisher = finisher;
+            this.timeNanos = timeNanos;
+            this.resolution = Math.max(1L, timeNanos >> 4);
+            this.worker = worker;
+            this.session = session;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscLinkedArrayQueue<>(prefetch);
+            this.table = new KeyTable(16);
+            this.earliest = Long.MAX_VALUE;
+            this.armed = Long.MAX_VALUE;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            actual.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            queue.offer(item);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            DONE.setRelease(this, true);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(this, REQUESTED, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            DisposableHelper.close(this, TIMER);
+            worker.close();
+            if (getAndIncrement() == 0) {
+                cleanup();
+            }
+        }
+
+        @Override
+        public void run() {
+            FIRED.setRelease(this, true);
+            drain();
+        }
+
+        void cleanup() {
+            pending = null;
+            table.clear();
+            QueueHelper.clear(queue);
+        }
+
+        void fail(Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            upstream.cancel();
+            terminate(ex);
+        }
+
+        void terminate(Throwable ex) {
+            DisposableHelper.close(this, TIMER);
+            worker.close();
+            cleanup();
+            if (ex == null) {
+                actual.onComplete();
+            } else {
+                actual.onError(ex);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void close(Object key, Object acc) throws Throwable {
+            R r = Objects.requireNonNull(finisher.apply((K)key, (A)acc), "The finisher returned a null value");
+            List<R> p = pending;
+            if (p == null) {
+                p = new ArrayList<>();
+                pending = p;
+            }
+            p.add(r);
+        }
+
+        /**
+         * Closes the windows whose deadline is not after {@code now} and recomputes
+         * the earliest deadline of the remaining ones.
+         * <p>
+         * The scan starts right after an empty slot so the backward shifts of the
+         * removals only move not yet visited entries into the current slot.
+         */
+        void sweep(long now) throws Throwable {
+            KeyTable t = table;
+            Object[] keys = t.keys();
+            Object[] accs = t.accs;
+            long[] deadlines = t.deadlines;
+            int m = t.mask();
+
+            int start = 0;
+            while (keys[start] != null) {
+                start++;
+            }
+
+            long min = Long.MAX_VALUE;
+            for (int j = 1; j <= m + 1; j++) {
+                int i = (start + j) & m;
+                Object k;
+                while ((k = keys[i]) != null) {
+                    long dl = deadlines[i];
+                    if (dl > now) {
+                        min = Math.min(min, dl);
+                        break;
+                    }
+                    Object acc = accs[i];
+                    t.removeAt(i);
+                    close(k, acc);
+                }
+            }
+            earliest = min;
+        }
+
+        void closeAll() throws Throwable {
+            KeyTable t = table;
+            Object[] keys = t.keys();
+            Object[] accs = t.accs;
+            for (int i = 0; i < keys.length; i++) {
+                Object k = keys[i];
+                if (k != null) {
+                    close(k, accs[i]);
+                }
+            }
+            t.clear();
+            earliest = Long.MAX_VALUE;
+        }
+
+        @SuppressWarnings("unchecked")
+        void accumulate(T item, long now) throws Throwable {
+            K key = Objects.requireNonNull(keySelector.apply(item), "The keySelector returned a null key");
+            KeyTable t = table;
+            int h = OpenHashTable.mix(key.hashCode());
+            int i = t.find(key, h);
+            long dl;
+            A acc;
+            if (i < 0) {
+                acc = initialSupplier.call();
+                if (session) {
+                    dl = now + timeNanos;
+                } else {
+                    dl = (Math.floorDiv(now, timeNanos) + 1) * timeNanos;
+                }
+                i = t.insert(key, h, ~i);
+                earliest = Math.min(earliest, dl);
+            } else {
+                acc = (A)t.accs[i];
+                dl = session ? now + timeNanos : t.deadlines[i];
+            }
+            acc = Objects.requireNonNull(accumulator.apply(acc, item), "The accumulator returned a null value");
+            t.accs[i] = acc;
+            t.deadlines[i] = dl;
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            SpscLinkedArrayQueue<T> q = queue;
+            FolyamSubscriber<? super List<R>> a = actual;
+            SchedulerService.Worker w = worker;
+            int lim = limit;
+            long e = emitted;
+            int c = consumed;
+
+            for (;;) {
+
+                if ((boolean)FIRED.getAcquire(this)) {
+                    FIRED.setRelease(this, false);
+                    armed = Long.MAX_VALUE;
+                }
+
+                for (;;) {
+                    if (cancelled) {
+                        cleanup();
+                        return;
+                    }
+
+                    boolean d = (boolean)DONE.getAcquire(this);
+                    if (d) {
+                        Throwable ex = error;
+                        if (ex != null) {
+                            terminate(ex);
+                            return;
+                        }
+                    }
+
+                    long now = w.now(TimeUnit.NANOSECONDS);
+                    if (now >= earliest) {
+                        try {
+                            sweep(now);
+                        } catch (Throwable ex) {
+                            fail(ex);
+                            return;
+                        }
+                    }
+
+                    List<R> p = pending;
+                    if (p != null) {
+                        if (e == (long)REQUESTED.getAcquire(this)) {
+                            break;
+                        }
+                        pending = null;
+                        a.onNext(p);
+                        e++;
+                        continue;
+                    }
+
+                    T v = q.poll();
+                    if (v == null) {
+                        if (d) {
+                            if (table.size() == 0) {
+                                terminate(null);
+                                return;
+                            }
+                            try {
+                                closeAll();
+                            } catch (Throwable ex) {
+                                fail(ex);
+                                return;
+                            }
+                            continue;
+                        }
+                        break;
+                    }
+
+                    try {
+                        accumulate(v, now);
+                    } catch (Throwable ex) {
+                        fail(ex);
+                        return;
+                    }
+
+                    if (++c == lim) {
+                        c = 0;
+                        upstream.request(lim);
+                    }
+                }
+
+                if (armed == Long.MAX_VALUE && table.size() != 0) {
+                    long now = w.now(TimeUnit.NANOSECONDS);
+                    long at = session ? Math.max(earliest, now + resolution) : earliest;
+                    armed = at;
+                    DisposableHelper.replace(this, TIMER, w.schedule(this, Math.max(0L, at - now), TimeUnit.NANOSECONDS));
+                }
+
+                emitted = e;
+                consumed = c;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open-addressing table that keeps the accumulators and window deadlines
+     * in arrays parallel to the keys.
+     */
+    static final class KeyTable extends OpenHashTable {
+
+        Object[] accs;
+
+        long[] deadlines;
+
+        KeyTable(int capacity) {
+            super(capacity);
+            int c = keys().length;
+            this.accs = new Object[c];
+            this.deadlines = new long[c];
+        }
+
+        @Override
+        protected void move(int from, int to) {
+            accs[to] = accs[from];
+            deadlines[to] = deadlines[from];
+        }
+
+        @Override
+        protected void clearValue(int pos) {
+            accs[pos] = null;
+        }
+
+        @Override
+        protected void resize(int[] moves, int capacity) {
+            Object[] b = accs;
+            long[] d = deadlines;
+            Object[] nb = new Object[capacity];
+            long[] nd = new long[capacity];
+            for (int i = 0; i < b.length; i++) {
+                int pos = moves[i];
+                if (pos >= 0) {
+                    nb[pos] = b[i];
+                    nd[pos] = d[i];
+                }
+            }
+            this.accs = nb;
+            this.deadlines = nd;
+        }
+
+        @Override
+        protected void clearValues() {
+            Arrays.fill(accs, null);
+        }
+    }
+}
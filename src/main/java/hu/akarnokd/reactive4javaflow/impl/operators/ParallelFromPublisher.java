@@ -17,6 +17,7 @@
 package hu.akarnokd.reactive4javaflow.impl.operators;
 
 import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
 import hu.akarnokd.reactive4javaflow.fused.*;
 import hu.akarnokd.reactive4javaflow.impl.SubscriptionHelper;
 import hu.akarnokd.reactive4javaflow.impl.util.SpscArrayQueue;
@@ -27,6 +28,9 @@ import java.util.concurrent.atomic.*;
 /**
  * Dispatches the values from upstream in a round robin fashion to subscribers which are
  * ready to consume elements. A value from upstream is sent to only one of the subscribers.
+ * <p>
+ * If an {@link ElasticRails} is given, only the currently active rails receive values
+ * and the dispatcher reports stalls and idles to it.
  *
  * @param <T> the value type
  */
@@ -37,10 +41,20 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
 
     final int prefetch;
 
+    final ElasticRails elastic;
+
     public ParallelFromPublisher(Flow.Publisher<? extends T> source, int parallelism, int prefetch) {
         this.source = source;
         this.parallelism = parallelism;
         this.prefetch = prefetch;
+        this.elastic = null;
+    }
+
+    public ParallelFromPublisher(Flow.Publisher<? extends T> source, ElasticRails elastic, int prefetch) {
+        this.source = source;
+        this.parallelism = elastic.maxRails();
+        this.prefetch = prefetch;
+        this.elastic = elastic;
     }
 
     @Override
@@ -50,7 +64,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
 
     @Override
     public void subscribeActual(FolyamSubscriber<? super T>[] subscribers) {
-        source.subscribe(new ParallelDispatcher<T>(subscribers, prefetch));
+        source.subscribe(new ParallelDispatcher<T>(subscribers, prefetch, elastic));
     }
 
     static final class ParallelDispatcher<T>
@@ -69,6 +83,10 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
 
         final int limit;
 
+        final ElasticRails elastic;
+
+        volatile AutoDisposable elasticRegistration;
+
         Flow.Subscription s;
 
         FusedQueue<T> queue;
@@ -91,9 +109,10 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
 
         int sourceMode;
 
-        ParallelDispatcher(FolyamSubscriber<? super T>[] subscribers, int prefetch) {
+        ParallelDispatcher(FolyamSubscriber<? super T>[] subscribers, int prefetch, ElasticRails elastic) {
             this.subscribers = subscribers;
             this.prefetch = prefetch;
+            this.elastic = elastic;
             this.limit = prefetch - (prefetch >> 2);
             int m = subscribers.length;
             this.requests = new AtomicLongArray(m + m + 1);
@@ -105,6 +124,11 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
         public void onSubscribe(Flow.Subscription s) {
             this.s = s;
 
+            ElasticRails el = elastic;
+            if (el != null) {
+                elasticRegistration = el.register(this::elasticChanged);
+            }
+
             if (s instanceof FusedSubscription) {
                 @SuppressWarnings("unchecked")
                 FusedSubscription<T> qs = (FusedSubscription<T>) s;
@@ -138,6 +162,20 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
             s.request(prefetch);
         }
 
+        void elasticChanged() {
+            if (subscriberCount.get() == subscribers.length) {
+                drain();
+            }
+        }
+
+        void unregister() {
+            AutoDisposable d = elasticRegistration;
+            if (d != null) {
+                elasticRegistration = null;
+                d.close();
+            }
+        }
+
         void setupSubscribers() {
             FolyamSubscriber<? super T>[] subs = subscribers;
             final int m = subs.length;
@@ -219,6 +257,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
             if (requests.decrementAndGet(m) == 0L) {
                 cancelled = true;
                 this.s.cancel();
+                unregister();
 
                 if (getAndIncrement() == 0) {
                     queue.clear();
@@ -233,13 +272,18 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
             FolyamSubscriber<? super T>[] a = this.subscribers;
             AtomicLongArray r = this.requests;
             long[] e = this.emissions;
-            int n = e.length;
+            int m = e.length;
+            ElasticRails el = elastic;
             int idx = index;
             int consumed = produced;
 
             for (;;) {
 
                 int notReady = 0;
+                int n = el != null ? el.activeRails() : m;
+                if (idx >= n) {
+                    idx = 0;
+                }
 
                 for (;;) {
                     if (cancelled) {
@@ -252,6 +296,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                         Throwable ex = error;
                         if (ex != null) {
                             q.clear();
+                            unregister();
                             for (FolyamSubscriber<? super T> s : a) {
                                 s.onError(ex);
                             }
@@ -262,6 +307,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                     boolean empty = q.isEmpty();
 
                     if (d && empty) {
+                        unregister();
                         for (FolyamSubscriber<? super T> s : a) {
                             s.onComplete();
                         }
@@ -269,12 +315,15 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                     }
 
                     if (empty) {
+                        if (el != null && r.get(idx) != e[idx]) {
+                            el.onIdle();
+                        }
                         break;
                     }
 
                     long requestAtIndex = r.get(idx);
                     long emissionAtIndex = e[idx];
-                    if (requestAtIndex != emissionAtIndex && r.get(n + idx) == 0) {
+                    if (requestAtIndex != emissionAtIndex && r.get(m + idx) == 0) {
 
                         T v;
 
@@ -283,6 +332,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                         } catch (Throwable ex) {
                             FolyamPlugins.handleFatal(ex);
                             s.cancel();
+                            unregister();
                             for (FolyamSubscriber<? super T> s : a) {
                                 s.onError(ex);
                             }
@@ -313,6 +363,9 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                     }
 
                     if (notReady == n) {
+                        if (el != null) {
+                            el.onStall();
+                        }
                         break;
                     }
                 }
@@ -338,12 +391,17 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
             FolyamSubscriber<? super T>[] a = this.subscribers;
             AtomicLongArray r = this.requests;
             long[] e = this.emissions;
-            int n = e.length;
+            int m = e.length;
+            ElasticRails el = elastic;
             int idx = index;
 
             for (;;) {
 
                 int notReady = 0;
+                int n = el != null ? el.activeRails() : m;
+                if (idx >= n) {
+                    idx = 0;
+                }
 
                 for (;;) {
                     if (cancelled) {
@@ -354,6 +412,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                     boolean empty = q.isEmpty();
 
                     if (empty) {
+                        unregister();
                         for (FolyamSubscriber<? super T> s : a) {
                             s.onComplete();
                         }
@@ -362,7 +421,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
 
                     long requestAtIndex = r.get(idx);
                     long emissionAtIndex = e[idx];
-                    if (requestAtIndex != emissionAtIndex && r.get(n + idx) == 0) {
+                    if (requestAtIndex != emissionAtIndex && r.get(m + idx) == 0) {
 
                         T v;
 
@@ -371,6 +430,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                         } catch (Throwable ex) {
                             FolyamPlugins.handleFatal(ex);
                             s.cancel();
+                            unregister();
                             for (FolyamSubscriber<? super T> s : a) {
                                 s.onError(ex);
                             }
@@ -378,6 +438,7 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                         }
 
                         if (v == null) {
+                            unregister();
                             for (FolyamSubscriber<? super T> s : a) {
                                 s.onComplete();
                             }
@@ -399,6 +460,9 @@ public final class ParallelFromPublisher<T> extends ParallelFolyam<T> {
                     }
 
                     if (notReady == n) {
+                        if (el != null) {
+                            el.onStall();
+                        }
                         break;
                     }
                 }
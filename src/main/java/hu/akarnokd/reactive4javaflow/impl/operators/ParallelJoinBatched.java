@@ -0,0 +1,390 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+import hu.akarnokd.reactive4javaflow.impl.util.SpscArrayQueue;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Merges the individual 'rails' of the source ParallelFolyam, unordered,
+ * into a single regular Publisher sequence (exposed as Folyam), signalling
+ * the collector once per batch of items instead of once per item.
+ * <p>
+ * Each rail offers its items into its own single-producer queue and only
+ * increments the shared work-in-progress counter if the collector is idle
+ * or {@code batchSize} items were offered since the last signal. The collector
+ * re-checks the queues before going idle so no item is left behind.
+ *
+ * @param <T> the value type
+ */
+public final class ParallelJoinBatched<T> extends Folyam<T> {
+
+    final ParallelFolyam<? extends T> source;
+
+    final int prefetch;
+
+    final int batchSize;
+
+    final boolean delayErrors;
+
+    final SchedulerService executor;
+
+    public ParallelJoinBatched(ParallelFolyam<? extends T> source, int prefetch, int batchSize, boolean delayErrors, SchedulerService executor) {
+        this.source = source;
+        this.prefetch = prefetch;
+        this.batchSize = batchSize;
+        this.delayErrors = delayErrors;
+        this.executor = executor;
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super T> s) {
+        SchedulerService.Worker worker = executor != null ? executor.worker() : null;
+        JoinBatchedSubscription<T> parent = new JoinBatchedSubscription<>(s, source.parallelism(), prefetch, batchSize, delayErrors, worker);
+        s.onSubscribe(parent);
+        source.subscribe(parent.subscribers);
+    }
+
+    static final class JoinBatchedSubscription<T> extends AtomicInteger
+    implements Flow.Subscription, Runnable {
+
+        private static final long serialVersionUID = -2609437962488916862L;
+
+        final FolyamSubscriber<? super T> actual;
+
+        final JoinBatchedInnerSubscriber<T>[] subscribers;
+
+        final boolean delayErrors;
+
+        final SchedulerService.Worker worker;
+
+        final AtomicReference<Throwable> errors = new AtomicReference<>();
+
+        final AtomicLong requested = new AtomicLong();
+
+        volatile boolean cancelled;
+
+        final AtomicInteger done = new AtomicInteger();
+
+        JoinBatchedSubscription(FolyamSubscriber<? super T> actual, int n, int prefetch, int batchSize, boolean delayErrors, SchedulerService.Worker worker) {
+            this.actual = actual;
+            @SuppressWarnings("unchecked")
+            JoinBatchedInnerSubscriber<T>[] a = new JoinBatchedInnerSubscriber[n];
+
+            for (int i = 0; i < n; i++) {
+                a[i] = new JoinBatchedInnerSubscriber<>(this, prefetch, batchSize);
+            }
+
+            this.subscribers = a;
+            this.delayErrors = delayErrors;
+            this.worker = worker;
+            done.lazySet(n);
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+
+                cancelAll();
+
+                if (worker != null) {
+                    worker.close();
+                }
+                if (getAndIncrement() == 0) {
+                    cleanup();
+                }
+            }
+        }
+
+        void cancelAll() {
+            for (JoinBatchedInnerSubscriber<T> s : subscribers) {
+                s.cancel();
+            }
+        }
+
+        void cleanup() {
+            for (JoinBatchedInnerSubscriber<T> s : subscribers) {
+                s.queue = null;
+            }
+        }
+
+        /**
+         * Checks if the collector is idle; the full fence orders the preceding
+         * queue offer before the read of the work-in-progress counter so that
+         * either the rail sees the collector idle or the collector's final
+         * re-check sees the item.
+         * @return true if the collector is idle
+         */
+        boolean isIdle() {
+            VarHandle.fullFence();
+            return get() == 0;
+        }
+
+        void innerOverflow(JoinBatchedInnerSubscriber<T> inner) {
+            if (delayErrors) {
+                if (inner.cancel()) {
+                    ExceptionHelper.addThrowable(errors, new IllegalStateException("Queue full?!"));
+                    done.decrementAndGet();
+                }
+                drain();
+            } else {
+                cancelAll();
+                innerError(new IllegalStateException("Queue full?!"));
+            }
+        }
+
+        void innerError(Throwable e) {
+            if (delayErrors) {
+                ExceptionHelper.addThrowable(errors, e);
+                done.decrementAndGet();
+                drain();
+            } else {
+                if (errors.compareAndSet(null, e)) {
+                    cancelAll();
+                    drain();
+                } else {
+                    if (e != errors.get()) {
+                        FolyamPlugins.onError(e);
+                    }
+                }
+            }
+        }
+
+        void innerComplete() {
+            done.decrementAndGet();
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() == 0) {
+                if (worker != null) {
+                    worker.schedule(this);
+                } else {
+                    run();
+                }
+            }
+        }
+
+        boolean isAllEmpty() {
+            for (JoinBatchedInnerSubscriber<T> inner : subscribers) {
+                PlainQueue<T> q = inner.queue;
+                if (q != null && !q.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean checkTerminated(boolean d, boolean empty, FolyamSubscriber<? super T> a) {
+            if (cancelled) {
+                cleanup();
+                return true;
+            }
+            if (delayErrors) {
+                if (d && empty) {
+                    Throwable ex = errors.get();
+                    if (ex != null) {
+                        a.onError(ExceptionHelper.terminate(errors));
+                    } else {
+                        a.onComplete();
+                    }
+                    return true;
+                }
+            } else {
+                Throwable ex = errors.get();
+                if (ex != null) {
+                    cleanup();
+                    a.onError(ex);
+                    return true;
+                }
+                if (d && empty) {
+                    a.onComplete();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+
+            JoinBatchedInnerSubscriber<T>[] s = this.subscribers;
+            FolyamSubscriber<? super T> a = this.actual;
+
+            for (;;) {
+
+                long r = requested.get();
+                long e = 0;
+
+                middle:
+                while (e != r) {
+                    if (checkTerminated(false, false, a)) {
+                        return;
+                    }
+
+                    boolean d = done.get() == 0;
+
+                    boolean empty = true;
+
+                    for (JoinBatchedInnerSubscriber<T> inner : s) {
+                        PlainQueue<T> q = inner.queue;
+                        if (q != null) {
+                            T v = q.poll();
+
+                            if (v != null) {
+                                empty = false;
+                                a.onNext(v);
+                                inner.requestOne();
+                                if (++e == r) {
+                                    break middle;
+                                }
+                            }
+                        }
+                    }
+
+                    if (checkTerminated(d, empty, a)) {
+                        return;
+                    }
+
+                    if (empty) {
+                        break;
+                    }
+                }
+
+                if (e == r) {
+                    if (checkTerminated(done.get() == 0, isAllEmpty(), a)) {
+                        return;
+                    }
+                }
+
+                if (e != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-e);
+                }
+
+                int w = get();
+                if (w == missed) {
+                    missed = addAndGet(-missed);
+                    if (missed == 0) {
+                        // rails don't signal while we are busy, look again before going idle
+                        if (requested.get() == 0L || isAllEmpty() || !compareAndSet(0, 1)) {
+                            break;
+                        }
+                        missed = 1;
+                    }
+                } else {
+                    missed = w;
+                }
+            }
+        }
+    }
+
+    static final class JoinBatchedInnerSubscriber<T>
+    extends AtomicReference<Flow.Subscription>
+    implements FolyamSubscriber<T> {
+
+        private static final long serialVersionUID = -1541390171466155358L;
+
+        final JoinBatchedSubscription<T> parent;
+
+        final int prefetch;
+
+        final int limit;
+
+        final int batchSize;
+
+        long produced;
+
+        int pending;
+
+        volatile PlainQueue<T> queue;
+
+        JoinBatchedInnerSubscriber(JoinBatchedSubscription<T> parent, int prefetch, int batchSize) {
+            this.parent = parent;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            if (SubscriptionHelper.replace(this, s)) {
+                s.request(prefetch);
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (!getQueue().offer(t)) {
+                parent.innerOverflow(this);
+                return;
+            }
+            int p = pending + 1;
+            if (p == batchSize || parent.isIdle()) {
+                pending = 0;
+                parent.drain();
+            } else {
+                pending = p;
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            parent.innerError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            parent.innerComplete();
+        }
+
+        void requestOne() {
+            long p = produced + 1;
+            if (p == limit) {
+                produced = 0;
+                get().request(p);
+            } else {
+                produced = p;
+            }
+        }
+
+        boolean cancel() {
+            return SubscriptionHelper.cancel(this);
+        }
+
+        PlainQueue<T> getQueue() {
+            PlainQueue<T> q = queue;
+            if (q == null) {
+                q = new SpscArrayQueue<>(prefetch);
+                this.queue = q;
+            }
+            return q;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.*;
+import hu.akarnokd.reactive4javaflow.impl.*;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.Collector;
+
+/**
+ * Accumulates each 'rail' into a container and combines the finished containers
+ * pairwise in a binary tree, running each combination step on a {@link SchedulerService}.
+ * <p>
+ * Rail {@code i} and rail {@code i ^ 1} are combined first, then their results with the
+ * neighboring pair and so on, thus the combination preserves the rail order and
+ * independent subtrees are combined in parallel. Containers of a concurrent collector
+ * are shared by all rails and are not combined at all.
+ *
+ * @param <T> the input value type
+ * @param <A> the accumulator (container) type, null indicates an empty rail
+ * @param <R> the result type
+ */
+public final class ParallelReduceTree<T, A, R> extends Esetleg<R> {
+
+    final ParallelFolyam<? extends T> source;
+
+    final Callable<? extends A> initialSupplier;
+
+    final CheckedBiFunction<A, ? super T, A> accumulator;
+
+    final CheckedBiFunction<A, A, A> combiner;
+
+    final CheckedFunction<? super A, ? extends R> finisher;
+
+    final boolean shared;
+
+    final SchedulerService scheduler;
+
+    public ParallelReduceTree(ParallelFolyam<? extends T> source,
+                              Callable<? extends A> initialSupplier,
+                              CheckedBiFunction<A, ? super T, A> accumulator,
+                              CheckedBiFunction<A, A, A> combiner,
+                              CheckedFunction<? super A, ? extends R> finisher,
+                              boolean shared,
+                              SchedulerService scheduler) {
+        this.source = source;
+        this.initialSupplier = initialSupplier;
+        this.accumulator = accumulator;
+        this.combiner = combiner;
+        this.finisher = finisher;
+        this.shared = shared;
+        this.scheduler = scheduler;
+    }
+
+    public static <T> ParallelReduceTree<T, T, T> reducer(ParallelFolyam<? extends T> source, CheckedBiFunction<T, T, T> reducer, SchedulerService scheduler) {
+        return new ParallelReduceTree<>(source,
+                () -> null,
+                (a, b) -> a == null ? b : reducer.apply(a, b),
+                reducer,
+                v -> v,
+                false,
+                scheduler);
+    }
+
+    public static <T, A, R> ParallelReduceTree<T, A, R> collector(ParallelFolyam<? extends T> source, Collector<? super T, A, R> collector, SchedulerService scheduler) {
+        Supplier<A> supplier = Objects.requireNonNull(collector.supplier(), "The collector's supplier is null");
+        BiConsumer<A, ? super T> acc = Objects.requireNonNull(collector.accumulator(), "The collector's accumulator function is null");
+        BinaryOperator<A> comb = Objects.requireNonNull(collector.combiner(), "The collector's combiner function is null");
+        Function<A, R> fin = Objects.requireNonNull(collector.finisher(), "The collector's finisher function is null");
+        return new ParallelReduceTree<T, A, R>(source,
+                () -> Objects.requireNonNull(supplier.get(), "The collector's supplier returned null"),
+                (a, b) -> { acc.accept(a, b); return a; },
+                comb::apply,
+                fin::apply,
+                collector.characteristics().contains(Collector.Characteristics.CONCURRENT),
+                scheduler);
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super R> s) {
+        int n = source.parallelism();
+        @SuppressWarnings("unchecked")
+        A[] initials = (A[])new Object[n];
+
+        try {
+            if (shared) {
+                A a = initialSupplier.call();
+                for (int i = 0; i < n; i++) {
+                    initials[i] = a;
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    initials[i] = initialSupplier.call();
+                }
+            }
+        } catch (Throwable ex) {
+            FolyamPlugins.handleFatal(ex);
+            EmptySubscription.error(s, ex);
+            return;
+        }
+
+        ReduceTreeMainSubscriber<T, A, R> parent = new ReduceTreeMainSubscriber<>(s, initials, accumulator, combiner, finisher, shared, scheduler);
+        s.onSubscribe(parent);
+
+        source.subscribe(parent.subscribers);
+    }
+
+    static final class ReduceTreeMainSubscriber<T, A, R> extends DeferredScalarSubscription<R> {
+
+        private static final long serialVersionUID = 2875264092163766305L;
+
+        final ReduceTreeInnerSubscriber<T, A>[] subscribers;
+
+        final CheckedBiFunction<A, A, A> combiner;
+
+        final CheckedFunction<? super A, ? extends R> finisher;
+
+        final boolean shared;
+
+        final SchedulerService scheduler;
+
+        /** The tree nodes of all levels, level {@code k} starts at {@code levelOffsets[k]}. */
+        final TreeNode<A>[] nodes;
+
+        final int[] levelOffsets;
+
+        final AtomicInteger remaining = new AtomicInteger();
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        @SuppressWarnings("unchecked")
+        ReduceTreeMainSubscriber(FolyamSubscriber<? super R> actual, A[] initials,
+                                 CheckedBiFunction<A, ? super T, A> accumulator,
+                                 CheckedBiFunction<A, A, A> combiner,
+                                 CheckedFunction<? super A, ? extends R> finisher,
+                                 boolean shared, SchedulerService scheduler) {
+            super(actual);
+            int n = initials.length;
+            ReduceTreeInnerSubscriber<T, A>[] a = new ReduceTreeInnerSubscriber[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = new ReduceTreeInnerSubscriber<>(this, i, initials[i], accumulator);
+            }
+            this.subscribers = a;
+            this.combiner = combiner;
+            this.finisher = finisher;
+            this.shared = shared;
+            this.scheduler = scheduler;
+
+            int levels = 0;
+            int count = 0;
+            for (int w = n; w > 1; w = (w + 1) >> 1) {
+                levels++;
+                count += w >> 1;
+            }
+            int[] offsets = new int[levels];
+            TreeNode<A>[] ns = new TreeNode[count];
+            int offset = 0;
+            int k = 0;
+            for (int w = n; w > 1; w = (w + 1) >> 1) {
+                offsets[k++] = offset;
+                for (int j = 0; j < w >> 1; j++) {
+                    ns[offset + j] = new TreeNode<>();
+                }
+                offset += w >> 1;
+            }
+            this.nodes = ns;
+            this.levelOffsets = offsets;
+            remaining.lazySet(n);
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            cancelAll();
+        }
+
+        void cancelAll() {
+            for (ReduceTreeInnerSubscriber<T, A> inner : subscribers) {
+                inner.cancel();
+            }
+        }
+
+        void innerError(Throwable ex) {
+            if (error.compareAndSet(null, ex)) {
+                cancelAll();
+                error(ex);
+            } else {
+                if (ex != error.get()) {
+                    FolyamPlugins.onError(ex);
+                }
+            }
+        }
+
+        void innerComplete(int index, A value) {
+            if (shared) {
+                if (remaining.decrementAndGet() == 0) {
+                    finish(value);
+                }
+                return;
+            }
+            combineUp(0, index, subscribers.length, value);
+        }
+
+        void combineUp(int level, int index, int width, A value) {
+            for (;;) {
+                if (width == 1) {
+                    finish(value);
+                    return;
+                }
+                if ((index ^ 1) >= width) {
+                    // odd one out, promote to the next level as is
+                    level++;
+                    index >>= 1;
+                    width = (width + 1) >> 1;
+                    continue;
+                }
+
+                TreeNode<A> node = nodes[levelOffsets[level] + (index >> 1)];
+                if ((index & 1) == 0) {
+                    node.left = value;
+                } else {
+                    node.right = value;
+                }
+                if (node.incrementAndGet() != 2) {
+                    return;
+                }
+
+                int nextLevel = level + 1;
+                int nextIndex = index >> 1;
+                int nextWidth = (width + 1) >> 1;
+                scheduler.schedule(() -> combineNode(node, nextLevel, nextIndex, nextWidth));
+                return;
+            }
+        }
+
+        void combineNode(TreeNode<A> node, int level, int index, int width) {
+            if (isCancelled()) {
+                node.left = null;
+                node.right = null;
+                return;
+            }
+            A left = node.left;
+            A right = node.right;
+            node.left = null;
+            node.right = null;
+
+            A value;
+            if (left == null) {
+                value = right;
+            } else if (right == null) {
+                value = left;
+            } else {
+                try {
+                    value = Objects.requireNonNull(combiner.apply(left, right), "The combiner returned a null value");
+                } catch (Throwable ex) {
+                    FolyamPlugins.handleFatal(ex);
+                    innerError(ex);
+                    return;
+                }
+            }
+            combineUp(level, index, width, value);
+        }
+
+        void finish(A value) {
+            if (value == null) {
+                complete();
+                return;
+            }
+            R result;
+            try {
+                result = Objects.requireNonNull(finisher.apply(value), "The finisher returned a null value");
+            } catch (Throwable ex) {
+                FolyamPlugins.handleFatal(ex);
+                innerError(ex);
+                return;
+            }
+            complete(result);
+        }
+    }
+
+    static final class ReduceTreeInnerSubscriber<T, A>
+    extends AtomicReference<Flow.Subscription>
+    implements FolyamSubscriber<T> {
+
+        private static final long serialVersionUID = -2364287466412007652L;
+
+        final ReduceTreeMainSubscriber<T, A, ?> parent;
+
+        final int index;
+
+        final CheckedBiFunction<A, ? super T, A> accumulator;
+
+        A value;
+
+        boolean done;
+
+        ReduceTreeInnerSubscriber(ReduceTreeMainSubscriber<T, A, ?> parent, int index, A initial, CheckedBiFunction<A, ? super T, A> accumulator) {
+            this.parent = parent;
+            this.index = index;
+            this.value = initial;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            if (SubscriptionHelper.replace(this, s)) {
+                s.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (!done) {
+                try {
+                    value = Objects.requireNonNull(accumulator.apply(value, t), "The accumulator returned a null value");
+                } catch (Throwable ex) {
+                    FolyamPlugins.handleFatal(ex);
+                    get().cancel();
+                    onError(ex);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (done) {
+                FolyamPlugins.onError(t);
+                return;
+            }
+            done = true;
+            value = null;
+            parent.innerError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            if (!done) {
+                done = true;
+                A v = value;
+                value = null;
+                parent.innerComplete(index, v);
+            }
+        }
+
+        void cancel() {
+            SubscriptionHelper.cancel(this);
+        }
+    }
+
+    static final class TreeNode<A> extends AtomicInteger {
+
+        private static final long serialVersionUID = -6213463281426452318L;
+
+        A left;
+
+        A right;
+    }
+}
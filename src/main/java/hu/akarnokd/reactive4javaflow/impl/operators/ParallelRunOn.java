@@ -36,11 +36,19 @@ public final class ParallelRunOn<T> extends ParallelFolyam<T> {
 
     final int prefetch;
 
+    final boolean pinned;
+
     public ParallelRunOn(ParallelFolyam<? extends T> parent,
             SchedulerService scheduler, int prefetch) {
+        this(parent, scheduler, prefetch, false);
+    }
+
+    public ParallelRunOn(ParallelFolyam<? extends T> parent,
+            SchedulerService scheduler, int prefetch, boolean pinned) {
         this.source = parent;
         this.scheduler = scheduler;
         this.prefetch = prefetch;
+        this.pinned = pinned;
     }
 
     @Override
@@ -56,7 +64,7 @@ public final class ParallelRunOn<T> extends ParallelFolyam<T> {
         for (int i = 0; i < n; i++) {
             FolyamSubscriber<? super T> a = subscribers[i];
 
-            SchedulerService.Worker w = scheduler.worker();
+            SchedulerService.Worker w = pinned ? scheduler.worker(i) : scheduler.worker();
             SpscArrayQueue<T> q = new SpscArrayQueue<>(prefetch);
 
             if (a instanceof ConditionalSubscriber) {
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.SubscriptionHelper;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Ensures each 'rail' from upstream runs on a Worker from a Scheduler and lets
+ * rails that ran out of items steal the queued but not yet processed items
+ * of other rails.
+ * <p>
+ * A rail prefetches from its own upstream rail and replenishes it whenever items
+ * are taken out of its queue, by itself or by a thief, thus a slow rail doesn't hold
+ * its prefetched items hostage. The rails complete once all upstream rails have
+ * terminated and all queues are empty, so idle rails help until the very end.
+ *
+ * @param <T> the value type
+ */
+public final class ParallelRunOnStealing<T> extends ParallelFolyam<T> {
+
+    final ParallelFolyam<? extends T> source;
+
+    final SchedulerService scheduler;
+
+    final int prefetch;
+
+    public ParallelRunOnStealing(ParallelFolyam<? extends T> source, SchedulerService scheduler, int prefetch) {
+        this.source = source;
+        this.scheduler = scheduler;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public int parallelism() {
+        return source.parallelism();
+    }
+
+    @Override
+    protected void subscribeActual(FolyamSubscriber<? super T>[] subscribers) {
+        int n = subscribers.length;
+
+        StealingCoordinator<T> coordinator = new StealingCoordinator<>(n);
+
+        @SuppressWarnings("unchecked")
+        StealingRail<T>[] rails = new StealingRail[n];
+        for (int i = 0; i < n; i++) {
+            rails[i] = new StealingRail<>(subscribers[i], i, coordinator, prefetch, scheduler.worker());
+        }
+        coordinator.rails = rails;
+
+        source.subscribe(rails);
+    }
+
+    static final class StealingCoordinator<T> {
+
+        final AtomicInteger remaining;
+
+        final AtomicInteger hungryCount;
+
+        StealingRail<T>[] rails;
+
+        StealingCoordinator(int n) {
+            this.remaining = new AtomicInteger(n);
+            this.hungryCount = new AtomicInteger();
+        }
+
+        void railTerminated() {
+            if (remaining.decrementAndGet() == 0) {
+                for (StealingRail<T> rail : rails) {
+                    rail.schedule();
+                }
+            }
+        }
+
+        boolean allEmpty() {
+            for (StealingRail<T> rail : rails) {
+                if (!rail.queue.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void completeOthers(int owner) {
+            StealingRail<T>[] a = rails;
+            for (int i = 0; i < a.length; i++) {
+                if (i != owner) {
+                    a[i].schedule();
+                }
+            }
+        }
+
+        void wakeThief(int owner) {
+            if (hungryCount.get() != 0) {
+                StealingRail<T>[] a = rails;
+                int n = a.length;
+                for (int i = 1; i < n; i++) {
+                    StealingRail<T> rail = a[(owner + i) % n];
+                    if (rail.unmarkHungry()) {
+                        rail.schedule();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    static final class StealingRail<T> extends AtomicInteger
+    implements FolyamSubscriber<T>, Flow.Subscription, Runnable {
+
+        private static final long serialVersionUID = -2153488925632553545L;
+
+        final FolyamSubscriber<? super T> actual;
+
+        final int index;
+
+        final StealingCoordinator<T> coordinator;
+
+        final int prefetch;
+
+        final int limit;
+
+        final SchedulerService.Worker worker;
+
+        final ConcurrentLinkedQueue<T> queue;
+
+        final AtomicReference<Flow.Subscription> upstream;
+
+        final AtomicLong requested;
+
+        final AtomicLong removed;
+
+        final AtomicLong upstreamRequested;
+
+        final AtomicInteger upstreamRequestWip;
+
+        final AtomicBoolean hungry;
+
+        final AtomicBoolean terminated;
+
+        volatile boolean done;
+        Throwable error;
+
+        volatile boolean cancelled;
+
+        StealingRail(FolyamSubscriber<? super T> actual, int index, StealingCoordinator<T> coordinator, int prefetch, SchedulerService.Worker worker) {
+            this.actual = actual;
+            this.index = index;
+            this.coordinator = coordinator;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.worker = worker;
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.upstream = new AtomicReference<>();
+            this.requested = new AtomicLong();
+            this.removed = new AtomicLong();
+            this.upstreamRequested = new AtomicLong();
+            this.upstreamRequestWip = new AtomicInteger();
+            this.hungry = new AtomicBoolean();
+            this.terminated = new AtomicBoolean();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            if (SubscriptionHelper.replace(upstream, s)) {
+                actual.onSubscribe(this);
+                requestUpstream(prefetch);
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) {
+                return;
+            }
+            queue.offer(t);
+            if (getAndIncrement() == 0) {
+                worker.schedule(this);
+            } else {
+                coordinator.wakeThief(index);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (done) {
+                FolyamPlugins.onError(t);
+                return;
+            }
+            error = t;
+            done = true;
+            schedule();
+            markTerminated();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            schedule();
+            markTerminated();
+        }
+
+        @Override
+        public void request(long n) {
+            SubscriptionHelper.addRequested(requested, n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                SubscriptionHelper.cancel(upstream);
+                worker.close();
+                queue.clear();
+                markTerminated();
+            }
+        }
+
+        void markTerminated() {
+            if (terminated.compareAndSet(false, true)) {
+                coordinator.railTerminated();
+            }
+        }
+
+        void schedule() {
+            if (getAndIncrement() == 0) {
+                worker.schedule(this);
+            }
+        }
+
+        boolean unmarkHungry() {
+            if (hungry.get() && hungry.compareAndSet(true, false)) {
+                coordinator.hungryCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        void markHungry() {
+            if (hungry.compareAndSet(false, true)) {
+                coordinator.hungryCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Called by the owner or a thief after an item has been taken out of the queue.
+         */
+        void itemRemoved() {
+            if (removed.incrementAndGet() % limit == 0L) {
+                requestUpstream(limit);
+            }
+        }
+
+        void requestUpstream(long n) {
+            upstreamRequested.getAndAdd(n);
+            if (upstreamRequestWip.getAndIncrement() == 0) {
+                do {
+                    long r = upstreamRequested.getAndSet(0L);
+                    if (r != 0L) {
+                        upstream.get().request(r);
+                    }
+                } while (upstreamRequestWip.decrementAndGet() != 0);
+            }
+        }
+
+        T steal() {
+            StealingRail<T>[] a = coordinator.rails;
+            int n = a.length;
+            for (int i = 1; i < n; i++) {
+                StealingRail<T> victim = a[(index + i) % n];
+                T v = victim.queue.poll();
+                if (v != null) {
+                    victim.itemRemoved();
+                    return v;
+                }
+            }
+            return null;
+        }
+
+        boolean checkTerminated(boolean allDone) {
+            if (cancelled) {
+                return true;
+            }
+            if (done) {
+                Throwable ex = error;
+                if (ex != null) {
+                    error = null;
+                    cancelled = true;
+                    queue.clear();
+                    actual.onError(ex);
+                    worker.close();
+                    return true;
+                }
+            }
+            if (allDone && coordinator.allEmpty()) {
+                cancelled = true;
+                actual.onComplete();
+                worker.close();
+                // rails that looked earlier may have seen our leftovers
+                coordinator.completeOthers(index);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            ConcurrentLinkedQueue<T> q = queue;
+            FolyamSubscriber<? super T> a = actual;
+            StealingCoordinator<T> c = coordinator;
+
+            unmarkHungry();
+
+            for (;;) {
+
+                long r = requested.get();
+                long e = 0L;
+
+                while (e != r) {
+                    boolean allDone = c.remaining.get() == 0;
+
+                    if (checkTerminated(false)) {
+                        return;
+                    }
+
+                    T v = q.poll();
+                    if (v != null) {
+                        itemRemoved();
+                    } else {
+                        v = steal();
+                    }
+
+                    if (v == null) {
+                        if (checkTerminated(allDone)) {
+                            return;
+                        }
+                        break;
+                    }
+
+                    a.onNext(v);
+
+                    e++;
+                }
+
+                if (e == r) {
+                    if (checkTerminated(c.remaining.get() == 0)) {
+                        return;
+                    }
+                }
+
+                if (e != 0L && r != Long.MAX_VALUE) {
+                    r = requested.addAndGet(-e);
+                }
+
+                if (r != 0L) {
+                    // ran dry while there is demand: become a thief and look once more
+                    markHungry();
+                    if (!c.allEmpty() && unmarkHungry()) {
+                        continue;
+                    }
+                } else if (!q.isEmpty()) {
+                    // no demand here, let a hungry rail take the leftovers
+                    c.wakeThief(index);
+                }
+
+                int w = get();
+                if (w == missed) {
+                    missed = addAndGet(-missed);
+                    if (missed == 0) {
+                        break;
+                    }
+                } else {
+                    missed = w;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,577 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.schedulers;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
+import hu.akarnokd.reactive4javaflow.impl.VH;
+import hu.akarnokd.reactive4javaflow.impl.util.OpenHashSet;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.IntConsumer;
+
+/**
+ * A single-threaded event loop that executes tasks and hosts
+ * non-blocking {@link SelectableChannel}s on the same {@link Selector}.
+ * <p>
+ * Channels are registered via {@link #register(SelectableChannel, IntConsumer)}
+ * and their interest set can be changed from any thread through the returned
+ * {@link ChannelRegistration}; the changes and the readiness callbacks are
+ * always executed on the event loop thread.
+ */
+public final class NioSchedulerService implements SchedulerService {
+
+    final String name;
+
+    final int priority;
+
+    final boolean daemon;
+
+    EventLoop loop;
+    static final VarHandle LOOP = VH.find(MethodHandles.lookup(), NioSchedulerService.class, "loop", EventLoop.class);
+
+    static final EventLoop SHUTDOWN = new EventLoop();
+
+    long index;
+    static final VarHandle INDEX = VH.find(MethodHandles.lookup(), NioSchedulerService.class, "index", Long.TYPE);
+
+    public NioSchedulerService(String name, int priority, boolean daemon) {
+        this.name = name;
+        this.priority = priority;
+        this.daemon = daemon;
+        LOOP.setRelease(this, newLoop());
+    }
+
+    EventLoop newLoop() {
+        Selector selector;
+        try {
+            selector = Selector.open();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        EventLoop el = new EventLoop(selector);
+        Thread t = new Thread(el, name + "-" + ((long)INDEX.getAndAdd(this, 1) + 1));
+        t.setPriority(priority);
+        t.setDaemon(daemon);
+        el.thread = t;
+        t.start();
+        return el;
+    }
+
+    EventLoop loop() {
+        return (EventLoop)LOOP.getAcquire(this);
+    }
+
+    /**
+     * Returns true if the current thread is the event loop thread.
+     * @return true if the current thread is the event loop thread
+     */
+    public boolean inEventLoop() {
+        return loop().thread == Thread.currentThread();
+    }
+
+    /**
+     * Registers a non-blocking channel with the event loop with an empty interest set.
+     * @param channel the channel in non-blocking mode
+     * @param handler called on the event loop thread with the ready operations
+     *                of the channel when they match its interest set; if the registration
+     *                itself fails, it is called with all the valid operations of the channel
+     *                so that the next I/O call reports the failure
+     * @return the registration to change the interest set or to deregister the channel
+     * @throws RejectedExecutionException if this NioSchedulerService has been shut down
+     */
+    public ChannelRegistration register(SelectableChannel channel, IntConsumer handler) {
+        Objects.requireNonNull(channel, "channel == null");
+        Objects.requireNonNull(handler, "handler == null");
+        EventLoop el = loop();
+        if (el.shutdown) {
+            throw new RejectedExecutionException("The event loop has been shut down");
+        }
+        ChannelRegistration reg = new ChannelRegistration(el, channel, handler);
+        if (el.thread == Thread.currentThread()) {
+            reg.run();
+        } else {
+            el.execute(reg);
+        }
+        return reg;
+    }
+
+    @Override
+    public AutoDisposable schedule(Runnable task) {
+        Objects.requireNonNull(task, "task == null");
+        return loop().schedule(task, 0L, null);
+    }
+
+    @Override
+    public AutoDisposable schedule(Runnable task, long delay, TimeUnit unit) {
+        Objects.requireNonNull(task, "task == null");
+        Objects.requireNonNull(unit, "unit == null");
+        return loop().schedule(task, unit.toNanos(delay), null);
+    }
+
+    @Override
+    public Worker worker() {
+        return new NioWorker(loop());
+    }
+
+    @Override
+    public void start() {
+        for (;;) {
+            EventLoop a = loop();
+            if (a != SHUTDOWN) {
+                return;
+            }
+            synchronized (this) {
+                if (loop() == SHUTDOWN) {
+                    LOOP.setRelease(this, newLoop());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        EventLoop a = (EventLoop)LOOP.getAndSet(this, SHUTDOWN);
+        if (a != SHUTDOWN) {
+            a.shutdown();
+        }
+    }
+
+    static final class EventLoop implements Runnable {
+
+        final Selector selector;
+
+        final ConcurrentLinkedQueue<Runnable> queue;
+
+        final PriorityQueue<LoopTask> timers;
+
+        final AtomicBoolean wakeupPending;
+
+        final AtomicInteger cancelledTimers;
+
+        volatile boolean shutdown;
+
+        volatile Thread thread;
+
+        long sequence;
+
+        EventLoop() {
+            this.selector = null;
+            this.queue = null;
+            this.timers = null;
+            this.wakeupPending = null;
+            this.cancelledTimers = null;
+            this.shutdown = true;
+        }
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.timers = new PriorityQueue<>();
+            this.wakeupPending = new AtomicBoolean();
+            this.cancelledTimers = new AtomicInteger();
+        }
+
+        void execute(Runnable task) {
+            if (shutdown) {
+                return;
+            }
+            queue.offer(task);
+            if (thread != Thread.currentThread() && wakeupPending.compareAndSet(false, true)) {
+                try {
+                    selector.wakeup();
+                } catch (ClosedSelectorException ex) {
+                    // the loop has quit in the meantime
+                    queue.clear();
+                }
+            }
+        }
+
+        AutoDisposable schedule(Runnable task, long delayNanos, NioWorker worker) {
+            if (shutdown) {
+                FolyamPlugins.onError(new RejectedExecutionException("The event loop has been shut down"));
+                return REJECTED;
+            }
+            LoopTask t = new LoopTask(this, task, worker);
+            if (worker != null && !worker.add(t)) {
+                return REJECTED;
+            }
+            if (delayNanos <= 0L) {
+                execute(t);
+            } else {
+                t.deadline = System.nanoTime() + delayNanos;
+                execute(() -> addTimer(t));
+            }
+            return t;
+        }
+
+        void addTimer(LoopTask t) {
+            if (t.get() == LoopTask.READY) {
+                t.sequence = sequence++;
+                timers.offer(t);
+            }
+        }
+
+        void shutdown() {
+            shutdown = true;
+            try {
+                selector.wakeup();
+            } catch (ClosedSelectorException ex) {
+                // already quit
+            }
+        }
+
+        @Override
+        public void run() {
+            Selector sel = selector;
+            ConcurrentLinkedQueue<Runnable> q = queue;
+            PriorityQueue<LoopTask> tq = timers;
+
+            try {
+                while (!shutdown) {
+                    runTasks(q);
+
+                    long timeout = runTimers(tq);
+
+                    // volatile store: it must not be reordered after the queue emptiness check below
+                    wakeupPending.set(false);
+
+                    if (shutdown) {
+                        break;
+                    }
+
+                    int n;
+                    if (!q.isEmpty()) {
+                        n = sel.selectNow();
+                    } else if (timeout == 0L) {
+                        n = sel.select();
+                    } else {
+                        n = sel.select(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(timeout)));
+                    }
+
+                    if (n != 0) {
+                        Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+                        while (it.hasNext()) {
+                            SelectionKey key = it.next();
+                            it.remove();
+                            if (key.isValid()) {
+                                ChannelRegistration reg = (ChannelRegistration)key.attachment();
+                                try {
+                                    reg.handler.accept(key.readyOps());
+                                } catch (Throwable ex) {
+                                    FolyamPlugins.onError(ex);
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable ex) {
+                FolyamPlugins.onError(ex);
+            } finally {
+                shutdown = true;
+                q.clear();
+                tq.clear();
+                try {
+                    sel.close();
+                } catch (IOException ex) {
+                    FolyamPlugins.onError(ex);
+                }
+            }
+        }
+
+        void runTasks(ConcurrentLinkedQueue<Runnable> q) {
+            Runnable r;
+            while ((r = q.poll()) != null) {
+                try {
+                    r.run();
+                } catch (Throwable ex) {
+                    FolyamPlugins.onError(ex);
+                }
+                if (shutdown) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Runs the due timed tasks.
+         * @return the nanoseconds until the next timed task or zero if there is none
+         */
+        long runTimers(PriorityQueue<LoopTask> tq) {
+            int c = cancelledTimers.getAcquire();
+            if (c != 0 && c > tq.size() >> 1) {
+                cancelledTimers.getAndAdd(-c);
+                tq.removeIf(t -> t.get() != LoopTask.READY);
+            }
+            for (;;) {
+                LoopTask t = tq.peek();
+                if (t == null) {
+                    return 0L;
+                }
+                long now = System.nanoTime();
+                if (t.deadline - now > 0L) {
+                    return t.deadline - now;
+                }
+                tq.poll();
+                t.run();
+            }
+        }
+    }
+
+    static final class LoopTask extends AtomicInteger
+    implements Runnable, AutoDisposable, Comparable<LoopTask> {
+
+        private static final long serialVersionUID = 3374006284707394937L;
+
+        static final int READY = 0;
+        static final int RUNNING = 1;
+        static final int FINISHED = 2;
+        static final int CANCELLED = 3;
+
+        final EventLoop loop;
+
+        NioWorker worker;
+
+        Runnable task;
+
+        long deadline;
+
+        long sequence;
+
+        LoopTask(EventLoop loop, Runnable task, NioWorker worker) {
+            this.loop = loop;
+            this.task = task;
+            this.worker = worker;
+        }
+
+        @Override
+        public void run() {
+            if (compareAndSet(READY, RUNNING)) {
+                try {
+                    task.run();
+                } catch (Throwable ex) {
+                    FolyamPlugins.onError(ex);
+                } finally {
+                    lazySet(FINISHED);
+                    task = null;
+                    removeFromWorker();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (compareAndSet(READY, CANCELLED)) {
+                task = null;
+                if (deadline != 0L) {
+                    loop.cancelledTimers.getAndIncrement();
+                }
+                removeFromWorker();
+            }
+        }
+
+        void removeFromWorker() {
+            NioWorker w = worker;
+            if (w != null) {
+                worker = null;
+                w.remove(this);
+            }
+        }
+
+        @Override
+        public int compareTo(LoopTask o) {
+            int c = Long.signum(deadline - o.deadline);
+            if (c == 0) {
+                c = Long.compare(sequence, o.sequence);
+            }
+            return c;
+        }
+    }
+
+    static final class NioWorker implements Worker {
+
+        final EventLoop loop;
+
+        volatile boolean closed;
+
+        OpenHashSet<AutoDisposable> tasks;
+
+        NioWorker(EventLoop loop) {
+            this.loop = loop;
+            this.tasks = new OpenHashSet<>();
+        }
+
+        @Override
+        public AutoDisposable schedule(Runnable task, long delay, TimeUnit unit) {
+            Objects.requireNonNull(task, "task == null");
+            Objects.requireNonNull(unit, "unit == null");
+            if (closed) {
+                return REJECTED;
+            }
+            return loop.schedule(task, unit.toNanos(delay), this);
+        }
+
+        boolean add(AutoDisposable d) {
+            if (!closed) {
+                synchronized (this) {
+                    if (!closed) {
+                        tasks.add(d);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void remove(AutoDisposable d) {
+            if (!closed) {
+                synchronized (this) {
+                    if (!closed) {
+                        tasks.remove(d);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                OpenHashSet<AutoDisposable> set;
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    set = tasks;
+                    tasks = null;
+                    closed = true;
+                }
+
+                for (Object o : set.keys()) {
+                    if (o != null) {
+                        ((AutoDisposable)o).close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Represents a channel registered with the event loop of a {@link NioSchedulerService}.
+     * <p>
+     * The interest set can be modified from any thread; the modification is applied
+     * directly when called on the event loop and is queued up otherwise.
+     */
+    public static final class ChannelRegistration implements Runnable, AutoDisposable {
+
+        final EventLoop loop;
+
+        final SelectableChannel channel;
+
+        final IntConsumer handler;
+
+        /** Accessed from the event loop only. */
+        SelectionKey key;
+
+        /** Accessed from the event loop only. */
+        int interestOps;
+
+        volatile boolean closed;
+
+        ChannelRegistration(EventLoop loop, SelectableChannel channel, IntConsumer handler) {
+            this.loop = loop;
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            if (!closed) {
+                try {
+                    key = channel.register(loop.selector, interestOps, this);
+                } catch (IOException ex) {
+                    handler.accept(channel.validOps());
+                }
+            }
+        }
+
+        /**
+         * Adds the given operations to the interest set.
+         * @param ops the {@link SelectionKey} operation bits to add
+         */
+        public void addInterest(int ops) {
+            update(ops, true);
+        }
+
+        /**
+         * Removes the given operations from the interest set.
+         * @param ops the {@link SelectionKey} operation bits to remove
+         */
+        public void removeInterest(int ops) {
+            update(ops, false);
+        }
+
+        void update(int ops, boolean add) {
+            if (loop.thread == Thread.currentThread()) {
+                apply(ops, add);
+            } else {
+                loop.execute(() -> apply(ops, add));
+            }
+        }
+
+        void apply(int ops, boolean add) {
+            if (!closed) {
+                int o = interestOps;
+                int n = add ? o | ops : o & ~ops;
+                if (o != n) {
+                    interestOps = n;
+                    SelectionKey k = key;
+                    if (k != null && k.isValid()) {
+                        k.interestOps(n);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Deregisters the channel from the event loop; the channel itself is not closed.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (loop.thread == Thread.currentThread()) {
+                    cancelKey();
+                } else {
+                    loop.execute(this::cancelKey);
+                }
+            }
+        }
+
+        void cancelKey() {
+            SelectionKey k = key;
+            if (k != null) {
+                key = null;
+                k.cancel();
+            }
+        }
+    }
+}
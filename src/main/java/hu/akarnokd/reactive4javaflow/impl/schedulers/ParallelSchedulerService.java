@@ -124,6 +124,19 @@ public final class ParallelSchedulerService implements SchedulerService, ThreadF
         return new ScheduledExecutorServiceWorker(pick());
     }
 
+    @Override
+    public Worker worker(int index) {
+        return new ScheduledExecutorServiceWorker(pick(index));
+    }
+
+    ScheduledExecutorService pick(int index) {
+        ScheduledExecutorService[] a = (ScheduledExecutorService[])EXECUTORS.getAcquire(this);
+        if (a == SHUTDOWN) {
+            return STOPPED;
+        }
+        return a[Math.abs(index % a.length)];
+    }
+
     @Override
     public void start() {
         ScheduledExecutorService[] b = null;
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.util;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * An append-only log of byte records stored in a directory of memory-mapped,
+ * fixed-size segment files.
+ * <p>
+ * Each segment consists of a data file {@code <base>.log} holding the length-prefixed
+ * records and an index file {@code <base>.idx} holding the append time and the data
+ * offset of each record, where {@code base} is the sequence number of the first record
+ * in the segment. The length prefix is written after the payload so a record torn by
+ * a crash is dropped when the log is re-opened.
+ * <p>
+ * There can be only one appending thread at a time, but any number of
+ * {@link Cursor}s may read concurrently with it. Retention removes whole segments,
+ * oldest first, whenever the log rolls over to a new segment and when it is opened.
+ */
+public final class MappedLog implements AutoCloseable {
+
+    static final int ENTRY_SIZE = 12;
+
+    static final String DATA_SUFFIX = ".log";
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    final Path directory;
+
+    final int segmentSize;
+
+    final int indexCapacity;
+
+    final long retentionBytes;
+
+    final long retentionMillis;
+
+    volatile Segment head;
+
+    Segment tail;
+
+    long totalBytes;
+
+    /**
+     * Opens or creates a log in the given directory and recovers the records
+     * of any existing segments.
+     * @param directory the directory holding the segment files, created if missing
+     * @param segmentSize the size of a segment's data file in bytes, the upper bound
+     *                    of a record's size (minus its 4 bytes length prefix)
+     * @param retentionBytes the number of data bytes to retain, {@code Long.MAX_VALUE} for no limit
+     * @param retentionMillis how long to retain a segment after its last append,
+     *                        {@code Long.MAX_VALUE} for no limit
+     * @throws IOException if the segment files couldn't be opened or created
+     */
+    public MappedLog(Path directory, int segmentSize, long retentionBytes, long retentionMillis) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexCapacity = Math.max(16, segmentSize / 16);
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*" + DATA_SUFFIX)) {
+            for (Path p : ds) {
+                files.add(p);
+            }
+        }
+        // base sequence numbers are zero padded, the names sort numerically
+        Collections.sort(files);
+
+        Segment first = null;
+        Segment last = null;
+        for (Path p : files) {
+            String name = p.getFileName().toString();
+            long base = Long.parseLong(name.substring(0, name.length() - DATA_SUFFIX.length()));
+            Segment s = Segment.open(directory, base, segmentSize, indexCapacity);
+            s.recover(Files.getLastModifiedTime(p).toMillis());
+            if (last == null) {
+                first = s;
+            } else {
+                last.next = s;
+            }
+            last = s;
+            totalBytes += s.data.capacity();
+        }
+
+        if (last == null) {
+            first = last = Segment.open(directory, 0L, segmentSize, indexCapacity);
+            totalBytes = last.data.capacity();
+        } else {
+            last.clearTail();
+        }
+
+        head = first;
+        tail = last;
+        trim();
+    }
+
+    /**
+     * Appends a record to the log, rolling over to a new segment if the current one
+     * is full, and makes it visible to the cursors.
+     * <p>
+     * Must be called from one thread at a time.
+     * @param record the record bytes
+     * @return the sequence number of the record
+     * @throws IOException if a new segment couldn't be created
+     */
+    public long append(byte[] record) throws IOException {
+        int len = record.length;
+        if (len > segmentSize - 4) {
+            throw new IllegalArgumentException("Record larger than the segment: " + len);
+        }
+        Segment t = tail;
+        if (!t.hasRoom(len)) {
+            t = roll(t);
+        }
+        return t.append(record, System.currentTimeMillis());
+    }
+
+    Segment roll(Segment t) throws IOException {
+        t.force();
+        Segment s = Segment.open(directory, t.base + t.count, segmentSize, indexCapacity);
+        totalBytes += s.data.capacity();
+        tail = s;
+        t.next = s;
+        trim();
+        return s;
+    }
+
+    /**
+     * Removes the oldest segments, except the current one, that are beyond the
+     * size limit or whose last record is older than the time limit.
+     * <p>
+     * Must not be called concurrently with {@link #append(byte[])}. Cursors
+     * already reading a removed segment can finish reading it.
+     */
+    public void trim() {
+        long now = System.currentTimeMillis();
+        Segment h = head;
+        Segment t = tail;
+        while (h != t) {
+            if (totalBytes > retentionBytes || now - h.lastTime > retentionMillis) {
+                totalBytes -= h.data.capacity();
+                h.delete();
+                h = h.next;
+                head = h;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Flushes the current segment to the storage device.
+     * <p>
+     * Segments are flushed when the log rolls over them, otherwise flushing
+     * is up to the caller's durability needs.
+     */
+    public void force() {
+        tail.force();
+    }
+
+    /**
+     * Flushes the current segment; the mappings stay valid for the cursors.
+     */
+    @Override
+    public void close() {
+        force();
+    }
+
+    /**
+     * Returns a new cursor positioned at the oldest retained record.
+     * @return the new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor(head);
+    }
+
+    /**
+     * Returns the sequence number of the oldest retained record.
+     * @return the sequence number of the oldest retained record
+     */
+    public long firstSequence() {
+        return head.base;
+    }
+
+    /**
+     * Returns the sequence number the next appended record will get.
+     * <p>
+     * Must be called from the appending thread.
+     * @return the sequence number the next appended record will get
+     */
+    public long nextSequence() {
+        Segment t = tail;
+        return t.base + t.count;
+    }
+
+    static String fileName(long base, String suffix) {
+        return String.format("%020d%s", base, suffix);
+    }
+
+    static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long current = fc.size();
+            // the mapping stays valid after the channel is closed
+            return fc.map(FileChannel.MapMode.READ_WRITE, 0, current != 0L ? current : size);
+        }
+    }
+
+    static final class Segment {
+
+        final long base;
+
+        final Path dataFile;
+
+        final Path indexFile;
+
+        final MappedByteBuffer data;
+
+        final MappedByteBuffer index;
+
+        final ByteBuffer writer;
+
+        final int indexCapacity;
+
+        int position;
+
+        long lastTime;
+
+        volatile int count;
+
+        volatile Segment next;
+
+        Segment(long base, Path dataFile, Path indexFile, MappedByteBuffer data, MappedByteBuffer index) {
+            this.base = base;
+            this.dataFile = dataFile;
+            this.indexFile = indexFile;
+            this.data = data;
+            this.index = index;
+            this.writer = data.duplicate();
+            this.indexCapacity = index.capacity() / ENTRY_SIZE;
+            this.lastTime = System.currentTimeMillis();
+        }
+
+        static Segment open(Path directory, long base, int segmentSize, int indexCapacity) throws IOException {
+            Path d = directory.resolve(fileName(base, DATA_SUFFIX));
+            Path i = directory.resolve(fileName(base, INDEX_SUFFIX));
+            return new Segment(base, d, i, map(d, segmentSize), map(i, (long)indexCapacity * ENTRY_SIZE));
+        }
+
+        /**
+         * Walks the committed records of the data file and rewrites the
+         * index entries a crash may have left out.
+         * @param modifiedTime the time to use for the rewritten entries
+         */
+        void recover(long modifiedTime) {
+            MappedByteBuffer d = data;
+            MappedByteBuffer x = index;
+            int cap = d.capacity();
+            int p = 0;
+            int n = 0;
+            long time = modifiedTime;
+            while (p + 4 <= cap && n < indexCapacity) {
+                int len = d.getInt(p) - 1;
+                if (len < 0 || p + 4 + len > cap) {
+                    break;
+                }
+                int e = n * ENTRY_SIZE;
+                if (x.getInt(e + 8) == p + 1) {
+                    time = x.getLong(e);
+                } else {
+                    x.putLong(e, modifiedTime);
+                    x.putInt(e + 8, p + 1);
+                    time = modifiedTime;
+                }
+                n++;
+                p += 4 + len;
+            }
+            position = p;
+            lastTime = time;
+            count = n;
+        }
+
+        /**
+         * Zeroes the data after the last committed record so the payload
+         * of a torn record can't be mistaken for a length prefix later on.
+         */
+        void clearTail() {
+            MappedByteBuffer d = data;
+            for (int i = position; i < d.capacity(); i++) {
+                if (d.get(i) != 0) {
+                    d.put(i, (byte)0);
+                }
+            }
+        }
+
+        boolean hasRoom(int len) {
+            return position + 4 + len <= data.capacity() && count < indexCapacity;
+        }
+
+        long append(byte[] record, long time) {
+            int p = position;
+            int n = count;
+            ByteBuffer w = writer;
+            w.position(p + 4);
+            w.put(record);
+            // stored as length + 1 so empty records differ from unwritten space
+            data.putInt(p, record.length + 1);
+            int e = n * ENTRY_SIZE;
+            index.putLong(e, time);
+            index.putInt(e + 8, p + 1);
+            position = p + 4 + record.length;
+            lastTime = time;
+            count = n + 1;
+            return base + n;
+        }
+
+        void force() {
+            data.force();
+            index.force();
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(dataFile);
+                Files.deleteIfExists(indexFile);
+            } catch (IOException ex) {
+                // some platforms can't delete mapped files, the next open retries the retention
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a log sequentially, following the appends.
+     * <p>
+     * A cursor is not thread-safe and should be used from one thread at a time.
+     */
+    public static final class Cursor {
+
+        Segment segment;
+
+        ByteBuffer buffer;
+
+        int index;
+
+        Cursor(Segment segment) {
+            this.segment = segment;
+            this.buffer = segment.data.duplicate();
+        }
+
+        /**
+         * Returns true if a record is available, moving over to the
+         * next segment if the current one has been read fully.
+         * @return true if a record is available
+         */
+        public boolean hasNext() {
+            Segment s = segment;
+            for (;;) {
+                if (index < s.count) {
+                    return true;
+                }
+                Segment n = s.next;
+                if (n == null) {
+                    return false;
+                }
+                // the segment is sealed before its successor is published
+                if (index < s.count) {
+                    return true;
+                }
+                s = n;
+                segment = n;
+                buffer = n.data.duplicate();
+                index = 0;
+            }
+        }
+
+        /**
+         * Returns the next record or null if none is available yet.
+         * <p>
+         * The returned buffer is positioned at the payload and is reused by
+         * the next call.
+         * @return the next record or null if none is available yet
+         */
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                return null;
+            }
+            Segment s = segment;
+            int i = index;
+            int offset = s.index.getInt(i * ENTRY_SIZE + 8) - 1;
+            int len = s.data.getInt(offset) - 1;
+            ByteBuffer b = buffer;
+            b.limit(b.capacity());
+            b.position(offset + 4);
+            b.limit(offset + 4 + len);
+            index = i + 1;
+            return b;
+        }
+
+        /**
+         * Returns the sequence number of the record the next {@link #next()} call returns.
+         * @return the sequence number of the record the next {@link #next()} call returns
+         */
+        public long sequence() {
+            return segment.base + index;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.util;
+
+import hu.akarnokd.reactive4javaflow.impl.QueueHelper;
+
+import java.util.Arrays;
+
+/**
+ * Base of open-addressing tables with linear probing whose subclasses keep their
+ * values in arrays parallel to the keys, see {@link OpenHashSet} for the set variant.
+ * <p>
+ * The mixed hash of each key is cached in an {@code int[]}, so probing and rehashing
+ * don't call {@code hashCode} and mismatching slots rarely call {@code equals}. Removal
+ * shifts the following entries of the probe sequence backwards instead of leaving
+ * tombstones; the subclasses only have to move and clear their own values via
+ * {@link #move(int, int)}, {@link #clearValue(int)} and {@link #resize(int[], int)}.
+ * <p>Doesn't support nor checks for {@code null} keys.
+ */
+public abstract class OpenHashTable {
+    private static final int INT_PHI = 0x9E3779B9;
+
+    Object[] keys;
+
+    int[] hashes;
+
+    int mask;
+
+    int size;
+
+    int maxSize;
+
+    protected OpenHashTable(int capacity) {
+        int c = QueueHelper.pow2(capacity);
+        this.keys = new Object[c];
+        this.hashes = new int[c];
+        this.mask = c - 1;
+        this.maxSize = c - (c >> 2);
+    }
+
+    public static int mix(int x) {
+        final int h = x * INT_PHI;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot of the key or the bitwise complement of the
+     * free slot it should be inserted into.
+     * @param key the key to find
+     * @param hash the hash of the key, see {@link #mix(int)}
+     * @param tag an additional key component checked by {@link #matches(int, Object, long)}
+     * @return the slot of the key or the complement of the insertion slot
+     */
+    public final int find(Object key, int hash, long tag) {
+        Object[] a = keys;
+        int[] hs = hashes;
+        int m = mask;
+        int pos = hash & m;
+        for (;;) {
+            Object k = a[pos];
+            if (k == null) {
+                return ~pos;
+            }
+            if (hs[pos] == hash && matches(pos, key, tag)) {
+                return pos;
+            }
+            pos = (pos + 1) & m;
+        }
+    }
+
+    public final int find(Object key, int hash) {
+        return find(key, hash, 0L);
+    }
+
+    /**
+     * Checks if the key at the given slot, whose hash already matched, is the one being looked up.
+     * @param pos the slot
+     * @param key the key looked up
+     * @param tag the additional key component given to {@link #find(Object, int, long)}
+     * @return true if the slot holds the key
+     */
+    protected boolean matches(int pos, Object key, long tag) {
+        return keys[pos].equals(key);
+    }
+
+    /**
+     * Puts the key into the free slot returned by {@link #find(Object, int, long)}
+     * and grows the table if necessary.
+     * @param key the key to insert
+     * @param hash the hash of the key
+     * @param pos the free slot
+     * @return the slot of the key, which differs from {@code pos} if the table was grown
+     */
+    public final int insert(Object key, int hash, int pos) {
+        keys[pos] = key;
+        hashes[pos] = hash;
+        if (++size >= maxSize) {
+            return rehash()[pos];
+        }
+        return pos;
+    }
+
+    /**
+     * Removes the entry at the given slot and shifts the entries after it backwards.
+     * Only slots after {@code pos} in the probe order move into {@code pos} or into
+     * slots after it, so a scan removing entries as it goes doesn't skip any.
+     * @param pos the occupied slot
+     */
+    public final void removeAt(int pos) {
+        Object[] a = keys;
+        int[] hs = hashes;
+        int m = mask;
+        size--;
+
+        for (;;) {
+            int last = pos;
+            Object curr;
+            pos = (pos + 1) & m;
+            for (;;) {
+                curr = a[pos];
+                if (curr == null) {
+                    a[last] = null;
+                    clearValue(last);
+                    return;
+                }
+                int slot = hs[pos] & m;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & m;
+            }
+            a[last] = curr;
+            hs[last] = hs[pos];
+            move(pos, last);
+        }
+    }
+
+    int[] rehash() {
+        Object[] a = keys;
+        int[] hs = hashes;
+        int c = a.length << 1;
+        int m = c - 1;
+
+        Object[] na = new Object[c];
+        int[] nhs = new int[c];
+        int[] moves = new int[a.length];
+        Arrays.fill(moves, -1);
+
+        for (int i = 0; i < a.length; i++) {
+            Object k = a[i];
+            if (k != null) {
+                int h = hs[i];
+                int pos = h & m;
+                while (na[pos] != null) {
+                    pos = (pos + 1) & m;
+                }
+                na[pos] = k;
+                nhs[pos] = h;
+                moves[i] = pos;
+            }
+        }
+
+        this.keys = na;
+        this.hashes = nhs;
+        this.mask = m;
+        this.maxSize = c - (c >> 2);
+        resize(moves, c);
+        return moves;
+    }
+
+    public final void clear() {
+        if (size != 0) {
+            Arrays.fill(keys, null);
+            clearValues();
+            size = 0;
+        }
+    }
+
+    /**
+     * Moves the values of an entry to another slot during removal.
+     * @param from the slot the entry is moved from
+     * @param to the slot the entry is moved to
+     */
+    protected abstract void move(int from, int to);
+
+    /**
+     * Releases the values of the slot emptied by a removal.
+     * @param pos the slot
+     */
+    protected abstract void clearValue(int pos);
+
+    /**
+     * Replaces the value arrays with ones of the new capacity.
+     * @param moves the new slot of each old slot, -1 for the free ones
+     * @param capacity the new capacity
+     */
+    protected abstract void resize(int[] moves, int capacity);
+
+    /**
+     * Releases the values of all slots.
+     */
+    protected abstract void clearValues();
+
+    /**
+     * Returns the key array, with {@code null} for the free slots; growing the table
+     * replaces it, see {@link #removeAt(int)} for scanning while removing.
+     * @return the key array
+     */
+    public final Object[] keys() {
+        return keys; // NOPMD
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    public final int mask() {
+        return mask;
+    }
+}
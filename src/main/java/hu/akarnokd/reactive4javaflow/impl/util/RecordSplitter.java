@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.util;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Splits a sequence of ByteBuffer chunks into delimiter-separated records.
+ * <p>
+ * Records that fall entirely within a chunk are returned as read-only slices
+ * of that chunk; only the record spanning two or more chunks is copied into
+ * a carry-over buffer. The delimiter is not part of the records.
+ * <p>
+ * An instance is stateful and should be used for one sequence only.
+ */
+public final class RecordSplitter {
+
+    final byte delimiter;
+
+    final boolean stripCarriageReturn;
+
+    ByteBuffer carry;
+
+    /**
+     * Constructs a RecordSplitter.
+     * @param delimiter the record delimiter
+     * @param stripCarriageReturn if true, a '\r' in front of the delimiter is removed too
+     */
+    public RecordSplitter(byte delimiter, boolean stripCarriageReturn) {
+        this.delimiter = delimiter;
+        this.stripCarriageReturn = stripCarriageReturn;
+    }
+
+    /**
+     * Returns the complete records available after appending the given chunk.
+     * <p>
+     * The carry-over is updated eagerly so the returned Iterable doesn't have to
+     * be consumed before the next chunk is split.
+     * @param chunk the next chunk, its position and limit are not modified
+     * @return the Iterable of the complete records
+     */
+    public Iterable<ByteBuffer> split(ByteBuffer chunk) {
+        int start = chunk.position();
+        int end = chunk.limit();
+
+        int first = indexOf(chunk, start, end);
+        if (first < 0) {
+            appendCarry(chunk, start, end);
+            return Collections.emptyList();
+        }
+
+        ByteBuffer head;
+        ByteBuffer c = carry;
+        if (c != null && c.position() != 0) {
+            appendCarry(chunk, start, first);
+            head = takeCarry(false);
+        } else {
+            head = record(chunk, start, first);
+        }
+
+        int last = lastIndexOf(chunk, first, end);
+        appendCarry(chunk, last + 1, end);
+
+        if (first == last) {
+            return Collections.singletonList(head);
+        }
+        return () -> new RecordIterator(head, chunk, first + 1, last);
+    }
+
+    /**
+     * Returns the trailing record not terminated by a delimiter, if any.
+     * @return the trailing record or null if there is none
+     */
+    public ByteBuffer remainder() {
+        ByteBuffer c = carry;
+        if (c != null && c.position() != 0) {
+            return takeCarry(true);
+        }
+        return null;
+    }
+
+    int indexOf(ByteBuffer b, int from, int to) {
+        byte d = delimiter;
+        for (int i = from; i < to; i++) {
+            if (b.get(i) == d) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int lastIndexOf(ByteBuffer b, int from, int to) {
+        byte d = delimiter;
+        for (int i = to - 1; i > from; i--) {
+            if (b.get(i) == d) {
+                return i;
+            }
+        }
+        return from;
+    }
+
+    ByteBuffer record(ByteBuffer b, int from, int to) {
+        if (stripCarriageReturn && to > from && b.get(to - 1) == '\r') {
+            to--;
+        }
+        ByteBuffer r = b.duplicate();
+        r.limit(to);
+        r.position(from);
+        return r.slice().asReadOnlyBuffer();
+    }
+
+    void appendCarry(ByteBuffer b, int from, int to) {
+        int n = to - from;
+        if (n == 0) {
+            return;
+        }
+        ByteBuffer c = carry;
+        if (c == null) {
+            c = ByteBuffer.allocate(Math.max(n, 64));
+            carry = c;
+        } else if (c.remaining() < n) {
+            ByteBuffer d = ByteBuffer.allocate(Math.max(c.position() + n, c.capacity() * 2));
+            c.flip();
+            d.put(c);
+            c = d;
+            carry = c;
+        }
+        ByteBuffer src = b.duplicate();
+        src.limit(to);
+        src.position(from);
+        c.put(src);
+    }
+
+    ByteBuffer takeCarry(boolean last) {
+        ByteBuffer c = carry;
+        carry = null;
+        c.flip();
+        if (!last && stripCarriageReturn) {
+            int lim = c.limit();
+            if (lim != 0 && c.get(lim - 1) == '\r') {
+                c.limit(lim - 1);
+            }
+        }
+        return c.asReadOnlyBuffer();
+    }
+
+    final class RecordIterator implements Iterator<ByteBuffer> {
+
+        final ByteBuffer chunk;
+
+        final int last;
+
+        ByteBuffer head;
+
+        int index;
+
+        RecordIterator(ByteBuffer head, ByteBuffer chunk, int index, int last) {
+            this.head = head;
+            this.chunk = chunk;
+            this.index = index;
+            this.last = last;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return head != null || index <= last;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            ByteBuffer h = head;
+            if (h != null) {
+                head = null;
+                return h;
+            }
+            int i = index;
+            if (i > last) {
+                throw new NoSuchElementException();
+            }
+            int d = indexOf(chunk, i, last + 1);
+            index = d + 1;
+            return record(chunk, i, d);
+        }
+    }
+}
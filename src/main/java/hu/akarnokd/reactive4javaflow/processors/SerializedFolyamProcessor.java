@@ -17,25 +17,38 @@
 package hu.akarnokd.reactive4javaflow.processors;
 
 import hu.akarnokd.reactive4javaflow.FolyamSubscriber;
-
-import java.util.*;
-import java.util.concurrent.Flow;
-
+import hu.akarnokd.reactive4javaflow.impl.VH;
+
+import java.lang.invoke.*;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * Serializes the calls to the onXXX methods of a FolyamProcessor
+ * via a concurrent queue and a work-in-progress counter, without
+ * locking, so that emitting from virtual threads doesn't pin their
+ * carrier threads.
+ * @param <T> the element type
+ */
 final class SerializedFolyamProcessor<T> extends FolyamProcessor<T> implements Flow.Subscription {
 
+    static final Object COMPLETE = new Object();
+
     final FolyamProcessor<T> actual;
 
+    final ConcurrentLinkedQueue<T> queue;
+
     Flow.Subscription upstream;
 
-    boolean emitting;
-    boolean missed;
-    boolean done;
+    Object terminal;
+    static final VarHandle TERMINAL = VH.find(MethodHandles.lookup(), SerializedFolyamProcessor.class, "terminal", Object.class);
 
-    List<T> queue;
-    Throwable error;
+    int wip;
+    static final VarHandle WIP = VH.find(MethodHandles.lookup(), SerializedFolyamProcessor.class, "wip", int.class);
 
     public SerializedFolyamProcessor(FolyamProcessor<T> actual) {
         this.actual = actual;
+        this.queue = new ConcurrentLinkedQueue<>();
     }
 
     @Override
@@ -72,91 +85,75 @@ final class SerializedFolyamProcessor<T> extends FolyamProcessor<T> implements F
     @Override
     public void onNext(T item) {
         Objects.requireNonNull(item, "item == null");
-        synchronized (this) {
-            if (emitting) {
-                if (!done) {
-                    List<T> q = queue;
-                    if (q == null) {
-                        q = new ArrayList<>();
-                        queue = q;
-                    }
-                    q.add(item);
-                    missed = true;
-                }
-                return;
-            }
-            emitting = true;
+        if (TERMINAL.getAcquire(this) != null) {
+            return;
         }
-
-        actual.onNext(item);
-
-        for (;;) {
-            List<T> q;
-            boolean d;
-            Throwable ex;
-            synchronized (this) {
-                if (!missed) {
-                    missed = false;
-                    emitting = false;
-                    return;
-                }
-                missed = false;
-                q = queue;
-                queue = null;
-                d = done;
-                ex = error;
-            }
-
-            if (q != null) {
-                for (T v : q) {
-                    actual.onNext(v);
-                }
+        if ((int)WIP.getAcquire(this) == 0 && WIP.compareAndSet(this, 0, 1)) {
+            actual.onNext(item);
+            if ((int)WIP.getAndAdd(this, -1) == 1) {
+                return;
             }
-
-            if (d) {
-                if (ex == null) {
-                    actual.onComplete();
-                } else {
-                    actual.onError(ex);
-                }
+        } else {
+            queue.offer(item);
+            if ((int)WIP.getAndAdd(this, 1) != 0) {
                 return;
             }
         }
-
+        drainLoop();
     }
 
     @Override
     public void onError(Throwable throwable) {
         Objects.requireNonNull(throwable, "throwable == null");
-        synchronized (this) {
-            if (emitting) {
-                if (!done && error == null) {
-                    error = throwable;
-                    done = true;
-                    missed = true;
-                }
-                return;
-            }
-            emitting = true;
-            done = true;
+        if (TERMINAL.compareAndSet(this, null, throwable)) {
+            drain();
         }
-
-        actual.onError(throwable);
     }
 
     @Override
     public void onComplete() {
-        synchronized (this) {
-            if (emitting) {
-                done = true;
-                missed = true;
-                return;
-            }
-            emitting = true;
-            done = true;
+        if (TERMINAL.compareAndSet(this, null, COMPLETE)) {
+            drain();
         }
+    }
+
+    void drain() {
+        if ((int)WIP.getAndAdd(this, 1) == 0) {
+            drainLoop();
+        }
+    }
 
-        actual.onComplete();
+    void drainLoop() {
+        int missed = 1;
+        ConcurrentLinkedQueue<T> q = queue;
+        FolyamProcessor<T> a = actual;
+
+        for (;;) {
+            for (;;) {
+                Object t = TERMINAL.getAcquire(this);
+                T v = q.poll();
+
+                if (v == null) {
+                    if (t != null) {
+                        // the counter stays non-zero so no further signals get through
+                        if (t == COMPLETE) {
+                            a.onComplete();
+                        } else {
+                            a.onError((Throwable)t);
+                        }
+                        return;
+                    }
+                    break;
+                }
+
+                a.onNext(v);
+            }
+
+            missed = (int)WIP.getAndAdd(this, -missed) - missed;
+            if (missed == 0) {
+                break;
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.sketches;
+
+/**
+ * Estimates the number of distinct items in constant memory.
+ * <p>
+ * The sketch keeps {@code 2^precision} one-byte registers; the relative standard
+ * error of the estimate is about {@code 1.04 / sqrt(2^precision)}, 0.8% at the
+ * precision of 14 which takes 16 KiB. Sketches of the same precision can be merged,
+ * which yields the same state as if all items were added to a single sketch.
+ * <p>
+ * Not thread-safe.
+ */
+public final class HyperLogLog {
+
+    final int precision;
+
+    final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision: " + precision + " not in [4, 18]");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Adds an item via its {@link Object#hashCode()}.
+     * @param item the item to add, not null
+     */
+    public void add(Object item) {
+        addHash(mix(item.hashCode()));
+    }
+
+    /**
+     * Adds a primitive item via a full 64 bit hash of its value.
+     * @param value the value to add
+     */
+    public void addLong(long value) {
+        addHash(mix(value));
+    }
+
+    /**
+     * Adds an item by its already well-distributed 64 bit hash.
+     * @param hash the hash of the item
+     */
+    public void addHash(long hash) {
+        int p = precision;
+        int index = (int)(hash >>> (64 - p));
+        // the guard bit caps the rank at 64 - p + 1
+        int rank = Long.numberOfLeadingZeros((hash << p) | (1L << (p - 1))) + 1;
+        byte[] r = registers;
+        if (r[index] < rank) {
+            r[index] = (byte)rank;
+        }
+    }
+
+    /**
+     * Merges the other sketch of the same precision into this one.
+     * @param other the other sketch
+     * @return this
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Precision mismatch: " + precision + " vs. " + other.precision);
+        }
+        byte[] a = registers;
+        byte[] b = other.registers;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] < b[i]) {
+                a[i] = b[i];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the estimated number of distinct items added so far.
+     * @return the estimated number of distinct items
+     */
+    public long estimate() {
+        byte[] r = registers;
+        int m = r.length;
+        double sum = 0d;
+        int zeros = 0;
+        for (byte b : r) {
+            if (b == 0) {
+                zeros++;
+            }
+            sum += Double.longBitsToDouble((1023L - b) << 52);
+        }
+
+        double alpha;
+        switch (m) {
+            case 16:
+                alpha = 0.673;
+                break;
+            case 32:
+                alpha = 0.697;
+                break;
+            case 64:
+                alpha = 0.709;
+                break;
+            default:
+                alpha = 0.7213 / (1d + 1.079 / m);
+        }
+
+        double e = alpha * m * m / sum;
+        if (e <= 2.5 * m && zeros != 0) {
+            // linear counting is more accurate for small cardinalities
+            e = m * Math.log((double)m / zeros);
+        }
+        return Math.round(e);
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog(precision = " + precision + ", estimate = " + estimate() + ")";
+    }
+}
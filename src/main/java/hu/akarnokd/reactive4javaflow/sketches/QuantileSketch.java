@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.sketches;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the quantiles of a stream of doubles in memory independent of the
+ * stream length, based on the KLL sketch of Karnin, Lang and Liberty.
+ * <p>
+ * Items are kept in levels where an item of level {@code h} stands for {@code 2^h}
+ * original items. When a level fills up, it is sorted and every other item, starting
+ * at a random offset, is promoted to the next level while the rest is dropped. The
+ * level capacities shrink geometrically by 2/3 from the top, which keeps about
+ * {@code 3k} items in total. The rank error is roughly {@code 1.7 / k}, about 1%
+ * for the default {@code k} of 200. Sketches with any {@code k} can be merged.
+ * <p>
+ * Not thread-safe.
+ */
+public final class QuantileSketch {
+
+    final int k;
+
+    double[][] levels;
+
+    int[] sizes;
+
+    int numLevels;
+
+    long count;
+
+    double min;
+
+    double max;
+
+    long seed;
+
+    public QuantileSketch() {
+        this(200);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k: " + k + " < 8");
+        }
+        this.k = k;
+        this.levels = new double[4][];
+        this.sizes = new int[4];
+        this.levels[0] = new double[k];
+        this.numLevels = 1;
+        this.min = Double.NaN;
+        this.max = Double.NaN;
+        this.seed = 0x9E3779B97F4A7C15L;
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (count++ == 0L) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        append(0, value);
+        if (sizes[0] >= capacity(0)) {
+            compress();
+        }
+    }
+
+    /**
+     * Merges the other sketch into this one.
+     * @param other the other sketch
+     * @return this
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.count == 0L) {
+            return this;
+        }
+        if (count == 0L) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count += other.count;
+        for (int h = 0; h < other.numLevels; h++) {
+            double[] src = other.levels[h];
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, src[i]);
+            }
+        }
+        compress();
+        return this;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Returns the approximate value below which the given fraction of the items fall.
+     * @param fraction the fraction in [0, 1]
+     * @return the approximate quantile or NaN if the sketch is empty
+     */
+    public double quantile(double fraction) {
+        if (fraction < 0d || fraction > 1d) {
+            throw new IllegalArgumentException("fraction: " + fraction + " not in [0, 1]");
+        }
+        if (count == 0L) {
+            return Double.NaN;
+        }
+        if (fraction == 0d) {
+            return min;
+        }
+        if (fraction == 1d) {
+            return max;
+        }
+        long total = retainedWeight();
+        double target = fraction * total;
+        Cursor c = new Cursor(this);
+        long cumulative = 0L;
+        for (;;) {
+            double v = c.value();
+            cumulative += c.weight();
+            if (cumulative >= target) {
+                return v;
+            }
+            c.next();
+        }
+    }
+
+    /**
+     * Returns the approximate fraction of items less than or equal to the given value.
+     * @param value the value
+     * @return the approximate normalized rank or NaN if the sketch is empty
+     */
+    public double rank(double value) {
+        if (count == 0L) {
+            return Double.NaN;
+        }
+        long total = 0L;
+        long below = 0L;
+        for (int h = 0; h < numLevels; h++) {
+            double[] a = levels[h];
+            long w = 1L << h;
+            for (int i = 0; i < sizes[h]; i++) {
+                total += w;
+                if (a[i] <= value) {
+                    below += w;
+                }
+            }
+        }
+        return (double)below / total;
+    }
+
+    long retainedWeight() {
+        long total = 0L;
+        for (int h = 0; h < numLevels; h++) {
+            total += (long)sizes[h] << h;
+        }
+        return total;
+    }
+
+    int capacity(int level) {
+        int depth = numLevels - 1 - level;
+        return Math.max(2, (int)Math.ceil(k * Math.pow(2d / 3d, depth)));
+    }
+
+    void append(int level, double value) {
+        if (level >= levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+            sizes = Arrays.copyOf(sizes, sizes.length * 2);
+        }
+        if (level >= numLevels) {
+            numLevels = level + 1;
+        }
+        double[] a = levels[level];
+        int n = sizes[level];
+        if (a == null) {
+            a = new double[Math.max(8, capacity(level))];
+            levels[level] = a;
+        } else if (n == a.length) {
+            a = Arrays.copyOf(a, n * 2);
+            levels[level] = a;
+        }
+        a[n] = value;
+        sizes[level] = n + 1;
+    }
+
+    void compress() {
+        boolean again;
+        do {
+            again = false;
+            for (int h = 0; h < numLevels; h++) {
+                if (sizes[h] >= capacity(h)) {
+                    compact(h);
+                    // a new top level shrinks the capacity of the ones below
+                    again = true;
+                }
+            }
+        } while (again);
+    }
+
+    void compact(int level) {
+        double[] a = levels[level];
+        int n = sizes[level];
+        Arrays.sort(a, 0, n);
+
+        // an odd item out stays on this level
+        int start = n & 1;
+        int offset = start + (nextBit() ? 1 : 0);
+        for (int i = offset; i < n; i += 2) {
+            append(level + 1, a[i]);
+        }
+        sizes[level] = start;
+    }
+
+    boolean nextBit() {
+        long x = seed;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed = x;
+        return (x & 1L) != 0L;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch(k = " + k + ", count = " + count + ", min = " + min + ", max = " + max + ")";
+    }
+
+    /**
+     * Walks the retained items of all levels in ascending value order via a
+     * merge of the individually sorted levels.
+     */
+    static final class Cursor {
+
+        final double[][] levels;
+
+        final int[] sizes;
+
+        final int[] positions;
+
+        final int numLevels;
+
+        int current;
+
+        Cursor(QuantileSketch sketch) {
+            int n = sketch.numLevels;
+            this.numLevels = n;
+            this.levels = new double[n][];
+            this.sizes = new int[n];
+            this.positions = new int[n];
+            for (int h = 0; h < n; h++) {
+                int s = sketch.sizes[h];
+                double[] a = Arrays.copyOf(sketch.levels[h] != null ? sketch.levels[h] : new double[0], s);
+                Arrays.sort(a);
+                levels[h] = a;
+                sizes[h] = s;
+            }
+            pick();
+        }
+
+        void pick() {
+            int best = -1;
+            double bestValue = Double.POSITIVE_INFINITY;
+            for (int h = 0; h < numLevels; h++) {
+                int p = positions[h];
+                if (p < sizes[h]) {
+                    double v = levels[h][p];
+                    if (best < 0 || v < bestValue) {
+                        best = h;
+                        bestValue = v;
+                    }
+                }
+            }
+            current = best;
+        }
+
+        double value() {
+            return levels[current][positions[current]];
+        }
+
+        long weight() {
+            return 1L << current;
+        }
+
+        void next() {
+            positions[current]++;
+            pick();
+        }
+    }
+}
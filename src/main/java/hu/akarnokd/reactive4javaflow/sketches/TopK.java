@@ -0,0 +1,277 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.sketches;
+
+import java.util.*;
+
+/**
+ * Tracks the most frequent items of a stream with a fixed number of counters via
+ * the SpaceSaving algorithm of Metwally, Agrawal and El Abbadi.
+ * <p>
+ * When all counters are taken, a new item replaces the item with the smallest count
+ * and inherits that count as its overestimation error. Any item occurring more than
+ * {@code total / capacity} times is guaranteed to be tracked. The counters sit in a
+ * min-heap indexed by a hash map, thus an update takes O(log capacity) time.
+ * Sketches can be merged; the result keeps the largest combined counts.
+ * <p>
+ * Not thread-safe.
+ *
+ * @param <T> the item type
+ */
+public final class TopK<T> {
+
+    final int capacity;
+
+    final HashMap<T, Counter<T>> counters;
+
+    Counter<T>[] heap;
+
+    int size;
+
+    long total;
+
+    @SuppressWarnings("unchecked")
+    public TopK(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity + " <= 0");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>();
+        this.heap = new Counter[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of items added so far.
+     * @return the number of items added so far
+     */
+    public long total() {
+        return total;
+    }
+
+    public void add(T item) {
+        add(item, 1L);
+    }
+
+    public void add(T item, long count) {
+        Objects.requireNonNull(item, "item == null");
+        total += count;
+        Counter<T> c = counters.get(item);
+        if (c != null) {
+            c.count += count;
+            siftDown(c.index);
+            return;
+        }
+        if (size < capacity) {
+            c = new Counter<>(item, count, 0L);
+            c.index = size;
+            heap[size] = c;
+            size++;
+            siftUp(c.index);
+        } else {
+            c = heap[0];
+            counters.remove(c.value);
+            c.value = item;
+            c.error = c.count;
+            c.count += count;
+            siftDown(0);
+        }
+        counters.put(item, c);
+    }
+
+    /**
+     * Returns the upper bound of the count of the given item.
+     * @param item the item
+     * @return the estimated count
+     */
+    public long estimate(T item) {
+        Counter<T> c = counters.get(item);
+        if (c != null) {
+            return c.count;
+        }
+        return size < capacity ? 0L : heap[0].count;
+    }
+
+    /**
+     * Returns the at most {@code n} items with the highest counts, in descending order of counts.
+     * @param n the maximum number of items to return
+     * @return the list of items with their counts
+     */
+    public List<Item<T>> top(int n) {
+        Counter<T>[] a = Arrays.copyOf(heap, size);
+        Arrays.sort(a, (x, y) -> Long.compare(y.count, x.count));
+        int m = Math.min(n, a.length);
+        List<Item<T>> result = new ArrayList<>(m);
+        for (int i = 0; i < m; i++) {
+            Counter<T> c = a[i];
+            result.add(new Item<>(c.value, c.count, c.error));
+        }
+        return result;
+    }
+
+    /**
+     * Merges the other sketch into this one.
+     * <p>
+     * An item missing from a full sketch may have had up to its minimum count there,
+     * thus that minimum is added to both the count and the error of the item.
+     * @param other the other sketch
+     * @return this
+     */
+    @SuppressWarnings("unchecked")
+    public TopK<T> merge(TopK<T> other) {
+        long minThis = size < capacity ? 0L : heap[0].count;
+        long minOther = other.size < other.capacity ? 0L : other.heap[0].count;
+
+        List<Counter<T>> merged = new ArrayList<>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter<T> c = heap[i];
+            Counter<T> o = other.counters.get(c.value);
+            if (o != null) {
+                merged.add(new Counter<>(c.value, c.count + o.count, c.error + o.error));
+            } else {
+                merged.add(new Counter<>(c.value, c.count + minOther, c.error + minOther));
+            }
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter<T> o = other.heap[i];
+            if (!counters.containsKey(o.value)) {
+                merged.add(new Counter<>(o.value, o.count + minThis, o.error + minThis));
+            }
+        }
+
+        merged.sort((x, y) -> Long.compare(y.count, x.count));
+
+        int n = Math.min(capacity, merged.size());
+        counters.clear();
+        Arrays.fill(heap, null);
+        for (int i = 0; i < n; i++) {
+            Counter<T> c = merged.get(i);
+            // descending order is a valid max-heap; reverse it into a min-heap
+            int j = n - 1 - i;
+            c.index = j;
+            heap[j] = c;
+            counters.put(c.value, c);
+        }
+        size = n;
+        total += other.total;
+        return this;
+    }
+
+    void siftUp(int i) {
+        Counter<T>[] h = heap;
+        Counter<T> c = h[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            Counter<T> p = h[parent];
+            if (p.count <= c.count) {
+                break;
+            }
+            h[i] = p;
+            p.index = i;
+            i = parent;
+        }
+        h[i] = c;
+        c.index = i;
+    }
+
+    void siftDown(int i) {
+        Counter<T>[] h = heap;
+        int n = size;
+        Counter<T> c = h[i];
+        for (;;) {
+            int child = (i << 1) + 1;
+            if (child >= n) {
+                break;
+            }
+            int right = child + 1;
+            if (right < n && h[right].count < h[child].count) {
+                child = right;
+            }
+            Counter<T> s = h[child];
+            if (c.count <= s.count) {
+                break;
+            }
+            h[i] = s;
+            s.index = i;
+            i = child;
+        }
+        h[i] = c;
+        c.index = i;
+    }
+
+    @Override
+    public String toString() {
+        return "TopK(capacity = " + capacity + ", total = " + total + ", top = " + top(Math.min(10, capacity)) + ")";
+    }
+
+    static final class Counter<T> {
+
+        T value;
+
+        long count;
+
+        long error;
+
+        int index;
+
+        Counter(T value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * An item with its estimated count; the true count is between
+     * {@code count - error} and {@code count}.
+     * @param <T> the item type
+     */
+    public static final class Item<T> {
+
+        final T value;
+
+        final long count;
+
+        final long error;
+
+        Item(T value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public T value() {
+            return value;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long error() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return value + "=" + count + " (+/- " + error + ")";
+        }
+    }
+}
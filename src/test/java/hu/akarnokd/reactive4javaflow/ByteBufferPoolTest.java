@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void reuseSameThread() {
+        ByteBufferPool pool = new ByteBufferPool(64, false);
+
+        ByteBufferPool.Lease l1 = pool.lease();
+        ByteBuffer b1 = l1.buffer();
+        b1.put((byte)1);
+
+        assertTrue(l1.release());
+        assertTrue(l1.isReleased());
+
+        ByteBufferPool.Lease l2 = pool.lease();
+
+        assertNotSame(l1, l2);
+        assertSame(b1, l2.buffer());
+        assertEquals(0, b1.position());
+        assertEquals(64, b1.limit());
+        assertEquals(1, pool.allocatedCount());
+    }
+
+    @Test
+    public void direct() {
+        ByteBufferPool pool = new ByteBufferPool(64, true);
+
+        assertTrue(pool.lease().buffer().isDirect());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void foreignLeaseRejected() {
+        ByteBufferPool pool = new ByteBufferPool(64, false);
+
+        pool.release(new ByteBufferPool(64, false).lease());
+    }
+
+    @Test
+    public void doubleReleaseRejected() {
+        ByteBufferPool pool = new ByteBufferPool(64, false);
+
+        ByteBufferPool.Lease l1 = pool.lease();
+        assertTrue(l1.release());
+
+        ByteBufferPool.Lease l2 = pool.lease();
+
+        try {
+            l1.release();
+            fail("Should have thrown");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        assertFalse(l2.isReleased());
+        assertNotSame(l2.buffer(), pool.lease().buffer());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bufferAfterRelease() {
+        ByteBufferPool.Lease l = new ByteBufferPool(64, false).lease();
+        l.release();
+
+        l.buffer();
+    }
+
+    @Test
+    public void overflowToShared() throws Exception {
+        ByteBufferPool pool = new ByteBufferPool(64, false, 1, 1);
+
+        ByteBufferPool.Lease l1 = pool.lease();
+        ByteBufferPool.Lease l2 = pool.lease();
+        ByteBufferPool.Lease l3 = pool.lease();
+        ByteBuffer b1 = l1.buffer();
+        ByteBuffer b2 = l2.buffer();
+
+        assertTrue(l1.release());
+        assertTrue(l2.release());
+        assertFalse(l3.release());
+
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            assertSame(b2, exec.submit(() -> pool.lease().buffer()).get());
+        } finally {
+            exec.shutdown();
+        }
+
+        assertSame(b1, pool.lease().buffer());
+        assertEquals(3, pool.allocatedCount());
+    }
+
+    @Test
+    public void releaseDropped() {
+        ByteBufferPool pool = new ByteBufferPool(64, false);
+
+        ByteBufferPool.Lease l1 = pool.lease();
+        ByteBufferPool.Lease l2 = pool.lease();
+        ByteBufferPool.Lease l3 = pool.lease();
+
+        Folyam.fromArray(l1, l2, l3)
+                .takeLast(1, ByteBufferPool.Lease::release)
+                .test()
+                .assertResult(l3);
+
+        assertTrue(l1.isReleased());
+        assertTrue(l2.isReleased());
+        assertFalse(l3.isReleased());
+    }
+}
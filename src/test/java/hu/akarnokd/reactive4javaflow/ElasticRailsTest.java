@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ElasticRailsTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minRailsInvalid() {
+        new ElasticRails(0, 4, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxRailsInvalid() {
+        new ElasticRails(2, 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initialRailsInvalid() {
+        new ElasticRails(1, 4, 5);
+    }
+
+    @Test
+    public void activeRailsClamped() {
+        ElasticRails rails = new ElasticRails(2, 4, 3);
+
+        rails.activeRails(10);
+        assertEquals(4, rails.activeRails());
+
+        rails.activeRails(0);
+        assertEquals(2, rails.activeRails());
+    }
+
+    @Test
+    public void adjust() {
+        ElasticRails rails = new ElasticRails(1, 3, 2);
+
+        assertEquals(2, rails.adjust());
+
+        rails.onStall();
+        assertEquals(3, rails.adjust());
+
+        rails.onStall();
+        assertEquals(3, rails.adjust());
+
+        rails.onIdle();
+        assertEquals(2, rails.adjust());
+
+        rails.onIdle();
+        rails.onStall();
+        assertEquals(2, rails.adjust());
+
+        rails.onIdle();
+        assertEquals(1, rails.adjust());
+
+        rails.onIdle();
+        assertEquals(1, rails.adjust());
+
+        assertEquals(3, rails.stallCount());
+        assertEquals(4, rails.idleCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void routesToActiveRailsOnly() {
+        ElasticRails rails = new ElasticRails(1, 4, 2);
+
+        TestConsumer<Integer>[] tcs = new TestConsumer[4];
+        for (int i = 0; i < tcs.length; i++) {
+            tcs[i] = new TestConsumer<>();
+        }
+
+        Folyam.range(1, 10)
+                .parallel(rails)
+                .subscribe(tcs);
+
+        tcs[0].assertResult(1, 3, 5, 7, 9);
+        tcs[1].assertResult(2, 4, 6, 8, 10);
+        tcs[2].assertResult();
+        tcs[3].assertResult();
+
+        assertTrue(rails.listeners.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void activateRailsMidStream() {
+        ElasticRails rails = new ElasticRails(1, 3, 1);
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer>[] tcs = new TestConsumer[3];
+        for (int i = 0; i < tcs.length; i++) {
+            tcs[i] = new TestConsumer<>();
+        }
+
+        dp.parallel(rails).subscribe(tcs);
+
+        // the rails waiting for the first item count as idle
+        assertEquals(1, rails.adjust());
+
+        dp.onNext(1);
+        dp.onNext(2);
+
+        rails.activeRails(3);
+
+        for (int i = 3; i <= 8; i++) {
+            dp.onNext(i);
+        }
+
+        rails.activeRails(1);
+
+        dp.onNext(9);
+        dp.onComplete();
+
+        tcs[0].assertResult(1, 2, 3, 6, 9);
+        tcs[1].assertResult(4, 7);
+        tcs[2].assertResult(5, 8);
+
+        assertTrue(rails.listeners.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void stallReported() {
+        ElasticRails rails = new ElasticRails(1, 2, 1);
+
+        TestConsumer<Integer>[] tcs = new TestConsumer[] { new TestConsumer<>(1), new TestConsumer<>(1) };
+
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        dp.parallel(rails).subscribe(tcs);
+
+        // the rails waiting for the first item count as idle
+        assertEquals(1, rails.adjust());
+
+        dp.onNext(1);
+        dp.onNext(2);
+
+        assertTrue(rails.stallCount() > 0L);
+        assertEquals(2, rails.adjust());
+
+        tcs[0].assertValues(1);
+        tcs[1].assertValues(2);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void idleReported() {
+        ElasticRails rails = new ElasticRails(1, 2, 2);
+
+        TestConsumer<Integer>[] tcs = new TestConsumer[] { new TestConsumer<>(), new TestConsumer<>() };
+
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        dp.parallel(rails).subscribe(tcs);
+
+        dp.onNext(1);
+
+        assertTrue(rails.idleCount() > 0L);
+        assertEquals(0L, rails.stallCount());
+        assertEquals(1, rails.adjust());
+    }
+
+    @Test
+    public void controller() {
+        TestSchedulerService sch = new TestSchedulerService();
+        ElasticRails rails = new ElasticRails(1, 4, 1);
+
+        AutoDisposable d = rails.startController(sch, 1, TimeUnit.SECONDS);
+
+        rails.onStall();
+        sch.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(2, rails.activeRails());
+
+        rails.onStall();
+        sch.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(3, rails.activeRails());
+
+        d.close();
+
+        rails.onStall();
+        sch.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(3, rails.activeRails());
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import hu.akarnokd.reactive4javaflow.processors.FirstProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EsetlegCacheTest {
+
+    final TestSchedulerService clock = new TestSchedulerService();
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    EsetlegCache<Integer, Integer> counting(int maxSize) {
+        return new EsetlegCache<>(k -> {
+            loads.getAndIncrement();
+            return Esetleg.just(k * 10);
+        }, maxSize, 10, 10, TimeUnit.SECONDS, clock);
+    }
+
+    @Test
+    public void singleFlight() {
+        List<FirstProcessor<Integer>> pending = new ArrayList<>();
+        EsetlegCache<Integer, Integer> cache = new EsetlegCache<>(k -> {
+            FirstProcessor<Integer> fp = new FirstProcessor<>();
+            pending.add(fp);
+            return fp;
+        }, 16, 10, 10, TimeUnit.SECONDS, clock);
+
+        TestConsumer<Integer> tc1 = cache.get(1).test();
+        TestConsumer<Integer> tc2 = cache.get(1).test();
+
+        assertEquals(1, pending.size());
+        tc1.assertEmpty();
+        tc2.assertEmpty();
+
+        pending.get(0).onNext(10);
+
+        tc1.assertResult(10);
+        tc2.assertResult(10);
+
+        cache.get(1).test().assertResult(10);
+
+        assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void cancelDoesNotCancelLoad() {
+        FirstProcessor<Integer> fp = new FirstProcessor<>();
+        EsetlegCache<Integer, Integer> cache = new EsetlegCache<>(k -> fp, 16, 10, TimeUnit.SECONDS);
+
+        cache.get(1).test().cancel();
+
+        assertTrue(fp.hasSubscribers());
+
+        fp.onNext(1);
+
+        cache.get(1).test().assertResult(1);
+    }
+
+    @Test
+    public void timeToLive() {
+        EsetlegCache<Integer, Integer> cache = counting(16);
+
+        cache.get(1).test().assertResult(10);
+        clock.advanceTimeBy(9, TimeUnit.SECONDS);
+        cache.get(1).test().assertResult(10);
+
+        assertEquals(1, loads.get());
+
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        cache.get(1).test().assertResult(10);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void refreshAhead() {
+        int[] version = { 0 };
+        List<FirstProcessor<Integer>> pending = new ArrayList<>();
+        EsetlegCache<Integer, Integer> cache = new EsetlegCache<>(k -> {
+            if (version[0]++ == 0) {
+                return Esetleg.just(1);
+            }
+            FirstProcessor<Integer> fp = new FirstProcessor<>();
+            pending.add(fp);
+            return fp;
+        }, 16, 10, 5, TimeUnit.SECONDS, clock);
+
+        cache.get(1).test().assertResult(1);
+
+        clock.advanceTimeBy(6, TimeUnit.SECONDS);
+
+        // stale value served, refresh started once
+        cache.get(1).test().assertResult(1);
+        cache.get(1).test().assertResult(1);
+        assertEquals(1, pending.size());
+
+        pending.get(0).onNext(2);
+
+        cache.get(1).test().assertResult(2);
+
+        clock.advanceTimeBy(9, TimeUnit.SECONDS);
+
+        cache.get(1).test().assertResult(2);
+    }
+
+    @Test
+    public void refreshFailureKeepsStale() {
+        int[] version = { 0 };
+        EsetlegCache<Integer, Integer> cache = new EsetlegCache<>(k -> {
+            if (version[0]++ == 0) {
+                return Esetleg.just(1);
+            }
+            return Esetleg.error(new IOException());
+        }, 16, 10, 5, TimeUnit.SECONDS, clock);
+
+        cache.get(1).test().assertResult(1);
+
+        clock.advanceTimeBy(6, TimeUnit.SECONDS);
+
+        cache.get(1).test().assertResult(1);
+        cache.get(1).test().assertResult(1);
+
+        assertEquals(3, version[0]);
+    }
+
+    @Test
+    public void errorNotCached() {
+        EsetlegCache<Integer, Integer> cache = new EsetlegCache<>(k -> {
+            if (loads.getAndIncrement() == 0) {
+                return Esetleg.error(new IOException());
+            }
+            return Esetleg.just(k);
+        }, 16, 10, TimeUnit.SECONDS);
+
+        cache.get(1).test().assertFailure(IOException.class);
+        assertEquals(0, cache.size());
+
+        cache.get(1).test().assertResult(1);
+    }
+
+    @Test
+    public void loaderCrash() {
+        EsetlegCache<Integer, Integer> cache = new EsetlegCache<>(k -> {
+            throw new IOException();
+        }, 16, 10, TimeUnit.SECONDS);
+
+        cache.get(1).test().assertFailure(IOException.class);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void emptyCached() {
+        EsetlegCache<Integer, Integer> cache = new EsetlegCache<>(k -> {
+            loads.getAndIncrement();
+            return Esetleg.empty();
+        }, 16, 10, TimeUnit.SECONDS);
+
+        cache.get(1).test().assertResult();
+        cache.get(1).test().assertResult();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void bounded() {
+        EsetlegCache<Integer, Integer> cache = counting(10);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get(i).test().assertResult(i * 10);
+        }
+
+        assertEquals(10, cache.size());
+
+        for (int i = 90; i < 100; i++) {
+            cache.get(i).test().assertResult(i * 10);
+        }
+
+        assertEquals(100, loads.get());
+    }
+
+    @Test
+    public void frequentKeySurvivesScan() {
+        EsetlegCache<Integer, Integer> cache = counting(10);
+
+        for (int i = 0; i < 10; i++) {
+            cache.get(i).test();
+        }
+        cache.get(0).test();
+
+        for (int i = 100; i < 200; i++) {
+            cache.get(i).test();
+        }
+
+        loads.set(0);
+
+        cache.get(0).test().assertResult(0);
+
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    public void invalidate() {
+        EsetlegCache<Integer, Integer> cache = counting(16);
+
+        cache.get(1).test().assertResult(10);
+        cache.get(2).test().assertResult(20);
+
+        cache.invalidate(1);
+
+        assertEquals(1, cache.size());
+
+        cache.get(1).test().assertResult(10);
+        assertEquals(3, loads.get());
+
+        cache.invalidateAll();
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void concurrentHits() throws Exception {
+        EsetlegCache<Integer, Integer> cache = counting(64);
+        int n = 4;
+        ExecutorService exec = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < n; t++) {
+                futures.add(exec.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        int k = i % 32;
+                        assertEquals(k * 10, cache.get(k).blockingGet().get().intValue());
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+
+        assertEquals(32, loads.get());
+        assertEquals(32, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSizeZero() {
+        counting(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeToLiveZero() {
+        new EsetlegCache<Integer, Integer>(Esetleg::just, 10, 0, TimeUnit.SECONDS);
+    }
+}
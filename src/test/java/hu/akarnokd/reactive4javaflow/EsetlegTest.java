@@ -16,6 +16,7 @@
 
 package hu.akarnokd.reactive4javaflow;
 
+import hu.akarnokd.reactive4javaflow.fused.FusedDynamicSource;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -314,6 +315,91 @@ public class EsetlegTest {
                 .get().intValue());
     }
 
+    @Test
+    public void blockingGetScalarCallable() {
+        int[] calls = { 0 };
+        Esetleg<Integer> e = Esetleg.fromCallable(() -> ++calls[0]).map(v -> v * 10);
+
+        assertTrue(e instanceof FusedDynamicSource);
+        assertEquals(10, e.blockingGet().get().intValue());
+        assertEquals(20, e.blockingGet(1, TimeUnit.MINUTES).get().intValue());
+        assertEquals(30, e.blockingGet(100).intValue());
+    }
+
+    @Test
+    public void blockingGetScalarEmpty() {
+        assertFalse(Esetleg.empty().map(v -> v).blockingGet().isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blockingGetScalarError() {
+        Esetleg.fromCallable(() -> { throw new IllegalArgumentException(); }).blockingGet();
+    }
+
+    @Test
+    public void blockingGetScalarCheckedError() {
+        try {
+            Esetleg.just(1).map(v -> { throw new IOException(); }).blockingGet();
+            fail("Should have thrown");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.toString(), ex.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void blockingSubscribeScalar() {
+        Object[] vals = { null, null, null };
+
+        Esetleg.fromCallable(() -> 1).blockingSubscribe(v -> vals[0] = v, e -> vals[1] = e, () -> vals[2] = 100);
+
+        assertEquals(1, vals[0]);
+        assertNull(vals[1]);
+        assertEquals(100, vals[2]);
+    }
+
+    @Test
+    public void blockingSubscribeScalarError() {
+        Object[] vals = { null, null, null };
+
+        Esetleg.fromCallable(() -> { throw new IOException(); }).blockingSubscribe(v -> vals[0] = v, e -> vals[1] = e, () -> vals[2] = 100);
+
+        assertNull(vals[0]);
+        assertTrue(vals[1] instanceof IOException);
+        assertNull(vals[2]);
+    }
+
+    @Test
+    public void blockingSubscribe0ScalarError() {
+        TestHelper.withErrorTracking(errors -> {
+            Esetleg.error(new IOException()).blockingSubscribe();
+
+            TestHelper.assertError(errors, 0, IOException.class);
+        });
+    }
+
+    @Test
+    public void toCompletableFutureScalar() throws Exception {
+        Future<Integer> f = Esetleg.just(1).map(v -> v + 1).toCompletableFuture();
+
+        assertTrue(f.isDone());
+        assertEquals(2, f.get().intValue());
+    }
+
+    @Test
+    public void toCompletableFutureScalarEmpty() throws Exception {
+        assertNull(Esetleg.empty().toCompletableFuture().get());
+    }
+
+    @Test
+    public void toCompletableFutureScalarError() throws Exception {
+        try {
+            Esetleg.error(new IOException()).toCompletableFuture().get();
+            fail("Should have thrown");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.toString(), ex.getCause() instanceof IOException);
+        }
+    }
+
     @Test
     public void publish() {
         ConnectableFolyam<Integer> cf = Esetleg.just(1).publish();
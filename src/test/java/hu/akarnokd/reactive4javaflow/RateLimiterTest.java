@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow;
+
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void startsFull() {
+        TestSchedulerService executor = new TestSchedulerService();
+        RateLimiter rl = new RateLimiter(100, 1, TimeUnit.SECONDS, 5, executor);
+
+        assertEquals(3, rl.tryAcquire(3));
+        assertEquals(2, rl.tryAcquire(3));
+        assertEquals(0, rl.tryAcquire(1));
+    }
+
+    @Test
+    public void refillsLazily() {
+        TestSchedulerService executor = new TestSchedulerService();
+        RateLimiter rl = new RateLimiter(100, 1, TimeUnit.SECONDS, 5, executor);
+
+        assertEquals(5, rl.tryAcquire(10));
+        assertEquals(10, rl.timeUntilAvailable(1, TimeUnit.MILLISECONDS));
+        assertEquals(30, rl.timeUntilAvailable(3, TimeUnit.MILLISECONDS));
+
+        executor.advanceTimeBy(25, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, rl.timeUntilAvailable(1, TimeUnit.MILLISECONDS));
+        assertEquals(2, rl.tryAcquire(10));
+        assertEquals(0, rl.tryAcquire(10));
+        assertEquals(5, rl.timeUntilAvailable(1, TimeUnit.MILLISECONDS));
+
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, rl.tryAcquire(10));
+    }
+
+    @Test
+    public void cappedAtBurst() {
+        TestSchedulerService executor = new TestSchedulerService();
+        RateLimiter rl = new RateLimiter(100, 1, TimeUnit.SECONDS, 5, executor);
+
+        rl.tryAcquire(5);
+
+        executor.advanceTimeBy(1, TimeUnit.HOURS);
+
+        assertEquals(0, rl.timeUntilAvailable(5, TimeUnit.NANOSECONDS));
+        assertEquals(5, rl.tryAcquire(100));
+        assertEquals(0, rl.tryAcquire(100));
+    }
+
+    @Test
+    public void concurrentAcquire() throws Exception {
+        TestSchedulerService executor = new TestSchedulerService();
+        RateLimiter rl = new RateLimiter(1, 1, TimeUnit.SECONDS, 10_000, executor);
+
+        AtomicLong taken = new AtomicLong();
+        int n = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService exec = Executors.newFixedThreadPool(n);
+        try {
+            Future<?>[] futures = new Future[n];
+            for (int i = 0; i < n; i++) {
+                futures[i] = exec.submit(() -> {
+                    start.await();
+                    long k;
+                    while ((k = rl.tryAcquire(3)) != 0L) {
+                        taken.addAndGet(k);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+
+        assertEquals(10_000L, taken.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroPermits() {
+        new RateLimiter(0, 1, TimeUnit.SECONDS, 1, new TestSchedulerService());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroBurst() {
+        new RateLimiter(1, 1, TimeUnit.SECONDS, 0, new TestSchedulerService());
+    }
+}
@@ -335,4 +335,38 @@ public class BlockingLambdaConsumerTest {
 
         tc.assertFailure(IOException.class);
     }
+
+    @Test(timeout = 5000)
+    public void waitStrategies() {
+        for (WaitStrategy ws : WaitStrategy.values()) {
+            TestConsumer<Integer> tc = new TestConsumer<>();
+            tc.onSubscribe(new BooleanSubscription());
+
+            Folyam.range(1, 1000)
+                    .observeOn(SchedulerServices.single())
+                    .blockingSubscribe(tc::onNext, tc::onError, tc::onComplete, ws);
+
+            tc.assertValueCount(1000)
+                    .assertNoErrors()
+                    .assertComplete();
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void waitStrategiesInterrupt() {
+        for (WaitStrategy ws : WaitStrategy.values()) {
+            TestConsumer<Integer> tc = new TestConsumer<>();
+            tc.onSubscribe(new BooleanSubscription());
+
+            Thread.currentThread().interrupt();
+            try {
+                Folyam.<Integer>never()
+                        .blockingSubscribe(tc::onNext, tc::onError, tc::onComplete, ws);
+
+                tc.assertFailure(InterruptedException.class);
+            } finally {
+                Thread.interrupted();
+            }
+        }
+    }
 }
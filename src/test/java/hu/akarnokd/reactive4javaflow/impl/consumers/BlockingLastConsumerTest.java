@@ -16,7 +16,7 @@
 
 package hu.akarnokd.reactive4javaflow.impl.consumers;
 
-import hu.akarnokd.reactive4javaflow.Folyam;
+import hu.akarnokd.reactive4javaflow.*;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -97,4 +97,34 @@ public class BlockingLastConsumerTest {
     public void defaultValue() {
         assertEquals(1, Folyam.<Integer>empty().blockingLast(1).intValue());
     }
+
+    @Test(timeout = 5000)
+    public void async() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(5, Folyam.range(1, 5)
+                    .subscribeOn(SchedulerServices.single())
+                    .blockingLast().get().intValue());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void asyncTimed() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(5, Folyam.range(1, 5)
+                    .subscribeOn(SchedulerServices.single())
+                    .blockingLast(5, TimeUnit.SECONDS).get().intValue());
+        }
+    }
+
+    @Test
+    public void alreadyDone() throws Exception {
+        BlockingLastConsumer<Integer> c = new BlockingLastConsumer<>();
+        Folyam.just(1).subscribe(c);
+
+        assertTrue(c.isDone());
+        c.await();
+        assertTrue(c.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, c.blockingGet().intValue());
+        assertNull(c.waiter);
+    }
 }
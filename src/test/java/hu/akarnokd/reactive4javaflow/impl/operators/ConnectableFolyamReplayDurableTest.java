@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.CheckedFunction;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectableFolyamReplayDurableTest {
+
+    static final CheckedFunction<Integer, byte[]> SERIALIZER = v -> ByteBuffer.allocate(4).putInt(0, v).array();
+
+    static final CheckedFunction<ByteBuffer, Integer> DESERIALIZER = b -> b.getInt(b.position());
+
+    Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("ConnectableFolyamReplayDurableTest");
+    }
+
+    @After
+    public void after() throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                Files.deleteIfExists(p);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    ConnectableFolyam<Integer> durable(Folyam<Integer> source) {
+        return source.replayDurable(dir, SERIALIZER, DESERIALIZER, 64, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void standard() {
+        ConnectableFolyam<Integer> cf = Folyam.range(1, 20).replayDurable(dir, SERIALIZER, DESERIALIZER);
+
+        TestConsumer<Integer> tc1 = cf.test();
+        TestConsumer<Integer> tc2 = cf.test(0);
+
+        cf.connect();
+
+        tc1.assertResult(1, 2, 3, 4, 5, 6, 7, 8, 9, 10,
+                11, 12, 13, 14, 15, 16, 17, 18, 19, 20);
+
+        tc2.assertEmpty();
+
+        tc2.requestMore(5);
+
+        tc2.assertValues(1, 2, 3, 4, 5)
+                .assertNotComplete();
+
+        tc2.requestMore(15);
+
+        tc2.assertResult(1, 2, 3, 4, 5, 6, 7, 8, 9, 10,
+                11, 12, 13, 14, 15, 16, 17, 18, 19, 20);
+
+        cf.test().assertResult(1, 2, 3, 4, 5, 6, 7, 8, 9, 10,
+                11, 12, 13, 14, 15, 16, 17, 18, 19, 20);
+    }
+
+    @Test
+    public void segmentRolling() {
+        ConnectableFolyam<Integer> cf = durable(Folyam.range(1, 1000));
+
+        cf.connect();
+
+        cf.test()
+                .assertValueCount(1000)
+                .assertNoErrors()
+                .assertComplete();
+
+        cf.reduce(() -> 0L, (a, b) -> a + b).test()
+                .assertResult(500500L);
+    }
+
+    @Test
+    public void restart() {
+        ConnectableFolyam<Integer> cf = durable(Folyam.range(1, 10));
+        cf.connect();
+        cf.test().assertValueCount(10).assertComplete();
+
+        ConnectableFolyam<Integer> cf2 = durable(Folyam.range(11, 5));
+
+        TestConsumer<Integer> tc = cf2.test();
+
+        tc.assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)
+                .assertNotComplete();
+
+        cf2.connect();
+
+        tc.assertResult(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15);
+    }
+
+    @Test
+    public void resetContinuesLog() {
+        ConnectableFolyam<Integer> cf = durable(Folyam.range(1, 3));
+        cf.connect();
+
+        cf.reset();
+
+        TestConsumer<Integer> tc = cf.test();
+        tc.assertValues(1, 2, 3);
+
+        cf.connect();
+
+        tc.assertResult(1, 2, 3, 1, 2, 3);
+    }
+
+    @Test
+    public void liveTail() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        ConnectableFolyam<Integer> cf = durable(dp);
+
+        TestConsumer<Integer> tc = cf.test();
+
+        cf.connect();
+
+        assertTrue(dp.hasSubscribers());
+
+        for (int i = 1; i <= 30; i++) {
+            dp.onNext(i);
+            assertEquals(i, tc.values().size());
+        }
+
+        TestConsumer<Integer> tc2 = cf.test();
+        tc2.assertValueCount(30).assertNotComplete();
+
+        dp.onNext(31);
+        dp.onComplete();
+
+        tc.assertValueCount(31).assertNoErrors().assertComplete();
+        tc2.assertValueCount(31).assertNoErrors().assertComplete();
+    }
+
+    @Test
+    public void sizeRetention() {
+        ConnectableFolyam<Integer> cf = Folyam.range(0, 100)
+                .replayDurable(dir, SERIALIZER, DESERIALIZER, 64, 128, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        cf.connect();
+
+        cf.test().assertResult(88, 89, 90, 91, 92, 93, 94, 95, 96, 97, 98, 99);
+    }
+
+    @Test
+    public void error() {
+        ConnectableFolyam<Integer> cf = durable(Folyam.range(1, 3).concatWith(Folyam.error(new IOException())));
+
+        cf.connect();
+
+        cf.test().assertFailure(IOException.class, 1, 2, 3);
+    }
+
+    @Test
+    public void serializerCrash() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        ConnectableFolyam<Integer> cf = dp.replayDurable(dir, v -> {
+            if (v == 2) {
+                throw new IOException();
+            }
+            return SERIALIZER.apply(v);
+        }, DESERIALIZER);
+
+        TestConsumer<Integer> tc = cf.test();
+
+        cf.connect();
+
+        dp.onNext(1);
+        dp.onNext(2);
+
+        assertFalse(dp.hasSubscribers());
+
+        tc.assertFailure(IOException.class, 1);
+    }
+
+    @Test
+    public void deserializerCrash() {
+        ConnectableFolyam<Integer> cf = Folyam.range(1, 3).replayDurable(dir, SERIALIZER, b -> {
+            throw new IOException();
+        });
+
+        cf.connect();
+
+        cf.test().assertFailure(IOException.class);
+    }
+
+    @Test
+    public void openFailure() throws IOException {
+        Path file = dir.resolve("file");
+        Files.createFile(file);
+
+        Folyam.range(1, 3).replayDurable(file, SERIALIZER, DESERIALIZER)
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void close() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        ConnectableFolyam<Integer> cf = durable(dp);
+
+        TestConsumer<Integer> tc = cf.test();
+
+        cf.connect().close();
+
+        assertFalse(dp.hasSubscribers());
+
+        tc.assertFailure(java.util.concurrent.CancellationException.class);
+    }
+}
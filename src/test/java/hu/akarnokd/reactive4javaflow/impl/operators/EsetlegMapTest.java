@@ -17,10 +17,13 @@
 package hu.akarnokd.reactive4javaflow.impl.operators;
 
 import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.fused.FusedDynamicSource;
 import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.*;
+
 public class EsetlegMapTest {
 
     @Test
@@ -73,4 +76,17 @@ public class EsetlegMapTest {
                 .test()
                 .assertFailure(IOException.class);
     }
+
+    @Test
+    public void scalarValue() throws Throwable {
+        Esetleg<Integer> e = Esetleg.just(1).map(v -> v + 1);
+
+        assertTrue(e instanceof FusedDynamicSource);
+        assertEquals(2, ((FusedDynamicSource<Integer>)e).value().intValue());
+    }
+
+    @Test
+    public void nonScalarSourceNotFused() {
+        assertFalse(Esetleg.just(1).hide().map(v -> v + 1) instanceof FusedDynamicSource);
+    }
 }
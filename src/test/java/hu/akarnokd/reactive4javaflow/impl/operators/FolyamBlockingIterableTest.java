@@ -219,4 +219,35 @@ public class FolyamBlockingIterableTest {
         }
     }
 
+    @Test(timeout = 5000)
+    public void waitStrategies() {
+        for (WaitStrategy ws : WaitStrategy.values()) {
+            Iterator<Integer> itor = Folyam.range(0, 1000)
+                    .observeOn(SchedulerServices.single())
+                    .blockingIterable(16, ws)
+                    .iterator();
+
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(ws.toString(), itor.hasNext());
+                assertEquals(ws.toString(), i, itor.next().intValue());
+            }
+            assertFalse(ws.toString(), itor.hasNext());
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void waitStrategiesInterrupt() {
+        for (WaitStrategy ws : WaitStrategy.values()) {
+            Thread.currentThread().interrupt();
+            try {
+                Folyam.<Integer>never()
+                        .blockingIterable(16, ws).forEach(v -> { });
+                fail("Should have thrown");
+            } catch (Throwable ex) {
+                assertTrue(ex.toString(), ex.getCause() instanceof InterruptedException);
+            } finally {
+                Thread.interrupted();
+            }
+        }
+    }
 }
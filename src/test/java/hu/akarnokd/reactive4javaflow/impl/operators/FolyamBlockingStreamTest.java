@@ -97,4 +97,95 @@ public class FolyamBlockingStreamTest {
             assertTrue(cdl.await(5, TimeUnit.SECONDS));
         }
     }
+
+    @Test(timeout = 5000)
+    public void waitStrategies() {
+        for (WaitStrategy ws : WaitStrategy.values()) {
+            List<Integer> list = Folyam.range(1, 1000)
+                    .subscribeOn(SchedulerServices.single())
+                    .blockingStream(16, ws)
+                    .collect(Collectors.toList());
+
+            assertEquals(ws.toString(), 1000, list.size());
+            assertEquals(ws.toString(), 1000, list.get(999).intValue());
+        }
+    }
+
+    @Test
+    public void spliteratorCharacteristics() {
+        Spliterator<Integer> sp = Folyam.range(1, 5).blockingStream().spliterator();
+
+        assertTrue(sp.hasCharacteristics(Spliterator.ORDERED));
+        assertTrue(sp.hasCharacteristics(Spliterator.NONNULL));
+        assertFalse(sp.hasCharacteristics(Spliterator.SIZED));
+    }
+
+    @Test
+    public void spliteratorSplitsPrefetched() {
+        Spliterator<Integer> sp = Folyam.range(1, 10).hide().blockingStream(16).spliterator();
+
+        Spliterator<Integer> prefix = sp.trySplit();
+        assertNotNull(prefix);
+
+        List<Integer> list = new ArrayList<>();
+        prefix.forEachRemaining(list::add);
+        sp.forEachRemaining(list::add);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), list);
+
+        assertNull(sp.trySplit());
+    }
+
+    @Test
+    public void spliteratorBulk() {
+        List<Integer> list = new ArrayList<>();
+        Folyam.range(1, 1000).hide()
+                .blockingStream(16)
+                .spliterator()
+                .forEachRemaining(list::add);
+
+        assertEquals(1000, list.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 1, list.get(i).intValue());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void parallelStream() {
+        for (int i = 0; i < 10; i++) {
+            long sum = Folyam.range(1, 100_000)
+                    .observeOn(SchedulerServices.single())
+                    .blockingStream(128, true)
+                    .mapToLong(v -> v)
+                    .sum();
+
+            assertEquals(100_000L * 100_001L / 2, sum);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void parallelStreamOrdered() {
+        List<Integer> list = Folyam.range(1, 10_000)
+                .subscribeOn(SchedulerServices.single())
+                .blockingStream(128, true)
+                .map(v -> v * 2)
+                .collect(Collectors.toList());
+
+        assertEquals(10_000, list.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals((i + 1) * 2, list.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void parallelStreamError() {
+        try {
+            Folyam.range(1, 5).concatWith(Folyam.error(new IllegalArgumentException()))
+                    .blockingStream(16, true)
+                    .forEach(v -> { });
+            fail("Should have thrown");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
 }
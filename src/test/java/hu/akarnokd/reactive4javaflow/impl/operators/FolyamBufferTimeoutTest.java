@@ -0,0 +1,322 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.functionals.AutoDisposable;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FolyamBufferTimeoutTest {
+
+    final TestSchedulerService executor = new TestSchedulerService();
+
+    @Test
+    public void sizeOnly() {
+        Folyam.range(1, 5)
+                .bufferTimeout(2, 1, TimeUnit.MINUTES, executor)
+                .test()
+                .assertResult(Arrays.asList(1, 2), Arrays.asList(3, 4), Collections.singletonList(5));
+    }
+
+    @Test
+    public void empty() {
+        Folyam.<Integer>empty()
+                .bufferTimeout(2, 1, TimeUnit.MINUTES, executor)
+                .test()
+                .assertResult();
+    }
+
+    @Test
+    public void timeout() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.bufferTimeout(10, 1, TimeUnit.SECONDS, executor).test();
+
+        dp.onNext(1);
+        dp.onNext(2);
+
+        executor.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+
+        tc.assertEmpty();
+
+        executor.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Arrays.asList(1, 2));
+
+        executor.advanceTimeBy(5, TimeUnit.SECONDS);
+
+        tc.assertValueCount(1);
+
+        dp.onNext(3);
+
+        executor.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+
+        dp.onNext(4);
+
+        executor.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Arrays.asList(1, 2), Arrays.asList(3, 4));
+
+        dp.onComplete();
+
+        tc.assertResult(Arrays.asList(1, 2), Arrays.asList(3, 4));
+    }
+
+    @Test
+    public void sizeFlushCancelsTimer() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.bufferTimeout(2, 1, TimeUnit.SECONDS, executor).test();
+
+        dp.onNext(1);
+        executor.advanceTimeBy(600, TimeUnit.MILLISECONDS);
+        dp.onNext(2);
+
+        tc.assertValues(Arrays.asList(1, 2));
+
+        dp.onNext(3);
+
+        // the first batch's timer would fire here
+        executor.advanceTimeBy(400, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Arrays.asList(1, 2));
+
+        executor.advanceTimeBy(600, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Arrays.asList(1, 2), Collections.singletonList(3));
+    }
+
+    @Test
+    public void noTimerWhileIdle() {
+        AtomicInteger scheduled = new AtomicInteger();
+        SchedulerService counting = new SchedulerService() {
+            @Override
+            public AutoDisposable schedule(Runnable task) {
+                return executor.schedule(task);
+            }
+
+            @Override
+            public AutoDisposable schedule(Runnable task, long delay, TimeUnit unit) {
+                return executor.schedule(task, delay, unit);
+            }
+
+            @Override
+            public Worker worker() {
+                Worker w = executor.worker();
+                return new Worker() {
+                    @Override
+                    public AutoDisposable schedule(Runnable task) {
+                        return w.schedule(task);
+                    }
+
+                    @Override
+                    public AutoDisposable schedule(Runnable task, long delay, TimeUnit unit) {
+                        scheduled.getAndIncrement();
+                        return w.schedule(task, delay, unit);
+                    }
+
+                    @Override
+                    public void close() {
+                        w.close();
+                    }
+                };
+            }
+        };
+
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.bufferTimeout(3, 1, TimeUnit.SECONDS, counting).test();
+
+        executor.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        assertEquals(0, scheduled.get());
+
+        dp.onNext(1);
+        dp.onNext(2);
+        dp.onNext(3);
+
+        assertEquals(1, scheduled.get());
+
+        executor.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        assertEquals(1, scheduled.get());
+
+        tc.assertValues(Arrays.asList(1, 2, 3));
+    }
+
+    @Test
+    public void backpressured() {
+        TestConsumer<List<Integer>> tc = Folyam.range(1, 10)
+                .bufferTimeout(3, 1, TimeUnit.SECONDS, executor)
+                .test(0);
+
+        tc.assertEmpty();
+
+        tc.requestMore(1);
+
+        tc.assertValues(Arrays.asList(1, 2, 3));
+
+        tc.requestMore(3);
+
+        tc.assertResult(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6), Arrays.asList(7, 8, 9), Collections.singletonList(10));
+    }
+
+    @Test
+    public void timedOutBatchWaitsForDemand() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.bufferTimeout(3, 1, TimeUnit.SECONDS, executor).test(0);
+
+        dp.onNext(1);
+
+        executor.advanceTimeBy(2, TimeUnit.SECONDS);
+
+        tc.assertEmpty();
+
+        tc.requestMore(1);
+
+        tc.assertValues(Collections.singletonList(1));
+    }
+
+    @Test
+    public void upstreamRequestsBounded() {
+        List<Long> requests = new ArrayList<>();
+
+        TestConsumer<List<Integer>> tc = Folyam.range(1, 100)
+                .doOnRequest(requests::add)
+                .bufferTimeout(4, 1, TimeUnit.SECONDS, executor)
+                .test(0);
+
+        // one batch waiting for demand plus at most one batch worth in the queue
+        assertTrue("" + requests, sum(requests) <= 8);
+
+        tc.requestMore(1);
+
+        tc.assertValueCount(1);
+
+        assertTrue("" + requests, sum(requests) <= 12);
+    }
+
+    static long sum(List<Long> list) {
+        long total = 0;
+        for (Long r : list) {
+            total += r;
+        }
+        return total;
+    }
+
+    @Test
+    public void containerReuse() {
+        ArrayDeque<List<Integer>> pool = new ArrayDeque<>();
+        AtomicInteger created = new AtomicInteger();
+
+        Folyam.range(1, 100)
+                .bufferTimeout(10, 1, TimeUnit.SECONDS, executor, () -> {
+                    List<Integer> list = pool.poll();
+                    if (list == null) {
+                        created.getAndIncrement();
+                        list = new ArrayList<>();
+                    }
+                    return list;
+                })
+                .map(list -> {
+                    int size = list.size();
+                    list.clear();
+                    pool.offer(list);
+                    return size;
+                })
+                .test()
+                .assertResult(10, 10, 10, 10, 10, 10, 10, 10, 10, 10);
+
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void error() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.bufferTimeout(3, 1, TimeUnit.SECONDS, executor).test();
+
+        dp.onNext(1);
+        dp.onError(new IOException());
+
+        tc.assertFailure(IOException.class);
+
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void supplierCrash() {
+        Folyam.range(1, 5)
+                .bufferTimeout(3, 1, TimeUnit.SECONDS, executor, () -> {
+                    throw new IOException();
+                })
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.bufferTimeout(3, 1, TimeUnit.SECONDS, executor).test();
+
+        dp.onNext(1);
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+        assertEquals(0, executor.activeWorkers());
+
+        executor.advanceTimeBy(2, TimeUnit.SECONDS);
+
+        tc.assertEmpty();
+    }
+
+    @Test
+    public void async() {
+        TestConsumer<List<Integer>> tc = Folyam.range(1, 100_000)
+                .subscribeOn(SchedulerServices.computation())
+                .bufferTimeout(100, 1, TimeUnit.MILLISECONDS, SchedulerServices.computation())
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertNoErrors()
+                .assertComplete();
+
+        int i = 1;
+        for (List<Integer> list : tc.values()) {
+            assertTrue(list.size() <= 100);
+            for (Integer v : list) {
+                assertEquals(i++, v.intValue());
+            }
+        }
+        assertEquals(100_001, i);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSizeZero() {
+        Folyam.range(1, 5).bufferTimeout(0, 1, TimeUnit.MINUTES, executor);
+    }
+}
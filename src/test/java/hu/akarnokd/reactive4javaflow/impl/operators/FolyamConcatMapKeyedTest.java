@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FolyamConcatMapKeyedTest {
+
+    @SuppressWarnings("unchecked")
+    static DirectProcessor<Integer>[] processors(int n) {
+        DirectProcessor<Integer>[] a = new DirectProcessor[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = new DirectProcessor<>();
+        }
+        return a;
+    }
+
+    @Test
+    public void standard() {
+        TestHelper.assertResult(
+                Folyam.range(1, 5).concatMapKeyed(v -> 0, v -> Folyam.range(v, 2)),
+                1, 2, 2, 3, 3, 4, 4, 5, 5, 6
+        );
+    }
+
+    @Test
+    public void sameKeySerializedOtherKeysConcurrent() {
+        DirectProcessor<Integer>[] ps = processors(4);
+
+        TestConsumer<Integer> tc = Folyam.range(0, 4)
+                .concatMapKeyed(v -> v % 2, v -> ps[v])
+                .test();
+
+        assertTrue(ps[0].hasSubscribers());
+        assertTrue(ps[1].hasSubscribers());
+        assertFalse(ps[2].hasSubscribers());
+        assertFalse(ps[3].hasSubscribers());
+
+        ps[1].onNext(10);
+        ps[0].onNext(0);
+        ps[1].onComplete();
+
+        tc.assertValues(10, 0);
+        assertTrue(ps[3].hasSubscribers());
+        assertFalse(ps[2].hasSubscribers());
+
+        ps[3].onNext(30);
+        ps[3].onComplete();
+        ps[0].onComplete();
+
+        assertTrue(ps[2].hasSubscribers());
+
+        ps[2].onNext(20);
+        ps[2].onComplete();
+
+        tc.assertResult(10, 0, 30, 20);
+    }
+
+    @Test
+    public void maxConcurrency() {
+        DirectProcessor<Integer>[] ps = processors(3);
+
+        TestConsumer<Integer> tc = Folyam.range(0, 3)
+                .concatMapKeyed(v -> v, v -> ps[v], 2, Integer.MAX_VALUE, 16)
+                .test();
+
+        assertTrue(ps[0].hasSubscribers());
+        assertTrue(ps[1].hasSubscribers());
+        assertFalse(ps[2].hasSubscribers());
+
+        ps[1].onNext(1);
+        ps[1].onComplete();
+
+        assertTrue(ps[2].hasSubscribers());
+
+        ps[2].onNext(2);
+        ps[2].onComplete();
+        ps[0].onNext(0);
+        ps[0].onComplete();
+
+        tc.assertResult(1, 2, 0);
+    }
+
+    @Test
+    public void maxKeysStopsConsumption() {
+        DirectProcessor<Integer>[] ps = processors(3);
+        List<Integer> consumed = new ArrayList<>();
+
+        TestConsumer<Integer> tc = Folyam.range(0, 3)
+                .doOnNext(consumed::add)
+                .concatMapKeyed(v -> v, v -> ps[v], 16, 1, 16)
+                .test();
+
+        assertTrue(ps[0].hasSubscribers());
+        assertFalse(ps[1].hasSubscribers());
+
+        ps[0].onNext(0);
+        ps[0].onComplete();
+
+        assertTrue(ps[1].hasSubscribers());
+        assertFalse(ps[2].hasSubscribers());
+
+        ps[1].onNext(1);
+        ps[1].onComplete();
+
+        assertTrue(ps[2].hasSubscribers());
+
+        ps[2].onNext(2);
+        ps[2].onComplete();
+
+        tc.assertResult(0, 1, 2);
+        assertEquals(Arrays.asList(0, 1, 2), consumed);
+    }
+
+    @Test
+    public void manyKeysReleased() {
+        Folyam.range(1, 1000)
+                .concatMapKeyed(v -> v, Folyam::just, 4, 8, 16)
+                .test()
+                .assertValueCount(1000)
+                .assertNoErrors()
+                .assertComplete();
+    }
+
+    @Test
+    public void keyOrderPreserved() {
+        TestConsumer<Integer> tc = Folyam.range(0, 2000)
+                .concatMapKeyed(v -> v % 37, Folyam::just, 5, 20, 32)
+                .test();
+
+        tc.assertValueCount(2000)
+                .assertNoErrors()
+                .assertComplete();
+
+        int[] last = new int[37];
+        Arrays.fill(last, -1);
+        for (Integer v : tc.values()) {
+            assertTrue(last[v % 37] < v);
+            last[v % 37] = v;
+        }
+    }
+
+    @Test
+    public void upstreamBoundedByPrefetch() {
+        DirectProcessor<Integer>[] ps = processors(8);
+        List<Long> requests = new ArrayList<>();
+
+        TestConsumer<Integer> tc = Folyam.range(0, 8)
+                .doOnRequest(requests::add)
+                .concatMapKeyed(v -> 0, v -> ps[v], 4, Integer.MAX_VALUE, 4)
+                .test();
+
+        assertEquals(Collections.singletonList(4L), requests);
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue(ps[i].hasSubscribers());
+            ps[i].onNext(i);
+            ps[i].onComplete();
+        }
+
+        tc.assertResult(0, 1, 2, 3, 4, 5, 6, 7);
+        assertEquals(Arrays.asList(4L, 3L, 3L), requests);
+    }
+
+    @Test
+    public void backpressured() {
+        Folyam.range(1, 5)
+                .concatMapKeyed(v -> 0, v -> Folyam.range(v, 2))
+                .test(0)
+                .assertEmpty()
+                .requestMore(3)
+                .assertValues(1, 2, 2)
+                .requestMore(7)
+                .assertResult(1, 2, 2, 3, 3, 4, 4, 5, 5, 6);
+    }
+
+    @Test
+    public void error() {
+        Folyam.<Integer>error(new IOException())
+                .concatMapKeyed(v -> v, Folyam::just)
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void innerError() {
+        DirectProcessor<Integer>[] ps = processors(2);
+
+        TestConsumer<Integer> tc = Folyam.range(0, 2)
+                .concatMapKeyed(v -> v, v -> ps[v])
+                .test();
+
+        ps[0].onError(new IOException());
+
+        tc.assertFailure(IOException.class);
+        assertFalse(ps[1].hasSubscribers());
+    }
+
+    @Test
+    public void mapperCrash() {
+        Folyam.range(1, 5)
+                .concatMapKeyed(v -> v, v -> {
+                    if (v == 3) {
+                        throw new IOException();
+                    }
+                    return Folyam.just(v);
+                })
+                .test()
+                .assertFailure(IOException.class, 1, 2);
+    }
+
+    @Test
+    public void keySelectorCrash() {
+        Folyam.range(1, 5)
+                .concatMapKeyed(v -> {
+                    if (v == 3) {
+                        throw new IOException();
+                    }
+                    return v;
+                }, Folyam::just)
+                .test()
+                .assertFailure(IOException.class, 1, 2);
+    }
+
+    @Test
+    public void nullKey() {
+        Folyam.range(1, 5)
+                .concatMapKeyed(v -> null, Folyam::just)
+                .test()
+                .assertFailure(NullPointerException.class);
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<Integer> main = new DirectProcessor<>();
+        DirectProcessor<Integer>[] ps = processors(2);
+
+        TestConsumer<Integer> tc = main
+                .concatMapKeyed(v -> v, v -> ps[v])
+                .test();
+
+        main.onNext(0);
+        main.onNext(1);
+
+        assertTrue(ps[0].hasSubscribers());
+        assertTrue(ps[1].hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(main.hasSubscribers());
+        assertFalse(ps[0].hasSubscribers());
+        assertFalse(ps[1].hasSubscribers());
+    }
+}
@@ -182,4 +182,49 @@ public class FolyamConcatMapTest {
                 .test()
                 .assertFailure(IOException.class, 1, 2, 3, 4, 5, 6);
     }
+
+    @Test
+    public void scalarInner() {
+        TestHelper.assertResult(
+                Folyam.range(1, 5)
+                        .concatMap(v -> Esetleg.fromCallable(() -> v * 10)),
+                10, 20, 30, 40, 50);
+    }
+
+    @Test
+    public void scalarInnerEmptySkipped() {
+        TestHelper.assertResult(
+                Folyam.range(1, 6)
+                        .concatMap(v -> v % 2 == 0 ? Esetleg.just(v) : Esetleg.<Integer>empty()),
+                2, 4, 6);
+    }
+
+    @Test
+    public void scalarInnerBackpressured() {
+        Folyam.range(1, 5)
+                .concatMap(v -> Esetleg.just(v).map(w -> w + 1))
+                .test(0)
+                .assertEmpty()
+                .requestMore(2)
+                .assertValues(2, 3)
+                .assertNotComplete()
+                .requestMore(3)
+                .assertResult(2, 3, 4, 5, 6);
+    }
+
+    @Test
+    public void scalarInnerError() {
+        Folyam.range(1, 5)
+                .concatMap(v -> v == 3 ? Esetleg.<Integer>error(new IOException()) : Esetleg.just(v))
+                .test()
+                .assertFailure(IOException.class, 1, 2);
+    }
+
+    @Test
+    public void scalarInnerErrorDelayed() {
+        Folyam.range(1, 5)
+                .concatMapDelayError(v -> v == 3 ? Esetleg.<Integer>error(new IOException()) : Esetleg.just(v))
+                .test()
+                .assertFailure(IOException.class, 1, 2, 4, 5);
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FolyamDebounceTimeTest {
+
+    final TestSchedulerService executor = new TestSchedulerService();
+
+    @Test
+    public void normal() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.debounce(10, TimeUnit.MILLISECONDS, executor).test();
+
+        dp.onNext(1);
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        dp.onNext(2);
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        // the task armed by 1 found the deadline moved by 2
+        tc.assertEmpty();
+
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(2);
+
+        executor.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(2);
+
+        dp.onNext(3);
+        executor.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(2, 3);
+
+        dp.onComplete();
+
+        tc.assertResult(2, 3);
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void completeEmitsLatest() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.debounce(10, TimeUnit.MILLISECONDS, executor).test();
+
+        dp.onNext(1);
+        dp.onNext(2);
+        dp.onComplete();
+
+        tc.assertResult(2);
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void fastSource() {
+        Folyam.range(1, 1000)
+                .debounce(10, TimeUnit.MILLISECONDS, executor)
+                .test()
+                .assertResult(1000);
+    }
+
+    @Test
+    public void empty() {
+        Folyam.empty()
+                .debounce(10, TimeUnit.MILLISECONDS, executor)
+                .test()
+                .assertResult();
+    }
+
+    @Test
+    public void error() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.debounce(10, TimeUnit.MILLISECONDS, executor).test();
+
+        dp.onNext(1);
+        dp.onError(new IOException());
+
+        tc.assertFailure(IOException.class);
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void replacedItemsRequested() {
+        List<Long> requests = new ArrayList<>();
+
+        TestConsumer<Integer> tc = Folyam.range(1, 5)
+                .doOnRequest(requests::add)
+                .debounce(10, TimeUnit.MILLISECONDS, executor)
+                .test(2);
+
+        tc.assertResult(5);
+
+        assertEquals(Arrays.asList(2L, 1L, 1L, 1L, 1L), requests);
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.debounce(10, TimeUnit.MILLISECONDS, executor).test();
+
+        dp.onNext(1);
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+        assertEquals(0, executor.activeWorkers());
+
+        executor.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        tc.assertEmpty();
+    }
+
+    @Test
+    public void async() {
+        TestConsumer<Integer> tc = Folyam.range(1, 5)
+                .concatMap(v -> Folyam.just(v).delay(v == 3 ? 100 : 1, TimeUnit.MILLISECONDS, SchedulerServices.single()))
+                .debounce(50, TimeUnit.MILLISECONDS, SchedulerServices.computation())
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertNoErrors()
+                .assertComplete();
+
+        assertEquals(tc.values().toString(), Integer.valueOf(5), tc.values().get(tc.values().size() - 1));
+        assertTrue(tc.values().toString(), tc.values().contains(2));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FolyamDiscardTest {
+
+    List<Object> discarded;
+
+    @Before
+    public void before() {
+        discarded = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @Test
+    public void onBackpressureLatestCancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.onBackpressureLatest(discarded::add)
+                .test(0);
+
+        dp.onNext(1);
+        dp.onNext(2);
+        dp.onNext(3);
+
+        assertEquals(List.of(1, 2), discarded);
+
+        tc.cancel();
+
+        assertEquals(List.of(1, 2, 3), discarded);
+    }
+
+    @Test
+    public void onBackpressureDropNewestCancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.onBackpressureDropNewest(2, discarded::add)
+                .test(0);
+
+        dp.onNext(1);
+        dp.onNext(2);
+        dp.onNext(3);
+
+        assertEquals(List.of(2), discarded);
+
+        tc.cancel();
+
+        assertEquals(List.of(2, 1, 3), discarded);
+    }
+
+    @Test
+    public void onBackpressureDropOldestCancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.onBackpressureDropOldest(2, discarded::add)
+                .test(0);
+
+        dp.onNext(1);
+        dp.onNext(2);
+        dp.onNext(3);
+
+        assertEquals(List.of(1), discarded);
+
+        tc.cancel();
+
+        assertEquals(List.of(1, 2, 3), discarded);
+    }
+
+    @Test
+    public void takeLast() {
+        Folyam.range(1, 5)
+                .takeLast(2, discarded::add)
+                .test()
+                .assertResult(4, 5);
+
+        assertEquals(List.of(1, 2, 3), discarded);
+    }
+
+    @Test
+    public void takeLastOne() {
+        Folyam.range(1, 3)
+                .takeLast(1, discarded::add)
+                .test()
+                .assertResult(3);
+
+        assertEquals(List.of(1, 2), discarded);
+    }
+
+    @Test
+    public void takeLastZero() {
+        Folyam.range(1, 3)
+                .takeLast(0, discarded::add)
+                .test()
+                .assertResult();
+
+        assertEquals(List.of(1, 2, 3), discarded);
+    }
+
+    @Test
+    public void takeLastError() {
+        Folyam.range(1, 3).concatWith(Folyam.error(new IOException()))
+                .takeLast(2, discarded::add)
+                .test()
+                .assertFailure(IOException.class);
+
+        assertEquals(List.of(1, 2, 3), discarded);
+    }
+
+    @Test
+    public void takeLastWithoutHandlerUnaffected() {
+        Folyam.range(1, 5)
+                .takeLast(2)
+                .ignoreElements()
+                .test()
+                .assertResult();
+
+        assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    public void takeLastHandlerCrash() {
+        TestHelper.withErrorTracking(errors -> {
+            Folyam.range(1, 5)
+                    .takeLast(2, v -> { throw new IllegalArgumentException(); })
+                    .test()
+                    .assertResult(4, 5);
+
+            assertEquals(3, errors.size());
+            TestHelper.assertError(errors, 0, IllegalArgumentException.class);
+        });
+    }
+}
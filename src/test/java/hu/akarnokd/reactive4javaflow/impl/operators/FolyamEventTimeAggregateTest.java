@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FolyamEventTimeAggregateTest {
+
+    /** Items are "key@timestamp". */
+    static long ts(String s) {
+        return Long.parseLong(s.substring(s.indexOf('@') + 1));
+    }
+
+    static String key(String s) {
+        return s.substring(0, s.indexOf('@'));
+    }
+
+    static Folyam<List<String>> count(Folyam<String> source, long lateness, long size, long slide) {
+        return source.eventTimeAggregate(FolyamEventTimeAggregateTest::ts, lateness, FolyamEventTimeAggregateTest::key,
+                () -> 0, (a, v) -> a + 1, (k, start, a) -> k + start + "=" + a, size, slide);
+    }
+
+    @Test
+    public void tumblingInOrder() {
+        count(Folyam.fromArray("a@1", "a@5", "a@12", "a@13", "a@25"), 0, 10, 10)
+                .test()
+                .assertResult(
+                        Collections.singletonList("a0=2"),
+                        Collections.singletonList("a10=2"),
+                        Collections.singletonList("a20=1")
+                );
+    }
+
+    @Test
+    public void outOfOrderWithinLateness() {
+        count(Folyam.fromArray("a@1", "a@12", "a@8", "b@9", "a@16", "a@3", "a@31"), 5, 10, 10)
+                .map(list -> {
+                    Collections.sort(list);
+                    return list;
+                })
+                .test()
+                .assertResult(
+                        Arrays.asList("a0=2", "b0=1"),
+                        Collections.singletonList("a10=2"),
+                        Collections.singletonList("a30=1")
+                );
+    }
+
+    @Test
+    public void lateHandled() {
+        List<String> late = new ArrayList<>();
+
+        Folyam.fromArray("a@1", "a@15", "a@2", "a@16")
+                .eventTimeAggregate(FolyamEventTimeAggregateTest::ts, 0, FolyamEventTimeAggregateTest::key,
+                        () -> 0, (a, v) -> a + 1, (k, start, a) -> k + start + "=" + a, 10, 10, late::add)
+                .test()
+                .assertResult(
+                        Collections.singletonList("a0=1"),
+                        Collections.singletonList("a10=2")
+                );
+
+        assertEquals(Collections.singletonList("a@2"), late);
+    }
+
+    @Test
+    public void lateHandlerCrash() {
+        Folyam.fromArray("a@1", "a@15", "a@2", "a@16")
+                .eventTimeAggregate(FolyamEventTimeAggregateTest::ts, 0, FolyamEventTimeAggregateTest::key,
+                        () -> 0, (a, v) -> a + 1, (k, start, a) -> k + start + "=" + a, 10, 10, v -> { throw new IOException(); })
+                .test()
+                .assertFailure(IOException.class, Collections.singletonList("a0=1"));
+    }
+
+    @Test
+    public void watermarkJumpEmitsInEndOrder() {
+        count(Folyam.fromArray("a@1", "b@11", "a@22", "c@100"), 0, 10, 10)
+                .test()
+                .assertResult(
+                        Collections.singletonList("a0=1"),
+                        Collections.singletonList("b10=1"),
+                        Collections.singletonList("a20=1"),
+                        Collections.singletonList("c100=1")
+                );
+
+        count(Folyam.fromArray("a@1", "b@11", "a@22", "c@100"), 100, 10, 10)
+                .test()
+                .assertResult(
+                        Arrays.asList("a0=1", "b10=1", "a20=1", "c100=1")
+                );
+    }
+
+    @Test
+    public void hopping() {
+        count(Folyam.fromArray("a@1", "a@6", "a@11", "a@30"), 0, 10, 5)
+                .test()
+                .assertResult(
+                        Collections.singletonList("a-5=1"),
+                        Collections.singletonList("a0=2"),
+                        Arrays.asList("a5=2", "a10=1"),
+                        Arrays.asList("a25=1", "a30=1")
+                );
+    }
+
+    @Test
+    public void hoppingNotDivisible() {
+        count(Folyam.fromArray("a@5"), 0, 10, 3)
+                .map(list -> {
+                    Collections.sort(list);
+                    return list;
+                })
+                .test()
+                .assertResult(Arrays.asList("a-3=1", "a0=1", "a3=1"));
+    }
+
+    @Test
+    public void manyKeys() {
+        TestConsumer<List<Integer>> tc = Folyam.range(0, 10_000)
+                .eventTimeAggregate(v -> v / 100, 3, v -> v % 500, () -> 0, (a, v) -> a + 1, (k, start, a) -> a, 10)
+                .test()
+                .assertNoErrors()
+                .assertComplete();
+
+        assertEquals(10, tc.values().size());
+        for (List<Integer> list : tc.values()) {
+            assertEquals(500, list.size());
+            for (Integer v : list) {
+                assertEquals(2, v.intValue());
+            }
+        }
+    }
+
+    @Test
+    public void backpressured() {
+        TestConsumer<List<String>> tc = count(Folyam.fromArray("a@1", "a@11", "a@21", "a@31"), 0, 10, 10)
+                .test(0);
+
+        tc.assertEmpty();
+
+        tc.requestMore(2);
+
+        tc.assertValues(Collections.singletonList("a0=1"), Collections.singletonList("a10=1"));
+
+        tc.requestMore(2);
+
+        tc.assertResult(Collections.singletonList("a0=1"), Collections.singletonList("a10=1"),
+                Collections.singletonList("a20=1"), Collections.singletonList("a30=1"));
+    }
+
+    @Test
+    public void error() {
+        count(Folyam.just("a@1").concatWith(Folyam.error(new IOException())), 0, 10, 10)
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void timestampCrash() {
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<String>> tc = count(dp, 0, 10, 10).test();
+
+        dp.onNext("a@x");
+
+        assertFalse(dp.hasSubscribers());
+        tc.assertFailure(NumberFormatException.class);
+    }
+
+    @Test
+    public void finisherCrash() {
+        Folyam.fromArray("a@1", "a@11")
+                .<String, Integer, Integer>eventTimeAggregate(FolyamEventTimeAggregateTest::ts, 0, FolyamEventTimeAggregateTest::key,
+                        () -> 0, (a, v) -> a + 1, (k, start, a) -> {
+                            throw new IOException();
+                        }, 10)
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<String>> tc = count(dp, 0, 10, 10).test();
+
+        assertTrue(dp.hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeZero() {
+        count(Folyam.empty(), 0, 0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slideZero() {
+        count(Folyam.empty(), 0, 10, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLateness() {
+        count(Folyam.empty(), -1, 10, 10);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FolyamJoinTest {
+
+    static String key(String s) {
+        return s.substring(0, 1);
+    }
+
+    static Folyam<String> countJoin(Folyam<String> left, Folyam<String> right, int maxSize) {
+        return left.join(right, FolyamJoinTest::key, FolyamJoinTest::key, (a, b) -> a + "+" + b, maxSize);
+    }
+
+    static Folyam<String> timeJoin(Folyam<String> left, Folyam<String> right, TestSchedulerService executor) {
+        return left.join(right, FolyamJoinTest::key, FolyamJoinTest::key, (a, b) -> a + "+" + b,
+                10, TimeUnit.MILLISECONDS, executor);
+    }
+
+    @Test
+    public void standard() {
+        countJoin(Folyam.fromArray("a1", "b1"), Folyam.fromArray("a2", "a3", "c1"), 16)
+                .test()
+                .assertResult("a1+a2", "a1+a3");
+    }
+
+    @Test
+    public void bothDirections() {
+        DirectProcessor<String> left = new DirectProcessor<>();
+        DirectProcessor<String> right = new DirectProcessor<>();
+
+        TestConsumer<String> tc = countJoin(left, right, 16).test();
+
+        left.onNext("a1");
+        right.onNext("a2");
+        right.onNext("b1");
+        left.onNext("b2");
+        left.onNext("a3");
+
+        tc.assertValues("a1+a2", "b2+b1", "a3+a2");
+
+        left.onComplete();
+
+        tc.assertNotComplete();
+
+        right.onComplete();
+
+        tc.assertResult("a1+a2", "b2+b1", "a3+a2");
+    }
+
+    @Test
+    public void countBound() {
+        DirectProcessor<String> left = new DirectProcessor<>();
+        DirectProcessor<String> right = new DirectProcessor<>();
+
+        TestConsumer<String> tc = countJoin(left, right, 2).test();
+
+        left.onNext("a1");
+        left.onNext("a2");
+        left.onNext("a3");
+        right.onNext("a4");
+
+        tc.assertValues("a2+a4", "a3+a4");
+    }
+
+    @Test
+    public void timeWindow() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> left = new DirectProcessor<>();
+        DirectProcessor<String> right = new DirectProcessor<>();
+
+        TestConsumer<String> tc = timeJoin(left, right, executor).test();
+
+        left.onNext("a1");
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        right.onNext("a2");
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        // a1 is exactly 10 ms old and expired
+        right.onNext("a3");
+        left.onNext("a4");
+
+        tc.assertValues("a1+a2", "a4+a2", "a4+a3");
+
+        executor.advanceTimeBy(20, TimeUnit.MILLISECONDS);
+
+        right.onNext("a5");
+
+        tc.assertValues("a1+a2", "a4+a2", "a4+a3");
+    }
+
+    @Test
+    public void completesWhenSideExpired() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> left = new DirectProcessor<>();
+        DirectProcessor<String> right = new DirectProcessor<>();
+
+        TestConsumer<String> tc = timeJoin(left, right, executor).test();
+
+        left.onNext("a1");
+        left.onComplete();
+
+        right.onNext("a2");
+
+        tc.assertValues("a1+a2");
+
+        executor.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        right.onNext("a3");
+
+        tc.assertResult("a1+a2");
+        assertFalse(right.hasSubscribers());
+    }
+
+    @Test
+    public void emptySide() {
+        countJoin(Folyam.empty(), Folyam.never(), 16)
+                .test()
+                .assertResult();
+    }
+
+    @Test
+    public void backpressured() {
+        DirectProcessor<String> left = new DirectProcessor<>();
+
+        TestConsumer<String> tc = countJoin(left, Folyam.fromArray("a1", "a2", "a3"), 16).test(0);
+
+        left.onNext("a0");
+
+        tc.assertEmpty();
+
+        tc.requestMore(1);
+
+        tc.assertValues("a0+a1");
+
+        tc.requestMore(2);
+
+        tc.assertValues("a0+a1", "a0+a2", "a0+a3");
+
+        left.onComplete();
+
+        tc.assertResult("a0+a1", "a0+a2", "a0+a3");
+    }
+
+    @Test
+    public void backpressuredBothSources() {
+        countJoin(Folyam.range(0, 1000).map(v -> "a" + v), Folyam.range(0, 1000).map(v -> "a" + v), 4)
+                .test(10)
+                .assertValueCount(10)
+                .assertNoErrors()
+                .assertNotComplete();
+    }
+
+    @Test
+    public void leftError() {
+        DirectProcessor<String> right = new DirectProcessor<>();
+
+        countJoin(Folyam.error(new IOException()), right, 16)
+                .test()
+                .assertFailure(IOException.class);
+
+        assertFalse(right.hasSubscribers());
+    }
+
+    @Test
+    public void rightError() {
+        DirectProcessor<String> left = new DirectProcessor<>();
+
+        TestConsumer<String> tc = countJoin(left, Folyam.error(new IOException()), 16)
+                .test();
+
+        tc.assertFailure(IOException.class);
+
+        assertFalse(left.hasSubscribers());
+    }
+
+    @Test
+    public void combinerCrash() {
+        DirectProcessor<String> left = new DirectProcessor<>();
+        DirectProcessor<String> right = new DirectProcessor<>();
+
+        TestConsumer<String> tc = left.<String, String, String>join(right, FolyamJoinTest::key, FolyamJoinTest::key, (a, b) -> {
+            throw new IOException();
+        }, 16).test();
+
+        left.onNext("a1");
+        right.onNext("a2");
+
+        tc.assertFailure(IOException.class);
+        assertFalse(left.hasSubscribers());
+        assertFalse(right.hasSubscribers());
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<String> left = new DirectProcessor<>();
+        DirectProcessor<String> right = new DirectProcessor<>();
+
+        TestConsumer<String> tc = countJoin(left, right, 16).test();
+
+        assertTrue(left.hasSubscribers());
+        assertTrue(right.hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(left.hasSubscribers());
+        assertFalse(right.hasSubscribers());
+    }
+}
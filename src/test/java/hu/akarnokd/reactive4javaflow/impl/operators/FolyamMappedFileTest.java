@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FolyamMappedFileTest {
+
+    Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempFile("FolyamMappedFileTest", ".txt");
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    static String str(ByteBuffer b) {
+        return StandardCharsets.UTF_8.decode(b.duplicate()).toString();
+    }
+
+    void write(String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void windows() throws IOException {
+        write("0123456789");
+
+        TestConsumer<ByteBuffer> tc = Folyam.fromFile(file, 4)
+                .test()
+                .assertValueCount(3)
+                .assertNoErrors()
+                .assertComplete();
+
+        assertEquals("0123", str(tc.values().get(0)));
+        assertEquals("4567", str(tc.values().get(1)));
+        assertEquals("89", str(tc.values().get(2)));
+        assertTrue(tc.values().get(0).isReadOnly());
+    }
+
+    @Test
+    public void backpressured() throws IOException {
+        write("0123456789");
+
+        TestConsumer<ByteBuffer> tc = Folyam.fromFile(file, 4)
+                .test(0);
+
+        tc.assertEmpty();
+
+        tc.requestMore(1);
+
+        tc.assertValueCount(1)
+                .assertNotComplete();
+
+        tc.requestMore(1);
+
+        tc.assertValueCount(2)
+                .assertNotComplete();
+
+        tc.requestMore(1);
+
+        tc.assertValueCount(3)
+                .assertNoErrors()
+                .assertComplete();
+    }
+
+    @Test
+    public void cancel() throws IOException {
+        write("0123456789");
+
+        Folyam.fromFile(file, 4)
+                .take(1)
+                .test()
+                .assertValueCount(1)
+                .assertNoErrors()
+                .assertComplete();
+    }
+
+    @Test
+    public void emptyFile() {
+        Folyam.fromFile(file)
+                .test()
+                .assertResult();
+    }
+
+    @Test
+    public void missingFile() throws IOException {
+        Files.delete(file);
+
+        Folyam.fromFile(file)
+                .test()
+                .assertFailure(NoSuchFileException.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroWindowSize() {
+        Folyam.fromFile(file, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeWindowSize() {
+        Folyam.fromFile(file, -1);
+    }
+
+    @Test
+    public void lines() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("Line ").append(i).append('\n');
+        }
+        write(sb.toString());
+
+        for (int w : new int[] { 1, 3, 7, 64, 1000, 100_000 }) {
+            List<String> lines = Folyam.splitLines(Folyam.fromFile(file, w))
+                    .map(FolyamMappedFileTest::str)
+                    .toList()
+                    .blockingGet().get();
+
+            assertEquals("" + w, Files.readAllLines(file), lines);
+        }
+    }
+
+    @Test
+    public void linesCrLf() throws IOException {
+        write("a\r\nbb\r\n\r\nccc");
+
+        for (int w = 1; w < 12; w++) {
+            List<String> lines = Folyam.splitLines(Folyam.fromFile(file, w))
+                    .map(FolyamMappedFileTest::str)
+                    .toList()
+                    .blockingGet().get();
+
+            assertEquals("" + w, List.of("a", "bb", "", "ccc"), lines);
+        }
+    }
+
+    @Test
+    public void linesBackpressured() throws IOException {
+        write("a\nb\nc\nd");
+
+        TestConsumer<String> tc = Folyam.splitLines(Folyam.fromFile(file, 3))
+                .map(FolyamMappedFileTest::str)
+                .test(0);
+
+        tc.assertEmpty();
+
+        tc.requestMore(2);
+
+        tc.assertValues("a", "b")
+                .assertNotComplete();
+
+        tc.requestMore(2);
+
+        tc.assertResult("a", "b", "c", "d");
+    }
+
+    @Test
+    public void records() {
+        ByteBuffer chunk = ByteBuffer.wrap("a,b,,c,".getBytes(StandardCharsets.UTF_8));
+
+        Folyam.splitRecords(Folyam.just(chunk), (byte)',')
+                .map(FolyamMappedFileTest::str)
+                .test()
+                .assertResult("a", "b", "", "c");
+    }
+
+    @Test
+    public void recordsAreSlices() {
+        byte[] bytes = "aa,bb,cc".getBytes(StandardCharsets.UTF_8);
+
+        TestConsumer<ByteBuffer> tc = Folyam.splitRecords(Folyam.just(ByteBuffer.wrap(bytes)), (byte)',')
+                .test()
+                .assertValueCount(3);
+
+        bytes[4] = 'x';
+
+        assertEquals("bx", str(tc.values().get(1)));
+    }
+
+    @Test
+    public void linesEmpty() {
+        Folyam.splitLines(Folyam.<ByteBuffer>empty())
+                .test()
+                .assertResult();
+    }
+
+    @Test
+    public void linesError() {
+        Folyam.splitLines(Folyam.fromFile(Paths.get("does-not-exist-" + System.nanoTime())))
+                .test()
+                .assertFailure(NoSuchFileException.class);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FolyamRateLimitTest {
+
+    @Test
+    public void burstThenRate() {
+        TestSchedulerService executor = new TestSchedulerService();
+
+        TestConsumer<Integer> tc = Folyam.range(1, 6)
+                .rateLimit(2, 10, TimeUnit.MILLISECONDS, 2, executor)
+                .test();
+
+        tc.assertValues(1, 2);
+
+        executor.advanceTimeBy(4, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(1, 2);
+
+        executor.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(1, 2, 3);
+
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(1, 2, 3, 4);
+
+        executor.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        tc.assertResult(1, 2, 3, 4, 5, 6);
+
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void upstreamRequestsFollowTokens() {
+        TestSchedulerService executor = new TestSchedulerService();
+        List<Long> requests = new ArrayList<>();
+
+        TestConsumer<Integer> tc = Folyam.range(1, 1000)
+                .doOnRequest(requests::add)
+                .rateLimit(100, 100, TimeUnit.MILLISECONDS, 10, executor)
+                .test();
+
+        tc.assertValueCount(10);
+        assertEquals(Collections.singletonList(10L), requests);
+
+        executor.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        tc.assertValueCount(20);
+
+        long sum = 0L;
+        for (Long r : requests) {
+            sum += r;
+        }
+        assertEquals(20L, sum);
+    }
+
+    @Test
+    public void backpressured() {
+        TestSchedulerService executor = new TestSchedulerService();
+        List<Long> requests = new ArrayList<>();
+
+        TestConsumer<Integer> tc = Folyam.range(1, 5)
+                .doOnRequest(requests::add)
+                .rateLimit(1, 1, TimeUnit.MILLISECONDS, 10, executor)
+                .test(0);
+
+        tc.assertEmpty();
+        assertTrue(requests.isEmpty());
+
+        tc.requestMore(2);
+
+        tc.assertValues(1, 2);
+        assertEquals(Collections.singletonList(2L), requests);
+
+        tc.requestMore(3);
+
+        tc.assertResult(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void sharedLimiter() {
+        TestSchedulerService executor = new TestSchedulerService();
+        RateLimiter rl = new RateLimiter(1, 10, TimeUnit.MILLISECONDS, 3, executor);
+
+        TestConsumer<Integer> tc1 = Folyam.range(1, 5).rateLimit(rl).test();
+        TestConsumer<Integer> tc2 = Folyam.range(11, 5).rateLimit(rl).test();
+
+        assertEquals(3, tc1.values().size() + tc2.values().size());
+
+        executor.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(4, tc1.values().size() + tc2.values().size());
+
+        executor.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        tc1.assertResult(1, 2, 3, 4, 5);
+        tc2.assertResult(11, 12, 13, 14, 15);
+    }
+
+    @Test
+    public void error() {
+        TestSchedulerService executor = new TestSchedulerService();
+
+        Folyam.<Integer>error(new IOException())
+                .rateLimit(1, 1, TimeUnit.SECONDS, 1, executor)
+                .test()
+                .assertFailure(IOException.class);
+
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void cancel() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.rateLimit(1, 1, TimeUnit.SECONDS, 1, executor).test();
+
+        assertTrue(dp.hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void subMillisecondIntervalSmallBurst() {
+        TestSchedulerService executor = new TestSchedulerService();
+        RateLimiter rl = new RateLimiter(5000, 1, TimeUnit.SECONDS, 1, executor);
+
+        TestConsumer<Integer> tc = Folyam.range(0, 100_000).rateLimit(rl).test();
+
+        tc.assertValueCount(1);
+
+        executor.advanceTimeBy(199, TimeUnit.MICROSECONDS);
+
+        tc.assertValueCount(1);
+
+        executor.advanceTimeBy(1, TimeUnit.MICROSECONDS);
+
+        tc.assertValueCount(2);
+
+        for (int i = 0; i < 20; i++) {
+            executor.advanceTimeBy(50, TimeUnit.MICROSECONDS);
+        }
+
+        tc.assertValueCount(7);
+
+        executor.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        tc.assertValueCount(507);
+
+        tc.cancel();
+    }
+}
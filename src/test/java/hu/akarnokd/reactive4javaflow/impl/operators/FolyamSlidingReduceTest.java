@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FolyamSlidingReduceTest {
+
+    static List<String> letters(int n) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(String.valueOf((char)('a' + i % 26)));
+        }
+        return list;
+    }
+
+    static List<String> expectedConcat(List<String> items, int size) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = Math.max(0, i - size + 1); j <= i; j++) {
+                sb.append(items.get(j));
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void associativeKeepsOrder() {
+        List<String> items = letters(100);
+        for (int size : new int[] { 1, 2, 3, 7, 16, 17, 100, 200 }) {
+            TestConsumer<String> tc = Folyam.fromIterable(items)
+                    .slidingReduce(size, (a, b) -> a + b)
+                    .test()
+                    .assertNoErrors()
+                    .assertComplete();
+
+            assertEquals("size: " + size, expectedConcat(items, size), tc.values());
+        }
+    }
+
+    @Test
+    public void invertibleSum() {
+        Folyam.range(1, 6)
+                .slidingReduce(3, (a, b) -> a + b, (a, b) -> a - b)
+                .test()
+                .assertResult(1, 3, 6, 9, 12, 15);
+    }
+
+    @Test
+    public void max() {
+        Folyam.fromArray(5, 1, 2, 3, 1, 0, 0, 4)
+                .slidingReduce(3, Math::max)
+                .test()
+                .assertResult(5, 5, 5, 3, 3, 3, 1, 4);
+    }
+
+    @Test
+    public void intMin() {
+        Folyam.fromArray(5, 1, 2, 3, 1, 0, 0, 4)
+                .slidingReduceInt(3, v -> v, Math::min)
+                .test()
+                .assertResult(5, 1, 1, 1, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void longSum() {
+        Folyam.range(1, 6)
+                .slidingReduceLong(2, v -> v * 1_000_000_000L, Long::sum)
+                .test()
+                .assertResult(1_000_000_000L, 3_000_000_000L, 5_000_000_000L, 7_000_000_000L, 9_000_000_000L, 11_000_000_000L);
+    }
+
+    @Test
+    public void doubleMax() {
+        Folyam.fromArray(1.5, 0.5, 2.5, 0.0)
+                .slidingReduceDouble(2, v -> v, Math::max)
+                .test()
+                .assertResult(1.5, 1.5, 2.5, 2.5);
+    }
+
+    @Test
+    public void longMatchesBruteForce() {
+        Random rnd = new Random(1);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(rnd.nextInt(1000));
+        }
+        int size = 37;
+
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            long max = Long.MIN_VALUE;
+            for (int j = Math.max(0, i - size + 1); j <= i; j++) {
+                max = Math.max(max, items.get(j));
+            }
+            expected.add(max);
+        }
+
+        TestConsumer<Long> tc = Folyam.fromIterable(items)
+                .slidingReduceLong(size, v -> v, Math::max)
+                .test();
+
+        assertEquals(expected, tc.values());
+    }
+
+    @Test
+    public void timed() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.slidingReduce(10, TimeUnit.MILLISECONDS, executor, (a, b) -> a + b).test();
+
+        dp.onNext(1);
+        executor.advanceTimeBy(4, TimeUnit.MILLISECONDS);
+        dp.onNext(2);
+        executor.advanceTimeBy(4, TimeUnit.MILLISECONDS);
+        dp.onNext(3);
+        executor.advanceTimeBy(4, TimeUnit.MILLISECONDS);
+        // 1 is 12 ms old
+        dp.onNext(4);
+        executor.advanceTimeBy(20, TimeUnit.MILLISECONDS);
+        dp.onNext(5);
+        dp.onComplete();
+
+        tc.assertResult(1, 3, 6, 9, 5);
+    }
+
+    @Test
+    public void timedInvertible() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.slidingReduce(10, TimeUnit.MILLISECONDS, executor, (a, b) -> a + b, (a, b) -> a - b).test();
+
+        dp.onNext(1);
+        executor.advanceTimeBy(4, TimeUnit.MILLISECONDS);
+        dp.onNext(2);
+        executor.advanceTimeBy(8, TimeUnit.MILLISECONDS);
+        dp.onNext(3);
+
+        tc.assertValues(1, 3, 5);
+    }
+
+    @Test
+    public void timedLong() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Long> tc = dp.slidingReduceLong(10, TimeUnit.MILLISECONDS, executor, v -> v, Long::sum).test();
+
+        for (int i = 1; i <= 5; i++) {
+            dp.onNext(i);
+            executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        }
+
+        tc.assertValues(1L, 3L, 5L, 7L, 9L);
+    }
+
+    @Test
+    public void backpressured() {
+        TestConsumer<Integer> tc = Folyam.range(1, 5)
+                .slidingReduce(2, (a, b) -> a + b)
+                .test(0);
+
+        tc.assertEmpty();
+
+        tc.requestMore(2);
+
+        tc.assertValues(1, 3);
+
+        tc.requestMore(3);
+
+        tc.assertResult(1, 3, 5, 7, 9);
+    }
+
+    @Test
+    public void combinerCrash() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.slidingReduce(3, (a, b) -> {
+            throw new IOException();
+        }).test();
+
+        dp.onNext(1);
+        dp.onNext(2);
+
+        assertFalse(dp.hasSubscribers());
+
+        tc.assertFailure(IOException.class, 1);
+    }
+
+    @Test
+    public void error() {
+        Folyam.<Integer>error(new IOException())
+                .slidingReduce(3, (a, b) -> a + b)
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroSize() {
+        Folyam.range(1, 5).slidingReduce(0, Integer::sum);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSizeInt() {
+        Folyam.range(1, 5).slidingReduceInt(-1, v -> v, Math::max);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.impl.schedulers.NioSchedulerService;
+import org.junit.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FolyamSocketChannelTest {
+
+    NioSchedulerService loop;
+
+    ServerSocketChannel server;
+
+    SocketChannel client;
+
+    SocketChannel peer;
+
+    @Before
+    public void before() throws IOException {
+        loop = SchedulerServices.newNio("SocketTest");
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        peer = server.accept();
+    }
+
+    @After
+    public void after() throws IOException {
+        loop.shutdown();
+        client.close();
+        peer.close();
+        server.close();
+    }
+
+    static Folyam<ByteBuffer> chunks(int count, int size) {
+        return Folyam.range(0, count).map(i -> {
+            byte[] b = new byte[size];
+            for (int j = 0; j < size; j++) {
+                b[j] = (byte)(i + j);
+            }
+            return ByteBuffer.wrap(b);
+        });
+    }
+
+    static long checksum(ByteBuffer b, long sum) {
+        while (b.hasRemaining()) {
+            sum = sum * 31 + b.get();
+        }
+        return sum;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        int count = 1000;
+        int size = 1000;
+
+        Esetleg<Long> expected = chunks(count, size).reduce(() -> 0L, (a, b) -> checksum(b.duplicate(), a));
+
+        Esetleg<Long> received = Folyam.fromSocketChannel(peer, loop)
+                .reduce(() -> 0L, (a, b) -> checksum(b, a));
+
+        TestConsumer<Long> rc = received.test();
+
+        Folyam.writeSocketChannel(chunks(count, size), client, loop)
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertResult((long)count * size);
+
+        client.shutdownOutput();
+
+        rc.awaitDone(5, TimeUnit.SECONDS)
+                .assertResult(expected.blockingGet().get());
+    }
+
+    @Test
+    public void readBackpressured() throws IOException {
+        client.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+
+        TestConsumer<ByteBuffer> tc = Folyam.fromSocketChannel(peer, loop)
+                .test(0);
+
+        tc.assertEmpty();
+
+        tc.requestMore(1);
+
+        tc.awaitCount(1, 10, 5000)
+                .assertValueCount(1)
+                .assertNotComplete();
+
+        assertEquals(5, tc.values().get(0).remaining());
+
+        client.shutdownOutput();
+
+        tc.requestMore(1)
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertValueCount(1)
+                .assertNoErrors()
+                .assertComplete();
+    }
+
+    @Test
+    public void writeStallsUntilRead() throws Exception {
+        long total = 64L * 1024 * 1024;
+
+        TestConsumer<Long> wc = Folyam.writeSocketChannel(chunks(1024, 64 * 1024), client, loop, 4)
+                .test();
+
+        Thread.sleep(200);
+
+        wc.assertEmpty();
+
+        TestConsumer<Long> rc = Folyam.fromSocketChannel(peer, loop, 64 * 1024)
+                .reduce(() -> 0L, (a, b) -> a + b.remaining())
+                .test();
+
+        wc.awaitDone(10, TimeUnit.SECONDS)
+                .assertResult(total);
+
+        client.shutdownOutput();
+
+        rc.awaitDone(10, TimeUnit.SECONDS)
+                .assertResult(total);
+    }
+
+    @Test
+    public void writeError() {
+        Folyam.writeSocketChannel(Folyam.error(new IOException()), client, loop)
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void writeClosedChannel() throws IOException {
+        client.close();
+
+        Folyam.writeSocketChannel(chunks(1, 10), client, loop)
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertFailure(ClosedChannelException.class);
+    }
+
+    @Test
+    public void readPooled() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(4, false);
+
+        client.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+        client.shutdownOutput();
+
+        Folyam.fromSocketChannel(peer, loop, pool)
+                .map(lease -> {
+                    int n = lease.buffer().remaining();
+                    lease.release();
+                    return n;
+                })
+                .sumInt(v -> v)
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertResult(5);
+
+        assertTrue(pool.allocatedCount() <= 2);
+    }
+
+    @Test
+    public void readCancel() throws IOException {
+        TestConsumer<ByteBuffer> tc = Folyam.fromSocketChannel(peer, loop)
+                .test();
+
+        tc.cancel();
+
+        client.write(ByteBuffer.wrap(new byte[] { 1 }));
+
+        tc.assertEmpty();
+    }
+}
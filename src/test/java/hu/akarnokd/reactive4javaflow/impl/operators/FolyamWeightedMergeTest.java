@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FolyamWeightedMergeTest {
+
+    @Test
+    public void weighted() {
+        Folyam.mergeWeighted(new int[] { 3, 1 }, Folyam.range(1, 8), Folyam.range(101, 4))
+                .test(0)
+                .requestMore(Long.MAX_VALUE)
+                .assertResult(1, 2, 3, 101, 4, 5, 6, 102, 7, 8, 103, 104);
+    }
+
+    @Test
+    public void standard() {
+        TestHelper.assertResult(
+                Folyam.mergeWeighted(new int[] { 1, 1 }, Folyam.range(1, 3), Folyam.empty()),
+                1, 2, 3
+        );
+    }
+
+    @Test
+    public void weightedBackpressured() {
+        Folyam.mergeWeighted(new int[] { 2, 1, 1 }, Folyam.range(1, 4), Folyam.range(11, 2), Folyam.range(21, 2))
+                .test(0)
+                .assertEmpty()
+                .requestMore(3)
+                .assertValues(1, 2, 11)
+                .requestMore(2)
+                .assertValues(1, 2, 11, 21, 3)
+                .requestMore(10)
+                .assertResult(1, 2, 11, 21, 3, 4, 12, 22);
+    }
+
+    @Test
+    public void priority() {
+        Folyam.mergePriority(new int[] { 1, 5, 3 }, Folyam.range(1, 2), Folyam.range(11, 2), Folyam.range(21, 2))
+                .test(0)
+                .requestMore(Long.MAX_VALUE)
+                .assertResult(11, 12, 21, 22, 1, 2);
+    }
+
+    @Test
+    public void priorityEqualFavorsLowerIndex() {
+        Folyam.mergePriority(new int[] { 1, 1 }, Folyam.range(11, 2), Folyam.range(1, 2))
+                .test(0)
+                .requestMore(Long.MAX_VALUE)
+                .assertResult(11, 12, 1, 2);
+    }
+
+    @Test
+    public void controlOvertakesBufferedBulk() {
+        DirectProcessor<Integer> bulk = new DirectProcessor<>();
+        DirectProcessor<Integer> control = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = Folyam.mergePriority(new int[] { 0, 1 }, new int[] { 4, 1 }, bulk, control)
+                .test(0);
+
+        for (int i = 1; i <= 4; i++) {
+            bulk.onNext(i);
+        }
+
+        tc.requestMore(1)
+                .assertValues(1);
+
+        control.onNext(100);
+
+        tc.requestMore(2)
+                .assertValues(1, 100, 2);
+
+        control.onNext(200);
+        control.onComplete();
+        bulk.onComplete();
+
+        tc.requestMore(10)
+                .assertResult(1, 100, 2, 200, 3, 4);
+    }
+
+    @Test
+    public void separatePrefetch() {
+        List<Long> requests1 = new ArrayList<>();
+        List<Long> requests2 = new ArrayList<>();
+
+        Folyam.mergeWeighted(new int[] { 1, 1 }, new int[] { 2, 8 },
+                Folyam.range(1, 10).hide().doOnRequest(requests1::add),
+                Folyam.range(11, 10).hide().doOnRequest(requests2::add))
+                .test(0);
+
+        assertEquals(Collections.singletonList(2L), requests1);
+        assertEquals(Collections.singletonList(8L), requests2);
+    }
+
+    @Test
+    public void empty() {
+        Folyam.mergeWeighted(new int[0])
+                .test()
+                .assertResult();
+    }
+
+    @Test
+    public void single() {
+        Folyam.mergePriority(new int[] { 1 }, Folyam.range(1, 3))
+                .test()
+                .assertResult(1, 2, 3);
+    }
+
+    @Test
+    public void error() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = Folyam.mergeWeighted(new int[] { 1, 1 }, dp, Folyam.<Integer>error(new IOException()))
+                .test();
+
+        tc.assertFailure(IOException.class);
+        assertFalse(dp.hasSubscribers());
+    }
+
+    @Test
+    public void nullSource() {
+        Folyam.mergeWeighted(new int[] { 1, 1 }, Folyam.never(), null)
+                .test()
+                .assertFailure(NullPointerException.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightCountMismatch() {
+        Folyam.mergeWeighted(new int[] { 1 }, Folyam.range(1, 2), Folyam.range(3, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveWeight() {
+        Folyam.mergeWeighted(new int[] { 1, 0 }, Folyam.range(1, 2), Folyam.range(3, 2));
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<Integer> dp1 = new DirectProcessor<>();
+        DirectProcessor<Integer> dp2 = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = Folyam.mergePriority(new int[] { 2, 1 }, dp1, dp2)
+                .test();
+
+        assertTrue(dp1.hasSubscribers());
+        assertTrue(dp2.hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(dp1.hasSubscribers());
+        assertFalse(dp2.hasSubscribers());
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FolyamWindowAggregateTest {
+
+    static Folyam<List<String>> tumblingCount(Folyam<String> source, TestSchedulerService executor) {
+        return source.tumblingAggregate(v -> v, () -> 0, (a, v) -> a + 1, (k, a) -> k + "=" + a,
+                10, TimeUnit.MILLISECONDS, executor)
+                .map(list -> {
+                    Collections.sort(list);
+                    return list;
+                });
+    }
+
+    static Folyam<List<String>> sessionCount(Folyam<String> source, TestSchedulerService executor) {
+        return source.sessionAggregate(v -> v, () -> 0, (a, v) -> a + 1, (k, a) -> k + "=" + a,
+                10, TimeUnit.MILLISECONDS, executor)
+                .map(list -> {
+                    Collections.sort(list);
+                    return list;
+                });
+    }
+
+    @Test
+    public void tumbling() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<String>> tc = tumblingCount(dp, executor).test();
+
+        dp.onNext("a");
+        dp.onNext("b");
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        dp.onNext("a");
+
+        tc.assertEmpty();
+
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Arrays.asList("a=2", "b=1"));
+
+        dp.onNext("b");
+        executor.advanceTimeBy(9, TimeUnit.MILLISECONDS);
+        dp.onNext("c");
+        executor.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Arrays.asList("a=2", "b=1"), Arrays.asList("b=1", "c=1"));
+
+        dp.onNext("a");
+        dp.onComplete();
+
+        tc.assertResult(Arrays.asList("a=2", "b=1"), Arrays.asList("b=1", "c=1"), Collections.singletonList("a=1"));
+
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void tumblingAlignedToBoundary() {
+        TestSchedulerService executor = new TestSchedulerService();
+        executor.advanceTimeBy(7, TimeUnit.MILLISECONDS);
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<String>> tc = tumblingCount(dp, executor).test();
+
+        dp.onNext("a");
+        executor.advanceTimeBy(3, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Collections.singletonList("a=1"));
+    }
+
+    @Test
+    public void session() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<String>> tc = sessionCount(dp, executor).test();
+
+        dp.onNext("a");
+        dp.onNext("b");
+        executor.advanceTimeBy(6, TimeUnit.MILLISECONDS);
+        dp.onNext("a");
+        executor.advanceTimeBy(6, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Collections.singletonList("b=1"));
+
+        dp.onNext("a");
+        executor.advanceTimeBy(9, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Collections.singletonList("b=1"));
+
+        executor.advanceTimeBy(2, TimeUnit.MILLISECONDS);
+
+        tc.assertValues(Collections.singletonList("b=1"), Collections.singletonList("a=3"));
+
+        dp.onComplete();
+
+        tc.assertResult(Collections.singletonList("b=1"), Collections.singletonList("a=3"));
+    }
+
+    @Test
+    public void completeFlushes() {
+        Folyam.fromArray("a", "b", "a", "c", "a")
+                .tumblingAggregate(v -> v, () -> 0, (a, v) -> a + 1, (k, a) -> k + "=" + a,
+                        1, TimeUnit.DAYS, new TestSchedulerService())
+                .map(list -> new HashSet<>(list))
+                .test()
+                .assertResult(new HashSet<>(Arrays.asList("a=3", "b=1", "c=1")));
+    }
+
+    @Test
+    public void manyKeys() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.sessionAggregate(v -> v % 1000, () -> 0, (a, v) -> a + 1, (k, a) -> a,
+                10, TimeUnit.MILLISECONDS, executor)
+                .test();
+
+        for (int i = 0; i < 500; i++) {
+            dp.onNext(i);
+        }
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        for (int i = 500; i < 3000; i++) {
+            dp.onNext(i);
+        }
+        executor.advanceTimeBy(6, TimeUnit.MILLISECONDS);
+
+        // keys 0..499 got items at 5 ms too
+        tc.assertEmpty();
+
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        tc.assertValueCount(1);
+        assertEquals(1000, tc.values().get(0).size());
+        for (Integer v : tc.values().get(0)) {
+            assertEquals(3, v.intValue());
+        }
+
+        // the table is reusable after a full sweep
+        dp.onNext(1);
+        dp.onComplete();
+
+        tc.assertValueCount(2)
+                .assertNoErrors()
+                .assertComplete();
+        assertEquals(Collections.singletonList(1), tc.values().get(1));
+    }
+
+    @Test
+    public void partialSweep() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.sessionAggregate(v -> v, () -> 0, (a, v) -> a + 1, (k, a) -> k,
+                16, TimeUnit.MILLISECONDS, executor)
+                .test();
+
+        for (int i = 0; i < 200; i++) {
+            dp.onNext(i);
+        }
+        executor.advanceTimeBy(8, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 200; i += 2) {
+            dp.onNext(i);
+        }
+        executor.advanceTimeBy(9, TimeUnit.MILLISECONDS);
+
+        tc.assertValueCount(1);
+        List<Integer> odd = new ArrayList<>(tc.values().get(0));
+        Collections.sort(odd);
+        assertEquals(100, odd.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(2 * i + 1, odd.get(i).intValue());
+        }
+
+        executor.advanceTimeBy(8, TimeUnit.MILLISECONDS);
+
+        tc.assertValueCount(2);
+        assertEquals(100, new HashSet<>(tc.values().get(1)).size());
+    }
+
+    @Test
+    public void backpressuredBatchesMerge() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<String>> tc = sessionCount(dp, executor).test(0);
+
+        dp.onNext("a");
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        dp.onNext("b");
+        executor.advanceTimeBy(6, TimeUnit.MILLISECONDS);
+        executor.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+
+        tc.assertEmpty();
+
+        tc.requestMore(1);
+
+        tc.assertValues(Arrays.asList("a=1", "b=1"));
+    }
+
+    @Test
+    public void error() {
+        Folyam.<String>error(new IOException())
+                .tumblingAggregate(v -> v, () -> 0, (a, v) -> a + 1, (k, a) -> a,
+                        10, TimeUnit.MILLISECONDS, new TestSchedulerService())
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void accumulatorCrash() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.<String, Integer, Integer>tumblingAggregate(v -> v, () -> 0, (a, v) -> {
+            throw new IOException();
+        }, (k, a) -> a, 10, TimeUnit.MILLISECONDS, executor)
+                .test();
+
+        dp.onNext("a");
+
+        assertFalse(dp.hasSubscribers());
+        tc.assertFailure(IOException.class);
+        assertEquals(0, executor.activeWorkers());
+    }
+
+    @Test
+    public void finisherCrash() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<Integer>> tc = dp.<String, Integer, Integer>tumblingAggregate(v -> v, () -> 0, (a, v) -> a + 1, (k, a) -> {
+            throw new IOException();
+        }, 10, TimeUnit.MILLISECONDS, executor)
+                .test();
+
+        dp.onNext("a");
+        executor.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        assertFalse(dp.hasSubscribers());
+        tc.assertFailure(IOException.class);
+    }
+
+    @Test
+    public void cancel() {
+        TestSchedulerService executor = new TestSchedulerService();
+        DirectProcessor<String> dp = new DirectProcessor<>();
+
+        TestConsumer<List<String>> tc = tumblingCount(dp, executor).test();
+
+        dp.onNext("a");
+
+        assertEquals(1, executor.activeWorkers());
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+        assertEquals(0, executor.activeWorkers());
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FolyamWriteChannelTest {
+
+    Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempFile("FolyamWriteChannelTest", ".txt");
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    static Folyam<ByteBuffer> lines(int count) {
+        return Folyam.range(0, count).map(i -> ByteBuffer.wrap(("Line " + i + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String expected(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("Line ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    String content() throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    static final class CountingChannel implements GatheringByteChannel {
+
+        final GatheringByteChannel channel;
+
+        int writes;
+
+        int maxBatch;
+
+        CountingChannel(GatheringByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            writes++;
+            maxBatch = Math.max(maxBatch, length);
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            writes++;
+            return channel.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void gathering() throws IOException {
+        long n = expected(1000).length();
+        try (CountingChannel ch = new CountingChannel(FileChannel.open(file, StandardOpenOption.WRITE))) {
+            Folyam.writeChannel(lines(1000), ch, 64, 1024 * 1024)
+                    .test()
+                    .assertResult(n);
+
+            assertEquals(64, ch.maxBatch);
+            assertTrue("" + ch.writes, ch.writes < 100);
+        }
+
+        assertEquals(expected(1000), content());
+    }
+
+    @Test
+    public void gatheringMaxBytes() throws IOException {
+        try (CountingChannel ch = new CountingChannel(FileChannel.open(file, StandardOpenOption.WRITE))) {
+            Folyam.writeChannel(lines(100), ch, 64, 20)
+                    .test()
+                    .assertResult((long)expected(100).length());
+
+            assertTrue("" + ch.maxBatch, ch.maxBatch <= 2);
+        }
+
+        assertEquals(expected(100), content());
+    }
+
+    @Test
+    public void gatheringRequestsAfterWrite() throws IOException {
+        DirectProcessor<ByteBuffer> dp = new DirectProcessor<>();
+        try (CountingChannel ch = new CountingChannel(FileChannel.open(file, StandardOpenOption.WRITE))) {
+            TestConsumer<Long> tc = Folyam.writeChannel(dp, ch, 2, 1024)
+                    .test();
+
+            dp.onNext(ByteBuffer.wrap(new byte[] { 'a' }));
+            dp.onNext(ByteBuffer.wrap(new byte[] { 'b' }));
+            dp.onNext(ByteBuffer.wrap(new byte[] { 'c' }));
+            dp.onComplete();
+
+            tc.assertResult(3L);
+            assertEquals(3, ch.writes);
+        }
+
+        assertEquals("abc", content());
+    }
+
+    @Test
+    public void gatheringError() throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            Folyam.writeChannel(lines(5).concatWith(Folyam.error(new IOException())), ch)
+                    .test()
+                    .assertFailure(IOException.class);
+        }
+    }
+
+    @Test
+    public void gatheringChannelClosed() throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE);
+        ch.close();
+
+        Folyam.writeChannel(lines(5), ch)
+                .test()
+                .assertFailure(ClosedChannelException.class);
+    }
+
+    @Test
+    public void gatheringEmpty() throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            Folyam.writeChannel(Folyam.empty(), ch)
+                    .test()
+                    .assertResult(0L);
+        }
+    }
+
+    @Test
+    public void asyncFile() throws IOException {
+        try (AsynchronousFileChannel ch = AsynchronousFileChannel.open(file, StandardOpenOption.WRITE)) {
+            Folyam.writeFile(lines(1000), ch, 0L)
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertResult((long)expected(1000).length());
+        }
+
+        assertEquals(expected(1000), content());
+    }
+
+    @Test
+    public void asyncFileSmallStaging() throws IOException {
+        try (AsynchronousFileChannel ch = AsynchronousFileChannel.open(file, StandardOpenOption.WRITE)) {
+            Folyam.writeFile(lines(1000).observeOn(SchedulerServices.single()), ch, 0L, 16, 10)
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertResult((long)expected(1000).length());
+        }
+
+        assertEquals(expected(1000), content());
+    }
+
+    @Test
+    public void asyncFilePosition() throws IOException {
+        Files.write(file, "0123456789".getBytes(StandardCharsets.UTF_8));
+
+        try (AsynchronousFileChannel ch = AsynchronousFileChannel.open(file, StandardOpenOption.WRITE)) {
+            Folyam.writeFile(Folyam.just(ByteBuffer.wrap("ab".getBytes(StandardCharsets.UTF_8))), ch, 4L)
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertResult(2L);
+        }
+
+        assertEquals("0123ab6789", content());
+    }
+
+    @Test
+    public void asyncFileError() throws IOException {
+        try (AsynchronousFileChannel ch = AsynchronousFileChannel.open(file, StandardOpenOption.WRITE)) {
+            Folyam.writeFile(lines(5).concatWith(Folyam.error(new IOException())), ch, 0L)
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertFailure(IOException.class);
+        }
+    }
+
+    @Test
+    public void asyncFileReadOnly() throws IOException {
+        try (AsynchronousFileChannel ch = AsynchronousFileChannel.open(file, StandardOpenOption.READ)) {
+            Folyam.writeFile(lines(5), ch, 0L)
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertFailure(NonWritableChannelException.class);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.errors.CompositeThrowable;
+import hu.akarnokd.reactive4javaflow.impl.BooleanSubscription;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ParallelJoinBatchedTest {
+
+    @Test
+    public void standard() {
+        Folyam.range(1, 5)
+                .parallel(1)
+                .sequentialBatched(16)
+                .test()
+                .assertResult(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void manyRails() {
+        TestConsumer<Integer> tc = Folyam.range(1, 1000)
+                .parallel(4)
+                .sequentialBatched(16, 8)
+                .test();
+
+        tc.assertValueCount(1000)
+                .assertNoErrors()
+                .assertComplete();
+
+        Set<Integer> set = new HashSet<>(tc.values());
+        assertEquals(1000, set.size());
+    }
+
+    @Test
+    public void async() {
+        for (int i = 0; i < 20; i++) {
+            TestConsumer<Integer> tc = Folyam.range(1, 100_000)
+                    .parallel(4)
+                    .runOn(SchedulerServices.computation())
+                    .map(v -> v + 1)
+                    .sequentialBatched(32)
+                    .test()
+                    .awaitDone(10, TimeUnit.SECONDS)
+                    .assertValueCount(100_000)
+                    .assertNoErrors()
+                    .assertComplete();
+
+            assertEquals(100_000, new HashSet<>(tc.values()).size());
+        }
+    }
+
+    @Test
+    public void asyncExecutor() {
+        Folyam.range(1, 100_000)
+                .parallel(4)
+                .runOn(SchedulerServices.computation())
+                .sequentialBatched(SchedulerServices.single(), 128, 32)
+                .test()
+                .awaitDone(10, TimeUnit.SECONDS)
+                .assertValueCount(100_000)
+                .assertNoErrors()
+                .assertComplete();
+    }
+
+    @Test
+    public void slowSourceNoStrandedItems() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.parallel(2)
+                .sequentialBatched(64)
+                .test();
+
+        dp.onNext(1);
+
+        tc.assertValues(1);
+
+        dp.onNext(2);
+        dp.onNext(3);
+
+        tc.assertValues(1, 2, 3);
+
+        dp.onComplete();
+
+        tc.assertResult(1, 2, 3);
+    }
+
+    @Test
+    public void backpressured() {
+        TestConsumer<Integer> tc = Folyam.range(1, 10)
+                .parallel(2)
+                .sequentialBatched(4)
+                .test(0);
+
+        tc.assertEmpty();
+
+        tc.requestMore(3);
+
+        tc.assertValueCount(3)
+                .assertNotComplete();
+
+        tc.requestMore(7);
+
+        tc.assertValueCount(10)
+                .assertNoErrors()
+                .assertComplete();
+    }
+
+    @Test
+    public void error() {
+        Folyam.<Integer>error(new IOException())
+                .parallel(2)
+                .sequentialBatched(4)
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void errorDelayed() {
+        ParallelFolyam.fromArray(Folyam.range(1, 2), Folyam.<Integer>error(new IOException()), Folyam.range(3, 2))
+                .sequentialBatchedDelayError(16, 4)
+                .test()
+                .assertFailure(IOException.class, 1, 2, 3, 4);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void errorDelayedMany() {
+        ParallelFolyam.fromArray(Folyam.<Integer>error(new IOException()), Folyam.<Integer>error(new IllegalArgumentException()))
+                .sequentialBatchedDelayError(16, 4)
+                .test()
+                .assertFailure(CompositeThrowable.class);
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.parallel(2)
+                .sequentialBatched(4)
+                .test();
+
+        assertTrue(dp.hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+    }
+
+    @Test
+    public void overflow() {
+        TestHelper.withErrorTracking(errors -> {
+            new ParallelFolyam<Integer>() {
+                @Override
+                public void subscribeActual(FolyamSubscriber<? super Integer>[] subscribers) {
+                    subscribers[0].onSubscribe(new BooleanSubscription());
+                    subscribers[0].onNext(1);
+                    subscribers[0].onNext(2);
+                    subscribers[0].onNext(3);
+                }
+
+                @Override
+                public int parallelism() {
+                    return 1;
+                }
+            }
+            .sequentialBatched(1, 4)
+            .test(0)
+            .assertFailure(IllegalStateException.class);
+        });
+    }
+
+    @Test
+    public void overflowDelayError() {
+        new ParallelFolyam<Integer>() {
+            @Override
+            public void subscribeActual(FolyamSubscriber<? super Integer>[] subscribers) {
+                subscribers[0].onSubscribe(new BooleanSubscription());
+                subscribers[0].onNext(1);
+                subscribers[0].onNext(2);
+            }
+
+            @Override
+            public int parallelism() {
+                return 1;
+            }
+        }
+        .sequentialBatchedDelayError(1, 4)
+        .test(0)
+        .requestMore(1)
+        .assertFailure(IllegalStateException.class, 1);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ParallelReduceTreeTest {
+
+    @Test
+    public void reduceOrdered() {
+        for (int n = 1; n <= 9; n++) {
+            Folyam.range(1, n)
+                    .parallel(n)
+                    .map(String::valueOf)
+                    .reduce((a, b) -> a + b, SchedulerServices.trampoline())
+                    .test()
+                    .assertResult("123456789".substring(0, n));
+        }
+    }
+
+    @Test
+    public void reduceSum() {
+        for (int p = 1; p <= 17; p++) {
+            Folyam.range(1, 1000)
+                    .parallel(p)
+                    .reduce((a, b) -> a + b, SchedulerServices.computation())
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertResult(500500);
+        }
+    }
+
+    @Test
+    public void reduceSomeRailsEmpty() {
+        Folyam.range(1, 3)
+                .parallel(8)
+                .reduce((a, b) -> a + b, SchedulerServices.trampoline())
+                .test()
+                .assertResult(6);
+    }
+
+    @Test
+    public void reduceEmpty() {
+        Folyam.<Integer>empty()
+                .parallel(4)
+                .reduce((a, b) -> a + b, SchedulerServices.trampoline())
+                .test()
+                .assertResult();
+    }
+
+    @Test
+    public void reduceError() {
+        TestHelper.withErrorTracking(errors -> {
+            Folyam.<Integer>error(new IOException())
+                    .parallel(4)
+                    .reduce((a, b) -> a + b, SchedulerServices.trampoline())
+                    .test()
+                    .assertFailure(IOException.class);
+
+            assertTrue(errors.isEmpty());
+        });
+    }
+
+    @Test
+    public void reduceCombinerCrash() {
+        Folyam.range(1, 4)
+                .parallel(4)
+                .reduce((a, b) -> {
+                    if (a + b > 5) {
+                        throw new IOException();
+                    }
+                    return a + b;
+                }, SchedulerServices.trampoline())
+                .test()
+                .assertFailure(IOException.class);
+    }
+
+    @Test
+    public void reduceCancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.parallel(4)
+                .reduce((a, b) -> a + b, SchedulerServices.trampoline())
+                .test();
+
+        assertTrue(dp.hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+    }
+
+    @Test
+    public void collectList() {
+        Folyam.range(1, 10)
+                .parallel(3)
+                .collect(Collectors.toList())
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertResult(Arrays.asList(1, 4, 7, 10, 2, 5, 8, 3, 6, 9));
+    }
+
+    @Test
+    public void collectFinisher() {
+        Folyam.range(1, 5)
+                .parallel(2)
+                .collect(Collectors.summingInt(v -> v), SchedulerServices.trampoline())
+                .test()
+                .assertResult(15);
+    }
+
+    @Test
+    public void collectEmpty() {
+        Folyam.<Integer>empty()
+                .parallel(2)
+                .collect(Collectors.toList(), SchedulerServices.trampoline())
+                .test()
+                .assertResult(Collections.emptyList());
+    }
+
+    @Test
+    public void collectConcurrent() {
+        List<Object> containers = Collections.synchronizedList(new ArrayList<>());
+        Map<Integer, Integer> map = Folyam.range(1, 1000)
+                .parallel(4)
+                .runOn(SchedulerServices.computation())
+                .collect(Collectors.toConcurrentMap(v -> v, v -> v), SchedulerServices.trampoline())
+                .doOnNext(containers::add)
+                .blockingGet(5, TimeUnit.SECONDS)
+                .get();
+
+        assertEquals(1000, map.size());
+        assertEquals(1, containers.size());
+    }
+
+    @Test
+    public void collectSupplierCrash() {
+        Folyam.range(1, 5)
+                .parallel(2)
+                .collect(Collectors.<Integer, List<Integer>>toCollection(() -> { throw new IllegalStateException(); }), SchedulerServices.trampoline())
+                .test()
+                .assertFailure(IllegalStateException.class);
+    }
+}
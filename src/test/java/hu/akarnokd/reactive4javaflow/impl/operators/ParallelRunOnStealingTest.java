@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.operators;
+
+import hu.akarnokd.reactive4javaflow.*;
+import hu.akarnokd.reactive4javaflow.processors.DirectProcessor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ParallelRunOnStealingTest {
+
+    @Test
+    public void subscriberCount() {
+        ParallelFolyamTest.checkSubscriberCount(Folyam.range(1, 5).parallel()
+                .runOnWorkStealing(SchedulerServices.computation()));
+    }
+
+    @Test
+    public void standard() {
+        for (int i = 0; i < 10; i++) {
+            TestConsumer<Integer> tc = Folyam.range(1, 10_000)
+                    .parallel(4)
+                    .runOnWorkStealing(SchedulerServices.computation(), 16)
+                    .map(v -> v + 1)
+                    .sequential()
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertValueCount(10_000)
+                    .assertNoErrors()
+                    .assertComplete();
+
+            assertEquals(10_000, new HashSet<>(tc.values()).size());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void idleRailSteals() {
+        SchedulerService sch = SchedulerServices.newParallel(2, "IdleRailSteals");
+        try {
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+
+            ParallelFolyam.fromArray(Folyam.range(1, 50), Folyam.<Integer>empty())
+                    .runOnWorkStealing(sch, 16)
+                    .map(v -> {
+                        threads.add(Thread.currentThread().getName());
+                        Thread.sleep(1);
+                        return v;
+                    })
+                    .sequential()
+                    .test()
+                    .awaitDone(5, TimeUnit.SECONDS)
+                    .assertValueCount(50)
+                    .assertNoErrors()
+                    .assertComplete();
+
+            assertEquals(threads.toString(), 2, threads.size());
+        } finally {
+            sch.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void backpressured() {
+        TestConsumer<Integer>[] tcs = new TestConsumer[] { new TestConsumer<>(0), new TestConsumer<>(0) };
+
+        ParallelFolyam.fromArray(Folyam.range(1, 5), Folyam.range(6, 5))
+                .runOnWorkStealing(SchedulerServices.trampoline(), 4)
+                .subscribe(tcs);
+
+        tcs[0].assertEmpty();
+        tcs[1].assertEmpty();
+
+        tcs[1].requestMore(10);
+
+        tcs[1].assertValueCount(10)
+                .assertNoErrors()
+                .assertComplete();
+
+        tcs[0].assertResult();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void error() {
+        TestConsumer<Integer>[] tcs = new TestConsumer[] { new TestConsumer<>(), new TestConsumer<>() };
+
+        ParallelFolyam.fromArray(Folyam.<Integer>error(new IOException()), Folyam.range(1, 5))
+                .runOnWorkStealing(SchedulerServices.trampoline())
+                .subscribe(tcs);
+
+        tcs[0].assertFailure(IOException.class);
+        tcs[1].assertResult(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void cancel() {
+        DirectProcessor<Integer> dp = new DirectProcessor<>();
+
+        TestConsumer<Integer> tc = dp.parallel(2)
+                .runOnWorkStealing(SchedulerServices.trampoline())
+                .sequential()
+                .test();
+
+        assertTrue(dp.hasSubscribers());
+
+        tc.cancel();
+
+        assertFalse(dp.hasSubscribers());
+    }
+
+    @Test
+    public void empty() {
+        Folyam.<Integer>empty()
+                .parallel(3)
+                .runOnWorkStealing(SchedulerServices.computation())
+                .sequential()
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertResult();
+    }
+}
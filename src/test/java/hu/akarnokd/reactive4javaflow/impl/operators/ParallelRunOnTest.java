@@ -19,7 +19,8 @@ package hu.akarnokd.reactive4javaflow.impl.operators;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
 
 import hu.akarnokd.reactive4javaflow.*;
 import hu.akarnokd.reactive4javaflow.functionals.CheckedPredicate;
@@ -314,4 +315,46 @@ public class ParallelRunOnTest {
 
         ts.assertResult(1);
     }
+
+    @Test
+    public void pinnedRails() {
+        SchedulerService sch = SchedulerServices.newParallel(4, "PinnedRails");
+        try {
+            Map<Integer, String> first = new HashMap<>();
+            for (int k = 0; k < 3; k++) {
+                Map<Integer, Set<String>> threads = new ConcurrentHashMap<>();
+
+                ParallelFolyam.fromArray(
+                        Folyam.range(0, 250).map(v -> 0),
+                        Folyam.range(0, 250).map(v -> 1),
+                        Folyam.range(0, 250).map(v -> 2),
+                        Folyam.range(0, 250).map(v -> 3)
+                )
+                        .runOn(sch, 16, true)
+                        .map(v -> {
+                            threads.computeIfAbsent(v, x -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+                            return v;
+                        })
+                        .sequential()
+                        .test()
+                        .awaitDone(5, TimeUnit.SECONDS)
+                        .assertValueCount(1000)
+                        .assertNoErrors()
+                        .assertComplete();
+
+                Set<String> all = new HashSet<>();
+                for (int i = 0; i < 4; i++) {
+                    Set<String> set = threads.get(i);
+                    assertEquals(set.toString(), 1, set.size());
+                    String name = set.iterator().next();
+                    all.add(name);
+                    first.putIfAbsent(i, name);
+                    assertEquals(first.get(i), name);
+                }
+                assertEquals(4, all.size());
+            }
+        } finally {
+            sch.shutdown();
+        }
+    }
 }
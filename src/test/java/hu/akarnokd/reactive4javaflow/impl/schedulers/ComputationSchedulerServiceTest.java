@@ -20,6 +20,7 @@ import hu.akarnokd.reactive4javaflow.*;
 import hu.akarnokd.reactive4javaflow.disposables.SequentialAutoDisposable;
 import org.junit.*;
 
+import java.util.*;
 import java.util.concurrent.*;
 
 import static org.junit.Assert.*;
@@ -80,4 +81,45 @@ public class ComputationSchedulerServiceTest extends AbstractSchedulerServiceTes
         }
     }
 
+    @Test(timeout = 5000)
+    public void indexedWorker() throws Exception {
+        SchedulerService sch = SchedulerServices.newParallel(3, "IndexedWorker");
+        try {
+            String[] names = new String[6];
+            for (int i = 0; i < 6; i++) {
+                SchedulerService.Worker w = sch.worker(i);
+                try {
+                    int j = i;
+                    CountDownLatch cdl = new CountDownLatch(1);
+                    w.schedule(() -> {
+                        names[j] = Thread.currentThread().getName();
+                        cdl.countDown();
+                    });
+                    assertTrue(cdl.await(5, TimeUnit.SECONDS));
+                } finally {
+                    w.close();
+                }
+            }
+
+            assertEquals(3, new HashSet<>(Arrays.asList(names)).size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(names[i], names[i + 3]);
+            }
+        } finally {
+            sch.shutdown();
+        }
+    }
+
+    @Test
+    public void indexedWorkerShutdown() {
+        TestHelper.withErrorTracking(errors -> {
+            SchedulerService sch = SchedulerServices.newParallel(1, "A");
+            sch.shutdown();
+
+            SchedulerService.Worker w = sch.worker(0);
+            assertSame(SchedulerService.REJECTED, w.schedule(() -> { }));
+
+            TestHelper.assertError(errors, 0, RejectedExecutionException.class);
+        });
+    }
 }
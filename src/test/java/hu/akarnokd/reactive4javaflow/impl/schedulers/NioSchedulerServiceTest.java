@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.schedulers;
+
+import hu.akarnokd.reactive4javaflow.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class NioSchedulerServiceTest extends AbstractSchedulerServiceTest {
+
+    @Override
+    protected SchedulerService create() {
+        return SchedulerServices.newNio("NioTest");
+    }
+
+    @Override
+    protected void release(SchedulerService service) {
+        service.shutdown();
+    }
+
+    @Test
+    public void shutdownRejects() {
+        TestHelper.withErrorTracking(errors -> {
+            SchedulerService sch = SchedulerServices.newNio("A");
+            sch.shutdown();
+
+            assertSame(SchedulerService.REJECTED, sch.schedule(() -> { }));
+
+            assertSame(SchedulerService.REJECTED, sch.schedule(() -> { }, 1, TimeUnit.MILLISECONDS));
+
+            assertFalse(errors.isEmpty());
+        });
+    }
+
+    @Test(timeout = 5000)
+    public void restart() throws Exception {
+        SchedulerService sch = SchedulerServices.newNio("A");
+        sch.shutdown();
+        sch.start();
+        try {
+            CountDownLatch cdl = new CountDownLatch(1);
+
+            sch.schedule(cdl::countDown);
+
+            assertTrue(cdl.await(5, TimeUnit.SECONDS));
+        } finally {
+            sch.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void delayedOrder() throws Exception {
+        ConcurrentLinkedQueue<Integer> list = new ConcurrentLinkedQueue<>();
+        CountDownLatch cdl = new CountDownLatch(3);
+
+        scheduler.schedule(() -> { list.add(3); cdl.countDown(); }, 30, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> { list.add(2); cdl.countDown(); }, 20, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> { list.add(1); cdl.countDown(); });
+
+        assertTrue(cdl.await(5, TimeUnit.SECONDS));
+
+        assertArrayEquals(new Integer[] { 1, 2, 3 }, list.toArray(new Integer[0]));
+    }
+
+    @Test(timeout = 20000)
+    public void foreignExecuteNeverLost() throws Exception {
+        int n = 100_000;
+        CountDownLatch cdl = new CountDownLatch(n);
+
+        Thread t = new Thread(() -> {
+            for (int i = 0; i < n; i++) {
+                scheduler.schedule(cdl::countDown);
+                if ((i & 1023) == 0) {
+                    Thread.yield();
+                }
+            }
+        });
+        t.start();
+
+        assertTrue("" + cdl.getCount() + " tasks didn't run", cdl.await(15, TimeUnit.SECONDS));
+        t.join();
+
+        for (int i = 0; i < 2000; i++) {
+            CountDownLatch one = new CountDownLatch(1);
+            scheduler.schedule(one::countDown);
+            assertTrue("Round " + i, one.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void registerChannel() throws Exception {
+        NioSchedulerService sch = (NioSchedulerService)scheduler;
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                 SocketChannel peer = server.accept()) {
+
+                peer.configureBlocking(false);
+
+                CountDownLatch cdl = new CountDownLatch(1);
+                Thread[] thread = { null };
+
+                NioSchedulerService.ChannelRegistration reg = sch.register(peer, ops -> {
+                    if ((ops & SelectionKey.OP_READ) != 0) {
+                        thread[0] = Thread.currentThread();
+                        cdl.countDown();
+                    }
+                });
+
+                reg.addInterest(SelectionKey.OP_READ);
+
+                client.write(ByteBuffer.wrap(new byte[] { 1 }));
+
+                assertTrue(cdl.await(5, TimeUnit.SECONDS));
+
+                reg.close();
+
+                assertTrue(thread[0].getName().startsWith("NioTest"));
+            }
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void registerShutdown() throws IOException {
+        NioSchedulerService sch = SchedulerServices.newNio("A");
+        sch.shutdown();
+        try (SocketChannel ch = SocketChannel.open()) {
+            ch.configureBlocking(false);
+            sch.register(ch, ops -> { });
+        }
+    }
+}
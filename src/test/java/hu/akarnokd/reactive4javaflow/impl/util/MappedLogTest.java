@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.util;
+
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MappedLogTest {
+
+    Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("MappedLogTest");
+    }
+
+    @After
+    public void after() throws IOException {
+        deleteAll(dir);
+    }
+
+    static void deleteAll(Path dir) throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                Files.deleteIfExists(p);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    static byte[] record(int v) {
+        return ByteBuffer.allocate(4).putInt(0, v).array();
+    }
+
+    static List<Integer> readAll(MappedLog log) {
+        List<Integer> list = new ArrayList<>();
+        MappedLog.Cursor c = log.cursor();
+        ByteBuffer b;
+        while ((b = c.next()) != null) {
+            list.add(b.getInt(b.position()));
+        }
+        return list;
+    }
+
+    static List<Integer> range(int start, int count) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = start; i < start + count; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    int segmentFiles() throws IOException {
+        int n = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.log")) {
+            for (Path p : ds) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void appendAndRead() throws IOException {
+        MappedLog log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, log.append(record(i)));
+        }
+
+        assertEquals(range(0, 10), readAll(log));
+        assertEquals(0L, log.firstSequence());
+        assertEquals(10L, log.nextSequence());
+    }
+
+    @Test
+    public void emptyRecord() throws IOException {
+        MappedLog log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        log.append(new byte[0]);
+        log.append(new byte[0]);
+        log.close();
+
+        log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        MappedLog.Cursor c = log.cursor();
+
+        assertEquals(0, c.next().remaining());
+        assertEquals(0, c.next().remaining());
+        assertNull(c.next());
+    }
+
+    @Test
+    public void cursorFollowsAppends() throws IOException {
+        MappedLog log = new MappedLog(dir, 64, Long.MAX_VALUE, Long.MAX_VALUE);
+        MappedLog.Cursor c = log.cursor();
+
+        assertFalse(c.hasNext());
+
+        for (int i = 0; i < 50; i++) {
+            log.append(record(i));
+            assertEquals(i, c.sequence());
+            ByteBuffer b = c.next();
+            assertEquals(i, b.getInt(b.position()));
+            assertNull(c.next());
+        }
+    }
+
+    @Test
+    public void rolling() throws IOException {
+        MappedLog log = new MappedLog(dir, 64, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        for (int i = 0; i < 100; i++) {
+            log.append(record(i));
+        }
+
+        assertEquals(13, segmentFiles());
+        assertEquals(range(0, 100), readAll(log));
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        MappedLog log = new MappedLog(dir, 64, Long.MAX_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < 20; i++) {
+            log.append(record(i));
+        }
+        log.close();
+
+        log = new MappedLog(dir, 64, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(20L, log.nextSequence());
+        for (int i = 20; i < 30; i++) {
+            assertEquals(i, log.append(record(i)));
+        }
+
+        assertEquals(range(0, 30), readAll(log));
+    }
+
+    @Test
+    public void tornRecordDropped() throws IOException {
+        MappedLog log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < 3; i++) {
+            log.append(record(i));
+        }
+        log.close();
+
+        // payload of a fourth record whose length prefix never made it
+        try (FileChannel fc = FileChannel.open(dir.resolve(String.format("%020d.log", 0)), StandardOpenOption.WRITE)) {
+            fc.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 9, 1, 2, 3, 4 }), 24 + 4);
+        }
+
+        log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(range(0, 3), readAll(log));
+
+        log.append(new byte[] { 0 });
+        log.close();
+
+        log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(4L, log.nextSequence());
+    }
+
+    @Test
+    public void missingIndexEntriesRebuilt() throws IOException {
+        MappedLog log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < 3; i++) {
+            log.append(record(i));
+        }
+        log.close();
+
+        try (FileChannel fc = FileChannel.open(dir.resolve(String.format("%020d.idx", 0)), StandardOpenOption.WRITE)) {
+            fc.write(ByteBuffer.allocate(24), 12);
+        }
+
+        log = new MappedLog(dir, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(range(0, 3), readAll(log));
+    }
+
+    @Test
+    public void sizeRetention() throws IOException {
+        MappedLog log = new MappedLog(dir, 64, 128, Long.MAX_VALUE);
+        MappedLog.Cursor c = log.cursor();
+
+        for (int i = 0; i < 100; i++) {
+            log.append(record(i));
+        }
+
+        assertEquals(2, segmentFiles());
+        assertEquals(88L, log.firstSequence());
+        assertEquals(range(88, 12), readAll(log));
+
+        // a cursor on a removed segment can still finish it
+        assertEquals(range(0, 100), readAll(c));
+    }
+
+    static List<Integer> readAll(MappedLog.Cursor c) {
+        List<Integer> list = new ArrayList<>();
+        ByteBuffer b;
+        while ((b = c.next()) != null) {
+            list.add(b.getInt(b.position()));
+        }
+        return list;
+    }
+
+    @Test
+    public void timeRetention() throws Exception {
+        MappedLog log = new MappedLog(dir, 64, Long.MAX_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < 20; i++) {
+            log.append(record(i));
+        }
+        log.close();
+
+        Thread.sleep(50);
+
+        log = new MappedLog(dir, 64, Long.MAX_VALUE, 10);
+
+        assertEquals(1, segmentFiles());
+        assertEquals(16L, log.firstSequence());
+        assertEquals(range(16, 4), readAll(log));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordTooLarge() throws IOException {
+        MappedLog log = new MappedLog(dir, 64, Long.MAX_VALUE, Long.MAX_VALUE);
+        log.append(new byte[61]);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.impl.util;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OpenHashTableTest {
+
+    static final class IntTable extends OpenHashTable {
+
+        int[] values;
+
+        IntTable(int capacity) {
+            super(capacity);
+            values = new int[keys().length];
+        }
+
+        Integer get(Object key) {
+            int pos = find(key, mix(key.hashCode()));
+            return pos < 0 ? null : values[pos];
+        }
+
+        void put(Object key, int value) {
+            int h = mix(key.hashCode());
+            int pos = find(key, h);
+            if (pos < 0) {
+                pos = insert(key, h, ~pos);
+            }
+            values[pos] = value;
+        }
+
+        boolean remove(Object key) {
+            int pos = find(key, mix(key.hashCode()));
+            if (pos < 0) {
+                return false;
+            }
+            removeAt(pos);
+            return true;
+        }
+
+        @Override
+        protected void move(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        protected void clearValue(int pos) {
+            values[pos] = 0;
+        }
+
+        @Override
+        protected void resize(int[] moves, int capacity) {
+            int[] b = new int[capacity];
+            for (int i = 0; i < moves.length; i++) {
+                if (moves[i] >= 0) {
+                    b[moves[i]] = values[i];
+                }
+            }
+            values = b;
+        }
+
+        @Override
+        protected void clearValues() {
+            Arrays.fill(values, 0);
+        }
+    }
+
+    /** Keys with few distinct hash codes so the probe sequences collide and wrap around. */
+    static final class Colliding {
+        final int id;
+
+        Colliding(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 3;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding)o).id == id;
+        }
+    }
+
+    @Test
+    public void randomAgainstHashMap() {
+        Random rnd = new Random(42);
+        IntTable table = new IntTable(4);
+        Map<Object, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            Object key = rnd.nextBoolean() ? (Object)rnd.nextInt(64) : new Colliding(rnd.nextInt(16));
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, table.remove(key));
+            } else {
+                expected.put(key, i);
+                table.put(key, i);
+            }
+            assertEquals(expected.size(), table.size());
+        }
+
+        for (Map.Entry<Object, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), table.get(e.getKey()));
+        }
+    }
+
+    @Test
+    public void growKeepsValues() {
+        IntTable table = new IntTable(2);
+        for (int i = 0; i < 1000; i++) {
+            table.put(i, i * 2);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i * 2, table.get(i).intValue());
+        }
+
+        table.clear();
+
+        assertEquals(0, table.size());
+        assertNull(table.get(1));
+    }
+}
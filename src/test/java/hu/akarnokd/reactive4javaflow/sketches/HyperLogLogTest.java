@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.sketches;
+
+import hu.akarnokd.reactive4javaflow.*;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class HyperLogLogTest {
+
+    static void assertClose(long expected, long actual, double relativeError) {
+        assertTrue(expected + " vs. " + actual, Math.abs(expected - actual) <= expected * relativeError);
+    }
+
+    @Test
+    public void empty() {
+        assertEquals(0L, new HyperLogLog(14).estimate());
+    }
+
+    @Test
+    public void small() {
+        HyperLogLog h = new HyperLogLog(14);
+        for (int i = 0; i < 100; i++) {
+            h.addLong(i);
+            h.addLong(i);
+        }
+        assertEquals(100L, h.estimate());
+    }
+
+    @Test
+    public void large() {
+        HyperLogLog h = new HyperLogLog(14);
+        for (long i = 0; i < 1_000_000; i++) {
+            h.addLong(i);
+        }
+        assertClose(1_000_000L, h.estimate(), 0.03);
+    }
+
+    @Test
+    public void merge() {
+        HyperLogLog h1 = new HyperLogLog(12);
+        HyperLogLog h2 = new HyperLogLog(12);
+        HyperLogLog all = new HyperLogLog(12);
+        for (long i = 0; i < 100_000; i++) {
+            (i % 3 == 0 ? h1 : h2).addLong(i);
+            all.addLong(i);
+        }
+        assertEquals(all.estimate(), h1.merge(h2).estimate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergePrecisionMismatch() {
+        new HyperLogLog(10).merge(new HyperLogLog(11));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void precisionTooSmall() {
+        new HyperLogLog(3);
+    }
+
+    @Test
+    public void countDistinctApprox() {
+        long n = Folyam.range(0, 100_000)
+                .map(v -> "item-" + (v % 20_000))
+                .countDistinctApprox()
+                .blockingGet()
+                .get();
+
+        assertClose(20_000L, n, 0.03);
+    }
+
+    @Test
+    public void primitive() {
+        long n = Folyam.range(0, 50_000)
+                .hyperLogLog(v -> v / 2, 14)
+                .blockingGet()
+                .get()
+                .estimate();
+
+        assertClose(25_000L, n, 0.03);
+    }
+
+    @Test
+    public void parallel() {
+        HyperLogLog h = Folyam.range(0, 200_000)
+                .parallel(4)
+                .runOn(SchedulerServices.computation())
+                .hyperLogLog(v -> v % 50_000, 14)
+                .blockingGet()
+                .get();
+
+        HyperLogLog single = Folyam.range(0, 200_000)
+                .hyperLogLog(v -> v % 50_000, 14)
+                .blockingGet()
+                .get();
+
+        assertEquals(single.estimate(), h.estimate());
+    }
+
+    @Test
+    public void error() {
+        Folyam.<Integer>error(new IOException())
+                .countDistinctApprox()
+                .test()
+                .assertFailure(IOException.class);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.sketches;
+
+import hu.akarnokd.reactive4javaflow.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+
+    static void assertRankClose(QuantileSketch q, int n, double fraction, double tolerance) {
+        double v = q.quantile(fraction);
+        double actual = v / n;
+        assertEquals("fraction " + fraction, fraction, actual, tolerance);
+    }
+
+    @Test
+    public void empty() {
+        QuantileSketch q = new QuantileSketch();
+        assertEquals(0L, q.count());
+        assertTrue(Double.isNaN(q.quantile(0.5)));
+        assertTrue(Double.isNaN(q.rank(1)));
+    }
+
+    @Test
+    public void exactWhenSmall() {
+        QuantileSketch q = new QuantileSketch(200);
+        for (int i = 100; i >= 1; i--) {
+            q.add(i);
+        }
+        assertEquals(1d, q.min(), 0d);
+        assertEquals(100d, q.max(), 0d);
+        assertEquals(50d, q.quantile(0.5), 0d);
+        assertEquals(99d, q.quantile(0.99), 0d);
+        assertEquals(0.25, q.rank(25), 0d);
+    }
+
+    @Test
+    public void largeShuffled() {
+        int n = 1_000_000;
+        List<Integer> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(i);
+        }
+        Collections.shuffle(list, new Random(1));
+
+        QuantileSketch q = new QuantileSketch(200);
+        for (Integer v : list) {
+            q.add(v);
+        }
+
+        assertEquals(n, q.count());
+        assertEquals(0d, q.quantile(0), 0d);
+        assertEquals(n - 1d, q.quantile(1), 0d);
+        for (double f : new double[] { 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99 }) {
+            assertRankClose(q, n, f, 0.02);
+        }
+        assertEquals(0.5, q.rank(n / 2), 0.02);
+    }
+
+    @Test
+    public void mergeMatchesSingle() {
+        int n = 300_000;
+        QuantileSketch q1 = new QuantileSketch(100);
+        QuantileSketch q2 = new QuantileSketch(100);
+        for (int i = 0; i < n; i++) {
+            (i % 2 == 0 ? q1 : q2).add(i);
+        }
+
+        QuantileSketch q = q1.merge(q2);
+
+        assertEquals(n, q.count());
+        for (double f : new double[] { 0.1, 0.5, 0.9 }) {
+            assertRankClose(q, n, f, 0.03);
+        }
+    }
+
+    @Test
+    public void mergeEmpty() {
+        QuantileSketch q = new QuantileSketch();
+        q.merge(new QuantileSketch());
+        assertEquals(0L, q.count());
+
+        QuantileSketch other = new QuantileSketch();
+        other.add(5);
+        q.merge(other);
+        assertEquals(5d, q.quantile(0.5), 0d);
+        assertEquals(5d, q.min(), 0d);
+    }
+
+    @Test
+    public void nanIgnored() {
+        QuantileSketch q = new QuantileSketch();
+        q.add(Double.NaN);
+        assertEquals(0L, q.count());
+    }
+
+    @Test
+    public void folyam() {
+        QuantileSketch q = Folyam.range(0, 100_000)
+                .quantiles(v -> v)
+                .blockingGet()
+                .get();
+
+        assertEquals(100_000L, q.count());
+        assertRankClose(q, 100_000, 0.5, 0.02);
+    }
+
+    @Test
+    public void parallel() {
+        QuantileSketch q = Folyam.range(0, 100_000)
+                .parallel(4)
+                .runOn(SchedulerServices.computation())
+                .quantiles(v -> v, 100)
+                .blockingGet()
+                .get();
+
+        assertEquals(100_000L, q.count());
+        assertEquals(0d, q.min(), 0d);
+        assertEquals(99_999d, q.max(), 0d);
+        assertRankClose(q, 100_000, 0.5, 0.03);
+        assertRankClose(q, 100_000, 0.95, 0.03);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void kTooSmall() {
+        new QuantileSketch(4);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hu.akarnokd.reactive4javaflow.sketches;
+
+import hu.akarnokd.reactive4javaflow.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TopKTest {
+
+    static List<String> values(List<TopK.Item<String>> items) {
+        List<String> result = new ArrayList<>();
+        for (TopK.Item<String> item : items) {
+            result.add(item.value());
+        }
+        return result;
+    }
+
+    @Test
+    public void exactWithinCapacity() {
+        TopK<String> t = new TopK<>(10);
+        for (String s : "a b a c a b d".split(" ")) {
+            t.add(s);
+        }
+
+        List<TopK.Item<String>> top = t.top(2);
+        assertEquals(Arrays.asList("a", "b"), values(top));
+        assertEquals(3L, top.get(0).count());
+        assertEquals(0L, top.get(0).error());
+        assertEquals(2L, t.estimate("b"));
+        assertEquals(0L, t.estimate("z"));
+        assertEquals(7L, t.total());
+    }
+
+    @Test
+    public void heavyHittersSurviveNoise() {
+        TopK<String> t = new TopK<>(20);
+        Random rnd = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            int r = rnd.nextInt(100);
+            if (r < 20) {
+                t.add("hot1");
+            } else if (r < 30) {
+                t.add("hot2");
+            } else if (r < 35) {
+                t.add("hot3");
+            } else {
+                t.add("cold" + rnd.nextInt(10_000));
+            }
+        }
+
+        List<TopK.Item<String>> top = t.top(3);
+        assertEquals(Arrays.asList("hot1", "hot2", "hot3"), values(top));
+        for (TopK.Item<String> item : top) {
+            assertTrue(item.toString(), item.count() - item.error() <= item.count());
+        }
+        assertEquals(20_000, top.get(0).count() - top.get(0).error(), 2_000);
+    }
+
+    @Test
+    public void evictionInheritsMinimum() {
+        TopK<String> t = new TopK<>(2);
+        t.add("a", 3);
+        t.add("b");
+        t.add("c");
+
+        assertEquals(Arrays.asList("a", "c"), values(t.top(2)));
+        TopK.Item<String> c = t.top(2).get(1);
+        assertEquals(2L, c.count());
+        assertEquals(1L, c.error());
+        assertEquals(2L, t.estimate("b"));
+    }
+
+    @Test
+    public void merge() {
+        TopK<String> t1 = new TopK<>(3);
+        TopK<String> t2 = new TopK<>(3);
+        t1.add("a", 10);
+        t1.add("b", 5);
+        t2.add("a", 4);
+        t2.add("c", 7);
+
+        t1.merge(t2);
+
+        List<TopK.Item<String>> top = t1.top(3);
+        assertEquals(Arrays.asList("a", "c", "b"), values(top));
+        assertEquals(14L, top.get(0).count());
+        assertEquals(26L, t1.total());
+
+        t1.add("c", 10);
+        assertEquals("c", t1.top(1).get(0).value());
+    }
+
+    @Test
+    public void folyam() {
+        List<TopK.Item<Integer>> top = Folyam.range(0, 10_000)
+                .map(v -> v % 10 == 0 ? 0 : v)
+                .topK(50)
+                .blockingGet()
+                .get()
+                .top(1);
+
+        assertEquals(0, top.get(0).value().intValue());
+    }
+
+    @Test
+    public void parallel() {
+        List<TopK.Item<Integer>> top = Folyam.range(0, 10_000)
+                .map(v -> v % 4 == 0 ? 0 : v % 5 == 0 ? 1 : v)
+                .parallel(4)
+                .runOn(SchedulerServices.computation())
+                .topK(100)
+                .blockingGet()
+                .get()
+                .top(2);
+
+        assertEquals(0, top.get(0).value().intValue());
+        assertEquals(1, top.get(1).value().intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityZero() {
+        Folyam.just(1).topK(0);
+    }
+}